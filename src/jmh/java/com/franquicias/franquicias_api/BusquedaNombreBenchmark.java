@@ -0,0 +1,84 @@
+package com.franquicias.franquicias_api;
+
+import com.franquicias.franquicias_api.domain.Franquicia;
+import com.franquicias.franquicias_api.domain.Producto;
+import com.franquicias.franquicias_api.domain.Sucursal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Búsqueda de sucursal/producto por nombre: recorrido lineal con equalsIgnoreCase (como antes)
+ * contra los índices en memoria de Franquicia y Sucursal.
+ *
+ * Ejecutar: mvn -B -Pjmh package exec:exec -DskipTests
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BusquedaNombreBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    private int tamano;
+
+    private Franquicia franquicia;
+    private String sucursalBuscada;
+    private String productoBuscado;
+
+    @Setup
+    public void preparar() {
+        List<Sucursal> sucursales = new ArrayList<>(tamano);
+        for (int i = 0; i < tamano; i++) {
+            List<Producto> productos = new ArrayList<>(tamano);
+            // Solo la última sucursal lleva todos los productos, para no inflar la memoria
+            int cantidad = i == tamano - 1 ? tamano : 1;
+            for (int j = 0; j < cantidad; j++) {
+                productos.add(new Producto("Producto " + j, j));
+            }
+            sucursales.add(new Sucursal("Sucursal " + i, productos));
+        }
+        franquicia = new Franquicia("Franquicia", sucursales);
+
+        // El peor caso del recorrido: el último elemento, escrito con otras mayúsculas
+        sucursalBuscada = ("Sucursal " + (tamano - 1)).toUpperCase();
+        productoBuscado = ("Producto " + (tamano - 1)).toUpperCase();
+
+        // Primera búsqueda: arma los índices
+        franquicia.buscarSucursalPorNombre(sucursalBuscada).buscarProductoPorNombre(productoBuscado);
+    }
+
+    @Benchmark
+    public Producto recorridoLineal() {
+        Sucursal sucursal = franquicia.getSucursales().stream()
+                .filter(s -> s.getNombre().equalsIgnoreCase(sucursalBuscada))
+                .findFirst()
+                .orElse(null);
+        return sucursal.getProductos().stream()
+                .filter(p -> p.getNombre().equalsIgnoreCase(productoBuscado))
+                .findFirst()
+                .orElse(null);
+    }
+
+    @Benchmark
+    public Producto indice() {
+        return franquicia.buscarSucursalPorNombre(sucursalBuscada).buscarProductoPorNombre(productoBuscado);
+    }
+
+    // Lo que paga una operación de un solo uso: copia recién leída, el índice se arma en la búsqueda
+    @Benchmark
+    public Producto indiceRecienArmado() {
+        Franquicia copia = new Franquicia(franquicia.getNombre(), franquicia.getSucursales());
+        Sucursal sucursal = copia.buscarSucursalPorNombre(sucursalBuscada);
+        Sucursal copiaSucursal = new Sucursal(sucursal.getNombre(), sucursal.getProductos());
+        return copiaSucursal.buscarProductoPorNombre(productoBuscado);
+    }
+}
@@ -0,0 +1,46 @@
+package com.franquicias.franquicias_api;
+
+import com.franquicias.franquicias_api.domain.Franquicia;
+import com.franquicias.franquicias_api.domain.Producto;
+import com.franquicias.franquicias_api.domain.Sucursal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Franquicias de prueba para los benchmarks: {@code sucursales} sucursales, la última con
+ * {@code productos} productos y el resto con hasta PRODUCTOS_POR_SUCURSAL (así 100k x 100k cabe
+ * en memoria). "Producto 0" está en todas las sucursales.
+ */
+final class DatosBenchmark {
+
+    static final int PRODUCTOS_POR_SUCURSAL = 10;
+
+    private DatosBenchmark() {
+    }
+
+    static Franquicia franquicia(int sucursales, int productos) {
+        List<Sucursal> lista = new ArrayList<>(sucursales);
+        for (int i = 0; i < sucursales; i++) {
+            int cantidad = i == sucursales - 1 ? productos : Math.min(productos, PRODUCTOS_POR_SUCURSAL);
+            List<Producto> productosSucursal = new ArrayList<>(cantidad);
+            for (int j = 0; j < cantidad; j++) {
+                // Stock distinto por sucursal para que el máximo no sea siempre el mismo producto
+                productosSucursal.add(new Producto(producto(j), (i * 31 + j * 17) % 1000));
+            }
+            lista.add(new Sucursal(sucursal(i), productosSucursal));
+        }
+        Franquicia franquicia = new Franquicia("Franquicia " + sucursales + "x" + productos, lista);
+        franquicia.setId("bench-" + sucursales + "-" + productos);
+        franquicia.setVersion(0L);
+        return franquicia;
+    }
+
+    static String sucursal(int i) {
+        return "Sucursal " + i;
+    }
+
+    static String producto(int j) {
+        return "Producto " + j;
+    }
+}
@@ -0,0 +1,90 @@
+package com.franquicias.franquicias_api;
+
+import com.franquicias.franquicias_api.domain.Franquicia;
+import com.franquicias.franquicias_api.domain.Sucursal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Operaciones de dominio de Franquicia sobre el peor caso de cada una (la última sucursal y su
+ * último producto), según el número de sucursales y de productos (ver DatosBenchmark).
+ * Con -prof gc (por defecto en el perfil jmh) se ve además lo que asigna cada operación.
+ *
+ * Ejecutar: mvn -B -Pjmh package exec:exec -DskipTests -Djmh.args="-prof gc FranquiciaDominio"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FranquiciaDominioBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    private int sucursales;
+
+    @Param({"10", "1000", "100000"})
+    private int productos;
+
+    private Franquicia franquicia;
+    private String sucursalBuscada;
+    private String productoBuscado;
+    private String productoRenombrado;
+
+    // Alterna valores para que las mutaciones repetidas no se queden en un no-op
+    private boolean par;
+
+    @Setup
+    public void preparar() {
+        franquicia = DatosBenchmark.franquicia(sucursales, productos);
+        sucursalBuscada = DatosBenchmark.sucursal(sucursales - 1).toUpperCase();
+        productoBuscado = DatosBenchmark.producto(productos - 1).toUpperCase();
+        productoRenombrado = productoBuscado + " (nuevo)";
+
+        // Primera búsqueda: arma los índices, como en una franquicia ya usada
+        franquicia.buscarSucursalPorNombre(sucursalBuscada).buscarProductoPorNombre(productoBuscado);
+    }
+
+    @Benchmark
+    public Sucursal buscarSucursalPorNombre() {
+        return franquicia.buscarSucursalPorNombre(sucursalBuscada);
+    }
+
+    @Benchmark
+    public Franquicia modificarCantidadProducto() {
+        par = !par;
+        franquicia.modificarCantidadProducto(sucursalBuscada, productoBuscado, par ? 1 : 2);
+        return franquicia;
+    }
+
+    // Ida y vuelta alternas: cada llamada es un renombrado real con el índice al día
+    @Benchmark
+    public Franquicia actualizarNombreProducto() {
+        par = !par;
+        if (par) {
+            franquicia.actualizarNombreProducto(sucursalBuscada, productoBuscado, productoRenombrado);
+        } else {
+            franquicia.actualizarNombreProducto(sucursalBuscada, productoRenombrado, productoBuscado);
+        }
+        return franquicia;
+    }
+
+    // El borrado no se puede deshacer barato: se mide sobre una copia (restar copiar() para el borrado solo)
+    @Benchmark
+    public Franquicia eliminarProductoDeTodasLasSucursales() {
+        Franquicia copia = franquicia.copiar();
+        copia.eliminarProductoDeTodasLasSucursales(DatosBenchmark.producto(0));
+        return copia;
+    }
+
+    // Línea base de eliminarProductoDeTodasLasSucursales; también lo que paga cada lectura desde la caché
+    @Benchmark
+    public Franquicia copiar() {
+        return franquicia.copiar();
+    }
+}
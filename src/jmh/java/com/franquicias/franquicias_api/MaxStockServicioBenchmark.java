@@ -0,0 +1,84 @@
+package com.franquicias.franquicias_api;
+
+import com.franquicias.franquicias_api.application.dto.ProductoMaxStockDto;
+import com.franquicias.franquicias_api.application.service.FlujoCambios;
+import com.franquicias.franquicias_api.application.service.FranquiciaService;
+import com.franquicias.franquicias_api.application.service.IndiceAutocompletado;
+import com.franquicias.franquicias_api.application.service.PipelineMutaciones;
+import com.franquicias.franquicias_api.application.service.PoliticaReservas;
+import com.franquicias.franquicias_api.application.service.ReintentoConcurrencia;
+import com.franquicias.franquicias_api.application.service.ResumenMaxStock;
+import com.franquicias.franquicias_api.domain.Franquicia;
+import com.franquicias.franquicias_api.infrastructure.data.MemoriaFranquiciaRepositoryAdapter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Criterio 7 (FranquiciaService.obtenerProductosMaxStockPorSucursal) sobre el almacenamiento en
+ * memoria (sin diario): la lectura de la vista precalculada contra el cálculo completo (reconstruir).
+ * Mide el servicio y Reactor, no la agregación en Mongo.
+ *
+ * Ejecutar: mvn -B -Pjmh package exec:exec -DskipTests -Djmh.args="-prof gc MaxStockServicio"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MaxStockServicioBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    private int sucursales;
+
+    @Param({"10", "1000", "100000"})
+    private int productos;
+
+    private FranquiciaService servicio;
+    private String franquiciaId;
+
+    @Setup
+    public void preparar() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        MemoriaFranquiciaRepositoryAdapter repositorio = new MemoriaFranquiciaRepositoryAdapter("", DataSize.ofMegabytes(64), false);
+        ReintentoConcurrencia reintento = new ReintentoConcurrencia(5, Duration.ofMillis(10), meterRegistry);
+
+        servicio = new FranquiciaService(
+                repositorio,
+                reintento,
+                new PipelineMutaciones(repositorio, reintento, false, Duration.ofMillis(5), 50, meterRegistry),
+                new ResumenMaxStock(Duration.ofHours(1)),
+                new IndiceAutocompletado(repositorio, Duration.ofMinutes(10), false),
+                new FlujoCambios(256, meterRegistry),
+                null, // Sin reservas: no las usa este benchmark
+                new PoliticaReservas(Duration.ofMinutes(5), Duration.ofMinutes(30), 500),
+                evento -> { });
+
+        Franquicia franquicia = DatosBenchmark.franquicia(sucursales, productos);
+        franquiciaId = franquicia.getId();
+        repositorio.insertar(franquicia).block();
+
+        // Deja armada la vista precalculada
+        servicio.obtenerProductosMaxStockPorSucursal(franquiciaId).blockLast();
+    }
+
+    @Benchmark
+    public List<ProductoMaxStockDto> vistaPrecalculada() {
+        return servicio.obtenerProductosMaxStockPorSucursal(franquiciaId).collectList().block();
+    }
+
+    // Lo que paga la primera consulta (o la que sigue a un cambio que invalidó la vista)
+    @Benchmark
+    public List<ProductoMaxStockDto> reconstruir() {
+        return servicio.reconstruirResumenMaxStock(franquiciaId).collectList().block();
+    }
+}
@@ -2,8 +2,10 @@ package com.franquicias.franquicias_api;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling // Barrido de reservas vencidas (BarridoReservas)
 public class FranquiciasApiApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,16 @@
+package com.franquicias.franquicias_api.application.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Una fila de la sincronización masiva de inventario: (franquicia, sucursal, producto, stock)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ActualizacionStockDto {
+    private String franquiciaId;
+    private String sucursalNombre;
+    private String productoNombre;
+    private int stock;
+}
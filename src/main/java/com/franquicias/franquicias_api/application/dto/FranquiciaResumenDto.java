@@ -0,0 +1,35 @@
+package com.franquicias.franquicias_api.application.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.franquicias.franquicias_api.domain.Franquicia;
+import com.franquicias.franquicias_api.domain.Sucursal;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Vistas parciales de una franquicia (resumen / sucursales); los campos que la vista no trae no se envían
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class FranquiciaResumenDto {
+
+    private String id;
+    private String nombre;
+    private Long version;
+    private Integer totalSucursales;
+
+    // Solo en la vista SUCURSALES: nombres de las sucursales, en su orden
+    private List<String> sucursales;
+
+    // La misma vista armada en memoria a partir del documento completo (p. ej. desde una caché)
+    public static FranquiciaResumenDto de(Franquicia franquicia, VistaFranquicia vista) {
+        List<Sucursal> lista = franquicia.getSucursales() == null ? List.of() : franquicia.getSucursales();
+        List<String> nombres = vista == VistaFranquicia.RESUMEN
+                ? null
+                : lista.stream().map(Sucursal::getNombre).toList();
+        return new FranquiciaResumenDto(franquicia.getId(), franquicia.getNombre(), franquicia.getVersion(), lista.size(), nombres);
+    }
+}
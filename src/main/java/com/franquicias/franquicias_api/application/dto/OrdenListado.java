@@ -0,0 +1,52 @@
+package com.franquicias.franquicias_api.application.dto;
+
+/**
+ * Orden de los listados de sucursales y productos (parámetro ?orden=). Un "-" delante invierte
+ * el orden: nombre, -nombre, stock, -stock. Sin parámetro se respeta el orden del documento.
+ */
+public enum OrdenListado {
+    ORIGINAL(null, 0),
+    NOMBRE("nombre", 1),
+    NOMBRE_DESC("nombre", -1),
+    STOCK("stock", 1),
+    STOCK_DESC("stock", -1);
+
+    // Campo del elemento por el que se ordena (null = sin ordenar)
+    private final String campo;
+    // 1 ascendente, -1 descendente (como en Mongo)
+    private final int direccion;
+
+    OrdenListado(String campo, int direccion) {
+        this.campo = campo;
+        this.direccion = direccion;
+    }
+
+    public String getCampo() {
+        return campo;
+    }
+
+    public int getDireccion() {
+        return direccion;
+    }
+
+    public boolean esPorStock() {
+        return "stock".equals(campo);
+    }
+
+    // Valor del query param, sin distinguir mayúsculas; 400 si no es un orden conocido
+    public static OrdenListado de(String valor) {
+        if (valor == null || valor.isBlank()) {
+            return ORIGINAL;
+        }
+        String limpio = valor.trim();
+        boolean descendente = limpio.startsWith("-");
+        String campo = descendente ? limpio.substring(1) : limpio;
+        if (campo.equalsIgnoreCase("nombre")) {
+            return descendente ? NOMBRE_DESC : NOMBRE;
+        }
+        if (campo.equalsIgnoreCase("stock")) {
+            return descendente ? STOCK_DESC : STOCK;
+        }
+        throw new IllegalArgumentException("Orden no válido: '" + valor + "'. Valores: nombre, -nombre, stock, -stock.");
+    }
+}
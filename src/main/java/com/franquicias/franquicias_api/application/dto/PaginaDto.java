@@ -0,0 +1,32 @@
+package com.franquicias.franquicias_api.application.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.function.Function;
+
+// Página de elementos ordenados por ID (paginación por cursor, sin offset)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaginaDto<T> {
+
+    private List<T> elementos;
+
+    // ID del último elemento de la página; null si no hay más páginas
+    private String siguienteCursor;
+
+    /**
+     * @param filas Hasta limite + 1 elementos: la fila extra solo indica que hay otra página.
+     * @param idDe Cómo obtener el ID (cursor) de un elemento.
+     */
+    public static <T> PaginaDto<T> de(List<T> filas, int limite, Function<T, String> idDe) {
+        if (filas.size() <= limite) {
+            return new PaginaDto<>(filas, null);
+        }
+        List<T> pagina = filas.subList(0, limite);
+        return new PaginaDto<>(pagina, idDe.apply(pagina.get(limite - 1)));
+    }
+}
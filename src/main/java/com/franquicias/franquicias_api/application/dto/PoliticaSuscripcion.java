@@ -0,0 +1,29 @@
+package com.franquicias.franquicias_api.application.dto;
+
+import java.util.Locale;
+
+/**
+ * Qué hacer con los eventos de cambio (GET .../cambios?politica=) cuando un cliente lee más
+ * lento de lo que se producen. En ningún caso se frena a quien publica: cada suscriptor tiene
+ * su propio buffer acotado.
+ */
+public enum PoliticaSuscripcion {
+    // Buffer acotado; si se llena, se descartan los eventos más antiguos (por defecto)
+    BUFFER,
+    // Solo se guarda el último evento pendiente (útil para paneles que solo pintan el estado actual)
+    ULTIMO,
+    // Si el buffer se llena, se cierra el stream con error y el cliente se reconecta
+    CORTAR;
+
+    // Valor del query param, sin distinguir mayúsculas; 400 si no es una política conocida
+    public static PoliticaSuscripcion de(String valor) {
+        if (valor == null || valor.isBlank()) {
+            return BUFFER;
+        }
+        try {
+            return valueOf(valor.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Política no válida: '" + valor + "'. Valores: buffer, ultimo, cortar.");
+        }
+    }
+}
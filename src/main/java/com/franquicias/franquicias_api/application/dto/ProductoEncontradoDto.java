@@ -0,0 +1,13 @@
+package com.franquicias.franquicias_api.application.dto;
+
+import lombok.Data;
+
+// Fila de la búsqueda global de productos: dónde está el producto y con cuánto stock
+@Data
+public class ProductoEncontradoDto {
+    private String franquiciaId;
+    private String franquiciaNombre;
+    private String sucursalNombre;
+    private String productoNombre;
+    private int stock;
+}
@@ -1,5 +1,6 @@
 package com.franquicias.franquicias_api.application.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 
 @Data
@@ -7,4 +8,8 @@ public class ProductoMaxStockDto {
     private String productoNombre;
     private int stock;
     private String sucursalNombre;
-}
\ No newline at end of file
+
+    // Versión de la franquicia con la que se calculó la fila (solo para la vista del Criterio 7)
+    @JsonIgnore
+    private Long version;
+}
@@ -0,0 +1,26 @@
+package com.franquicias.franquicias_api.application.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Resultado por fila de la actualización masiva de stock (una fila mala no tumba el lote)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResultadoStockDto {
+
+    // ERROR: la escritura de su franquicia falló (conflicto con los reintentos agotados, BD caída...)
+    public enum Estado { OK, NO_ENCONTRADO, INVALIDO, ERROR }
+
+    private String franquiciaId;
+    private String sucursalNombre;
+    private String productoNombre;
+    private int stock;
+    private Estado estado;
+
+    public static ResultadoStockDto de(ActualizacionStockDto cambio, Estado estado) {
+        return new ResultadoStockDto(cambio.getFranquiciaId(), cambio.getSucursalNombre(),
+                cambio.getProductoNombre(), cambio.getStock(), estado);
+    }
+}
@@ -0,0 +1,41 @@
+package com.franquicias.franquicias_api.application.dto;
+
+import com.franquicias.franquicias_api.domain.Franquicia;
+import com.franquicias.franquicias_api.domain.Producto;
+import com.franquicias.franquicias_api.domain.Sucursal;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+/**
+ * Resultado de una escritura de stock dirigida: el producto tal como quedó y la versión nueva de
+ * la franquicia, sin armar el agregado entero. Los nombres son los guardados, salvo la sucursal
+ * en el almacenamiento normalizado (la fila del producto solo tiene su clave): ahí es la pedida.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString(exclude = "franquicia")
+public class StockActualizadoDto {
+
+    private String franquiciaId;
+    private Long version;
+    private String sucursalNombre;
+    private String productoNombre;
+    private int stock;
+
+    // La franquicia completa ya guardada, solo si el almacenamiento la devolvió sin costo extra (puede ser null)
+    private Franquicia franquicia;
+
+    // Desde la franquicia ya guardada; null si no tiene esa sucursal o ese producto
+    public static StockActualizadoDto de(Franquicia franquicia, String sucursalNombre, String productoNombre) {
+        Sucursal sucursal = franquicia.buscarSucursalPorNombre(sucursalNombre);
+        Producto producto = sucursal == null ? null : sucursal.buscarProductoPorNombre(productoNombre);
+        if (producto == null) {
+            return null;
+        }
+        return new StockActualizadoDto(franquicia.getId(), franquicia.getVersion(), sucursal.getNombre(),
+                producto.getNombre(), producto.getStock(), franquicia);
+    }
+}
@@ -0,0 +1,17 @@
+package com.franquicias.franquicias_api.application.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Sugerencia de GET /franquicias/{id}/autocomplete: un nombre de sucursal o de producto
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SugerenciaDto {
+
+    public enum Tipo { SUCURSAL, PRODUCTO }
+
+    private Tipo tipo;
+    private String nombre;
+}
@@ -0,0 +1,28 @@
+package com.franquicias.franquicias_api.application.dto;
+
+import java.util.Locale;
+
+/**
+ * Vistas de lectura de una franquicia (parámetro ?vista=). Las parciales se proyectan en la BD:
+ * las sucursales y productos que no se piden no viajan ni se deserializan.
+ */
+public enum VistaFranquicia {
+    // id, nombre, versión y cantidad de sucursales
+    RESUMEN,
+    // lo del resumen más los nombres de las sucursales (sin productos)
+    SUCURSALES,
+    // el documento completo de siempre
+    COMPLETA;
+
+    // Valor del query param, sin distinguir mayúsculas; 400 si no es una vista conocida
+    public static VistaFranquicia de(String valor) {
+        if (valor == null || valor.isBlank()) {
+            return COMPLETA;
+        }
+        try {
+            return valueOf(valor.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Vista no válida: '" + valor + "'. Valores: resumen, sucursales, completa.");
+        }
+    }
+}
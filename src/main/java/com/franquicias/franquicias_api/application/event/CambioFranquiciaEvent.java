@@ -0,0 +1,93 @@
+package com.franquicias.franquicias_api.application.event;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.franquicias.franquicias_api.application.dto.StockActualizadoDto;
+import com.franquicias.franquicias_api.domain.Franquicia;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Evento que publica FranquiciaService (con el ApplicationEventPublisher de Spring) después de
+ * cada mutación ya guardada. Lo consumen las vistas en memoria que se mantienen de forma incremental.
+ */
+@Getter
+@ToString(exclude = "franquicia")
+@AllArgsConstructor
+public class CambioFranquiciaEvent {
+
+    public enum Tipo {
+        FRANQUICIA_CREADA,
+        NOMBRE_FRANQUICIA,
+        SUCURSAL_AGREGADA,
+        NOMBRE_SUCURSAL,
+        PRODUCTO_AGREGADO,
+        PRODUCTO_ELIMINADO,
+        PRODUCTO_ELIMINADO_TODAS,
+        NOMBRE_PRODUCTO,
+        STOCK_ACTUALIZADO
+    }
+
+    private final Tipo tipo;
+    private final String franquiciaId;
+    private final String sucursalNombre;
+    private final String productoNombre;
+
+    // Solo en los renombres: el nombre (de franquicia, sucursal o producto) antes del cambio
+    private final String nombreAnterior;
+
+    // Solo en PRODUCTO_AGREGADO y STOCK_ACTUALIZADO: el stock resultante
+    private final Integer stock;
+
+    // Versión de la franquicia que dejó la mutación (null en la actualización masiva, que no la trae)
+    @JsonIgnore
+    private final Long version;
+
+    // Estado ya guardado de la franquicia, cuando la operación lo tiene a mano (puede ser null)
+    @JsonIgnore
+    private final Franquicia franquicia;
+
+    public static CambioFranquiciaEvent franquiciaCreada(Franquicia franquicia) {
+        return new CambioFranquiciaEvent(Tipo.FRANQUICIA_CREADA, franquicia.getId(), null, null, null, null, franquicia.getVersion(), franquicia);
+    }
+
+    public static CambioFranquiciaEvent nombreFranquicia(Franquicia franquicia) {
+        return new CambioFranquiciaEvent(Tipo.NOMBRE_FRANQUICIA, franquicia.getId(), null, null, null, null, franquicia.getVersion(), franquicia);
+    }
+
+    public static CambioFranquiciaEvent sucursalAgregada(Franquicia franquicia, String sucursalNombre) {
+        return new CambioFranquiciaEvent(Tipo.SUCURSAL_AGREGADA, franquicia.getId(), sucursalNombre, null, null, null, franquicia.getVersion(), franquicia);
+    }
+
+    public static CambioFranquiciaEvent nombreSucursal(Franquicia franquicia, String nombreAnterior, String nuevoNombre) {
+        return new CambioFranquiciaEvent(Tipo.NOMBRE_SUCURSAL, franquicia.getId(), nuevoNombre, null, nombreAnterior, null, franquicia.getVersion(), franquicia);
+    }
+
+    public static CambioFranquiciaEvent productoAgregado(Franquicia franquicia, String sucursalNombre, String productoNombre, int stock) {
+        return new CambioFranquiciaEvent(Tipo.PRODUCTO_AGREGADO, franquicia.getId(), sucursalNombre, productoNombre, null, stock, franquicia.getVersion(), franquicia);
+    }
+
+    public static CambioFranquiciaEvent productoEliminado(Franquicia franquicia, String sucursalNombre, String productoNombre) {
+        return new CambioFranquiciaEvent(Tipo.PRODUCTO_ELIMINADO, franquicia.getId(), sucursalNombre, productoNombre, null, null, franquicia.getVersion(), franquicia);
+    }
+
+    public static CambioFranquiciaEvent productoEliminadoDeTodas(Franquicia franquicia, String productoNombre) {
+        return new CambioFranquiciaEvent(Tipo.PRODUCTO_ELIMINADO_TODAS, franquicia.getId(), null, productoNombre, null, null, franquicia.getVersion(), franquicia);
+    }
+
+    public static CambioFranquiciaEvent nombreProducto(Franquicia franquicia, String sucursalNombre, String nombreAnterior, String nuevoNombre) {
+        return new CambioFranquiciaEvent(Tipo.NOMBRE_PRODUCTO, franquicia.getId(), sucursalNombre, nuevoNombre, nombreAnterior, null, franquicia.getVersion(), franquicia);
+    }
+
+    // franquicia puede ser null (p. ej. en la actualización masiva, que no trae el documento)
+    public static CambioFranquiciaEvent stockActualizado(String franquiciaId, Franquicia franquicia, String sucursalNombre, String productoNombre, int stock) {
+        return new CambioFranquiciaEvent(Tipo.STOCK_ACTUALIZADO, franquiciaId, sucursalNombre, productoNombre, null, stock,
+                franquicia == null ? null : franquicia.getVersion(), franquicia);
+    }
+
+    // Escritura dirigida: el producto y la versión alcanzan; la franquicia solo si el almacenamiento la devolvió
+    public static CambioFranquiciaEvent stockActualizado(StockActualizadoDto escrito) {
+        return new CambioFranquiciaEvent(Tipo.STOCK_ACTUALIZADO, escrito.getFranquiciaId(), escrito.getSucursalNombre(),
+                escrito.getProductoNombre(), null, escrito.getStock(), escrito.getVersion(), escrito.getFranquicia());
+    }
+}
@@ -1,13 +1,29 @@
 package com.franquicias.franquicias_api.application.port.in;
 
+import com.franquicias.franquicias_api.application.dto.ActualizacionStockDto;
+import com.franquicias.franquicias_api.application.dto.FranquiciaResumenDto;
+import com.franquicias.franquicias_api.application.dto.OrdenListado;
+import com.franquicias.franquicias_api.application.dto.PaginaDto;
+import com.franquicias.franquicias_api.application.dto.PoliticaSuscripcion;
+import com.franquicias.franquicias_api.application.dto.ProductoEncontradoDto;
 import com.franquicias.franquicias_api.application.dto.ProductoMaxStockDto;
+import com.franquicias.franquicias_api.application.dto.ResultadoStockDto;
+import com.franquicias.franquicias_api.application.dto.StockActualizadoDto;
+import com.franquicias.franquicias_api.application.dto.SugerenciaDto;
+import com.franquicias.franquicias_api.application.dto.VistaFranquicia;
+import com.franquicias.franquicias_api.application.event.CambioFranquiciaEvent;
 import com.franquicias.franquicias_api.domain.Franquicia;
 import com.franquicias.franquicias_api.domain.Producto;
+import com.franquicias.franquicias_api.domain.Reserva;
 import com.franquicias.franquicias_api.domain.Sucursal;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-// Este es el Puerto de Entrada unificado para la gestión de Franquicias
+/**
+ * Este es el Puerto de Entrada unificado para la gestión de Franquicias.
+ * En las mutaciones de una franquicia, versionEsperada es la versión que el cliente leyó (If-Match):
+ * null = sin condición; si la franquicia ya va por otra, falla con VersionNoCoincideException (412).
+ */
 public interface IFranquiciaManagement {
 
     // Criterio 2: Crear una nueva franquicia
@@ -16,29 +32,93 @@ public interface IFranquiciaManagement {
     //Búsqueda: Buscar todas las franquicias (solicitado en tu plan de pulido)
     Flux<Franquicia> findAll();
 
+    /**
+     * Una página de franquicias ordenadas por ID (cursor = ID de la última de la página anterior).
+     * @param limite Tamaño de página, entre 1 y el máximo permitido.
+     */
+    Mono<PaginaDto<Franquicia>> findPagina(String despuesDe, int limite);
+
+    // Todas las franquicias (desde el cursor, si se indica) en orden de ID, leídas a demanda del consumidor
+    Flux<Franquicia> findAllStream(String despuesDe);
+
+    // Lecturas con vista parcial (?vista=resumen|sucursales), proyectadas en la BD
+    Mono<FranquiciaResumenDto> findResumenById(String id, VistaFranquicia vista);
+
+    Mono<FranquiciaResumenDto> findResumenByNombre(String nombre, VistaFranquicia vista);
+
+    Mono<PaginaDto<FranquiciaResumenDto>> findResumenPagina(String despuesDe, int limite, VistaFranquicia vista);
+
+    Flux<FranquiciaResumenDto> findResumenStream(String despuesDe, VistaFranquicia vista);
+
+    // Sucursales / productos de una sucursal por tramos (limite null = todos, en streaming)
+    Flux<Sucursal> findSucursales(String franquiciaId, int desde, Integer limite, OrdenListado orden);
+
+    Flux<Producto> findProductos(String franquiciaId, String sucursalNombre, int desde, Integer limite, OrdenListado orden);
+
+    // Búsqueda global de productos por nombre exacto o prefijo (limite null = el de por defecto)
+    Flux<ProductoEncontradoDto> buscarProductos(String nombre, boolean prefijo, Integer limite);
+
+    // Nombres de sucursales y productos de una franquicia que empiezan por el texto (limite null = el de por defecto)
+    Flux<SugerenciaDto> autocompletar(String franquiciaId, String texto, Integer limite);
+
+    // Cambios en vivo (franquiciaId null = de todas las franquicias); no terminan mientras el cliente siga conectado
+    Flux<CambioFranquiciaEvent> suscribirCambios(String franquiciaId, PoliticaSuscripcion politica);
+
     // la validación: Buscar por nombre
     Mono<Franquicia> findByNombre(String nombre);
 
     // Criterio 3: Añadir una sucursal (Usada por IAddSucursalUseCase en el plan anterior)
-    Mono<Franquicia> addSucursal(String franquiciaId, Sucursal sucursal);
+    Mono<Franquicia> addSucursal(String franquiciaId, Sucursal sucursal, Long versionEsperada);
 
     //Buscar por ID (necesario para el Criterio 3 y futuras actualizaciones)
     Mono<Franquicia> findById(String id);
 
     // Criterio 4: Exponer endpoint para agregar un nuevo producto a la sucursal
-    Mono<Franquicia> addProducto(String franquiciaId, String sucursalNombre, Producto producto);
+    Mono<Franquicia> addProducto(String franquiciaId, String sucursalNombre, Producto producto, Long versionEsperada);
 
     // Criterio 5.1: Eliminar un producto de una sucursal específica
-    Mono<String> deleteProducto(String franquiciaId, String sucursalNombre, String productoNombre);
+    Mono<String> deleteProducto(String franquiciaId, String sucursalNombre, String productoNombre, Long versionEsperada);
 
     // Criterio 5.2: Eliminar un producto de todas las sucursales de la franquicia
-    Mono<String> deleteProductoFromAllSucursales(String franquiciaId, String productoNombre);
+    Mono<String> deleteProductoFromAllSucursales(String franquiciaId, String productoNombre, Long versionEsperada);
 
     /**
      * Criterio 6: Modifica el stock de un producto específico en una sucursal específica.
      * @param nuevoStock El nuevo valor de stock.
+     * @return El producto tal como quedó y la versión nueva de la franquicia.
+     */
+    Mono<StockActualizadoDto> updateStock(String franquiciaId, String sucursalNombre, String productoNombre, int nuevoStock, Long versionEsperada);
+
+    /**
+     * Extra 4: Suma o resta una cantidad al stock de un producto de forma atómica.
+     * @param cambio Cantidad a sumar (positiva) o restar (negativa).
+     * @param evitarNegativo Si es true, rechaza (409) el cambio cuando el stock quedaría por debajo de cero.
+     * @return El producto tal como quedó y la versión nueva de la franquicia.
      */
-    Mono<Franquicia> updateStock(String franquiciaId, String sucursalNombre, String productoNombre, int nuevoStock);
+    Mono<StockActualizadoDto> ajustarStock(String franquiciaId, String sucursalNombre, String productoNombre, int cambio, boolean evitarNegativo,
+                                           Long versionEsperada);
+
+    /**
+     * Reserva de stock con vencimiento: descuenta la cantidad de forma atómica (409 si no alcanza)
+     * y la retiene hasta que se confirme, se libere o venza.
+     * @param ttlSegundos Vigencia de la reserva; null = la de por defecto.
+     */
+    Mono<Reserva> reservarStock(String franquiciaId, String sucursalNombre, String productoNombre, int cantidad, Integer ttlSegundos);
+
+    // Confirma (la cantidad queda vendida) o libera (vuelve al stock) una reserva activa; 404 si ya no existe, 410 si se confirma vencida
+    Mono<Reserva> confirmarReserva(String reservaId);
+
+    Mono<Reserva> liberarReserva(String reservaId);
+
+    // Una pasada del barrido de reservas vencidas; devuelve cuántas liberó
+    Mono<Long> liberarReservasVencidas();
+
+    /**
+     * Extra 5: Actualización masiva de stock (sincronizaciones de inventario).
+     * @param cambios Flujo de cambios de una o varias franquicias.
+     * @return Flux con un resultado por cambio (OK, NO_ENCONTRADO, INVALIDO o ERROR), en el mismo orden.
+     */
+    Flux<ResultadoStockDto> updateStockEnLote(Flux<ActualizacionStockDto> cambios);
 
     /**
      * Criterio 7: Obtiene el producto con máximo stock por cada sucursal de una franquicia.
@@ -47,18 +127,29 @@ public interface IFranquiciaManagement {
      */
     Flux<ProductoMaxStockDto> obtenerProductosMaxStockPorSucursal(String franquiciaId);
 
+    /**
+     * Criterio 7 (mantenimiento): Reconstruye desde la BD la vista precalculada de una franquicia.
+     */
+    Flux<ProductoMaxStockDto> reconstruirResumenMaxStock(String franquiciaId);
+
+    /**
+     * Criterio 7 (mantenimiento): Invalida la vista precalculada de todas las franquicias.
+     */
+    Mono<String> reconstruirResumenMaxStock();
+
     /**
      * Extra 1: Actualiza el nombre de una franquicia.
      */
-    Mono<Franquicia> updateNombreFranquicia(String id, String nuevoNombre);
+    Mono<Franquicia> updateNombreFranquicia(String id, String nuevoNombre, Long versionEsperada);
 
     /**
      * Extra 2: Actualiza el nombre de una sucursal en una franquicia.
      */
-    Mono<Franquicia> updateNombreSucursal(String franquiciaId, String nombreActual, String nuevoNombre);
+    Mono<Franquicia> updateNombreSucursal(String franquiciaId, String nombreActual, String nuevoNombre, Long versionEsperada);
 
     /**
      * Extra 3: Actualiza el nombre de un producto en una sucursal.
      */
-    Mono<Franquicia> updateNombreProducto(String franquiciaId, String sucursalNombre, String nombreActual, String nuevoNombre);
+    Mono<Franquicia> updateNombreProducto(String franquiciaId, String sucursalNombre, String nombreActual, String nuevoNombre,
+                                          Long versionEsperada);
 }
@@ -1,9 +1,21 @@
 package com.franquicias.franquicias_api.application.port.out;
 
+import com.franquicias.franquicias_api.application.dto.ActualizacionStockDto;
+import com.franquicias.franquicias_api.application.dto.FranquiciaResumenDto;
+import com.franquicias.franquicias_api.application.dto.OrdenListado;
+import com.franquicias.franquicias_api.application.dto.ProductoEncontradoDto;
+import com.franquicias.franquicias_api.application.dto.ProductoMaxStockDto;
+import com.franquicias.franquicias_api.application.dto.ResultadoStockDto;
+import com.franquicias.franquicias_api.application.dto.StockActualizadoDto;
+import com.franquicias.franquicias_api.application.dto.VistaFranquicia;
 import com.franquicias.franquicias_api.domain.Franquicia;
+import com.franquicias.franquicias_api.domain.Producto;
+import com.franquicias.franquicias_api.domain.Sucursal;
 import reactor.core.publisher.Mono;
 import reactor.core.publisher.Flux;
 
+import java.util.List;
+
 // Puerto de Salida: Define cómo se guardarán los datos (lo implementará la infraestructura)
 public interface IFranquiciaRepository {
 
@@ -15,9 +27,94 @@ public interface IFranquiciaRepository {
     Mono<Franquicia> save(Franquicia franquicia);
     Mono<Franquicia> findById(String id);
 
+    /**
+     * Inserta una franquicia nueva en un solo viaje (sin consultar antes si el nombre existe).
+     * @return Mono<Franquicia> La franquicia creada, o error RecursoDuplicadoException si el nombre
+     *         (o el ID) ya están en uso.
+     */
+    Mono<Franquicia> insertar(Franquicia franquicia);
+
+    /**
+     * Cambia solo el nombre de la franquicia con una actualización dirigida (sube la versión).
+     * @return Mono<Franquicia> La franquicia ya renombrada, Mono.empty() si no existe, o error
+     *         RecursoDuplicadoException si otra franquicia ya usa ese nombre.
+     */
+    Mono<Franquicia> actualizarNombre(String id, String nuevoNombre);
+
     // Nuevo: Buscar una franquicia por su nombre exacto
     Mono<Franquicia> findByNombre(String nombre);
 
     // Nuevo: Buscar todas las franquicias (Flux para una lista reactiva)
     Flux<Franquicia> findAll();
-}
\ No newline at end of file
+
+    /**
+     * Franquicias ordenadas por ID a partir de un cursor (paginación keyset sobre _id).
+     * @param despuesDeId ID de la última franquicia ya leída (null para empezar desde el principio).
+     * @param limite Máximo de franquicias; 0 o menos = sin límite (se leen por lotes del cursor, a demanda).
+     */
+    Flux<Franquicia> findPagina(String despuesDeId, int limite);
+
+    /**
+     * Vistas parciales (RESUMEN o SUCURSALES) proyectadas en la BD: las sucursales y productos
+     * que la vista no usa no se transfieren. Mismos criterios que findById, findByNombre y findPagina.
+     */
+    Mono<FranquiciaResumenDto> findResumenById(String id, VistaFranquicia vista);
+
+    Mono<FranquiciaResumenDto> findResumenByNombre(String nombre, VistaFranquicia vista);
+
+    Flux<FranquiciaResumenDto> findResumenPagina(String despuesDeId, int limite, VistaFranquicia vista);
+
+    /**
+     * Tramo [desde, desde + limite) de las sucursales (o de los productos de una sucursal),
+     * ordenado y recortado en la BD. limite <= 0 = hasta el final. Vacío si no hay elementos
+     * en el tramo o si no existe la franquicia / sucursal.
+     */
+    Flux<Sucursal> findSucursales(String franquiciaId, int desde, int limite, OrdenListado orden);
+
+    Flux<Producto> findProductos(String franquiciaId, String sucursalNombre, int desde, int limite, OrdenListado orden);
+
+    /**
+     * Búsqueda global de un producto por nombre en todas las franquicias, sin distinguir mayúsculas.
+     * @param prefijo Si es true, coinciden los productos cuyo nombre EMPIEZA por el texto; si no, igualdad.
+     * @param limite Máximo de filas (siempre > 0); se leen por lotes del cursor, a demanda.
+     * @return Flux con una fila (franquicia, sucursal, producto, stock) por coincidencia.
+     */
+    Flux<ProductoEncontradoDto> buscarProductos(String nombre, boolean prefijo, int limite);
+
+    // Comprobación barata de existencia (sin traer el documento)
+    Mono<Boolean> existsById(String id);
+
+    /**
+     * Producto con mayor stock de cada sucursal, calculado en la BD sin traer el documento.
+     * @return Flux con una fila por sucursal, en el orden de las sucursales. Si la sucursal no tiene
+     *         productos, la fila llega con productoNombre null. Vacío si la franquicia no existe
+     *         o no tiene sucursales.
+     */
+    Flux<ProductoMaxStockDto> findProductoMaxStockPorSucursal(String franquiciaId);
+
+    /**
+     * Actualiza en sitio el stock de un producto (un solo campo, sin leer antes la franquicia).
+     * @param versionEsperada Si no es null (If-Match), solo coincide mientras la franquicia siga en esa versión.
+     * @return Mono<StockActualizadoDto> El producto ya actualizado y la versión nueva, o Mono.empty()
+     *         si la franquicia, la sucursal o el producto no existen, o la versión ya es otra.
+     */
+    Mono<StockActualizadoDto> actualizarStockProducto(String franquiciaId, String sucursalNombre, String productoNombre, int nuevoStock,
+                                                      Long versionEsperada);
+
+    /**
+     * Suma (o resta) una cantidad al stock de un producto con un $inc atómico en el servidor.
+     * @param evitarNegativo Si es true, el filtro solo coincide cuando el stock resultante no queda por debajo de cero.
+     * @param versionEsperada Si no es null (If-Match), solo coincide mientras la franquicia siga en esa versión.
+     * @return Mono<StockActualizadoDto> El producto ya actualizado y la versión nueva, o Mono.empty()
+     *         si no hubo coincidencia (franquicia, sucursal o producto inexistentes, stock insuficiente
+     *         o la versión ya es otra).
+     */
+    Mono<StockActualizadoDto> incrementarStockProducto(String franquiciaId, String sucursalNombre, String productoNombre, int cambio, boolean evitarNegativo,
+                                                       Long versionEsperada);
+
+    /**
+     * Aplica varios cambios de stock absolutos de UNA franquicia en una sola escritura masiva.
+     * @return Flux<ResultadoStockDto> Un resultado por cambio, en el mismo orden (OK o NO_ENCONTRADO).
+     */
+    Flux<ResultadoStockDto> actualizarStockEnLote(String franquiciaId, List<ActualizacionStockDto> cambios);
+}
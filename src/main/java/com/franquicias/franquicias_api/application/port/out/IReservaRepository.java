@@ -0,0 +1,36 @@
+package com.franquicias.franquicias_api.application.port.out;
+
+import com.franquicias.franquicias_api.domain.Reserva;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+
+// Puerto de Salida de las reservas de stock (solo se guardan las que siguen activas)
+public interface IReservaRepository {
+
+    Mono<Reserva> insertar(Reserva reserva);
+
+    /**
+     * Quita la reserva de forma atómica y la devuelve: entre confirmar, liberar y el barrido,
+     * solo uno puede reclamar cada reserva.
+     * @return Mono<Reserva> La reserva reclamada, o Mono.empty() si ya no existe.
+     */
+    Mono<Reserva> reclamar(String reservaId);
+
+    /**
+     * Como reclamar, pero solo si la reserva sigue vigente en {@code ahora} (expiraEn posterior):
+     * una reserva vencida es del barrido, no se puede confirmar.
+     * @return Mono<Reserva> La reserva reclamada, o Mono.empty() si no existe o ya venció.
+     */
+    Mono<Reserva> reclamarVigente(String reservaId, Instant ahora);
+
+    // Si la reserva sigue guardada (vigente o vencida sin barrer)
+    Mono<Boolean> existe(String reservaId);
+
+    /**
+     * Reclama (igual que reclamar) hasta {@code limite} reservas vencidas en {@code ahora}.
+     * Las que reclama otra instancia a la vez no se devuelven.
+     */
+    Flux<Reserva> reclamarVencidas(Instant ahora, int limite);
+}
@@ -0,0 +1,45 @@
+package com.franquicias.franquicias_api.application.service;
+
+import com.franquicias.franquicias_api.application.port.in.IFranquiciaManagement;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Barrido periódico de las reservas vencidas: las reclama y devuelve su stock. Cada reserva se
+ * reclama con una operación atómica, así que varias instancias pueden barrer a la vez.
+ * Con un Mono, Spring espera a que termine una pasada antes de programar la siguiente.
+ */
+@Slf4j
+@Component
+public class BarridoReservas {
+
+    private final IFranquiciaManagement franquiciaManagement;
+    private final PoliticaReservas politicaReservas;
+
+    public BarridoReservas(IFranquiciaManagement franquiciaManagement, PoliticaReservas politicaReservas) {
+        this.franquiciaManagement = franquiciaManagement;
+        this.politicaReservas = politicaReservas;
+    }
+
+    // La primera pasada espera un turno: no compite con el arranque por la conexión a la BD
+    @Scheduled(initialDelayString = "${franquicias.reservas.barrido:5s}", fixedDelayString = "${franquicias.reservas.barrido:5s}")
+    public Mono<Void> barrer() {
+        // Mientras los lotes salen llenos quedan más vencidas: se sigue sin esperar al siguiente turno
+        return Mono.defer(franquiciaManagement::liberarReservasVencidas)
+                .repeat()
+                .takeUntil(liberadas -> liberadas < politicaReservas.getLoteBarrido())
+                .reduce(0L, Long::sum)
+                .doOnNext(total -> {
+                    if (total > 0) {
+                        log.info("Reservas vencidas liberadas: {}", total);
+                    }
+                })
+                .onErrorResume(error -> {
+                    log.error("Falló el barrido de reservas vencidas; se reintenta en la próxima pasada", error);
+                    return Mono.empty();
+                })
+                .then();
+    }
+}
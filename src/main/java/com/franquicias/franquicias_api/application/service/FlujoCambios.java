@@ -0,0 +1,72 @@
+package com.franquicias.franquicias_api.application.service;
+
+import com.franquicias.franquicias_api.application.dto.PoliticaSuscripcion;
+import com.franquicias.franquicias_api.application.event.CambioFranquiciaEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Difusión en vivo de los CambioFranquiciaEvent (GET /franquicias/cambios y /{id}/cambios).
+ * Se alimenta del mismo evento de Spring que las vistas en memoria, así que solo ve las
+ * mutaciones hechas en esta instancia.
+ *
+ * Quien publica nunca espera a los clientes: el sink entrega sin bloquear y cada suscriptor
+ * tiene su propio buffer acotado (con la política que pidió) y su propio hilo de entrega.
+ * Los eventos descartados se cuentan en franquicias.cambios.descartados.
+ */
+@Component
+public class FlujoCambios {
+
+    // Eventos que se piden de una vez al buffer de cada suscriptor desde su hilo de entrega
+    private static final int PREFETCH_ENTREGA = 32;
+
+    private final int capacidadBuffer;
+
+    // directBestEffort: si un suscriptor no tiene demanda, el evento se pierde solo para él
+    private final Sinks.Many<CambioFranquiciaEvent> sink = Sinks.many().multicast().directBestEffort();
+
+    private final Counter descartados;
+
+    public FlujoCambios(@Value("${franquicias.cambios.buffer:256}") int capacidadBuffer, MeterRegistry meterRegistry) {
+        this.capacidadBuffer = capacidadBuffer;
+        this.descartados = Counter.builder("franquicias.cambios.descartados")
+                .description("Eventos de cambio que un suscriptor lento no llegó a recibir")
+                .register(meterRegistry);
+        Gauge.builder("franquicias.cambios.suscriptores", sink, Sinks.Many::currentSubscriberCount)
+                .description("Clientes conectados al flujo de cambios")
+                .register(meterRegistry);
+    }
+
+    @EventListener
+    public void alCambiarFranquicia(CambioFranquiciaEvent evento) {
+        // Solo se reintenta si otro hilo está emitiendo a la vez; sin suscriptores el evento se descarta
+        sink.emitNext(evento, (senal, resultado) -> resultado == Sinks.EmitResult.FAIL_NON_SERIALIZED);
+    }
+
+    /**
+     * Eventos desde el momento de la suscripción (no hay historial).
+     * @param franquiciaId Solo los de esa franquicia; null = todos.
+     */
+    public Flux<CambioFranquiciaEvent> suscribir(String franquiciaId, PoliticaSuscripcion politica) {
+        Flux<CambioFranquiciaEvent> eventos = sink.asFlux();
+        if (franquiciaId != null) {
+            eventos = eventos.filter(evento -> franquiciaId.equals(evento.getFranquiciaId()));
+        }
+
+        Flux<CambioFranquiciaEvent> acotado = switch (politica) {
+            case ULTIMO -> eventos.onBackpressureLatest();
+            case CORTAR -> eventos.onBackpressureBuffer(capacidadBuffer, evento -> descartados.increment(), BufferOverflowStrategy.ERROR);
+            default -> eventos.onBackpressureBuffer(capacidadBuffer, evento -> descartados.increment(), BufferOverflowStrategy.DROP_OLDEST);
+        };
+        // La serialización y la escritura al cliente salen del hilo que publicó el evento
+        return acotado.publishOn(Schedulers.parallel(), PREFETCH_ENTREGA);
+    }
+}
@@ -1,29 +1,96 @@
 package com.franquicias.franquicias_api.application.service;
 
+import com.franquicias.franquicias_api.application.dto.ActualizacionStockDto;
+import com.franquicias.franquicias_api.application.dto.FranquiciaResumenDto;
+import com.franquicias.franquicias_api.application.dto.OrdenListado;
+import com.franquicias.franquicias_api.application.dto.PaginaDto;
+import com.franquicias.franquicias_api.application.dto.PoliticaSuscripcion;
+import com.franquicias.franquicias_api.application.dto.ProductoEncontradoDto;
 import com.franquicias.franquicias_api.application.dto.ProductoMaxStockDto;
+import com.franquicias.franquicias_api.application.dto.ResultadoStockDto;
+import com.franquicias.franquicias_api.application.dto.StockActualizadoDto;
+import com.franquicias.franquicias_api.application.dto.SugerenciaDto;
+import com.franquicias.franquicias_api.application.dto.VistaFranquicia;
+import com.franquicias.franquicias_api.application.event.CambioFranquiciaEvent;
 import com.franquicias.franquicias_api.application.port.in.IFranquiciaManagement;
 import com.franquicias.franquicias_api.application.port.out.IFranquiciaRepository;
+import com.franquicias.franquicias_api.application.port.out.IReservaRepository;
 import com.franquicias.franquicias_api.domain.Franquicia;
 import com.franquicias.franquicias_api.domain.Producto;
+import com.franquicias.franquicias_api.domain.Reserva;
 import com.franquicias.franquicias_api.domain.Sucursal;
 // Ajusta este import a tu paquete de excepciones exacto
+import com.franquicias.franquicias_api.domain.exception.ConflictoConcurrenciaException;
 import com.franquicias.franquicias_api.domain.exception.RecursoDuplicadoException;
 import com.franquicias.franquicias_api.domain.exception.RecursoNoEncontradoException; // ¡Asegúrate de crear esta clase!
+import com.franquicias.franquicias_api.domain.exception.ReservaVencidaException;
+import com.franquicias.franquicias_api.domain.exception.StockInsuficienteException;
+import com.franquicias.franquicias_api.domain.exception.VersionNoCoincideException;
 
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+@Slf4j
 @Service // Marca esto como un componente de Spring
 @RequiredArgsConstructor // Inyección de dependencia por constructor (para el repositorio)
 public class FranquiciaService implements IFranquiciaManagement {
 
+    // Filas que se agrupan por franquicia antes de cada escritura masiva
+    private static final int TAMANO_LOTE_STOCK = 1000;
+
+    // Escrituras masivas (de franquicias distintas) que pueden ir en paralelo
+    private static final int LOTES_EN_PARALELO = 4;
+
+    // Tamaño máximo de página en GET /franquicias?limite=N
+    private static final int LIMITE_MAXIMO_PAGINA = 500;
+
+    // Filas de la búsqueda global de productos cuando no se pide un límite
+    private static final int LIMITE_BUSQUEDA_POR_DEFECTO = 100;
+
+    // Sugerencias de GET /franquicias/{id}/autocomplete (por defecto y máximo)
+    private static final int SUGERENCIAS_POR_DEFECTO = 10;
+    private static final int LIMITE_MAXIMO_SUGERENCIAS = 50;
+
     // Dependencia del Puerto de Salida (solo la interfaz)
     private final IFranquiciaRepository franquiciaRepository;
 
+    // Reintentos ante conflictos de versión (concurrencia optimista)
+    private final ReintentoConcurrencia reintentoConcurrencia;
+
+    // Agrupación opcional de mutaciones por franquicia (un guardado por ventana)
+    private final PipelineMutaciones pipelineMutaciones;
+
+    // Vista precalculada del Criterio 7, mantenida con los eventos de cambio
+    private final ResumenMaxStock resumenMaxStock;
+
+    // Índice en memoria de nombres de sucursales y productos, mantenido con los mismos eventos
+    private final IndiceAutocompletado indiceAutocompletado;
+
+    // Difusión en vivo de los mismos eventos (SSE / NDJSON)
+    private final FlujoCambios flujoCambios;
+
+    // Reservas de stock (checkout) y su vigencia
+    private final IReservaRepository reservaRepository;
+    private final PoliticaReservas politicaReservas;
+
+    // Publica un CambioFranquiciaEvent tras cada mutación guardada
+    private final ApplicationEventPublisher eventPublisher;
+
     /**
-     * Criterio 2: Crear Franquicia con validación de existencia y datos.
+     * Criterio 2: Crear Franquicia con validación de datos; la unicidad del nombre la garantiza
+     * el índice único en la BD (RecursoDuplicadoException -> 409).
      */
     @Override
     public Mono<Franquicia> crearFranquicia(Franquicia franquicia) {
@@ -32,17 +99,9 @@ public class FranquiciaService implements IFranquiciaManagement {
             return Mono.error(new IllegalArgumentException("El nombre de la franquicia es obligatorio."));
         }
 
-        //Verificar si ya existe una franquicia con ese nombre.
-        return franquiciaRepository.findByNombre(franquicia.getNombre())
-                .flatMap(existente ->
-                        // Si encuentra una, lanza una excepción de conflicto (409)
-                        Mono.error(new RecursoDuplicadoException("La franquicia '" + existente.getNombre() + "' ya existe."))
-                )
-                .switchIfEmpty(
-                        // Si no existe (Mono.empty()), procede a guardar
-                        Mono.defer(() -> franquiciaRepository.save(franquicia))
-                )
-                .cast(Franquicia.class);
+        //Insert directo: si el nombre ya existe, el índice único lo rechaza (409) sin consulta previa
+        return franquiciaRepository.insertar(franquicia)
+                .doOnNext(creada -> publicar(CambioFranquiciaEvent.franquiciaCreada(creada)));
     }
 
     /**
@@ -54,6 +113,154 @@ public class FranquiciaService implements IFranquiciaManagement {
         return franquiciaRepository.findAll();
     }
 
+    /**
+     * Paginación por cursor: se pide una fila de más para saber si hay otra página.
+     * Mapeado a: GET /franquicias?limite=N&despuesDe=cursor
+     */
+    @Override
+    public Mono<PaginaDto<Franquicia>> findPagina(String despuesDe, int limite) {
+        if (limite < 1 || limite > LIMITE_MAXIMO_PAGINA) {
+            return Mono.error(limiteInvalido());
+        }
+        return franquiciaRepository.findPagina(despuesDe, limite + 1)
+                .collectList()
+                .map(filas -> PaginaDto.de(filas, limite, Franquicia::getId));
+    }
+
+    /**
+     * Listado completo en streaming (NDJSON): el cursor de Mongo se lee por lotes según la demanda
+     * de la respuesta, así la memoria no crece con el número de franquicias.
+     * Mapeado a: GET /franquicias (sin limite)
+     */
+    @Override
+    public Flux<Franquicia> findAllStream(String despuesDe) {
+        return franquiciaRepository.findPagina(despuesDe, 0);
+    }
+
+    /**
+     * Vista parcial por ID (?vista=resumen|sucursales), con el mismo 404 que findById.
+     * Mapeado a: GET /franquicias/{id}?vista=...
+     */
+    @Override
+    public Mono<FranquiciaResumenDto> findResumenById(String id, VistaFranquicia vista) {
+        return franquiciaRepository.findResumenById(id, vista)
+                .switchIfEmpty(Mono.error(new RecursoNoEncontradoException("Franquicia", id)));
+    }
+
+    // Mapeado a: GET /franquicias/nombre/{nombre}?vista=...
+    @Override
+    public Mono<FranquiciaResumenDto> findResumenByNombre(String nombre, VistaFranquicia vista) {
+        if (nombre == null || nombre.trim().isEmpty()) {
+            return Mono.error(new IllegalArgumentException("El nombre de la franquicia es obligatorio para la búsqueda."));
+        }
+        return franquiciaRepository.findResumenByNombre(nombre, vista)
+                .switchIfEmpty(Mono.error(new RecursoNoEncontradoException("Franquicia", nombre)));
+    }
+
+    // Mapeado a: GET /franquicias?limite=N&vista=...
+    @Override
+    public Mono<PaginaDto<FranquiciaResumenDto>> findResumenPagina(String despuesDe, int limite, VistaFranquicia vista) {
+        if (limite < 1 || limite > LIMITE_MAXIMO_PAGINA) {
+            return Mono.error(limiteInvalido());
+        }
+        return franquiciaRepository.findResumenPagina(despuesDe, limite + 1, vista)
+                .collectList()
+                .map(filas -> PaginaDto.de(filas, limite, FranquiciaResumenDto::getId));
+    }
+
+    // Mapeado a: GET /franquicias?vista=... (streaming)
+    @Override
+    public Flux<FranquiciaResumenDto> findResumenStream(String despuesDe, VistaFranquicia vista) {
+        return franquiciaRepository.findResumenPagina(despuesDe, 0, vista);
+    }
+
+    /**
+     * Sucursales por tramos (desde/limite), ordenadas y recortadas en la BD. Sin limite se
+     * devuelven todas en streaming. Solo un resultado vacío cuesta otra lectura (para el 404).
+     * Mapeado a: GET /franquicias/{id}/sucursales?desde=0&limite=50&orden=nombre
+     */
+    @Override
+    public Flux<Sucursal> findSucursales(String franquiciaId, int desde, Integer limite, OrdenListado orden) {
+        if (orden.esPorStock()) {
+            return Flux.error(new IllegalArgumentException("Las sucursales solo se pueden ordenar por nombre."));
+        }
+        if (desde < 0 || (limite != null && (limite < 1 || limite > LIMITE_MAXIMO_PAGINA))) {
+            return Flux.error(tramoInvalido());
+        }
+        return franquiciaRepository.findSucursales(franquiciaId, desde, limite == null ? 0 : limite, orden)
+                .switchIfEmpty(Flux.defer(() -> franquiciaRepository.existsById(franquiciaId)
+                        .flatMapMany(existe -> existe
+                                ? Flux.<Sucursal>empty()
+                                : Flux.error(new RecursoNoEncontradoException("Franquicia", franquiciaId)))));
+    }
+
+    // Mapeado a: GET /franquicias/{id}/sucursales/{nombre}/productos?desde=0&limite=50&orden=-stock
+    @Override
+    public Flux<Producto> findProductos(String franquiciaId, String sucursalNombre, int desde, Integer limite, OrdenListado orden) {
+        if (desde < 0 || (limite != null && (limite < 1 || limite > LIMITE_MAXIMO_PAGINA))) {
+            return Flux.error(tramoInvalido());
+        }
+        return franquiciaRepository.findProductos(franquiciaId, sucursalNombre, desde, limite == null ? 0 : limite, orden)
+                .switchIfEmpty(Flux.defer(() -> buscarSucursalExistente(franquiciaId, sucursalNombre).thenMany(Flux.<Producto>empty())));
+    }
+
+    /**
+     * Búsqueda de un producto en todas las franquicias (igualdad o prefijo, sin distinguir
+     * mayúsculas), resuelta en la BD con índice y siempre acotada por un límite.
+     * Mapeado a: GET /franquicias/productos/buscar?nombre=cola&prefijo=true&limite=50
+     */
+    @Override
+    public Flux<ProductoEncontradoDto> buscarProductos(String nombre, boolean prefijo, Integer limite) {
+        if (nombre == null || nombre.isBlank()) {
+            return Flux.error(new IllegalArgumentException("El nombre del producto a buscar es obligatorio."));
+        }
+        int limiteBusqueda = limite == null ? LIMITE_BUSQUEDA_POR_DEFECTO : limite;
+        if (limiteBusqueda < 1 || limiteBusqueda > LIMITE_MAXIMO_PAGINA) {
+            return Flux.error(limiteInvalido());
+        }
+        return franquiciaRepository.buscarProductos(nombre.trim(), prefijo, limiteBusqueda);
+    }
+
+    /**
+     * Autocompletado de nombres de sucursales y productos de una franquicia, resuelto en memoria
+     * (IndiceAutocompletado); solo la primera consulta de una franquicia sin índice va a la BD.
+     * Mapeado a: GET /franquicias/{id}/autocomplete?q=coc&limite=10
+     */
+    @Override
+    public Flux<SugerenciaDto> autocompletar(String franquiciaId, String texto, Integer limite) {
+        int limiteSugerencias = limite == null ? SUGERENCIAS_POR_DEFECTO : limite;
+        if (limiteSugerencias < 1 || limiteSugerencias > LIMITE_MAXIMO_SUGERENCIAS) {
+            return Flux.error(new IllegalArgumentException("El límite de sugerencias debe estar entre 1 y " + LIMITE_MAXIMO_SUGERENCIAS + "."));
+        }
+        return indiceAutocompletado.sugerir(franquiciaId, texto == null ? "" : texto, limiteSugerencias)
+                .switchIfEmpty(Mono.error(new RecursoNoEncontradoException("Franquicia", franquiciaId)))
+                .flatMapIterable(sugerencias -> sugerencias);
+    }
+
+    /**
+     * Cambios en vivo de una franquicia (o de todas con franquiciaId null), desde el momento de
+     * la suscripción. Solo la suscripción a una franquicia comprueba antes que exista.
+     * Mapeado a: GET /franquicias/cambios y GET /franquicias/{id}/cambios?politica=buffer
+     */
+    @Override
+    public Flux<CambioFranquiciaEvent> suscribirCambios(String franquiciaId, PoliticaSuscripcion politica) {
+        if (franquiciaId == null) {
+            return flujoCambios.suscribir(null, politica);
+        }
+        return franquiciaRepository.existsById(franquiciaId)
+                .flatMapMany(existe -> existe
+                        ? flujoCambios.suscribir(franquiciaId, politica)
+                        : Flux.error(new RecursoNoEncontradoException("Franquicia", franquiciaId)));
+    }
+
+    private IllegalArgumentException tramoInvalido() {
+        return new IllegalArgumentException("desde debe ser >= 0 y el límite estar entre 1 y " + LIMITE_MAXIMO_PAGINA + ".");
+    }
+
+    private IllegalArgumentException limiteInvalido() {
+        return new IllegalArgumentException("El límite debe estar entre 1 y " + LIMITE_MAXIMO_PAGINA + ".");
+    }
+
     /**
      * Busca una franquicia por su ID con manejo de error 404.
      * Mapeado a: GET /franquicias/{id}
@@ -85,7 +292,7 @@ public class FranquiciaService implements IFranquiciaManagement {
      * Mapeado a: POST /franquicias/{franquiciaId}/sucursales
      */
     @Override
-    public Mono<Franquicia> addSucursal(String franquiciaId, Sucursal sucursal) {
+    public Mono<Franquicia> addSucursal(String franquiciaId, Sucursal sucursal, Long versionEsperada) {
         // Validación de entradas
         if (franquiciaId == null || franquiciaId.trim().isEmpty()) {
             return Mono.error(new IllegalArgumentException("El ID de la franquicia es obligatorio."));
@@ -95,23 +302,12 @@ public class FranquiciaService implements IFranquiciaManagement {
         }
 
         // Flujo: 1. Buscar -> 2. Modificar (Dominio) -> 3. Guardar
-        return franquiciaRepository.findById(franquiciaId)
-                // 1. Si no existe, lanza 404
-                .switchIfEmpty(Mono.error(new RecursoNoEncontradoException("Franquicia", franquiciaId)))
-
-                // 2. Modificar la entidad de Dominio
-                .map(franquicia -> {
-                    // **IMPORTANTE**: Necesitas asegurar que el metodo agregarSucursal existe en tu clase Franquicia
-                    franquicia.agregarSucursal(sucursal);
-                    return franquicia;
-                })
-
-                // 3. Guardar el documento modificado
-                .flatMap(franquiciaRepository::save);
+        return modificarFranquicia(franquiciaId, versionEsperada, franquicia -> franquicia.agregarSucursal(sucursal))
+                .doOnNext(guardada -> publicar(CambioFranquiciaEvent.sucursalAgregada(guardada, sucursal.getNombre())));
     }
 
     @Override
-    public Mono<Franquicia> addProducto(String franquiciaId, String sucursalNombre, Producto producto) {
+    public Mono<Franquicia> addProducto(String franquiciaId, String sucursalNombre, Producto producto, Long versionEsperada) {
         // 1. Validaciones básicas de entrada
         if (franquiciaId == null || sucursalNombre == null || producto == null) {
             return Mono.error(new IllegalArgumentException("Todos los campos (ID, Nombre de Sucursal y Producto) son obligatorios."));
@@ -121,54 +317,41 @@ public class FranquiciaService implements IFranquiciaManagement {
         }
 
         // 2. Flujo Reactivo: Buscar -> Validar/Modificar -> Guardar
-        return franquiciaRepository.findById(franquiciaId)
-                // Lanza 404 si la franquicia no existe
-                .switchIfEmpty(Mono.error(new RecursoNoEncontradoException("Franquicia", franquiciaId)))
-                .map(franquicia -> {
-
-                    // Buscar la sucursal (usando el nuevo metodo de dominio)
-                    Sucursal sucursal = franquicia.buscarSucursalPorNombre(sucursalNombre);
+        return modificarFranquicia(franquiciaId, versionEsperada, franquicia -> {
 
-                    // Lanza 404 si la sucursal no existe dentro de la franquicia
-                    if (sucursal == null) {
-                        throw new RecursoNoEncontradoException("Sucursal", sucursalNombre + " en la Franquicia " + franquiciaId);
-                    }
+            // Buscar la sucursal (usando el nuevo metodo de dominio)
+            Sucursal sucursal = franquicia.buscarSucursalPorNombre(sucursalNombre);
 
-                    // Validación de unicidad de Producto
-                    if (sucursal.getProductos().stream().anyMatch(p -> p.getNombre().equalsIgnoreCase(producto.getNombre()))) {
-                        throw new RecursoDuplicadoException("El producto '" + producto.getNombre() + "' ya existe en la sucursal '" + sucursalNombre + "'.");
-                    }
+            // Lanza 404 si la sucursal no existe dentro de la franquicia
+            if (sucursal == null) {
+                throw new RecursoNoEncontradoException("Sucursal", sucursalNombre + " en la Franquicia " + franquiciaId);
+            }
 
-                    // Agregar el producto a la sucursal
-                    sucursal.getProductos().add(producto);
+            // Validación de unicidad de Producto
+            if (sucursal.buscarProductoPorNombre(producto.getNombre()) != null) {
+                throw new RecursoDuplicadoException("El producto '" + producto.getNombre() + "' ya existe en la sucursal '" + sucursalNombre + "'.");
+            }
 
-                    return franquicia;
-                })
-                .flatMap(franquiciaRepository::save); // 3. Guardar el dato modificado
+            // Agregar el producto a la sucursal
+            sucursal.agregarProducto(producto);
+        }).doOnNext(guardada -> publicar(CambioFranquiciaEvent.productoAgregado(guardada, sucursalNombre, producto.getNombre(), producto.getStock())));
     }
 
     /**
      * Criterio 5.1: Eliminar un producto de una sucursal específica.
      */
     @Override
-    public Mono<String> deleteProducto(String franquiciaId, String sucursalNombre, String productoNombre) {
+    public Mono<String> deleteProducto(String franquiciaId, String sucursalNombre, String productoNombre, Long versionEsperada) {
         //Validación de campos obligatorios (400 Bad Request)
         if (franquiciaId == null || sucursalNombre == null || productoNombre == null || franquiciaId.trim().isEmpty()) {
             return Mono.error(new IllegalArgumentException("ID de Franquicia, nombre de Sucursal y nombre de Producto son obligatorios."));
         }
 
-        return franquiciaRepository.findById(franquiciaId)
-                //Validar Franquicia (404)
-                .switchIfEmpty(Mono.error(new RecursoNoEncontradoException("Franquicia", franquiciaId)))
-                .flatMap(franquicia -> {
-                    // Ejecutamos la lógica de dominio. Si falla (404), la excepción se propaga.
-                    franquicia.eliminarProductoDeSucursal(sucursalNombre, productoNombre);
-
-                    // Si tiene éxito, guardamos y completamos el Mono<Void>
-                    return franquiciaRepository.save(franquicia)
-                            //Devolver el mensaje de éxito explícito (200 OK)
-                            .thenReturn("Producto '" + productoNombre + "' eliminado exitosamente de la sucursal '" + sucursalNombre + "'.");
-                });
+        // Ejecutamos la lógica de dominio. Si falla (404), la excepción se propaga.
+        return modificarFranquicia(franquiciaId, versionEsperada, franquicia -> franquicia.eliminarProductoDeSucursal(sucursalNombre, productoNombre))
+                .doOnNext(guardada -> publicar(CambioFranquiciaEvent.productoEliminado(guardada, sucursalNombre, productoNombre)))
+                //Devolver el mensaje de éxito explícito (200 OK)
+                .thenReturn("Producto '" + productoNombre + "' eliminado exitosamente de la sucursal '" + sucursalNombre + "'.");
     }
 
 
@@ -176,31 +359,24 @@ public class FranquiciaService implements IFranquiciaManagement {
      * Criterio 5.2: Eliminar el mismo producto de todas las sucursales de la franquicia.
      */
     @Override
-    public Mono<String> deleteProductoFromAllSucursales(String franquiciaId, String productoNombre) {
+    public Mono<String> deleteProductoFromAllSucursales(String franquiciaId, String productoNombre, Long versionEsperada) {
         //Validación de campos obligatorios (400 Bad Request)
         if (franquiciaId == null || productoNombre == null || franquiciaId.trim().isEmpty()) {
             return Mono.error(new IllegalArgumentException("ID de Franquicia y nombre de Producto son obligatorios."));
         }
 
-        return franquiciaRepository.findById(franquiciaId)
-                //Validar Franquicia (404)
-                .switchIfEmpty(Mono.error(new RecursoNoEncontradoException("Franquicia", franquiciaId)))
-                .flatMap(franquicia -> {
-                    // Ejecutamos la lógica de dominio. Si falla (404), la excepción se propaga.
-                    franquicia.eliminarProductoDeTodasLasSucursales(productoNombre);
-
-                    // Si tiene éxito, guardamos y completamos el Mono<Void>
-                    return franquiciaRepository.save(franquicia)
-                            // Devolver el mensaje de éxito explícito (200 OK)
-                            .thenReturn("Producto '" + productoNombre + "' eliminado exitosamente de TODAS las sucursales de la franquicia.");
-                });
+        // Ejecutamos la lógica de dominio. Si falla (404), la excepción se propaga.
+        return modificarFranquicia(franquiciaId, versionEsperada, franquicia -> franquicia.eliminarProductoDeTodasLasSucursales(productoNombre))
+                .doOnNext(guardada -> publicar(CambioFranquiciaEvent.productoEliminadoDeTodas(guardada, productoNombre)))
+                // Devolver el mensaje de éxito explícito (200 OK)
+                .thenReturn("Producto '" + productoNombre + "' eliminado exitosamente de TODAS las sucursales de la franquicia.");
     }
 
     /**
      * Criterio 6: Modifica la cantidad de un producto.
      */
     @Override
-    public Mono<Franquicia> updateStock(String franquiciaId, String sucursalNombre, String productoNombre, int nuevoStock) {
+    public Mono<StockActualizadoDto> updateStock(String franquiciaId, String sucursalNombre, String productoNombre, int nuevoStock, Long versionEsperada) {
 
         //Validación inicial (400 Bad Request)
         if (franquiciaId == null || sucursalNombre == null || productoNombre == null || franquiciaId.trim().isEmpty()) {
@@ -210,103 +386,387 @@ public class FranquiciaService implements IFranquiciaManagement {
             return Mono.error(new IllegalArgumentException("La cantidad no puede ser negativo."));
         }
 
-        //Flujo Reactivo
+        //Actualización dirigida: solo se escribe el campo stock, y con If-Match la versión va en el mismo filtro
+        //(se reintenta si choca con un guardado en curso)
+        return reintentoConcurrencia.ejecutar(Mono.defer(() -> franquiciaRepository.actualizarStockProducto(franquiciaId, sucursalNombre, productoNombre,
+                                nuevoStock, versionEsperada)
+                        // Si no hubo coincidencia, averiguamos qué falta (404) o si la versión ya es otra (412)
+                        .switchIfEmpty(Mono.defer(() -> errorSinCoincidencia(franquiciaId, versionEsperada, sucursalNombre, productoNombre)))))
+                .doOnNext(this::publicarStockActualizado);
+    }
+
+    /**
+     * Extra 4: Ajuste relativo del stock ($inc atómico en la BD, sin leer antes el documento).
+     */
+    @Override
+    public Mono<StockActualizadoDto> ajustarStock(String franquiciaId, String sucursalNombre, String productoNombre, int cambio, boolean evitarNegativo,
+                                                  Long versionEsperada) {
+        //Validación inicial (400 Bad Request)
+        if (franquiciaId == null || sucursalNombre == null || productoNombre == null || franquiciaId.trim().isEmpty()) {
+            return Mono.error(new IllegalArgumentException("ID de Franquicia, nombre de Sucursal y nombre de Producto son obligatorios."));
+        }
+
+        //Con If-Match la versión esperada va en el filtro del mismo $inc
+        return reintentoConcurrencia.ejecutar(Mono.defer(() -> franquiciaRepository.incrementarStockProducto(franquiciaId, sucursalNombre, productoNombre, cambio, evitarNegativo,
+                                versionEsperada)
+                        // Sin coincidencia: o falta algo (404), o la versión ya es otra (412), o el stock leído no alcanza (409),
+                        // o el producto cambió en el medio (se reintenta)
+                        .switchIfEmpty(Mono.defer(() -> buscarProductoExistente(franquiciaId, versionEsperada, sucursalNombre, productoNombre)
+                                .flatMap(producto -> Mono.error(evitarNegativo && cambio < 0 && producto.getStock() < -cambio
+                                        ? new StockInsuficienteException(productoNombre, sucursalNombre, producto.getStock(), cambio)
+                                        : new ConflictoConcurrenciaException(franquiciaId)))))))
+                .doOnNext(this::publicarStockActualizado);
+    }
+
+    /**
+     * Reserva de stock para checkout: el descuento es el mismo $inc condicionado de ajustarStock
+     * (solo coincide si queda stock suficiente), así que las reservas concurrentes sobre un mismo
+     * producto no pierden actualizaciones ni dejan el stock negativo. Después se registra la
+     * retención, que vence a los ttlSegundos (o la vigencia por defecto).
+     * Mapeado a: POST /franquicias/{id}/sucursales/{sucursal}/productos/{producto}/reservas
+     */
+    @Override
+    public Mono<Reserva> reservarStock(String franquiciaId, String sucursalNombre, String productoNombre, int cantidad, Integer ttlSegundos) {
+        if (cantidad < 1) {
+            return Mono.error(new IllegalArgumentException("La cantidad a reservar debe ser mayor que cero."));
+        }
+        Duration ttl;
+        try {
+            ttl = politicaReservas.ttl(ttlSegundos);
+        } catch (IllegalArgumentException e) {
+            return Mono.error(e);
+        }
+
+        return ajustarStock(franquiciaId, sucursalNombre, productoNombre, -cantidad, true, null)
+                .flatMap(actualizada -> {
+                    Instant ahora = Instant.now();
+                    Reserva reserva = new Reserva(null, franquiciaId, sucursalNombre, productoNombre, cantidad, ahora, ahora.plus(ttl));
+                    return reservaRepository.insertar(reserva)
+                            // Si la retención no se pudo registrar, el stock descontado se devuelve
+                            .onErrorResume(error -> devolverStock(reserva).then(Mono.error(error)));
+                });
+    }
+
+    /**
+     * Confirmar = la venta queda hecha: se quita la retención y el stock sigue descontado.
+     * Solo se confirma una reserva vigente; si venció y el barrido todavía no la liberó es 410
+     * (su stock lo devuelve el barrido), y si ya no está, 404.
+     */
+    @Override
+    public Mono<Reserva> confirmarReserva(String reservaId) {
+        return Mono.defer(() -> reservaRepository.reclamarVigente(reservaId, Instant.now()))
+                .switchIfEmpty(Mono.defer(() -> reservaRepository.existe(reservaId)
+                        .flatMap(existe -> Mono.error(existe
+                                ? new ReservaVencidaException(reservaId)
+                                : new RecursoNoEncontradoException("Reserva", reservaId)))));
+    }
+
+    // Liberar = se quita la retención y se devuelve su cantidad al producto
+    @Override
+    public Mono<Reserva> liberarReserva(String reservaId) {
+        return reservaRepository.reclamar(reservaId)
+                .switchIfEmpty(Mono.error(new RecursoNoEncontradoException("Reserva", reservaId)))
+                .flatMap(reserva -> devolverStock(reserva).thenReturn(reserva));
+    }
+
+    /**
+     * Una pasada del barrido (BarridoReservas): reclama hasta un lote de reservas vencidas y
+     * devuelve su stock. @return cuántas se liberaron.
+     */
+    @Override
+    public Mono<Long> liberarReservasVencidas() {
+        return reservaRepository.reclamarVencidas(Instant.now(), politicaReservas.getLoteBarrido())
+                .concatMap(reserva -> devolverStock(reserva).thenReturn(reserva))
+                .count();
+    }
+
+    /**
+     * $inc atómico sin piso. La reserva guarda los nombres de cuando se hizo: si la sucursal o el
+     * producto se renombraron (o se borraron) no hay a dónde devolver el stock, y eso se deja en
+     * el log con la cantidad para poder corregirlo a mano en vez de perderla en silencio.
+     */
+    private Mono<Void> devolverStock(Reserva reserva) {
+        return reintentoConcurrencia.ejecutar(Mono.defer(() -> franquiciaRepository.incrementarStockProducto(reserva.getFranquiciaId(),
+                        reserva.getSucursalNombre(), reserva.getProductoNombre(), reserva.getCantidad(), false, null)))
+                .doOnNext(this::publicarStockActualizado)
+                .switchIfEmpty(Mono.fromRunnable(() -> log.warn(
+                        "No se pudieron devolver {} unidades de la reserva {}: no existe el producto '{}' en la sucursal '{}' de la franquicia {} (¿renombrado o borrado?)",
+                        reserva.getCantidad(), reserva.getId(), reserva.getProductoNombre(), reserva.getSucursalNombre(), reserva.getFranquiciaId())))
+                .then();
+    }
+
+    /**
+     * Extra 5: Actualización masiva de stock.
+     * El flujo se consume en trozos; dentro de cada trozo las filas se agrupan por franquicia
+     * y cada grupo se aplica con una sola escritura masiva en la BD. Cada resultado vuelve a la
+     * posición de su fila, así el trozo se responde en el orden de entrada. Si la escritura de una
+     * franquicia falla, sus filas salen con ERROR y el resto del lote sigue.
+     */
+    @Override
+    public Flux<ResultadoStockDto> updateStockEnLote(Flux<ActualizacionStockDto> cambios) {
+        return cambios
+                .buffer(TAMANO_LOTE_STOCK)
+                .concatMap(trozo -> {
+                    ResultadoStockDto[] resultados = new ResultadoStockDto[trozo.size()];
+                    return Flux.fromIterable(agruparPorFranquicia(trozo).entrySet())
+                            .flatMap(grupo -> aplicarLoteStock(grupo.getKey(), grupo.getValue(), trozo, resultados), LOTES_EN_PARALELO)
+                            .thenMany(Flux.defer(() -> {
+                                // Una fila sin resultado (el adaptador devolvió menos) no se da por aplicada
+                                for (int i = 0; i < resultados.length; i++) {
+                                    if (resultados[i] == null) {
+                                        resultados[i] = ResultadoStockDto.de(trozo.get(i), ResultadoStockDto.Estado.ERROR);
+                                    }
+                                }
+                                return Flux.fromArray(resultados);
+                            }));
+                });
+    }
+
+    // Posiciones (dentro del trozo) de las filas de cada franquicia
+    private Map<String, List<Integer>> agruparPorFranquicia(List<ActualizacionStockDto> trozo) {
+        Map<String, List<Integer>> grupos = new LinkedHashMap<>();
+        for (int i = 0; i < trozo.size(); i++) {
+            String franquiciaId = trozo.get(i).getFranquiciaId();
+            grupos.computeIfAbsent(franquiciaId == null ? "" : franquiciaId, k -> new ArrayList<>()).add(i);
+        }
+        return grupos;
+    }
+
+    // Las filas inválidas (400 en el endpoint individual) se responden sin tocar la BD
+    private Mono<Void> aplicarLoteStock(String franquiciaId, List<Integer> posiciones, List<ActualizacionStockDto> trozo,
+                                        ResultadoStockDto[] resultados) {
+        List<ActualizacionStockDto> validos = new ArrayList<>();
+        List<Integer> posicionesValidas = new ArrayList<>();
+        for (int posicion : posiciones) {
+            ActualizacionStockDto cambio = trozo.get(posicion);
+            if (franquiciaId.trim().isEmpty() || cambio.getSucursalNombre() == null
+                    || cambio.getProductoNombre() == null || cambio.getStock() < 0) {
+                resultados[posicion] = ResultadoStockDto.de(cambio, ResultadoStockDto.Estado.INVALIDO);
+            } else {
+                validos.add(cambio);
+                posicionesValidas.add(posicion);
+            }
+        }
+        if (validos.isEmpty()) {
+            return Mono.empty();
+        }
+
+        // El repositorio responde un resultado por cambio, en el orden del lote
+        return reintentoConcurrencia.ejecutar(Mono.defer(() -> franquiciaRepository.actualizarStockEnLote(franquiciaId, validos).collectList()))
+                .flatMapIterable(filas -> filas)
+                .index()
+                .filter(fila -> fila.getT1() < posicionesValidas.size())
+                .doOnNext(fila -> {
+                    ResultadoStockDto resultado = fila.getT2();
+                    resultados[posicionesValidas.get(fila.getT1().intValue())] = resultado;
+                    if (resultado.getEstado() == ResultadoStockDto.Estado.OK) {
+                        publicar(CambioFranquiciaEvent.stockActualizado(franquiciaId, null,
+                                resultado.getSucursalNombre(), resultado.getProductoNombre(), resultado.getStock()));
+                    }
+                })
+                .then()
+                // Solo las filas de esta franquicia quedan con ERROR; los demás grupos siguen
+                .onErrorResume(error -> {
+                    log.warn("Falló la actualización masiva de stock de la franquicia {} ({} filas)", franquiciaId, validos.size(), error);
+                    for (int posicion : posicionesValidas) {
+                        resultados[posicion] = ResultadoStockDto.de(trozo.get(posicion), ResultadoStockDto.Estado.ERROR);
+                    }
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Solo se ejecuta cuando una actualización dirigida no encontró coincidencia:
+     * distingue si falta la franquicia, la sucursal o el producto (404). Con If-Match, si la
+     * versión ya es otra es 412; si coincide y el producto está, algo cambió en el medio y se reintenta.
+     */
+    private <T> Mono<T> errorSinCoincidencia(String franquiciaId, Long versionEsperada, String sucursalNombre, String productoNombre) {
+        return buscarProductoExistente(franquiciaId, versionEsperada, sucursalNombre, productoNombre)
+                .flatMap(producto -> Mono.error(versionEsperada != null
+                        ? new ConflictoConcurrenciaException(franquiciaId)
+                        : new RecursoNoEncontradoException("Producto", productoNombre + " en la sucursal " + sucursalNombre)));
+    }
+
+    // Lectura de diagnóstico: devuelve el producto o falla con el 404 de lo que no exista (o el 412 si la versión no es la esperada)
+    private Mono<Producto> buscarProductoExistente(String franquiciaId, Long versionEsperada, String sucursalNombre, String productoNombre) {
+        return buscarSucursalExistente(franquiciaId, versionEsperada, sucursalNombre)
+                .flatMap(sucursal -> {
+                    Producto producto = sucursal.buscarProductoPorNombre(productoNombre);
+                    if (producto == null) {
+                        return Mono.error(new RecursoNoEncontradoException("Producto", productoNombre + " en la sucursal " + sucursalNombre));
+                    }
+                    return Mono.just(producto);
+                });
+    }
+
+    private Mono<Sucursal> buscarSucursalExistente(String franquiciaId, String sucursalNombre) {
+        return buscarSucursalExistente(franquiciaId, null, sucursalNombre);
+    }
+
+    private Mono<Sucursal> buscarSucursalExistente(String franquiciaId, Long versionEsperada, String sucursalNombre) {
         return franquiciaRepository.findById(franquiciaId)
-                // Lanza 404 si la franquicia no existe
                 .switchIfEmpty(Mono.error(new RecursoNoEncontradoException("Franquicia", franquiciaId)))
-                .map(franquicia -> {
-                    // La lógica de dominio se encarga de validar Sucursal y Producto (lanzando 404 si falla)
-                    franquicia.modificarCantidadProducto(sucursalNombre, productoNombre, nuevoStock);
-                    return franquicia;
+                .doOnNext(franquicia -> {
+                    if (versionEsperada != null) {
+                        comprobarVersion(franquiciaId, franquicia.getVersion(), versionEsperada);
+                    }
                 })
-                //Guardar el documento modificado
-                .flatMap(franquiciaRepository::save);
+                .flatMap(franquicia -> {
+                    Sucursal sucursal = franquicia.buscarSucursalPorNombre(sucursalNombre);
+                    if (sucursal == null) {
+                        return Mono.error(new RecursoNoEncontradoException("Sucursal", sucursalNombre + " en la Franquicia " + franquicia.getNombre()));
+                    }
+                    return Mono.just(sucursal);
+                });
     }
 
+    /**
+     * Criterio 7: Se sirve desde la vista precalculada (ResumenMaxStock); solo cuando no hay
+     * vista vigente se calcula en la BD con una agregación.
+     */
     @Override
     public Flux<ProductoMaxStockDto> obtenerProductosMaxStockPorSucursal(String franquiciaId) {
-        return franquiciaRepository.findById(franquiciaId)
-                .switchIfEmpty(Mono.error(new RecursoNoEncontradoException("Franquicia no encontrada" , franquiciaId)))
-                .flatMapMany(franquicia -> Flux.fromIterable(franquicia.getSucursales())
-                        .flatMap(sucursal -> encontrarProductoMaxStock(sucursal)
-                                .map(producto -> mapToDto(producto, sucursal)))
-                );
+        return validarMaxStock(resumenMaxStock.obtener(franquiciaId, () -> calcularMaxStock(franquiciaId)));
+    }
+
+    /**
+     * Comando de reconstrucción de la vista del Criterio 7 para una franquicia (por si se desfasó).
+     */
+    @Override
+    public Flux<ProductoMaxStockDto> reconstruirResumenMaxStock(String franquiciaId) {
+        return validarMaxStock(resumenMaxStock.reconstruir(franquiciaId, () -> calcularMaxStock(franquiciaId)));
     }
 
-    private Mono<Producto> encontrarProductoMaxStock(Sucursal sucursal) {
-        return Flux.fromIterable(sucursal.getProductos())
-                .reduce((p1, p2) -> p1.getStock() > p2.getStock() ? p1 : p2)
-                .switchIfEmpty(Mono.error(new RecursoNoEncontradoException("No hay productos en la sucursal" , sucursal.getNombre())));
+    /**
+     * Comando de reconstrucción de la vista del Criterio 7 para todas las franquicias.
+     */
+    @Override
+    public Mono<String> reconstruirResumenMaxStock() {
+        return Mono.fromRunnable(resumenMaxStock::reconstruirTodas)
+                .thenReturn("Resumen de máximo stock invalidado; se recalculará en la próxima consulta de cada franquicia.");
     }
 
-    private ProductoMaxStockDto mapToDto(Producto producto, Sucursal sucursal) {
-        ProductoMaxStockDto dto = new ProductoMaxStockDto();
-        dto.setProductoNombre(producto.getNombre());
-        dto.setStock(producto.getStock());
-        dto.setSucursalNombre(sucursal.getNombre());
-        return dto;
+    // El máximo por sucursal se calcula en la BD (agregación); los casos vacíos se traducen a los 404 de siempre
+    private Flux<ProductoMaxStockDto> calcularMaxStock(String franquiciaId) {
+        return franquiciaRepository.findProductoMaxStockPorSucursal(franquiciaId)
+                // Sin filas: la franquicia no existe (404) o no tiene sucursales (lista vacía)
+                .switchIfEmpty(Flux.defer(() -> franquiciaRepository.existsById(franquiciaId)
+                        .flatMapMany(existe -> existe
+                                ? Flux.<ProductoMaxStockDto>empty()
+                                : Flux.error(new RecursoNoEncontradoException("Franquicia no encontrada" , franquiciaId)))));
+    }
+
+    private Flux<ProductoMaxStockDto> validarMaxStock(Flux<ProductoMaxStockDto> filas) {
+        // Una sucursal sin productos llega sin nombre de producto (404)
+        return filas.concatMap(dto -> dto.getProductoNombre() == null
+                        ? Mono.error(new RecursoNoEncontradoException("No hay productos en la sucursal" , dto.getSucursalNombre()))
+                        : Mono.just(dto));
     }
 
     /**
      * Extra 1: Actualizar Nombre de Franquicia
      */
     @Override
-    public Mono<Franquicia> updateNombreFranquicia(String id, String nuevoNombre) {
+    public Mono<Franquicia> updateNombreFranquicia(String id, String nuevoNombre, Long versionEsperada) {
         if (id == null || nuevoNombre == null || nuevoNombre.trim().isEmpty()) {
             return Mono.error(new IllegalArgumentException("ID y nuevo nombre son obligatorios."));
         }
 
-        //Verificar duplicidad de nombre (409)
-        return franquiciaRepository.findByNombre(nuevoNombre)
-                .flatMap(existente -> {
-                    // Si el nombre existe Y no es la franquicia que estamos editando, es conflicto.
-                    if (!existente.getId().equals(id)) {
-                        return Mono.error(new RecursoDuplicadoException("Ya existe una franquicia con el nombre: " + nuevoNombre));
-                    }
-                    return Mono.empty(); // Mismo nombre, continuar
-                })
-                .then(franquiciaRepository.findById(id)) //Buscar por ID (404)
+        //Con If-Match: leer, comparar versión y guardar (el índice único sigue dando el 409)
+        if (versionEsperada != null) {
+            return modificarFranquicia(id, versionEsperada, franquicia -> franquicia.actualizarNombre(nuevoNombre))
+                    .doOnNext(guardada -> publicar(CambioFranquiciaEvent.nombreFranquicia(guardada)));
+        }
+
+        //Un solo viaje: renombre dirigido; el índice único da el 409 si otra franquicia ya usa el nombre
+        return franquiciaRepository.actualizarNombre(id, nuevoNombre)
                 .switchIfEmpty(Mono.error(new RecursoNoEncontradoException("Franquicia", id)))
-                .map(franquicia -> {
-                    franquicia.actualizarNombre(nuevoNombre); //Aplicar Dominio
-                    return franquicia;
-                })
-                .flatMap(franquiciaRepository::save); //Guardar
+                .doOnNext(guardada -> publicar(CambioFranquiciaEvent.nombreFranquicia(guardada)));
     }
 
     /**
      * Extra 2: Actualizar Nombre de Sucursal
      */
     @Override
-    public Mono<Franquicia> updateNombreSucursal(String franquiciaId, String nombreActual, String nuevoNombre) {
+    public Mono<Franquicia> updateNombreSucursal(String franquiciaId, String nombreActual, String nuevoNombre, Long versionEsperada) {
         if (franquiciaId == null || nombreActual == null || nuevoNombre == null || nuevoNombre.trim().isEmpty()) {
             return Mono.error(new IllegalArgumentException("Campos obligatorios faltantes."));
         }
 
-        return franquiciaRepository.findById(franquiciaId) //Buscar franquicia (404)
-                .switchIfEmpty(Mono.error(new RecursoNoEncontradoException("Franquicia", franquiciaId)))
-                .map(franquicia -> {
-                    franquicia.actualizarNombreSucursal(nombreActual, nuevoNombre); //Aplicar Dominio (valida 404/409)
-                    return franquicia;
-                })
-                .flatMap(franquiciaRepository::save); //Guardar
+        //Aplicar Dominio (valida 404/409) y guardar
+        return modificarFranquicia(franquiciaId, versionEsperada, franquicia -> franquicia.actualizarNombreSucursal(nombreActual, nuevoNombre))
+                .doOnNext(guardada -> publicar(CambioFranquiciaEvent.nombreSucursal(guardada, nombreActual, nuevoNombre)));
     }
 
     /**
      * Extra 3: Actualizar Nombre de Producto
      */
     @Override
-    public Mono<Franquicia> updateNombreProducto(String franquiciaId, String sucursalNombre, String nombreActual, String nuevoNombre) {
+    public Mono<Franquicia> updateNombreProducto(String franquiciaId, String sucursalNombre, String nombreActual, String nuevoNombre,
+                                                 Long versionEsperada) {
         if (franquiciaId == null || sucursalNombre == null || nombreActual == null || nuevoNombre == null || nuevoNombre.trim().isEmpty()) {
             return Mono.error(new IllegalArgumentException("Campos obligatorios faltantes."));
         }
 
-        return franquiciaRepository.findById(franquiciaId) //Buscar franquicia (404)
+        //Aplicar Dominio (valida 404/409) y guardar
+        return modificarFranquicia(franquiciaId, versionEsperada, franquicia -> franquicia.actualizarNombreProducto(sucursalNombre, nombreActual, nuevoNombre))
+                .doOnNext(guardada -> publicar(CambioFranquiciaEvent.nombreProducto(guardada, sucursalNombre, nombreActual, nuevoNombre)));
+    }
+
+    private void publicar(CambioFranquiciaEvent evento) {
+        eventPublisher.publishEvent(evento);
+    }
+
+    // Con el nombre y el stock tal como quedaron guardados, y la versión que dejó la escritura
+    private void publicarStockActualizado(StockActualizadoDto escrito) {
+        publicar(CambioFranquiciaEvent.stockActualizado(escrito));
+    }
+
+    /**
+     * Flujo común de las mutaciones: Buscar (404) -> Aplicar Dominio -> Guardar con versión.
+     * Si otro escritor guardó primero, se repite todo desde la lectura (sin bloqueos ni
+     * actualizaciones perdidas). Con el pipeline habilitado, la operación se agrupa con las
+     * demás de la misma franquicia y comparte lectura y guardado.
+     */
+    private Mono<Franquicia> modificarFranquicia(String franquiciaId, Consumer<Franquicia> operacion) {
+        if (pipelineMutaciones.isHabilitado()) {
+            return pipelineMutaciones.encolar(franquiciaId, operacion);
+        }
+        return reintentoConcurrencia.ejecutar(Mono.defer(() -> franquiciaRepository.findById(franquiciaId)
                 .switchIfEmpty(Mono.error(new RecursoNoEncontradoException("Franquicia", franquiciaId)))
                 .map(franquicia -> {
-                    franquicia.actualizarNombreProducto(sucursalNombre, nombreActual, nuevoNombre); //Aplicar Dominio (valida 404/409)
+                    operacion.accept(franquicia);
                     return franquicia;
                 })
-                .flatMap(franquiciaRepository::save); //Guardar
+                .flatMap(franquiciaRepository::save)));
+    }
+
+    /**
+     * Mutación con If-Match. Primero se compara contra la vista resumen (proyectada: sin sucursales
+     * ni productos), así una copia vieja se rechaza sin traer el documento. Después, el mismo flujo
+     * con versión pero sin el pipeline (agrupadas, varias mutaciones compartirían la versión leída):
+     * si otro escritor guarda en el medio, el reintento relee y ve la versión nueva -> 412.
+     */
+    private Mono<Franquicia> modificarFranquicia(String franquiciaId, Long versionEsperada, Consumer<Franquicia> operacion) {
+        if (versionEsperada == null) {
+            return modificarFranquicia(franquiciaId, operacion);
+        }
+        return franquiciaRepository.findResumenById(franquiciaId, VistaFranquicia.RESUMEN)
+                .switchIfEmpty(Mono.error(new RecursoNoEncontradoException("Franquicia", franquiciaId)))
+                .doOnNext(resumen -> comprobarVersion(franquiciaId, resumen.getVersion(), versionEsperada))
+                .then(reintentoConcurrencia.ejecutar(Mono.defer(() -> franquiciaRepository.findById(franquiciaId)
+                        .switchIfEmpty(Mono.error(new RecursoNoEncontradoException("Franquicia", franquiciaId)))
+                        .map(franquicia -> {
+                            comprobarVersion(franquiciaId, franquicia.getVersion(), versionEsperada);
+                            operacion.accept(franquicia);
+                            return franquicia;
+                        })
+                        .flatMap(franquiciaRepository::save))));
+    }
+
+    private static void comprobarVersion(String franquiciaId, Long actual, long esperada) {
+        if (actual == null || actual != esperada) {
+            throw new VersionNoCoincideException(franquiciaId);
+        }
     }
 }
\ No newline at end of file
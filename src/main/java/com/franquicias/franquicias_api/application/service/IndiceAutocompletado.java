@@ -0,0 +1,243 @@
+package com.franquicias.franquicias_api.application.service;
+
+import com.franquicias.franquicias_api.application.dto.SugerenciaDto;
+import com.franquicias.franquicias_api.application.event.CambioFranquiciaEvent;
+import com.franquicias.franquicias_api.application.port.out.IFranquiciaRepository;
+import com.franquicias.franquicias_api.domain.ClaveNombre;
+import com.franquicias.franquicias_api.domain.Franquicia;
+import com.franquicias.franquicias_api.domain.Producto;
+import com.franquicias.franquicias_api.domain.Sucursal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Índice en memoria para el autocompletado de nombres de sucursales y productos por franquicia.
+ * Cada franquicia tiene dos mapas ordenados por ClaveNombre (ConcurrentSkipListMap): una
+ * consulta es O(log n + k) sobre el tramo que empieza por el prefijo, sin ir a la BD.
+ *
+ * - Se precarga al arrancar con findAll() (franquicias.autocompletado.precargar) y una franquicia
+ *   que no está cargada se arma desde la BD en su primera consulta.
+ * - Se mantiene con los CambioFranquiciaEvent de FranquiciaService: cada evento recalcula solo
+ *   los nombres que toca, a partir del estado guardado que trae.
+ * - Como ResumenMaxStock, solo ve las mutaciones de esta instancia: cada índice caduca tras
+ *   franquicias.autocompletado.vigencia.
+ */
+@Slf4j
+@Component
+public class IndiceAutocompletado {
+
+    private final IFranquiciaRepository franquiciaRepository;
+    private final Duration vigencia;
+    private final boolean precargarAlArrancar;
+
+    // ID de franquicia -> índice de sus nombres
+    private final Map<String, Indice> indices = new ConcurrentHashMap<>();
+
+    // Contador de cambios por franquicia: si cambia mientras se arma un índice desde la BD, ese índice se descarta
+    private final Map<String, Long> generaciones = new ConcurrentHashMap<>();
+
+    public IndiceAutocompletado(IFranquiciaRepository franquiciaRepository,
+                                @Value("${franquicias.autocompletado.vigencia:10m}") Duration vigencia,
+                                @Value("${franquicias.autocompletado.precargar:true}") boolean precargarAlArrancar) {
+        this.franquiciaRepository = franquiciaRepository;
+        this.vigencia = vigencia;
+        this.precargarAlArrancar = precargarAlArrancar;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void precargar() {
+        if (!precargarAlArrancar) {
+            return;
+        }
+        franquiciaRepository.findAll()
+                // Una franquicia que cambió desde el arranque puede venir desfasada: se arma en su primera consulta
+                .filter(franquicia -> franquicia.getId() != null)
+                .filter(franquicia -> indices.compute(franquicia.getId(), (id, actual) ->
+                        actual == null && !generaciones.containsKey(id) ? new Indice(franquicia) : actual) != null)
+                .count()
+                .subscribe(
+                        cargadas -> log.info("Índice de autocompletado precargado ({} franquicias)", cargadas),
+                        error -> log.error("No se pudo precargar el índice de autocompletado; se arma por franquicia en cada primera consulta", error));
+    }
+
+    /**
+     * Sucursales y productos cuyo nombre empieza por {@code texto} (sin distinguir mayúsculas),
+     * en orden alfabético de la clave y como mucho {@code limite}. Vacío si la franquicia no existe.
+     */
+    public Mono<List<SugerenciaDto>> sugerir(String franquiciaId, String texto, int limite) {
+        String prefijo = ClaveNombre.de(texto);
+        Indice indice = indices.get(franquiciaId);
+        if (indice != null && !indice.vencido(vigencia)) {
+            return Mono.just(indice.buscar(prefijo, limite));
+        }
+
+        long generacion = generaciones.getOrDefault(franquiciaId, 0L);
+        return franquiciaRepository.findById(franquiciaId)
+                .map(franquicia -> {
+                    Indice nuevo = new Indice(franquicia);
+                    indices.compute(franquiciaId, (id, actual) ->
+                            generaciones.getOrDefault(id, 0L) == generacion ? nuevo : actual);
+                    return nuevo.buscar(prefijo, limite);
+                });
+    }
+
+    @EventListener
+    public void alCambiarFranquicia(CambioFranquiciaEvent evento) {
+        String franquiciaId = evento.getFranquiciaId();
+        generaciones.merge(franquiciaId, 1L, Long::sum);
+        Indice indice = indices.get(franquiciaId);
+        if (indice == null) {
+            // Una franquicia nueva se indexa ya; las demás se arman desde la BD en la próxima consulta
+            if (evento.getTipo() == CambioFranquiciaEvent.Tipo.FRANQUICIA_CREADA && evento.getFranquicia() != null) {
+                indices.putIfAbsent(franquiciaId, new Indice(evento.getFranquicia()));
+            }
+            return;
+        }
+
+        boolean aplicado;
+        synchronized (indice) {
+            aplicado = indice.aplicar(evento);
+        }
+        if (!aplicado) {
+            indices.remove(franquiciaId, indice);
+        }
+    }
+
+    private static final class Indice {
+        private final long creadoEn = System.nanoTime();
+
+        // Clave del nombre -> nombre tal como se guardó (el primero que aparece si se repite en varias sucursales)
+        private final ConcurrentSkipListMap<String, String> sucursales = new ConcurrentSkipListMap<>();
+        private final ConcurrentSkipListMap<String, String> productos = new ConcurrentSkipListMap<>();
+
+        // Versión del último estado aplicado: un evento con un estado anterior llega desordenado
+        private Long version;
+
+        private Indice(Franquicia franquicia) {
+            version = franquicia.getVersion();
+            for (Sucursal sucursal : sucursalesDe(franquicia)) {
+                sucursales.putIfAbsent(ClaveNombre.de(sucursal.getNombre()), sucursal.getNombre());
+                for (Producto producto : productosDe(sucursal)) {
+                    productos.putIfAbsent(ClaveNombre.de(producto.getNombre()), producto.getNombre());
+                }
+            }
+        }
+
+        private boolean vencido(Duration vigencia) {
+            return System.nanoTime() - creadoEn > vigencia.toNanos();
+        }
+
+        // Sin bloqueo: los dos mapas se recorren a la vez, intercalados por clave
+        private List<SugerenciaDto> buscar(String prefijo, int limite) {
+            Iterator<Map.Entry<String, String>> iterSucursales = sucursales.tailMap(prefijo).entrySet().iterator();
+            Iterator<Map.Entry<String, String>> iterProductos = productos.tailMap(prefijo).entrySet().iterator();
+            Map.Entry<String, String> sucursal = siguiente(iterSucursales, prefijo);
+            Map.Entry<String, String> producto = siguiente(iterProductos, prefijo);
+
+            List<SugerenciaDto> sugerencias = new ArrayList<>(Math.min(limite, 16));
+            while (sugerencias.size() < limite && (sucursal != null || producto != null)) {
+                if (producto == null || (sucursal != null && sucursal.getKey().compareTo(producto.getKey()) <= 0)) {
+                    sugerencias.add(new SugerenciaDto(SugerenciaDto.Tipo.SUCURSAL, sucursal.getValue()));
+                    sucursal = siguiente(iterSucursales, prefijo);
+                } else {
+                    sugerencias.add(new SugerenciaDto(SugerenciaDto.Tipo.PRODUCTO, producto.getValue()));
+                    producto = siguiente(iterProductos, prefijo);
+                }
+            }
+            return sugerencias;
+        }
+
+        // null cuando se acaba el mapa o el tramo del prefijo
+        private static Map.Entry<String, String> siguiente(Iterator<Map.Entry<String, String>> iterador, String prefijo) {
+            if (!iterador.hasNext()) {
+                return null;
+            }
+            Map.Entry<String, String> entrada = iterador.next();
+            return entrada.getKey().startsWith(prefijo) ? entrada : null;
+        }
+
+        // Devuelve false si el índice no se pudo actualizar de forma incremental
+        private boolean aplicar(CambioFranquiciaEvent evento) {
+            switch (evento.getTipo()) {
+                case FRANQUICIA_CREADA, NOMBRE_FRANQUICIA, STOCK_ACTUALIZADO:
+                    return true; // No cambian nombres de sucursales ni de productos
+                default:
+                    break;
+            }
+
+            Franquicia franquicia = evento.getFranquicia();
+            if (franquicia == null) {
+                return false;
+            }
+            Long versionEvento = franquicia.getVersion();
+            if (version != null && versionEvento != null && versionEvento < version) {
+                return false;
+            }
+            version = versionEvento;
+
+            switch (evento.getTipo()) {
+                case SUCURSAL_AGREGADA: {
+                    Sucursal sucursal = franquicia.buscarSucursalPorNombre(evento.getSucursalNombre());
+                    if (sucursal == null) {
+                        return false;
+                    }
+                    sucursales.put(ClaveNombre.de(sucursal.getNombre()), sucursal.getNombre());
+                    for (Producto producto : productosDe(sucursal)) {
+                        refrescarProducto(franquicia, producto.getNombre());
+                    }
+                    return true;
+                }
+
+                case NOMBRE_SUCURSAL:
+                    sucursales.remove(ClaveNombre.de(evento.getNombreAnterior()));
+                    sucursales.put(ClaveNombre.de(evento.getSucursalNombre()), evento.getSucursalNombre());
+                    return true;
+
+                case PRODUCTO_AGREGADO, PRODUCTO_ELIMINADO, PRODUCTO_ELIMINADO_TODAS:
+                    refrescarProducto(franquicia, evento.getProductoNombre());
+                    return true;
+
+                case NOMBRE_PRODUCTO:
+                    refrescarProducto(franquicia, evento.getNombreAnterior());
+                    refrescarProducto(franquicia, evento.getProductoNombre());
+                    return true;
+
+                default:
+                    return false;
+            }
+        }
+
+        // El producto queda en el índice mientras alguna sucursal del estado guardado lo tenga
+        private void refrescarProducto(Franquicia franquicia, String productoNombre) {
+            String clave = ClaveNombre.de(productoNombre);
+            for (Sucursal sucursal : sucursalesDe(franquicia)) {
+                Producto producto = sucursal.buscarProductoPorNombre(productoNombre);
+                if (producto != null) {
+                    productos.put(clave, producto.getNombre());
+                    return;
+                }
+            }
+            productos.remove(clave);
+        }
+
+        private static List<Sucursal> sucursalesDe(Franquicia franquicia) {
+            return franquicia.getSucursales() == null ? List.of() : franquicia.getSucursales();
+        }
+
+        private static List<Producto> productosDe(Sucursal sucursal) {
+            return sucursal.getProductos() == null ? List.of() : sucursal.getProductos();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.franquicias.franquicias_api.application.service;
+
+import com.franquicias.franquicias_api.application.port.out.IFranquiciaRepository;
+import com.franquicias.franquicias_api.domain.Franquicia;
+import com.franquicias.franquicias_api.domain.exception.RecursoNoEncontradoException;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Pipeline opcional que agrupa las mutaciones de una misma franquicia.
+ * Las operaciones que llegan dentro de una ventana corta se aplican en memoria, en orden,
+ * sobre UNA sola copia leída de la BD y se persisten con UN solo guardado. El Mono de cada
+ * llamador termina cuando ese guardado es durable (o con su propio error de dominio).
+ *
+ * Requisito para las operaciones: validar antes de modificar, para que una operación que
+ * falla no deje cambios a medias en la copia compartida del lote.
+ */
+@Component
+public class PipelineMutaciones {
+
+    private final IFranquiciaRepository franquiciaRepository;
+    private final ReintentoConcurrencia reintentoConcurrencia;
+    private final boolean habilitado;
+    private final Duration ventana;
+    private final int maxLote;
+    private final DistributionSummary tamanoLote;
+
+    // Lote abierto por ID de franquicia (como mucho uno a la vez)
+    private final Map<String, Lote> pendientes = new ConcurrentHashMap<>();
+
+    public PipelineMutaciones(
+            IFranquiciaRepository franquiciaRepository,
+            ReintentoConcurrencia reintentoConcurrencia,
+            @Value("${franquicias.pipeline.habilitado:false}") boolean habilitado,
+            @Value("${franquicias.pipeline.ventana:5ms}") Duration ventana,
+            @Value("${franquicias.pipeline.max-lote:50}") int maxLote,
+            MeterRegistry meterRegistry) {
+        this.franquiciaRepository = franquiciaRepository;
+        this.reintentoConcurrencia = reintentoConcurrencia;
+        this.habilitado = habilitado;
+        this.ventana = ventana;
+        this.maxLote = maxLote;
+        this.tamanoLote = DistributionSummary.builder("franquicias.pipeline.lote.tamano")
+                .description("Mutaciones persistidas por cada guardado del pipeline")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    public boolean isHabilitado() {
+        return habilitado;
+    }
+
+    /**
+     * Encola una operación de dominio para la franquicia (al suscribirse).
+     * @return Mono con la franquicia ya guardada que incluye esta operación.
+     */
+    public Mono<Franquicia> encolar(String franquiciaId, Consumer<Franquicia> operacion) {
+        return Mono.defer(() -> {
+            Mutacion mutacion = new Mutacion(operacion, Sinks.one());
+            agregar(franquiciaId, mutacion);
+            return mutacion.resultado().asMono();
+        });
+    }
+
+    private void agregar(String franquiciaId, Mutacion mutacion) {
+        while (true) {
+            Lote lote = pendientes.computeIfAbsent(franquiciaId, Lote::new);
+            boolean primera;
+            boolean lleno;
+            synchronized (lote) {
+                if (lote.cerrado) {
+                    continue; // Se cerró justo ahora: tomamos (o creamos) el siguiente
+                }
+                lote.mutaciones.add(mutacion);
+                primera = lote.mutaciones.size() == 1;
+                lleno = lote.mutaciones.size() >= maxLote;
+                if (lleno) {
+                    cerrar(lote);
+                }
+            }
+
+            if (lleno) {
+                procesar(lote);
+            } else if (primera) {
+                // La primera mutación abre la ventana; al vencer se guarda lo acumulado
+                Mono.delay(ventana).subscribe(tick -> cerrarYProcesar(lote));
+            }
+            return;
+        }
+    }
+
+    private void cerrarYProcesar(Lote lote) {
+        synchronized (lote) {
+            if (lote.cerrado) {
+                return; // Ya se procesó por tamaño
+            }
+            cerrar(lote);
+        }
+        procesar(lote);
+    }
+
+    private void cerrar(Lote lote) {
+        lote.cerrado = true;
+        pendientes.remove(lote.franquiciaId, lote);
+    }
+
+    // Buscar (404) -> aplicar todas las operaciones -> un solo guardado (reintentado si hay conflicto de versión)
+    private void procesar(Lote lote) {
+        List<Mutacion> mutaciones = lote.mutaciones;
+        tamanoLote.record(mutaciones.size());
+
+        reintentoConcurrencia.ejecutar(Mono.defer(() -> franquiciaRepository.findById(lote.franquiciaId)
+                        .switchIfEmpty(Mono.error(new RecursoNoEncontradoException("Franquicia", lote.franquiciaId)))
+                        .flatMap(franquicia -> aplicar(franquicia, mutaciones))))
+                .subscribe(
+                        resultado -> resultado.completar(),
+                        error -> mutaciones.forEach(m -> m.resultado().tryEmitError(error)));
+    }
+
+    private Mono<ResultadoLote> aplicar(Franquicia franquicia, List<Mutacion> mutaciones) {
+        List<Mutacion> aplicadas = new ArrayList<>();
+        Map<Mutacion, RuntimeException> fallidas = new LinkedHashMap<>();
+        for (Mutacion mutacion : mutaciones) {
+            try {
+                mutacion.operacion().accept(franquicia);
+                aplicadas.add(mutacion);
+            } catch (RuntimeException e) {
+                // Un error de dominio (404/409/400) solo afecta a su llamador
+                fallidas.put(mutacion, e);
+            }
+        }
+
+        if (aplicadas.isEmpty()) {
+            return Mono.just(new ResultadoLote(franquicia, aplicadas, fallidas));
+        }
+        return franquiciaRepository.save(franquicia)
+                .map(guardada -> new ResultadoLote(guardada, aplicadas, fallidas));
+    }
+
+    private static final class Lote {
+        private final String franquiciaId;
+        private final List<Mutacion> mutaciones = new ArrayList<>();
+        private boolean cerrado;
+
+        private Lote(String franquiciaId) {
+            this.franquiciaId = franquiciaId;
+        }
+    }
+
+    private record Mutacion(Consumer<Franquicia> operacion, Sinks.One<Franquicia> resultado) {
+    }
+
+    private record ResultadoLote(Franquicia guardada, List<Mutacion> aplicadas, Map<Mutacion, RuntimeException> fallidas) {
+        void completar() {
+            aplicadas.forEach(m -> m.resultado().tryEmitValue(guardada));
+            fallidas.forEach((m, e) -> m.resultado().tryEmitError(e));
+        }
+    }
+}
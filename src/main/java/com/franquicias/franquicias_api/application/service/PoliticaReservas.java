@@ -0,0 +1,42 @@
+package com.franquicias.franquicias_api.application.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Vigencia de las reservas de stock y tamaño de cada pasada del barrido de vencidas.
+ */
+@Component
+public class PoliticaReservas {
+
+    private final Duration ttlPorDefecto;
+    private final Duration ttlMaximo;
+    private final int loteBarrido;
+
+    public PoliticaReservas(
+            @Value("${franquicias.reservas.ttl:5m}") Duration ttlPorDefecto,
+            @Value("${franquicias.reservas.ttl-maximo:30m}") Duration ttlMaximo,
+            @Value("${franquicias.reservas.lote-barrido:500}") int loteBarrido) {
+        this.ttlPorDefecto = ttlPorDefecto;
+        this.ttlMaximo = ttlMaximo;
+        this.loteBarrido = loteBarrido;
+    }
+
+    // Vigencia pedida en segundos (null = la de por defecto); 400 si queda fuera de rango
+    public Duration ttl(Integer segundos) {
+        if (segundos == null) {
+            return ttlPorDefecto;
+        }
+        if (segundos < 1 || segundos > ttlMaximo.toSeconds()) {
+            throw new IllegalArgumentException("ttlSegundos debe estar entre 1 y " + ttlMaximo.toSeconds() + ".");
+        }
+        return Duration.ofSeconds(segundos);
+    }
+
+    // Reservas vencidas que se reclaman por pasada
+    public int getLoteBarrido() {
+        return loteBarrido;
+    }
+}
@@ -0,0 +1,58 @@
+package com.franquicias.franquicias_api.application.service;
+
+import com.franquicias.franquicias_api.domain.exception.ConflictoConcurrenciaException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+
+/**
+ * Política de reintentos para los guardados con versión (compare-and-set).
+ * Si otro escritor se adelantó, se vuelve a ejecutar la operación completa
+ * (leer -> aplicar dominio -> guardar) con backoff exponencial y jitter.
+ */
+@Component
+public class ReintentoConcurrencia {
+
+    private final Retry politica;
+    private final Counter conflictos;
+    private final Counter agotados;
+
+    public ReintentoConcurrencia(
+            @Value("${franquicias.concurrencia.max-reintentos:5}") int maxReintentos,
+            @Value("${franquicias.concurrencia.espera-inicial:10ms}") Duration esperaInicial,
+            MeterRegistry meterRegistry) {
+
+        this.conflictos = Counter.builder("franquicias.concurrencia.conflictos")
+                .description("Guardados rechazados porque la versión de la franquicia cambió")
+                .register(meterRegistry);
+        Counter reintentos = Counter.builder("franquicias.concurrencia.reintentos")
+                .description("Reintentos lanzados tras un conflicto de versión")
+                .register(meterRegistry);
+        this.agotados = Counter.builder("franquicias.concurrencia.reintentos.agotados")
+                .description("Operaciones que respondieron 409 tras agotar los reintentos")
+                .register(meterRegistry);
+
+        this.politica = Retry.backoff(maxReintentos, esperaInicial)
+                .jitter(0.5)
+                .filter(ConflictoConcurrenciaException.class::isInstance)
+                .doBeforeRetry(senal -> reintentos.increment())
+                // Al agotar los reintentos se propaga el conflicto original (409), no un RetryExhaustedException
+                .onRetryExhaustedThrow((spec, senal) -> senal.failure());
+    }
+
+    /**
+     * @param operacion Debe ser "fría" (p. ej. construida con Mono.defer) para que cada
+     *                  reintento vuelva a leer la franquicia.
+     */
+    public <T> Mono<T> ejecutar(Mono<T> operacion) {
+        return operacion
+                .doOnError(ConflictoConcurrenciaException.class, e -> conflictos.increment())
+                .retryWhen(politica)
+                .doOnError(ConflictoConcurrenciaException.class, e -> agotados.increment());
+    }
+}
@@ -0,0 +1,290 @@
+package com.franquicias.franquicias_api.application.service;
+
+import com.franquicias.franquicias_api.application.dto.ProductoMaxStockDto;
+import com.franquicias.franquicias_api.application.event.CambioFranquiciaEvent;
+import com.franquicias.franquicias_api.domain.ClaveNombre;
+import com.franquicias.franquicias_api.domain.Franquicia;
+import com.franquicias.franquicias_api.domain.Producto;
+import com.franquicias.franquicias_api.domain.Sucursal;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Vista materializada (en memoria) del producto con más stock de cada sucursal (Criterio 7).
+ * Se arma una vez desde la BD y luego se mantiene con los CambioFranquiciaEvent que publica
+ * FranquiciaService, así la consulta es una lectura O(#sucursales) de datos ya calculados.
+ *
+ * Solo ve las mutaciones hechas en esta instancia: por eso cada vista caduca tras
+ * franquicias.resumen-max-stock.vigencia y existe el comando de reconstrucción.
+ */
+@Component
+public class ResumenMaxStock {
+
+    private final Duration vigencia;
+
+    // ID de franquicia -> vista (filas por clave de sucursal, en el orden de las sucursales)
+    private final Map<String, Vista> vistas = new ConcurrentHashMap<>();
+
+    // Contador de cambios por franquicia: si cambia mientras se arma una vista desde la BD, esa vista se descarta
+    private final Map<String, Long> generaciones = new ConcurrentHashMap<>();
+
+    public ResumenMaxStock(@Value("${franquicias.resumen-max-stock.vigencia:60s}") Duration vigencia) {
+        this.vigencia = vigencia;
+    }
+
+    /**
+     * Devuelve las filas precalculadas o, si no hay vista vigente, las calcula con {@code calcular}
+     * y las guarda. Las filas de sucursales sin productos llegan con productoNombre null.
+     */
+    public Flux<ProductoMaxStockDto> obtener(String franquiciaId, Supplier<Flux<ProductoMaxStockDto>> calcular) {
+        Vista vista = vistas.get(franquiciaId);
+        if (vista != null && !vista.vencida(vigencia)) {
+            return Flux.fromIterable(vista.copiarFilas());
+        }
+
+        long generacion = generaciones.getOrDefault(franquiciaId, 0L);
+        return calcular.get()
+                .collectList()
+                .doOnNext(filas -> vistas.compute(franquiciaId, (id, actual) ->
+                        generaciones.getOrDefault(id, 0L) == generacion ? new Vista(filas) : actual))
+                .flatMapIterable(filas -> filas);
+    }
+
+    // Comando de reconstrucción de una franquicia: se descarta la vista y se vuelve a calcular
+    public Flux<ProductoMaxStockDto> reconstruir(String franquiciaId, Supplier<Flux<ProductoMaxStockDto>> calcular) {
+        invalidar(franquiciaId);
+        return obtener(franquiciaId, calcular);
+    }
+
+    // Comando de reconstrucción global: todas las vistas se recalculan en su próxima lectura
+    public void reconstruirTodas() {
+        generaciones.replaceAll((id, generacion) -> generacion + 1);
+        vistas.clear();
+    }
+
+    @EventListener
+    public void alCambiarFranquicia(CambioFranquiciaEvent evento) {
+        generaciones.merge(evento.getFranquiciaId(), 1L, Long::sum);
+        Vista vista = vistas.get(evento.getFranquiciaId());
+        if (vista == null) {
+            return; // Se armará desde la BD en la próxima lectura
+        }
+
+        boolean aplicado;
+        synchronized (vista) {
+            aplicado = !llegoDesordenado(vista, evento) && aplicar(vista, evento);
+        }
+        if (!aplicado) {
+            // El cambio no se puede resolver sin la lista de productos: se recalcula en la próxima lectura
+            invalidar(evento.getFranquiciaId());
+        }
+    }
+
+    private void invalidar(String franquiciaId) {
+        generaciones.merge(franquiciaId, 1L, Long::sum);
+        vistas.remove(franquiciaId);
+    }
+
+    /**
+     * Los eventos llegan en el orden en que terminan las escrituras, no en el de sus versiones.
+     * Uno con una versión anterior a la última aplicada traería un estado viejo, y como los eventos
+     * son cambios sueltos (no el estado completo) tampoco se puede saltar: la vista se recalcula.
+     * La misma versión sí se aplica: son las mutaciones de un mismo guardado del pipeline.
+     * Tampoco se aplican los que no son posteriores a la versión de la agregación (pueden estar ya
+     * contados o no) ni los que no traen versión (actualización masiva): no hay con qué ordenarlos.
+     */
+    private boolean llegoDesordenado(Vista vista, CambioFranquiciaEvent evento) {
+        Long versionEvento = evento.getVersion();
+        if (versionEvento == null || vista.base == null || versionEvento <= vista.base) {
+            return true;
+        }
+        if (vista.version != null && versionEvento < vista.version) {
+            return true;
+        }
+        vista.version = versionEvento;
+        return false;
+    }
+
+    // Devuelve false si la vista no se pudo actualizar de forma incremental
+    private boolean aplicar(Vista vista, CambioFranquiciaEvent evento) {
+        Franquicia franquicia = evento.getFranquicia();
+        String claveSucursal = evento.getSucursalNombre() == null ? null : clave(evento.getSucursalNombre());
+        ProductoMaxStockDto actual = claveSucursal == null ? null : vista.filas.get(claveSucursal);
+
+        switch (evento.getTipo()) {
+            case FRANQUICIA_CREADA, NOMBRE_FRANQUICIA:
+                return true;
+
+            case SUCURSAL_AGREGADA:
+                return recalcularSucursal(vista, franquicia, claveSucursal);
+
+            case NOMBRE_SUCURSAL: {
+                ProductoMaxStockDto fila = vista.filas.remove(clave(evento.getNombreAnterior()));
+                if (fila == null) {
+                    return false;
+                }
+                fila.setSucursalNombre(evento.getSucursalNombre());
+                vista.filas.put(claveSucursal, fila);
+                return true;
+            }
+
+            case PRODUCTO_AGREGADO:
+                // El producto nuevo queda al final de la lista: en empate también gana él
+                if (actual == null) {
+                    return false;
+                }
+                if (actual.getProductoNombre() == null || evento.getStock() >= actual.getStock()) {
+                    actual.setProductoNombre(evento.getProductoNombre());
+                    actual.setStock(evento.getStock());
+                }
+                return true;
+
+            case STOCK_ACTUALIZADO:
+                if (actual == null || actual.getProductoNombre() == null) {
+                    return false;
+                }
+                if (esElMaximo(actual, evento.getProductoNombre())) {
+                    if (evento.getStock() >= actual.getStock()) {
+                        actual.setStock(evento.getStock()); // Sigue siendo el máximo
+                        return true;
+                    }
+                    return recalcularSucursal(vista, franquicia, claveSucursal); // Bajó: otro puede superarlo
+                }
+                if (evento.getStock() > actual.getStock()) {
+                    actual.setProductoNombre(evento.getProductoNombre());
+                    actual.setStock(evento.getStock());
+                    return true;
+                }
+                // Empate: decide la posición en la lista, que solo conoce el documento
+                return evento.getStock() < actual.getStock() || recalcularSucursal(vista, franquicia, claveSucursal);
+
+            case PRODUCTO_ELIMINADO:
+                if (actual == null) {
+                    return false;
+                }
+                return !esElMaximo(actual, evento.getProductoNombre()) || recalcularSucursal(vista, franquicia, claveSucursal);
+
+            case PRODUCTO_ELIMINADO_TODAS:
+                for (Map.Entry<String, ProductoMaxStockDto> fila : vista.filas.entrySet()) {
+                    if (esElMaximo(fila.getValue(), evento.getProductoNombre())
+                            && !recalcularSucursal(vista, franquicia, fila.getKey())) {
+                        return false;
+                    }
+                }
+                return true;
+
+            case NOMBRE_PRODUCTO:
+                if (actual == null) {
+                    return false;
+                }
+                if (esElMaximo(actual, evento.getNombreAnterior())) {
+                    actual.setProductoNombre(evento.getProductoNombre());
+                }
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+    // Recalcula una sola sucursal a partir del estado guardado que trae el evento
+    private boolean recalcularSucursal(Vista vista, Franquicia franquicia, String claveSucursal) {
+        if (franquicia == null) {
+            return false;
+        }
+        Sucursal sucursal = franquicia.buscarSucursalPorNombre(claveSucursal);
+        if (sucursal == null) {
+            return false;
+        }
+        ProductoMaxStockDto fila = calcularFila(sucursal);
+        if (!vista.filas.containsKey(claveSucursal)) {
+            // Sucursal nueva: se agrega al final, igual que en la lista de la franquicia
+            vista.filas.put(claveSucursal, fila);
+        } else {
+            vista.filas.replace(claveSucursal, fila);
+        }
+        return true;
+    }
+
+    // Mismo criterio que la agregación: en empate gana el último producto
+    private ProductoMaxStockDto calcularFila(Sucursal sucursal) {
+        Producto maximo = null;
+        for (Producto producto : sucursal.getProductos()) {
+            if (maximo == null || producto.getStock() >= maximo.getStock()) {
+                maximo = producto;
+            }
+        }
+        ProductoMaxStockDto fila = new ProductoMaxStockDto();
+        fila.setSucursalNombre(sucursal.getNombre());
+        if (maximo != null) {
+            fila.setProductoNombre(maximo.getNombre());
+            fila.setStock(maximo.getStock());
+        }
+        return fila;
+    }
+
+    private boolean esElMaximo(ProductoMaxStockDto fila, String productoNombre) {
+        return fila.getProductoNombre() != null && fila.getProductoNombre().equalsIgnoreCase(productoNombre);
+    }
+
+    // Misma clave que los índices del dominio (coincide con equalsIgnoreCase)
+    private static String clave(String nombre) {
+        return ClaveNombre.de(nombre);
+    }
+
+    private static final class Vista {
+        private final long creadaEn = System.nanoTime();
+        private final Map<String, ProductoMaxStockDto> filas = new LinkedHashMap<>();
+
+        // Versión de la franquicia que leyó la agregación (null si no hay filas o alguna no la trae)
+        private final Long base;
+
+        // Versión del último evento aplicado (null hasta el primero)
+        private Long version;
+
+        private Vista(List<ProductoMaxStockDto> filas) {
+            Long menor = null;
+            boolean sinVersion = filas.isEmpty();
+            for (ProductoMaxStockDto fila : filas) {
+                this.filas.put(clave(fila.getSucursalNombre()), copiar(fila));
+                if (fila.getVersion() == null) {
+                    sinVersion = true;
+                } else if (menor == null || fila.getVersion() < menor) {
+                    menor = fila.getVersion();
+                }
+            }
+            this.base = sinVersion ? null : menor;
+        }
+
+        private boolean vencida(Duration vigencia) {
+            return System.nanoTime() - creadaEn > vigencia.toNanos();
+        }
+
+        // Copias, para que nadie fuera de la vista modifique sus filas
+        private synchronized List<ProductoMaxStockDto> copiarFilas() {
+            List<ProductoMaxStockDto> copia = new ArrayList<>(filas.size());
+            for (ProductoMaxStockDto fila : filas.values()) {
+                copia.add(copiar(fila));
+            }
+            return copia;
+        }
+
+        private static ProductoMaxStockDto copiar(ProductoMaxStockDto fila) {
+            ProductoMaxStockDto dto = new ProductoMaxStockDto();
+            dto.setSucursalNombre(fila.getSucursalNombre());
+            dto.setProductoNombre(fila.getProductoNombre());
+            dto.setStock(fila.getStock());
+            return dto;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.franquicias.franquicias_api.domain;
+
+/**
+ * Clave de búsqueda de un nombre sin distinguir mayúsculas.
+ * Dos nombres tienen la misma clave exactamente cuando equalsIgnoreCase los considera iguales
+ * (mismo plegado por carácter: toUpperCase y luego toLowerCase), así los índices en memoria
+ * responden igual que las búsquedas lineales de siempre.
+ */
+public final class ClaveNombre {
+
+    private ClaveNombre() {
+    }
+
+    public static String de(String nombre) {
+        if (nombre == null) {
+            return null;
+        }
+        StringBuilder clave = null;
+        for (int i = 0; i < nombre.length(); ) {
+            int caracter = nombre.codePointAt(i);
+            int plegado = Character.toLowerCase(Character.toUpperCase(caracter));
+            if (plegado != caracter && clave == null) {
+                // Solo se copia el texto si algún carácter cambia
+                clave = new StringBuilder(nombre.length()).append(nombre, 0, i);
+            }
+            if (clave != null) {
+                clave.appendCodePoint(plegado);
+            }
+            i += Character.charCount(caracter);
+        }
+        return clave == null ? nombre : clave.toString();
+    }
+}
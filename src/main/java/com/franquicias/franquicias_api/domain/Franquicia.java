@@ -2,10 +2,18 @@ package com.franquicias.franquicias_api.domain;
 
 import com.franquicias.franquicias_api.domain.exception.RecursoDuplicadoException;
 import com.franquicias.franquicias_api.domain.exception.RecursoNoEncontradoException;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.mongodb.core.mapping.Document;
 import java.util.List;
 import java.util.ArrayList;
@@ -22,34 +30,71 @@ public class Franquicia {
 
     private String nombre;
 
+    // Nombre plegado (ClaveNombre) que se persiste con índice único: las búsquedas por nombre
+    // sin distinguir mayúsculas son una igualdad exacta en vez de una regex. Se deriva de nombre.
+    @JsonIgnore
+    @Setter(AccessLevel.NONE)
+    private String nombreNormalizado;
+
     // Lista de sucursales que pertenecen a esta franquicia.
     private List<Sucursal> sucursales = new ArrayList<>();
 
+    // Versión para concurrencia optimista: cada guardado solo aplica si nadie la cambió antes.
+    // La asigna la BD, por eso el cliente no puede enviarla.
+    @Version
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private Long version;
+
+    // Índice nombre -> sucursal (solo en memoria, se arma en la primera búsqueda)
+    @Transient
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    private final transient IndicePorNombre<Sucursal> indiceSucursales =
+            new IndicePorNombre<>(Sucursal::getNombre, Sucursal::setNombre, Sucursal::indexarEn);
+
     // Constructor personalizado para crear una nueva franquicia (sin ID)
     // Este constructor adicional es útil para crear objetos sin ID
     public Franquicia(String nombre, List<Sucursal> sucursales) {
-        this.nombre = nombre;
+        setNombre(nombre);
         this.sucursales = sucursales != null ? sucursales : new ArrayList<>();
     }
 
+    // Todo cambio de nombre pasa por aquí para mantener nombreNormalizado al día
+    public void setNombre(String nombre) {
+        this.nombre = nombre;
+        this.nombreNormalizado = ClaveNombre.de(nombre);
+    }
+
+    // Copia profunda (sin compartir listas ni elementos), p. ej. para entregar copias desde una caché
+    public Franquicia copiar() {
+        List<Sucursal> copiaSucursales = new ArrayList<>();
+        if (this.sucursales != null) {
+            for (Sucursal sucursal : this.sucursales) {
+                copiaSucursales.add(sucursal.copiar());
+            }
+        }
+        Franquicia copia = new Franquicia(this.nombre, copiaSucursales);
+        copia.setId(this.id);
+        copia.setVersion(this.version);
+        return copia;
+    }
+
     // Metodo para añadir una sucursal con validación.
     public void agregarSucursal(Sucursal sucursal) {
-        // Validacion de unicidad de Sucursal (Logica de Dominio)
-        if (this.sucursales.stream().anyMatch(s -> s.getNombre().equalsIgnoreCase(sucursal.getNombre()))) {
-            throw new RecursoDuplicadoException("Ya existe una sucursal con el nombre '" + sucursal.getNombre() + "' en esta franquicia.");
-        }
         if (this.sucursales == null) {
             this.sucursales = new ArrayList<>();
         }
-        this.sucursales.add(sucursal);
+        // Validacion de unicidad de Sucursal (Logica de Dominio)
+        if (buscarSucursalPorNombre(sucursal.getNombre()) != null) {
+            throw new RecursoDuplicadoException("Ya existe una sucursal con el nombre '" + sucursal.getNombre() + "' en esta franquicia.");
+        }
+        indiceSucursales.agregar(this.sucursales, sucursal);
     }
 
     // Necesario para Criterio 4
     public Sucursal buscarSucursalPorNombre(String nombreSucursal) {
-        return this.sucursales.stream()
-                .filter(s -> s.getNombre().equalsIgnoreCase(nombreSucursal))
-                .findFirst()
-                .orElse(null);
+        return indiceSucursales.buscar(this.sucursales, nombreSucursal);
     }
 
     // Lógica para eliminar de una única sucursal
@@ -63,10 +108,8 @@ public class Franquicia {
             throw new RecursoNoEncontradoException("Sucursal", nombreSucursal + " en la Franquicia " + this.getNombre());
         }
 
-        // Intentar eliminar el producto. removeIf devuelve true si se elimina algo.
-        boolean productoEliminado = sucursal.getProductos().removeIf(
-                p -> p.getNombre().equalsIgnoreCase(nombreProducto)
-        );
+        // Intentar eliminar el producto. Devuelve true si se elimina algo.
+        boolean productoEliminado = sucursal.eliminarProducto(nombreProducto);
 
         if (!productoEliminado) {
             // El producto no existe en esa sucursal
@@ -80,10 +123,7 @@ public class Franquicia {
 
         // Iteramos sobre todas las sucursales para eliminar el producto
         for (Sucursal sucursal : this.sucursales) {
-            boolean eliminado = sucursal.getProductos().removeIf(
-                    p -> p.getNombre().equalsIgnoreCase(nombreProducto)
-            );
-            if (eliminado) {
+            if (sucursal.eliminarProducto(nombreProducto)) {
                 productosEliminados++;
             }
         }
@@ -120,7 +160,7 @@ public class Franquicia {
         if (nuevoNombre == null || nuevoNombre.trim().isEmpty()) {
             throw new IllegalArgumentException("El nuevo nombre de la franquicia no puede ser vacío.");
         }
-        this.nombre = nuevoNombre;
+        setNombre(nuevoNombre);
     }
 
     // Extra 2: Actualizar Nombre de Sucursal
@@ -130,18 +170,18 @@ public class Franquicia {
         }
 
         // Verificar si el nuevo nombre ya está en uso en esta franquicia (409)
-        if (this.sucursales.stream().anyMatch(s -> s.getNombre().equalsIgnoreCase(nuevoNombre))) {
+        if (buscarSucursalPorNombre(nuevoNombre) != null) {
             throw new RecursoDuplicadoException("Ya existe una sucursal con el nombre: " + nuevoNombre + " en esta franquicia.");
         }
 
         //Encontrar la sucursal actual (404)
-        Sucursal sucursal = this.sucursales.stream()
-                .filter(s -> s.getNombre().equalsIgnoreCase(nombreSucursalActual))
-                .findFirst()
-                .orElseThrow(() -> new RecursoNoEncontradoException("Sucursal", nombreSucursalActual));
+        Sucursal sucursal = buscarSucursalPorNombre(nombreSucursalActual);
+        if (sucursal == null) {
+            throw new RecursoNoEncontradoException("Sucursal", nombreSucursalActual);
+        }
 
-        //Aplicar el cambio
-        sucursal.setNombre(nuevoNombre);
+        //Aplicar el cambio (también en el índice)
+        indiceSucursales.renombrar(this.sucursales, sucursal, nuevoNombre);
     }
 
     // Extra 3: Actualizar Nombre de Producto
@@ -151,23 +191,23 @@ public class Franquicia {
         }
 
         //Encontrar la sucursal (404)
-        Sucursal sucursal = this.sucursales.stream()
-                .filter(s -> s.getNombre().equalsIgnoreCase(nombreSucursal))
-                .findFirst()
-                .orElseThrow(() -> new RecursoNoEncontradoException("Sucursal", nombreSucursal));
+        Sucursal sucursal = buscarSucursalPorNombre(nombreSucursal);
+        if (sucursal == null) {
+            throw new RecursoNoEncontradoException("Sucursal", nombreSucursal);
+        }
 
         //Verificar si el nuevo nombre de producto ya existe en esta sucursal (409)
-        if (sucursal.getProductos().stream().anyMatch(p -> p.getNombre().equalsIgnoreCase(nuevoNombreProducto))) {
+        if (sucursal.buscarProductoPorNombre(nuevoNombreProducto) != null) {
             throw new RecursoDuplicadoException("Ya existe un producto con el nombre: " + nuevoNombreProducto + " en la sucursal " + nombreSucursal);
         }
 
         //Encontrar el producto actual (404)
-        Producto producto = sucursal.getProductos().stream()
-                .filter(p -> p.getNombre().equalsIgnoreCase(nombreProductoActual))
-                .findFirst()
-                .orElseThrow(() -> new RecursoNoEncontradoException("Producto", nombreProductoActual));
+        Producto producto = sucursal.buscarProductoPorNombre(nombreProductoActual);
+        if (producto == null) {
+            throw new RecursoNoEncontradoException("Producto", nombreProductoActual);
+        }
 
-        //Aplicar el cambio
-        producto.setNombre(nuevoNombreProducto);
+        //Aplicar el cambio (también en el índice de la sucursal)
+        sucursal.renombrarProducto(producto, nuevoNombreProducto);
     }
 }
\ No newline at end of file
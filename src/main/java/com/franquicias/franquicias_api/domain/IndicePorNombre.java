@@ -0,0 +1,132 @@
+package com.franquicias.franquicias_api.domain;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Índice en memoria (clave plegada -> elemento) sobre una lista del documento.
+ * Se arma la primera vez que se busca y luego se mantiene en las altas, bajas y renombres que
+ * pasan por él. Si la lista se reemplazó o cambió de tamaño por fuera (p. ej. un add directo
+ * sobre getProductos()), se vuelve a armar en la siguiente búsqueda. Cada elemento indexado
+ * conoce su índice y su setNombre le avisa (renombrado), así que un renombre por fuera también
+ * lo deja al día sin recorrer la lista en cada búsqueda que no encuentra nada.
+ *
+ * No es thread-safe, igual que las listas que indexa. No se persiste ni se serializa.
+ */
+final class IndicePorNombre<T> {
+
+    private final Function<T, String> nombreDe;
+    private final BiConsumer<T, String> cambiarNombre;
+    private final BiConsumer<T, IndicePorNombre<T>> vincular;
+
+    // Estado de la lista cuando se armó el índice (null = sin armar)
+    private Map<String, T> porClave;
+    private List<T> lista;
+    private int tamano;
+
+    // Con nombres repetidos en la lista, las bajas y renombres rearman el índice
+    private boolean hayRepetidos;
+
+    /**
+     * @param vincular Deja en el elemento el índice al que tiene que avisar cuando le cambian el
+     *                 nombre (null = a ninguno).
+     */
+    IndicePorNombre(Function<T, String> nombreDe, BiConsumer<T, String> cambiarNombre, BiConsumer<T, IndicePorNombre<T>> vincular) {
+        this.nombreDe = nombreDe;
+        this.cambiarNombre = cambiarNombre;
+        this.vincular = vincular;
+    }
+
+    // Primer elemento con ese nombre (sin distinguir mayúsculas) o null
+    T buscar(List<T> actual, String nombre) {
+        if (nombre == null || actual == null) {
+            return null;
+        }
+        sincronizar(actual);
+        String clave = ClaveNombre.de(nombre);
+        T elemento = porClave.get(clave);
+        if (elemento != null && !clave.equals(ClaveNombre.de(nombreDe.apply(elemento)))) {
+            // Lo renombraron avisándole a otro índice (el elemento está en dos listas): se rearma
+            armar(actual);
+            elemento = porClave.get(clave);
+        }
+        return elemento;
+    }
+
+    void agregar(List<T> actual, T elemento) {
+        sincronizar(actual);
+        actual.add(elemento);
+        registrar(elemento);
+        tamano = actual.size();
+    }
+
+    /**
+     * Quita todos los elementos con ese nombre (como el removeIf de siempre).
+     * @return true si se quitó alguno.
+     */
+    boolean quitar(List<T> actual, String nombre) {
+        if (buscar(actual, nombre) == null) {
+            return false;
+        }
+        String clave = ClaveNombre.de(nombre);
+        actual.removeIf(e -> {
+            boolean quitado = clave.equals(ClaveNombre.de(nombreDe.apply(e)));
+            if (quitado) {
+                vincular.accept(e, null);
+            }
+            return quitado;
+        });
+        porClave.remove(clave);
+        tamano = actual.size();
+        return true;
+    }
+
+    // El setNombre del elemento avisa a este índice (renombrado), que se actualiza ahí
+    void renombrar(List<T> actual, T elemento, String nuevoNombre) {
+        sincronizar(actual);
+        vincular.accept(elemento, this);
+        cambiarNombre.accept(elemento, nuevoNombre);
+    }
+
+    // Aviso de un elemento al que le cambiaron el nombre, por renombrar o con un setNombre directo
+    void renombrado(T elemento, String nombreAnterior) {
+        if (porClave == null) {
+            return;
+        }
+        String claveAnterior = ClaveNombre.de(nombreAnterior);
+        if (hayRepetidos || claveAnterior == null || porClave.get(claveAnterior) != elemento) {
+            // Otro elemento podía compartir el nombre anterior, o este ya no está en la lista
+            porClave = null;
+            return;
+        }
+        porClave.remove(claveAnterior);
+        registrar(elemento);
+    }
+
+    private void sincronizar(List<T> actual) {
+        if (porClave == null || actual != lista || actual.size() != tamano) {
+            armar(actual);
+        }
+    }
+
+    private void armar(List<T> actual) {
+        porClave = new HashMap<>(Math.max(16, (int) (actual.size() / 0.75f) + 1));
+        lista = actual;
+        hayRepetidos = false;
+        for (T elemento : actual) {
+            registrar(elemento);
+        }
+        tamano = actual.size();
+    }
+
+    private void registrar(T elemento) {
+        vincular.accept(elemento, this);
+        String clave = ClaveNombre.de(nombreDe.apply(elemento));
+        if (clave != null && porClave.putIfAbsent(clave, elemento) != null) {
+            hayRepetidos = true; // Gana el primero, igual que findFirst
+        }
+    }
+}
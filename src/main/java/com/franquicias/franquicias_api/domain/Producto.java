@@ -1,16 +1,47 @@
 package com.franquicias.franquicias_api.domain;
 
-import lombok.AllArgsConstructor;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.springframework.data.annotation.Transient;
 
 @Data                    // Genera getters, setters, toString, equals, hashCode
 @NoArgsConstructor       // Constructor vacío (necesario para frameworks)
-@AllArgsConstructor      // Constructor con todos los campos
 public class Producto {
     private String nombre;
     private int stock;
 
+    // Índice de la sucursal que lo tiene (solo en memoria): se le avisa de cada cambio de nombre
+    @Transient
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private transient IndicePorNombre<Producto> indice;
+
+    // Constructor con todos los campos (útil)
+    public Producto(String nombre, int stock) {
+        this.nombre = nombre;
+        this.stock = stock;
+    }
+
+    // Todo cambio de nombre pasa por aquí, así el índice de la sucursal no queda desactualizado
+    public void setNombre(String nombre) {
+        String anterior = this.nombre;
+        this.nombre = nombre;
+        if (indice != null) {
+            indice.renombrado(this, anterior);
+        }
+    }
+
+    void indexarEn(IndicePorNombre<Producto> indice) {
+        this.indice = indice;
+    }
+
     // --- Lógica de Dominio ---
 
     /**
@@ -20,4 +51,4 @@ public class Producto {
     public void modificarStock(int cambio) {
         this.stock += cambio;
     }
-}
\ No newline at end of file
+}
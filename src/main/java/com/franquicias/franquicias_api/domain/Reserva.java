@@ -0,0 +1,32 @@
+package com.franquicias.franquicias_api.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Retención temporal de stock (checkout). Mientras existe, la cantidad ya está descontada del
+ * producto: confirmarla solo la borra; liberarla (o que venza) la borra y devuelve el stock.
+ */
+@Document(collection = "reservas")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Reserva {
+
+    @Id
+    private String id;
+
+    private String franquiciaId;
+    private String sucursalNombre;
+    private String productoNombre;
+    private int cantidad;
+    private Instant creadaEn;
+
+    // Pasado este instante el barrido la libera
+    private Instant expiraEn;
+}
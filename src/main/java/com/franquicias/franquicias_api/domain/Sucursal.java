@@ -1,33 +1,96 @@
 package com.franquicias.franquicias_api.domain;
 
-import lombok.AllArgsConstructor;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.springframework.data.annotation.Transient;
 import java.util.List;
 import java.util.ArrayList;
 
 @Data                    // Genera getters, setters, toString, equals, hashCode
 @NoArgsConstructor       // Constructor vacío
-@AllArgsConstructor      // Constructor con todos los campos
 public class Sucursal {
     private String nombre;
     private List<Producto> productos = new ArrayList<>();
 
+    // Índice nombre -> producto (solo en memoria, se arma en la primera búsqueda)
+    @Transient
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    private final transient IndicePorNombre<Producto> indiceProductos =
+            new IndicePorNombre<>(Producto::getNombre, Producto::setNombre, Producto::indexarEn);
+
+    // Índice de la franquicia que la tiene (solo en memoria): se le avisa de cada cambio de nombre
+    @Transient
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private transient IndicePorNombre<Sucursal> indice;
+
+    // Constructor con todos los campos
+    public Sucursal(String nombre, List<Producto> productos) {
+        this.nombre = nombre;
+        this.productos = productos;
+    }
+
+    // Todo cambio de nombre pasa por aquí, así el índice de la franquicia no queda desactualizado
+    public void setNombre(String nombre) {
+        String anterior = this.nombre;
+        this.nombre = nombre;
+        if (indice != null) {
+            indice.renombrado(this, anterior);
+        }
+    }
+
+    void indexarEn(IndicePorNombre<Sucursal> indice) {
+        this.indice = indice;
+    }
+
     // --- Lógica de Dominio ---
 
+    // Copia profunda de la sucursal y sus productos
+    public Sucursal copiar() {
+        List<Producto> copiaProductos = new ArrayList<>();
+        if (this.productos != null) {
+            for (Producto producto : this.productos) {
+                copiaProductos.add(new Producto(producto.getNombre(), producto.getStock()));
+            }
+        }
+        return new Sucursal(this.nombre, copiaProductos);
+    }
+
     // Metodo para añadir un producto a la sucursal
     public void agregarProducto(Producto producto) {
         if (producto != null) {
-            this.productos.add(producto);
+            if (this.productos == null) {
+                this.productos = new ArrayList<>();
+            }
+            indiceProductos.agregar(this.productos, producto);
         }
     }
 
     // Metodo para buscar un producto por nombre
     public Producto buscarProductoPorNombre(String nombre) {
-        return this.productos.stream()
-                .filter(p -> p.getNombre().equalsIgnoreCase(nombre))
-                .findFirst()
-                .orElse(null);
+        return indiceProductos.buscar(this.productos, nombre);
+    }
+
+    /**
+     * Quita el producto (sin distinguir mayúsculas).
+     * @return true si existía y se eliminó, false si no.
+     */
+    public boolean eliminarProducto(String nombreProducto) {
+        return indiceProductos.quitar(this.productos, nombreProducto);
+    }
+
+    // Cambia el nombre del producto manteniendo el índice al día
+    public void renombrarProducto(Producto producto, String nuevoNombre) {
+        indiceProductos.renombrar(this.productos, producto, nuevoNombre);
     }
 
     /**
@@ -35,17 +98,12 @@ public class Sucursal {
      * @return true si el producto fue encontrado y actualizado, false si no.
      */
     public boolean actualizarCantidadProducto(String nombreProducto, int nuevoStock) {
-        if (this.productos == null) return false;
-
-        // Buscar el producto por nombre
-        return this.productos.stream()
-                .filter(p -> p.getNombre().equalsIgnoreCase(nombreProducto))
-                .findFirst()
-                .map(producto -> {
-                    // Si el producto existe, aplica el cambio de stock
-                    producto.setStock(nuevoStock);
-                    return true;
-                })
-                .orElse(false);
-    }
-}
\ No newline at end of file
+        Producto producto = buscarProductoPorNombre(nombreProducto);
+        if (producto == null) {
+            return false;
+        }
+        // Si el producto existe, aplica el cambio de stock
+        producto.setStock(nuevoStock);
+        return true;
+    }
+}
@@ -0,0 +1,9 @@
+package com.franquicias.franquicias_api.domain.exception;
+
+// Otro escritor modificó la franquicia entre la lectura y el guardado (versión distinta); se mapea a 409 Conflict
+public class ConflictoConcurrenciaException extends RuntimeException {
+
+    public ConflictoConcurrenciaException(String franquiciaId) {
+        super("La franquicia '" + franquiciaId + "' fue modificada por otra operación. Intente de nuevo.");
+    }
+}
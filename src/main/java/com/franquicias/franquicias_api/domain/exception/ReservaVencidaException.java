@@ -0,0 +1,9 @@
+package com.franquicias.franquicias_api.domain.exception;
+
+// La reserva existe pero ya venció (el barrido todavía no la liberó); se mapea a 410 Gone
+public class ReservaVencidaException extends RuntimeException {
+
+    public ReservaVencidaException(String reservaId) {
+        super("La reserva '" + reservaId + "' venció y ya no se puede confirmar.");
+    }
+}
@@ -0,0 +1,10 @@
+package com.franquicias.franquicias_api.domain.exception;
+
+// Se lanza cuando un cambio de stock dejaría la cantidad por debajo de cero; se mapea a 409 Conflict
+public class StockInsuficienteException extends RuntimeException {
+
+    public StockInsuficienteException(String productoNombre, String sucursalNombre, int disponible, int cambio) {
+        super("Stock insuficiente para el producto '" + productoNombre + "' en la sucursal '" + sucursalNombre
+                + "': disponible " + disponible + ", cambio solicitado " + cambio + ".");
+    }
+}
@@ -0,0 +1,9 @@
+package com.franquicias.franquicias_api.domain.exception;
+
+// La franquicia ya no está en la versión que el cliente indicó (If-Match); se mapea a 412 Precondition Failed
+public class VersionNoCoincideException extends RuntimeException {
+
+    public VersionNoCoincideException(String franquiciaId) {
+        super("La franquicia '" + franquiciaId + "' cambió desde la versión indicada en If-Match. Vuelva a leerla e intente de nuevo.");
+    }
+}
@@ -0,0 +1,76 @@
+package com.franquicias.franquicias_api.infrastructure.api;
+
+import com.franquicias.franquicias_api.application.dto.VistaFranquicia;
+import com.franquicias.franquicias_api.domain.exception.VersionNoCoincideException;
+
+import java.util.Locale;
+
+/**
+ * ETag fuerte de una franquicia: "{id}.{version}" (más ".resumen" / ".sucursales" en las vistas
+ * parciales, que son otra representación). La versión ya la sube cada escritura, así que la
+ * etiqueta sale de ahí sin serializar ni calcular hashes del documento. Un documento viejo sin
+ * versión no lleva ETag.
+ */
+final class EtiquetaFranquicia {
+
+    static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    static final String HEADER_IF_MATCH = "If-Match";
+
+    private EtiquetaFranquicia() {
+    }
+
+    static String de(String id, Long version, VistaFranquicia vista) {
+        if (id == null || version == null) {
+            return null;
+        }
+        String sufijo = vista == VistaFranquicia.COMPLETA ? "" : "." + vista.name().toLowerCase(Locale.ROOT);
+        return "\"" + id + "." + version + sufijo + "\"";
+    }
+
+    /**
+     * If-None-Match: "*" o alguna de las etiquetas de la lista. Comparación débil, como pide el
+     * RFC 9110 para este header (W/"x" coincide con "x").
+     */
+    static boolean coincide(String ifNoneMatch, String etiqueta) {
+        if (ifNoneMatch == null || etiqueta == null) {
+            return false;
+        }
+        for (String candidata : ifNoneMatch.split(",")) {
+            String limpia = candidata.trim();
+            if (limpia.equals("*")) {
+                return true;
+            }
+            if (limpia.startsWith("W/")) {
+                limpia = limpia.substring(2);
+            }
+            if (limpia.equals(etiqueta)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Versión que pide un If-Match para la franquicia (la de cualquier vista sirve: todas llevan la
+     * misma versión). null = sin header o "*" (sin condición; la mutación igual da 404 si no existe).
+     * Una etiqueta débil, de otra franquicia o que no es de esta API nunca coincide: 412.
+     * Se admite una sola etiqueta.
+     */
+    static Long versionEsperada(String ifMatch, String franquiciaId) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String etiqueta = ifMatch.trim();
+        String prefijo = "\"" + franquiciaId + ".";
+        if (!etiqueta.startsWith(prefijo) || !etiqueta.endsWith("\"") || etiqueta.length() <= prefijo.length() + 1) {
+            throw new VersionNoCoincideException(franquiciaId);
+        }
+        String resto = etiqueta.substring(prefijo.length(), etiqueta.length() - 1);
+        int punto = resto.indexOf('.');
+        try {
+            return Long.parseLong(punto < 0 ? resto : resto.substring(0, punto));
+        } catch (NumberFormatException e) {
+            throw new VersionNoCoincideException(franquiciaId);
+        }
+    }
+}
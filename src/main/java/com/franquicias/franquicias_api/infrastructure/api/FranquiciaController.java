@@ -1,22 +1,47 @@
 package com.franquicias.franquicias_api.infrastructure.api;
 
+import com.franquicias.franquicias_api.application.dto.ActualizacionStockDto;
+import com.franquicias.franquicias_api.application.dto.FranquiciaResumenDto;
+import com.franquicias.franquicias_api.application.dto.OrdenListado;
+import com.franquicias.franquicias_api.application.dto.PaginaDto;
+import com.franquicias.franquicias_api.application.dto.PoliticaSuscripcion;
+import com.franquicias.franquicias_api.application.dto.ProductoEncontradoDto;
 import com.franquicias.franquicias_api.application.dto.ProductoMaxStockDto;
+import com.franquicias.franquicias_api.application.dto.ResultadoStockDto;
+import com.franquicias.franquicias_api.application.dto.StockActualizadoDto;
+import com.franquicias.franquicias_api.application.dto.SugerenciaDto;
+import com.franquicias.franquicias_api.application.dto.VistaFranquicia;
+import com.franquicias.franquicias_api.application.event.CambioFranquiciaEvent;
 import com.franquicias.franquicias_api.application.port.in.IFranquiciaManagement;
 import com.franquicias.franquicias_api.domain.Franquicia;
 import com.franquicias.franquicias_api.domain.Producto;
+import com.franquicias.franquicias_api.domain.Reserva;
 import com.franquicias.franquicias_api.domain.Sucursal;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/franquicias")
 public class FranquiciaController {
 
+    // Header con el cursor de la página siguiente (GET /franquicias?limite=N)
+    static final String HEADER_SIGUIENTE_CURSOR = "X-Siguiente-Cursor";
+
+    // Comentario SSE periódico para que proxies y balanceadores no corten un stream sin eventos
+    private static final Duration LATIDO_SSE = Duration.ofSeconds(15);
+
     //Declaración de la dependencia
     private final IFranquiciaManagement franquiciaManagement;
 
@@ -35,24 +60,198 @@ public class FranquiciaController {
         return franquiciaManagement.crearFranquicia(franquicia);
     }
 
-    //Exponer GET para obtener todas las franquicias
-    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
-    public Flux<Franquicia> getAllFranquicias() {
-        return franquiciaManagement.findAll();
+    /**
+     * Exponer GET para obtener las franquicias, ordenadas por ID.
+     * - Sin limite: todas, en streaming (Accept: application/x-ndjson = una por línea, con backpressure).
+     * - Con limite: una página; si hay más, el header X-Siguiente-Cursor trae el valor para despuesDe.
+     * - vista: resumen | sucursales | completa (por defecto), proyectada en la BD.
+     * Metodo: GET /franquicias?limite=50&despuesDe={cursor}&vista=resumen
+     */
+    @GetMapping(produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Mono<ResponseEntity<Flux<Object>>> getAllFranquicias(
+            @RequestParam(required = false) Integer limite,
+            @RequestParam(required = false) String despuesDe,
+            @RequestParam(required = false) String vista) {
+
+        VistaFranquicia vistaFranquicia = VistaFranquicia.de(vista);
+        if (limite == null) {
+            Flux<?> todas = vistaFranquicia == VistaFranquicia.COMPLETA
+                    ? franquiciaManagement.findAllStream(despuesDe)
+                    : franquiciaManagement.findResumenStream(despuesDe, vistaFranquicia);
+            return Mono.just(ResponseEntity.ok(todas.cast(Object.class)));
+        }
+        Mono<? extends PaginaDto<?>> pagina = vistaFranquicia == VistaFranquicia.COMPLETA
+                ? franquiciaManagement.findPagina(despuesDe, limite)
+                : franquiciaManagement.findResumenPagina(despuesDe, limite, vistaFranquicia);
+        return pagina.map(this::respuestaPagina);
     }
 
-    //Exponer GET para buscar una franquicia por su ID
+    private ResponseEntity<Flux<Object>> respuestaPagina(PaginaDto<?> pagina) {
+        ResponseEntity.BodyBuilder respuesta = ResponseEntity.ok();
+        if (pagina.getSiguienteCursor() != null) {
+            respuesta.header(HEADER_SIGUIENTE_CURSOR, pagina.getSiguienteCursor());
+        }
+        return respuesta.body(Flux.fromIterable(pagina.getElementos()).cast(Object.class));
+    }
+
+    //Exponer GET para buscar una franquicia por su ID (?vista=resumen|sucursales|completa), con ETag
     @GetMapping(value = "/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
-    public Mono<Franquicia> getFranquiciaById(@PathVariable String id) {
+    public Mono<ResponseEntity<Object>> getFranquiciaById(
+            @PathVariable String id,
+            @RequestParam(required = false) String vista,
+            @RequestHeader(value = EtiquetaFranquicia.HEADER_IF_NONE_MATCH, required = false) String ifNoneMatch) {
         // El servicio debe manejar el error 404 si no lo encuentra.
-        return franquiciaManagement.findById(id);
+        return leerConEtiqueta(VistaFranquicia.de(vista), ifNoneMatch,
+                vistaParcial -> franquiciaManagement.findResumenById(id, vistaParcial),
+                Mono.defer(() -> franquiciaManagement.findById(id)));
     }
 
-    //Exponer GET para buscar una franquicia por su nombre
+    //Exponer GET para buscar una franquicia por su nombre (?vista=resumen|sucursales|completa), con ETag
     @GetMapping(value = "/nombre/{nombre}", produces = MediaType.APPLICATION_JSON_VALUE)
-    public Mono<Franquicia> getFranquiciaByNombre(@PathVariable String nombre) {
+    public Mono<ResponseEntity<Object>> getFranquiciaByNombre(
+            @PathVariable String nombre,
+            @RequestParam(required = false) String vista,
+            @RequestHeader(value = EtiquetaFranquicia.HEADER_IF_NONE_MATCH, required = false) String ifNoneMatch) {
         // El servicio debe manejar el error 404 si no lo encuentra.
-        return franquiciaManagement.findByNombre(nombre);
+        return leerConEtiqueta(VistaFranquicia.de(vista), ifNoneMatch,
+                vistaParcial -> franquiciaManagement.findResumenByNombre(nombre, vistaParcial),
+                Mono.defer(() -> franquiciaManagement.findByNombre(nombre)));
+    }
+
+    /**
+     * Lectura con ETag (EtiquetaFranquicia). Con If-None-Match vigente, 304 sin cuerpo; para la
+     * vista completa se compara antes contra la vista resumen (proyectada en la BD), así el 304 sale
+     * sin traer el documento.
+     */
+    private Mono<ResponseEntity<Object>> leerConEtiqueta(VistaFranquicia vista, String ifNoneMatch,
+                                                         Function<VistaFranquicia, Mono<FranquiciaResumenDto>> resumen,
+                                                         Mono<Franquicia> completa) {
+        if (vista != VistaFranquicia.COMPLETA) {
+            return resumen.apply(vista).map(dto ->
+                    respuestaConEtiqueta(dto, EtiquetaFranquicia.de(dto.getId(), dto.getVersion(), vista), ifNoneMatch));
+        }
+        Mono<ResponseEntity<Object>> documento = completa.map(franquicia -> respuestaConEtiqueta(franquicia,
+                EtiquetaFranquicia.de(franquicia.getId(), franquicia.getVersion(), vista), ifNoneMatch));
+        if (ifNoneMatch == null) {
+            return documento;
+        }
+        return resumen.apply(VistaFranquicia.RESUMEN).flatMap(dto -> {
+            String etiqueta = EtiquetaFranquicia.de(dto.getId(), dto.getVersion(), VistaFranquicia.COMPLETA);
+            return EtiquetaFranquicia.coincide(ifNoneMatch, etiqueta) ? Mono.just(noModificado(etiqueta)) : documento;
+        });
+    }
+
+    private static ResponseEntity<Object> respuestaConEtiqueta(Object cuerpo, String etiqueta, String ifNoneMatch) {
+        if (etiqueta == null) {
+            return ResponseEntity.ok(cuerpo);
+        }
+        return EtiquetaFranquicia.coincide(ifNoneMatch, etiqueta)
+                ? noModificado(etiqueta)
+                : ResponseEntity.ok().eTag(etiqueta).body(cuerpo);
+    }
+
+    private static ResponseEntity<Object> noModificado(String etiqueta) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etiqueta).build();
+    }
+
+    /**
+     * Sucursales de una franquicia por tramos, sin traer el documento completo.
+     * Sin limite: todas, en streaming (Accept: application/x-ndjson = una por línea).
+     * Metodo: GET /franquicias/{franquiciaId}/sucursales?desde=0&limite=50&orden=nombre
+     */
+    @GetMapping(value = "/{franquiciaId}/sucursales", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<Sucursal> getSucursales(
+            @PathVariable String franquiciaId,
+            @RequestParam(defaultValue = "0") int desde,
+            @RequestParam(required = false) Integer limite,
+            @RequestParam(required = false) String orden) {
+
+        return franquiciaManagement.findSucursales(franquiciaId, desde, limite, OrdenListado.de(orden));
+    }
+
+    /**
+     * Productos de una sucursal por tramos; orden = nombre | -nombre | stock | -stock.
+     * Metodo: GET /franquicias/{franquiciaId}/sucursales/{sucursalNombre}/productos?desde=0&limite=50&orden=-stock
+     */
+    @GetMapping(value = "/{franquiciaId}/sucursales/{sucursalNombre}/productos", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<Producto> getProductos(
+            @PathVariable String franquiciaId,
+            @PathVariable String sucursalNombre,
+            @RequestParam(defaultValue = "0") int desde,
+            @RequestParam(required = false) Integer limite,
+            @RequestParam(required = false) String orden) {
+
+        return franquiciaManagement.findProductos(franquiciaId, sucursalNombre, desde, limite, OrdenListado.de(orden));
+    }
+
+    /**
+     * Búsqueda de un producto en todas las franquicias: filas (franquicia, sucursal, producto, stock).
+     * prefijo=true busca los nombres que empiezan por el texto; sin limite se devuelven hasta 100.
+     * Metodo: GET /franquicias/productos/buscar?nombre=cola&prefijo=true&limite=50
+     */
+    @GetMapping(value = "/productos/buscar", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<ProductoEncontradoDto> buscarProductos(
+            @RequestParam String nombre,
+            @RequestParam(defaultValue = "false") boolean prefijo,
+            @RequestParam(required = false) Integer limite) {
+
+        return franquiciaManagement.buscarProductos(nombre, prefijo, limite);
+    }
+
+    /**
+     * Autocompletado: sucursales y productos de la franquicia cuyo nombre empieza por q
+     * (sin distinguir mayúsculas), en orden alfabético. Se responde desde memoria.
+     * Metodo: GET /franquicias/{franquiciaId}/autocomplete?q=coc&limite=10
+     */
+    @GetMapping(value = "/{franquiciaId}/autocomplete", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Flux<SugerenciaDto> autocompletar(
+            @PathVariable String franquiciaId,
+            @RequestParam(defaultValue = "") String q,
+            @RequestParam(required = false) Integer limite) {
+
+        return franquiciaManagement.autocompletar(franquiciaId, q, limite);
+    }
+
+    /**
+     * Cambios de stock y de catálogo en vivo (en lugar de sondear GET /franquicias/{id}).
+     * Accept: text/event-stream = SSE (el nombre del evento es su tipo); application/x-ndjson = uno por línea.
+     * politica = buffer (por defecto) | ultimo | cortar: qué hacer si el cliente lee más lento.
+     * Metodo: GET /franquicias/cambios y GET /franquicias/{franquiciaId}/cambios?politica=ultimo
+     */
+    @GetMapping(value = "/cambios", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<CambioFranquiciaEvent>> cambiosSse(@RequestParam(required = false) String politica) {
+        return sse(franquiciaManagement.suscribirCambios(null, PoliticaSuscripcion.de(politica)));
+    }
+
+    @GetMapping(value = "/cambios", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<CambioFranquiciaEvent> cambiosNdjson(@RequestParam(required = false) String politica) {
+        return franquiciaManagement.suscribirCambios(null, PoliticaSuscripcion.de(politica));
+    }
+
+    @GetMapping(value = "/{franquiciaId}/cambios", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<CambioFranquiciaEvent>> cambiosFranquiciaSse(
+            @PathVariable String franquiciaId,
+            @RequestParam(required = false) String politica) {
+
+        return sse(franquiciaManagement.suscribirCambios(franquiciaId, PoliticaSuscripcion.de(politica)));
+    }
+
+    @GetMapping(value = "/{franquiciaId}/cambios", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<CambioFranquiciaEvent> cambiosFranquiciaNdjson(
+            @PathVariable String franquiciaId,
+            @RequestParam(required = false) String politica) {
+
+        return franquiciaManagement.suscribirCambios(franquiciaId, PoliticaSuscripcion.de(politica));
+    }
+
+    private Flux<ServerSentEvent<CambioFranquiciaEvent>> sse(Flux<CambioFranquiciaEvent> cambios) {
+        Flux<ServerSentEvent<CambioFranquiciaEvent>> eventos = cambios.map(cambio -> ServerSentEvent.builder(cambio)
+                .event(cambio.getTipo().name())
+                .build());
+        Flux<ServerSentEvent<CambioFranquiciaEvent>> latidos = Flux.interval(LATIDO_SSE)
+                .map(n -> ServerSentEvent.<CambioFranquiciaEvent>builder().comment("latido").build());
+        // Los eventos no terminan solos: un error (404, política cortar) también cancela el latido
+        return Flux.merge(eventos, latidos);
     }
 
     //Criterio 3: Exponer endpoint para agregar una nueva sucursal (POST)
@@ -62,11 +261,15 @@ public class FranquiciaController {
             consumes = MediaType.APPLICATION_JSON_VALUE
     )
     @ResponseStatus(HttpStatus.OK) // Se usa 200 OK porque estamos modificando un recurso existente.
-    public Mono<Franquicia> addSucursal(
+    public Mono<ResponseEntity<Object>> addSucursal(
             @PathVariable String franquiciaId,
+            @RequestHeader(value = PreferenciaRetorno.HEADER_PREFER, required = false) String prefer,
+            @RequestHeader(value = EtiquetaFranquicia.HEADER_IF_MATCH, required = false) String ifMatch,
             @RequestBody Sucursal sucursal) {
 
-        return franquiciaManagement.addSucursal(franquiciaId, sucursal);
+        Long versionEsperada = EtiquetaFranquicia.versionEsperada(ifMatch, franquiciaId);
+        return responderMutacion(franquiciaManagement.addSucursal(franquiciaId, sucursal, versionEsperada), prefer,
+                franquicia -> sucursalEn(franquicia, sucursal.getNombre()));
     }
 
     /**
@@ -79,12 +282,16 @@ public class FranquiciaController {
             consumes = MediaType.APPLICATION_JSON_VALUE
     )
     @ResponseStatus(HttpStatus.OK) // Modificación de un recurso existente
-    public Mono<Franquicia> addProducto(
+    public Mono<ResponseEntity<Object>> addProducto(
             @PathVariable String franquiciaId,
             @PathVariable String sucursalNombre,
+            @RequestHeader(value = PreferenciaRetorno.HEADER_PREFER, required = false) String prefer,
+            @RequestHeader(value = EtiquetaFranquicia.HEADER_IF_MATCH, required = false) String ifMatch,
             @RequestBody Producto producto) {
 
-        return franquiciaManagement.addProducto(franquiciaId, sucursalNombre, producto);
+        Long versionEsperada = EtiquetaFranquicia.versionEsperada(ifMatch, franquiciaId);
+        return responderMutacion(franquiciaManagement.addProducto(franquiciaId, sucursalNombre, producto, versionEsperada), prefer,
+                franquicia -> productoEn(franquicia, sucursalNombre, producto.getNombre()));
     }
 
     /**
@@ -96,9 +303,11 @@ public class FranquiciaController {
     public Mono<String> deleteProducto(
             @PathVariable String franquiciaId,
             @PathVariable String sucursalNombre,
-            @PathVariable String productoNombre) {
+            @PathVariable String productoNombre,
+            @RequestHeader(value = EtiquetaFranquicia.HEADER_IF_MATCH, required = false) String ifMatch) {
 
-        return franquiciaManagement.deleteProducto(franquiciaId, sucursalNombre, productoNombre);
+        return franquiciaManagement.deleteProducto(franquiciaId, sucursalNombre, productoNombre,
+                EtiquetaFranquicia.versionEsperada(ifMatch, franquiciaId));
     }
 
     /**
@@ -109,25 +318,31 @@ public class FranquiciaController {
     @ResponseStatus(HttpStatus.OK)
     public Mono<String> deleteProductoFromAllSucursales(
             @PathVariable String franquiciaId,
-            @PathVariable String productoNombre) {
+            @PathVariable String productoNombre,
+            @RequestHeader(value = EtiquetaFranquicia.HEADER_IF_MATCH, required = false) String ifMatch) {
 
-        return franquiciaManagement.deleteProductoFromAllSucursales(franquiciaId, productoNombre);
+        return franquiciaManagement.deleteProductoFromAllSucursales(franquiciaId, productoNombre,
+                EtiquetaFranquicia.versionEsperada(ifMatch, franquiciaId));
     }
 
     /**
      * Criterio 6: Modificar la cantidad de un producto.
      * Metodo: PUT /franquicias/{franquiciaId}/sucursales/{sucursalNombre}/productos/{productoNombre}/stock
      * Cuerpo: {"stock": 150}
+     * Header opcional (también en los otros agregados y renombrados): Prefer: return=minimal (204 sin cuerpo)
+     * o Prefer: return=delta (solo el producto modificado), para no devolver la franquicia completa.
      */
     @PutMapping(
             value = "/{franquiciaId}/sucursales/{sucursalNombre}/productos/{productoNombre}/stock",
             consumes = MediaType.APPLICATION_JSON_VALUE
     )
     @ResponseStatus(HttpStatus.OK)
-    public Mono<Franquicia> updateStock(
+    public Mono<ResponseEntity<Object>> updateStock(
             @PathVariable String franquiciaId,
             @PathVariable String sucursalNombre,
             @PathVariable String productoNombre,
+            @RequestHeader(value = PreferenciaRetorno.HEADER_PREFER, required = false) String prefer,
+            @RequestHeader(value = EtiquetaFranquicia.HEADER_IF_MATCH, required = false) String ifMatch,
             @RequestBody Map<String, Integer> requestBody) {
 
         // Extraemos el stock del mapa JSON. Asumimos que el JSON es {"stock": 150}
@@ -137,7 +352,100 @@ public class FranquiciaController {
             return Mono.error(new IllegalArgumentException("El campo 'stock' es obligatorio en el cuerpo de la petición."));
         }
 
-        return franquiciaManagement.updateStock(franquiciaId, sucursalNombre, productoNombre, nuevoStock);
+        Long versionEsperada = EtiquetaFranquicia.versionEsperada(ifMatch, franquiciaId);
+        return responderStock(franquiciaManagement.updateStock(franquiciaId, sucursalNombre, productoNombre, nuevoStock, versionEsperada), prefer);
+    }
+
+    /**
+     * Extra 4: Sumar o restar stock de forma atómica (sin leer antes el valor).
+     * Metodo: PATCH /franquicias/{franquiciaId}/sucursales/{sucursalNombre}/productos/{productoNombre}/stock?evitarNegativo=true
+     * Cuerpo: {"cambio": -3}
+     */
+    @PatchMapping(
+            value = "/{franquiciaId}/sucursales/{sucursalNombre}/productos/{productoNombre}/stock",
+            consumes = MediaType.APPLICATION_JSON_VALUE
+    )
+    @ResponseStatus(HttpStatus.OK)
+    public Mono<ResponseEntity<Object>> ajustarStock(
+            @PathVariable String franquiciaId,
+            @PathVariable String sucursalNombre,
+            @PathVariable String productoNombre,
+            @RequestParam(defaultValue = "false") boolean evitarNegativo,
+            @RequestHeader(value = PreferenciaRetorno.HEADER_PREFER, required = false) String prefer,
+            @RequestHeader(value = EtiquetaFranquicia.HEADER_IF_MATCH, required = false) String ifMatch,
+            @RequestBody Map<String, Integer> requestBody) {
+
+        Integer cambio = requestBody.get("cambio");
+
+        if (cambio == null) {
+            return Mono.error(new IllegalArgumentException("El campo 'cambio' es obligatorio en el cuerpo de la petición."));
+        }
+
+        Long versionEsperada = EtiquetaFranquicia.versionEsperada(ifMatch, franquiciaId);
+        return responderStock(franquiciaManagement.ajustarStock(franquiciaId, sucursalNombre, productoNombre, cambio, evitarNegativo,
+                versionEsperada), prefer);
+    }
+
+    /**
+     * Reserva de stock para checkout (descuento atómico; 409 si no alcanza).
+     * Metodo: POST /franquicias/{franquiciaId}/sucursales/{sucursalNombre}/productos/{productoNombre}/reservas
+     * Cuerpo: {"cantidad": 2, "ttlSegundos": 300} (ttlSegundos es opcional)
+     */
+    @PostMapping(
+            value = "/{franquiciaId}/sucursales/{sucursalNombre}/productos/{productoNombre}/reservas",
+            produces = MediaType.APPLICATION_JSON_VALUE,
+            consumes = MediaType.APPLICATION_JSON_VALUE
+    )
+    @ResponseStatus(HttpStatus.CREATED)
+    public Mono<Reserva> reservarStock(
+            @PathVariable String franquiciaId,
+            @PathVariable String sucursalNombre,
+            @PathVariable String productoNombre,
+            @RequestBody Map<String, Integer> requestBody) {
+
+        Integer cantidad = requestBody.get("cantidad");
+
+        if (cantidad == null) {
+            return Mono.error(new IllegalArgumentException("El campo 'cantidad' es obligatorio en el cuerpo de la petición."));
+        }
+
+        return franquiciaManagement.reservarStock(franquiciaId, sucursalNombre, productoNombre, cantidad, requestBody.get("ttlSegundos"));
+    }
+
+    /**
+     * Confirma una reserva vigente: la cantidad queda vendida (410 si ya venció).
+     * Metodo: POST /franquicias/reservas/{reservaId}/confirmar
+     */
+    @PostMapping(value = "/reservas/{reservaId}/confirmar", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseStatus(HttpStatus.OK)
+    public Mono<Reserva> confirmarReserva(@PathVariable String reservaId) {
+        return franquiciaManagement.confirmarReserva(reservaId);
+    }
+
+    /**
+     * Libera una reserva: la cantidad vuelve al stock del producto.
+     * Metodo: DELETE /franquicias/reservas/{reservaId}
+     */
+    @DeleteMapping(value = "/reservas/{reservaId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseStatus(HttpStatus.OK)
+    public Mono<Reserva> liberarReserva(@PathVariable String reservaId) {
+        return franquiciaManagement.liberarReserva(reservaId);
+    }
+
+    /**
+     * Extra 5: Actualización masiva de stock para sincronizaciones de inventario.
+     * Metodo: POST /franquicias/stock/lote
+     * Cuerpo: arreglo JSON o NDJSON de {"franquiciaId", "sucursalNombre", "productoNombre", "stock"}
+     * Respuesta: un resultado por fila (OK / NO_ENCONTRADO / INVALIDO / ERROR), también en streaming con NDJSON.
+     */
+    @PostMapping(
+            value = "/stock/lote",
+            produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE},
+            consumes = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE}
+    )
+    @ResponseStatus(HttpStatus.OK)
+    public Flux<ResultadoStockDto> updateStockEnLote(@RequestBody Flux<ActualizacionStockDto> cambios) {
+        return franquiciaManagement.updateStockEnLote(cambios);
     }
 
     @GetMapping("/{id}/productos-max-stock")
@@ -145,20 +453,46 @@ public class FranquiciaController {
         return franquiciaManagement.obtenerProductosMaxStockPorSucursal(id);
     }
 
+    /**
+     * Criterio 7 (mantenimiento): Reconstruir el resumen precalculado de una franquicia.
+     * Metodo: POST /franquicias/{id}/productos-max-stock/reconstruir
+     */
+    @PostMapping(value = "/{id}/productos-max-stock/reconstruir", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseStatus(HttpStatus.OK)
+    public Flux<ProductoMaxStockDto> reconstruirResumenMaxStock(@PathVariable String id) {
+        return franquiciaManagement.reconstruirResumenMaxStock(id);
+    }
+
+    /**
+     * Criterio 7 (mantenimiento): Invalidar el resumen precalculado de todas las franquicias.
+     * Metodo: POST /franquicias/productos-max-stock/reconstruir
+     */
+    @PostMapping(value = "/productos-max-stock/reconstruir")
+    @ResponseStatus(HttpStatus.OK)
+    public Mono<String> reconstruirResumenMaxStockGlobal() {
+        return franquiciaManagement.reconstruirResumenMaxStock();
+    }
+
     /**
      * Extra 1: Actualizar Nombre de Franquicia.
      * Metodo: PUT /franquicias/{id}
      */
     @PutMapping(value = "/{id}", consumes = MediaType.APPLICATION_JSON_VALUE)
     @ResponseStatus(HttpStatus.OK)
-    public Mono<Franquicia> updateNombreFranquicia(@PathVariable String id, @RequestBody Map<String, String> requestBody) {
+    public Mono<ResponseEntity<Object>> updateNombreFranquicia(
+            @PathVariable String id,
+            @RequestHeader(value = PreferenciaRetorno.HEADER_PREFER, required = false) String prefer,
+            @RequestHeader(value = EtiquetaFranquicia.HEADER_IF_MATCH, required = false) String ifMatch,
+            @RequestBody Map<String, String> requestBody) {
         String nuevoNombre = requestBody.get("nombre");
 
         if (nuevoNombre == null || nuevoNombre.trim().isEmpty()) {
             return Mono.error(new IllegalArgumentException("El campo 'nombre' es obligatorio en el cuerpo de la petición."));
         }
 
-        return franquiciaManagement.updateNombreFranquicia(id, nuevoNombre);
+        Long versionEsperada = EtiquetaFranquicia.versionEsperada(ifMatch, id);
+        return responderMutacion(franquiciaManagement.updateNombreFranquicia(id, nuevoNombre, versionEsperada), prefer,
+                franquicia -> FranquiciaResumenDto.de(franquicia, VistaFranquicia.RESUMEN));
     }
 
     /**
@@ -167,9 +501,11 @@ public class FranquiciaController {
      */
     @PutMapping(value = "/{franquiciaId}/sucursales/{nombreActual}", consumes = MediaType.APPLICATION_JSON_VALUE)
     @ResponseStatus(HttpStatus.OK)
-    public Mono<Franquicia> updateNombreSucursal(
+    public Mono<ResponseEntity<Object>> updateNombreSucursal(
             @PathVariable String franquiciaId,
             @PathVariable String nombreActual,
+            @RequestHeader(value = PreferenciaRetorno.HEADER_PREFER, required = false) String prefer,
+            @RequestHeader(value = EtiquetaFranquicia.HEADER_IF_MATCH, required = false) String ifMatch,
             @RequestBody Map<String, String> requestBody) {
 
         String nuevoNombre = requestBody.get("nombre");
@@ -178,7 +514,9 @@ public class FranquiciaController {
             return Mono.error(new IllegalArgumentException("El campo 'nombre' es obligatorio en el cuerpo de la petición."));
         }
 
-        return franquiciaManagement.updateNombreSucursal(franquiciaId, nombreActual, nuevoNombre);
+        Long versionEsperada = EtiquetaFranquicia.versionEsperada(ifMatch, franquiciaId);
+        return responderMutacion(franquiciaManagement.updateNombreSucursal(franquiciaId, nombreActual, nuevoNombre, versionEsperada), prefer,
+                franquicia -> sucursalEn(franquicia, nuevoNombre));
     }
 
     /**
@@ -187,10 +525,12 @@ public class FranquiciaController {
      */
     @PutMapping(value = "/{franquiciaId}/sucursales/{sucursalNombre}/productos/{nombreActual}", consumes = MediaType.APPLICATION_JSON_VALUE)
     @ResponseStatus(HttpStatus.OK)
-    public Mono<Franquicia> updateNombreProducto(
+    public Mono<ResponseEntity<Object>> updateNombreProducto(
             @PathVariable String franquiciaId,
             @PathVariable String sucursalNombre,
             @PathVariable String nombreActual,
+            @RequestHeader(value = PreferenciaRetorno.HEADER_PREFER, required = false) String prefer,
+            @RequestHeader(value = EtiquetaFranquicia.HEADER_IF_MATCH, required = false) String ifMatch,
             @RequestBody Map<String, String> requestBody) {
 
         String nuevoNombre = requestBody.get("nombre");
@@ -199,6 +539,79 @@ public class FranquiciaController {
             return Mono.error(new IllegalArgumentException("El campo 'nombre' es obligatorio en el cuerpo de la petición."));
         }
 
-        return franquiciaManagement.updateNombreProducto(franquiciaId, sucursalNombre, nombreActual, nuevoNombre);
+        Long versionEsperada = EtiquetaFranquicia.versionEsperada(ifMatch, franquiciaId);
+        return responderMutacion(franquiciaManagement.updateNombreProducto(franquiciaId, sucursalNombre, nombreActual, nuevoNombre,
+                versionEsperada), prefer,
+                franquicia -> productoEn(franquicia, sucursalNombre, nuevoNombre));
+    }
+
+    /**
+     * Respuesta de una mutación según el header Prefer: la franquicia completa (por defecto),
+     * 204 sin cuerpo (return=minimal) o solo lo que cambió (return=delta). Si lo que cambió ya no
+     * está en el resultado (otra escritura del mismo lote lo renombró), se responde como minimal.
+     * Siempre con el ETag de la franquicia guardada, para encadenar la siguiente escritura con If-Match.
+     */
+    private Mono<ResponseEntity<Object>> responderMutacion(Mono<Franquicia> mutacion, String prefer,
+                                                           Function<Franquicia, Object> delta) {
+        PreferenciaRetorno retorno = PreferenciaRetorno.de(prefer);
+        return mutacion.map(franquicia -> responder(retorno, franquicia.getId(), franquicia.getVersion(), franquicia,
+                () -> delta.apply(franquicia)));
+    }
+
+    /**
+     * Lo mismo para las escrituras de stock, que solo traen el producto y la versión: el delta y el
+     * 204 salen de ahí, y la franquicia completa (el default) se lee aparte si el almacenamiento
+     * no la devolvió.
+     */
+    private Mono<ResponseEntity<Object>> responderStock(Mono<StockActualizadoDto> escritura, String prefer) {
+        PreferenciaRetorno retorno = PreferenciaRetorno.de(prefer);
+        if (retorno == PreferenciaRetorno.REPRESENTACION) {
+            return responderMutacion(escritura.flatMap(escrito -> escrito.getFranquicia() != null
+                    ? Mono.just(escrito.getFranquicia())
+                    : franquiciaManagement.findById(escrito.getFranquiciaId())), prefer, franquicia -> null);
+        }
+        return escritura.map(escrito -> responder(retorno, escrito.getFranquiciaId(), escrito.getVersion(), null,
+                () -> new Producto(escrito.getProductoNombre(), escrito.getStock())));
+    }
+
+    private static ResponseEntity<Object> responder(PreferenciaRetorno retorno, String id, Long version, Franquicia franquicia,
+                                                    Supplier<Object> delta) {
+        HttpHeaders headers = new HttpHeaders();
+        String etiqueta = EtiquetaFranquicia.de(id, version, VistaFranquicia.COMPLETA);
+        if (etiqueta != null) {
+            headers.setETag(etiqueta);
+        }
+        if (retorno == PreferenciaRetorno.REPRESENTACION) {
+            return ResponseEntity.ok().headers(headers).body(franquicia);
+        }
+        Object cambio = retorno == PreferenciaRetorno.DELTA ? delta.get() : null;
+        if (cambio == null) {
+            headers.set(PreferenciaRetorno.HEADER_APLICADA, PreferenciaRetorno.MINIMA.aplicada());
+            return ResponseEntity.noContent().headers(headers).build();
+        }
+        headers.set(PreferenciaRetorno.HEADER_APLICADA, PreferenciaRetorno.DELTA.aplicada());
+        return ResponseEntity.ok().headers(headers).body(cambio);
+    }
+
+    // Recorridos lineales (sin los índices por nombre del dominio): el resultado puede ser la instancia de una caché
+    private static Sucursal sucursalEn(Franquicia franquicia, String nombre) {
+        List<Sucursal> sucursales = franquicia.getSucursales() == null ? List.of() : franquicia.getSucursales();
+        for (Sucursal sucursal : sucursales) {
+            if (sucursal.getNombre() != null && sucursal.getNombre().equalsIgnoreCase(nombre)) {
+                return sucursal;
+            }
+        }
+        return null;
+    }
+
+    private static Producto productoEn(Franquicia franquicia, String sucursalNombre, String nombre) {
+        Sucursal sucursal = sucursalEn(franquicia, sucursalNombre);
+        List<Producto> productos = sucursal == null || sucursal.getProductos() == null ? List.of() : sucursal.getProductos();
+        for (Producto producto : productos) {
+            if (producto.getNombre() != null && producto.getNombre().equalsIgnoreCase(nombre)) {
+                return producto;
+            }
+        }
+        return null;
     }
 }
\ No newline at end of file
@@ -0,0 +1,49 @@
+package com.franquicias.franquicias_api.infrastructure.api;
+
+import java.util.Locale;
+
+/**
+ * Preferencia "return" del header Prefer (RFC 7240) en las mutaciones:
+ * - representation (o sin header): la franquicia completa, como siempre.
+ * - minimal: 204 sin cuerpo.
+ * - delta (propia de esta API): solo lo que cambió (la sucursal, el producto o la cabecera de la franquicia).
+ * Un valor que no se conoce se ignora, como pide el RFC: se responde la representación completa.
+ */
+enum PreferenciaRetorno {
+    REPRESENTACION("representation"),
+    MINIMA("minimal"),
+    DELTA("delta");
+
+    static final String HEADER_PREFER = "Prefer";
+    static final String HEADER_APLICADA = "Preference-Applied";
+
+    private final String valor;
+
+    PreferenciaRetorno(String valor) {
+        this.valor = valor;
+    }
+
+    // Valor para Preference-Applied
+    String aplicada() {
+        return "return=" + valor;
+    }
+
+    // "Prefer: respond-async, return=minimal; foo=bar" -> MINIMA (puede venir con otras preferencias)
+    static PreferenciaRetorno de(String prefer) {
+        if (prefer == null || prefer.isBlank()) {
+            return REPRESENTACION;
+        }
+        for (String preferencia : prefer.split(",")) {
+            String[] partes = preferencia.split(";", 2)[0].split("=", 2);
+            if (partes.length == 2 && partes[0].trim().equalsIgnoreCase("return")) {
+                String valor = partes[1].trim().replace("\"", "").toLowerCase(Locale.ROOT);
+                for (PreferenciaRetorno retorno : values()) {
+                    if (retorno.valor.equals(valor)) {
+                        return retorno;
+                    }
+                }
+            }
+        }
+        return REPRESENTACION;
+    }
+}
@@ -0,0 +1,285 @@
+package com.franquicias.franquicias_api.infrastructure.data;
+
+import com.franquicias.franquicias_api.application.dto.ActualizacionStockDto;
+import com.franquicias.franquicias_api.application.dto.FranquiciaResumenDto;
+import com.franquicias.franquicias_api.application.dto.OrdenListado;
+import com.franquicias.franquicias_api.application.dto.ProductoEncontradoDto;
+import com.franquicias.franquicias_api.application.dto.ProductoMaxStockDto;
+import com.franquicias.franquicias_api.application.dto.ResultadoStockDto;
+import com.franquicias.franquicias_api.application.dto.StockActualizadoDto;
+import com.franquicias.franquicias_api.application.dto.VistaFranquicia;
+import com.franquicias.franquicias_api.application.port.out.IFranquiciaRepository;
+import com.franquicias.franquicias_api.domain.ClaveNombre;
+import com.franquicias.franquicias_api.domain.Franquicia;
+import com.franquicias.franquicias_api.domain.Producto;
+import com.franquicias.franquicias_api.domain.Sucursal;
+import com.franquicias.franquicias_api.domain.exception.ConflictoConcurrenciaException;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineStatsCounter;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Decorador con caché de lectura sobre el adaptador de Mongo activo (embebido o normalizado; se
+ * activa con el perfil "cache", que pone franquicias.cache.habilitado=true). Al ser @Primary, el
+ * servicio y el pipeline lo reciben en lugar del adaptador directo.
+ *
+ * - Tamaño acotado, vigencia por escritura y desalojo W-TinyLFU (el de Caffeine).
+ * - Las búsquedas concurrentes de una misma clave comparten UNA consulta a Mongo (AsyncCache).
+ * - Se guarda una copia y se entrega otra copia en cada lectura: el dominio modifica la
+ *   franquicia en memoria antes de guardarla y no debe tocar la que está en la caché.
+ * - Cada escritura refresca (o invalida) la entrada; un conflicto de versión también la
+ *   invalida, para que el reintento lea el documento actual de la BD.
+ * - Un refresco solo reemplaza la entrada si trae una versión más nueva: las escrituras
+ *   concurrentes pueden terminar en cualquier orden.
+ */
+@Component
+@Primary
+@ConditionalOnProperty(name = "franquicias.cache.habilitado", havingValue = "true")
+public class CacheFranquiciaRepositoryAdapter implements IFranquiciaRepository {
+
+    private final IFranquiciaRepository repositorio;
+
+    // ID -> franquicia tal como se leyó o se guardó (nunca sale de aquí sin copiar)
+    private final AsyncCache<String, Franquicia> porId;
+
+    // Clave del nombre (ClaveNombre) -> ID. Al leer se comprueba que el nombre siga coincidiendo
+    private final AsyncCache<String, String> porNombre;
+
+    public CacheFranquiciaRepositoryAdapter(
+            @Qualifier("almacenamiento") IFranquiciaRepository repositorio,
+            @Value("${franquicias.cache.max-entradas:10000}") long maxEntradas,
+            @Value("${franquicias.cache.vigencia:30s}") Duration vigencia,
+            MeterRegistry meterRegistry) {
+        this.repositorio = repositorio;
+
+        // Métricas cache.gets (hit/miss), cache.evictions, cache.loads... con la etiqueta cache=<nombre>
+        CaffeineStatsCounter estadisticasPorId = new CaffeineStatsCounter(meterRegistry, "franquicias.porId");
+        this.porId = Caffeine.newBuilder()
+                .maximumSize(maxEntradas)
+                .expireAfterWrite(vigencia)
+                .recordStats(() -> estadisticasPorId)
+                .buildAsync();
+        estadisticasPorId.registerSizeMetric(porId.synchronous());
+
+        CaffeineStatsCounter estadisticasPorNombre = new CaffeineStatsCounter(meterRegistry, "franquicias.porNombre");
+        this.porNombre = Caffeine.newBuilder()
+                .maximumSize(maxEntradas)
+                .expireAfterWrite(vigencia)
+                .recordStats(() -> estadisticasPorNombre)
+                .buildAsync();
+        estadisticasPorNombre.registerSizeMetric(porNombre.synchronous());
+    }
+
+    @Override
+    public Mono<Franquicia> save(Franquicia franquicia) {
+        return repositorio.save(franquicia)
+                .doOnNext(this::refrescar)
+                .doOnError(ConflictoConcurrenciaException.class, e -> invalidar(franquicia.getId()));
+    }
+
+    @Override
+    public Mono<Franquicia> insertar(Franquicia franquicia) {
+        return repositorio.insertar(franquicia).doOnNext(this::refrescar);
+    }
+
+    // refrescar también suelta la clave del nombre anterior
+    @Override
+    public Mono<Franquicia> actualizarNombre(String id, String nuevoNombre) {
+        return repositorio.actualizarNombre(id, nuevoNombre).doOnNext(this::refrescar);
+    }
+
+    @Override
+    public Mono<Franquicia> findById(String id) {
+        // suppressCancel: si un llamador cancela, la consulta compartida sigue para los demás
+        return Mono.fromFuture(() -> porId.get(id, (clave, ejecutor) -> repositorio.findById(clave).toFuture()), true)
+                .map(Franquicia::copiar);
+    }
+
+    @Override
+    public Mono<Franquicia> findByNombre(String nombre) {
+        String clave = ClaveNombre.de(nombre);
+        return Mono.fromFuture(() -> porNombre.get(clave, (k, ejecutor) -> repositorio.findByNombre(nombre)
+                        // Dentro de la carga solo se toca la otra caché (la del nombre se completa con el ID)
+                        .doOnNext(this::guardarSiEsMasNueva)
+                        .map(Franquicia::getId)
+                        .toFuture()), true)
+                .flatMap(id -> findById(id)
+                        // La franquicia pudo renombrarse en otra instancia: si ya no coincide, se pregunta a la BD
+                        .filter(franquicia -> clave.equals(ClaveNombre.de(franquicia.getNombre())))
+                        .switchIfEmpty(Mono.defer(() -> {
+                            porNombre.synchronous().invalidate(clave);
+                            return repositorio.findByNombre(nombre)
+                                    .doOnNext(this::refrescar)
+                                    .map(Franquicia::copiar);
+                        })));
+    }
+
+    // El listado completo no pasa por la caché
+    @Override
+    public Flux<Franquicia> findAll() {
+        return repositorio.findAll();
+    }
+
+    @Override
+    public Flux<Franquicia> findPagina(String despuesDeId, int limite) {
+        return repositorio.findPagina(despuesDeId, limite);
+    }
+
+    // Si el documento completo ya está en la caché, la vista se arma en memoria
+    @Override
+    public Mono<FranquiciaResumenDto> findResumenById(String id, VistaFranquicia vista) {
+        Franquicia enCache = guardada(id);
+        return enCache != null ? Mono.just(FranquiciaResumenDto.de(enCache, vista)) : repositorio.findResumenById(id, vista);
+    }
+
+    @Override
+    public Mono<FranquiciaResumenDto> findResumenByNombre(String nombre, VistaFranquicia vista) {
+        return repositorio.findResumenByNombre(nombre, vista);
+    }
+
+    @Override
+    public Flux<FranquiciaResumenDto> findResumenPagina(String despuesDeId, int limite, VistaFranquicia vista) {
+        return repositorio.findResumenPagina(despuesDeId, limite, vista);
+    }
+
+    @Override
+    public Flux<Sucursal> findSucursales(String franquiciaId, int desde, int limite, OrdenListado orden) {
+        return repositorio.findSucursales(franquiciaId, desde, limite, orden);
+    }
+
+    @Override
+    public Flux<Producto> findProductos(String franquiciaId, String sucursalNombre, int desde, int limite, OrdenListado orden) {
+        return repositorio.findProductos(franquiciaId, sucursalNombre, desde, limite, orden);
+    }
+
+    // Recorre todas las franquicias: siempre va a la BD
+    @Override
+    public Flux<ProductoEncontradoDto> buscarProductos(String nombre, boolean prefijo, int limite) {
+        return repositorio.buscarProductos(nombre, prefijo, limite);
+    }
+
+    @Override
+    public Mono<Boolean> existsById(String id) {
+        return guardada(id) != null ? Mono.just(true) : repositorio.existsById(id);
+    }
+
+    @Override
+    public Flux<ProductoMaxStockDto> findProductoMaxStockPorSucursal(String franquiciaId) {
+        return repositorio.findProductoMaxStockPorSucursal(franquiciaId);
+    }
+
+    // Las actualizaciones dirigidas devuelven el producto y la versión nueva: con eso se refresca la entrada
+    @Override
+    public Mono<StockActualizadoDto> actualizarStockProducto(String franquiciaId, String sucursalNombre, String productoNombre, int nuevoStock,
+                                                             Long versionEsperada) {
+        return repositorio.actualizarStockProducto(franquiciaId, sucursalNombre, productoNombre, nuevoStock, versionEsperada)
+                .doOnNext(this::refrescarStock);
+    }
+
+    @Override
+    public Mono<StockActualizadoDto> incrementarStockProducto(String franquiciaId, String sucursalNombre, String productoNombre, int cambio, boolean evitarNegativo,
+                                                              Long versionEsperada) {
+        return repositorio.incrementarStockProducto(franquiciaId, sucursalNombre, productoNombre, cambio, evitarNegativo, versionEsperada)
+                .doOnNext(this::refrescarStock);
+    }
+
+    // La escritura masiva no devuelve el documento: se invalida
+    @Override
+    public Flux<ResultadoStockDto> actualizarStockEnLote(String franquiciaId, List<ActualizacionStockDto> cambios) {
+        return repositorio.actualizarStockEnLote(franquiciaId, cambios)
+                .doFinally(senal -> invalidar(franquiciaId));
+    }
+
+    private void refrescar(Franquicia guardadaAhora) {
+        String id = guardadaAhora.getId();
+        Franquicia anterior = guardada(id);
+        if (!guardarSiEsMasNueva(guardadaAhora)) {
+            return; // Otra escritura más nueva ya dejó su estado (y su nombre)
+        }
+        if (anterior != null && !ClaveNombre.de(anterior.getNombre()).equals(ClaveNombre.de(guardadaAhora.getNombre()))) {
+            porNombre.synchronous().invalidate(ClaveNombre.de(anterior.getNombre()));
+        }
+        porNombre.put(ClaveNombre.de(guardadaAhora.getNombre()), CompletableFuture.completedFuture(id));
+    }
+
+    /**
+     * Si la escritura trajo el documento, se refresca como siempre. Si no, a la copia en caché se le
+     * aplica el stock nuevo solo cuando es justo la versión anterior; si es más nueva queda como
+     * está, y en cualquier otro caso (falta algo en el medio) se invalida.
+     */
+    private void refrescarStock(StockActualizadoDto escrito) {
+        if (escrito.getFranquicia() != null) {
+            refrescar(escrito.getFranquicia());
+            return;
+        }
+        porId.asMap().compute(escrito.getFranquiciaId(), (id, actual) -> {
+            Franquicia enCache = valor(actual);
+            if (enCache == null || enCache.getVersion() == null || escrito.getVersion() == null) {
+                return null;
+            }
+            if (enCache.getVersion() >= escrito.getVersion()) {
+                return actual;
+            }
+            if (enCache.getVersion() != escrito.getVersion() - 1) {
+                return null;
+            }
+            Franquicia parchada = enCache.copiar();
+            Sucursal sucursal = parchada.buscarSucursalPorNombre(escrito.getSucursalNombre());
+            Producto producto = sucursal == null ? null : sucursal.buscarProductoPorNombre(escrito.getProductoNombre());
+            if (producto == null) {
+                return null;
+            }
+            producto.setStock(escrito.getStock());
+            parchada.setVersion(escrito.getVersion());
+            return CompletableFuture.completedFuture(parchada);
+        });
+    }
+
+    /**
+     * Reemplaza la entrada del ID salvo que la que está tenga una versión igual o más nueva
+     * (comparación y reemplazo atómicos). Sin versión (documentos viejos) siempre se reemplaza.
+     * @return true si quedó la franquicia recibida.
+     */
+    private boolean guardarSiEsMasNueva(Franquicia franquicia) {
+        CompletableFuture<Franquicia> nueva = CompletableFuture.completedFuture(franquicia.copiar());
+        CompletableFuture<Franquicia> quedo = porId.asMap().compute(franquicia.getId(), (id, actual) -> {
+            Franquicia enCache = valor(actual);
+            boolean masVieja = enCache != null && enCache.getVersion() != null && franquicia.getVersion() != null
+                    && franquicia.getVersion() <= enCache.getVersion();
+            return masVieja ? actual : nueva;
+        });
+        return quedo == nueva;
+    }
+
+    private void invalidar(String id) {
+        if (id == null) {
+            return;
+        }
+        Franquicia anterior = guardada(id);
+        if (anterior != null) {
+            porNombre.synchronous().invalidate(ClaveNombre.de(anterior.getNombre()));
+        }
+        porId.synchronous().invalidate(id);
+    }
+
+    // Valor ya cargado para el ID (null si no está o si su consulta sigue en curso)
+    private Franquicia guardada(String id) {
+        return valor(porId.getIfPresent(id));
+    }
+
+    private static Franquicia valor(CompletableFuture<Franquicia> futuro) {
+        return futuro != null && futuro.isDone() && !futuro.isCompletedExceptionally() ? futuro.getNow(null) : null;
+    }
+}
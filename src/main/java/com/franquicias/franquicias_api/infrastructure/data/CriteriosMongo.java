@@ -0,0 +1,52 @@
+package com.franquicias.franquicias_api.infrastructure.data;
+
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.schema.JsonSchemaObject;
+
+import java.util.regex.Pattern;
+
+// Filtros que comparten los adaptadores de Mongo (embebido y normalizado)
+final class CriteriosMongo {
+
+    private CriteriosMongo() {
+    }
+
+    /**
+     * Keyset sobre _id: {_id: {$gt: cursor}} ordenado por _id usa el índice del _id, sin skip.
+     * Los IDs que no son ObjectId (elegidos por el cliente) ordenan antes que los ObjectId en BSON;
+     * por eso, con un cursor de ese tipo, la página sigue también con todos los ObjectId.
+     */
+    static Criteria despuesDeId(String despuesDeId) {
+        if (despuesDeId == null || despuesDeId.isBlank()) {
+            return new Criteria();
+        }
+        return ObjectId.isValid(despuesDeId)
+                ? Criteria.where("id").gt(new ObjectId(despuesDeId))
+                : new Criteria().orOperator(
+                        Criteria.where("id").gt(despuesDeId),
+                        Criteria.where("id").type(JsonSchemaObject.Type.OBJECT_ID));
+    }
+
+    // Igualdad sin distinguir mayúsculas, igual que el equalsIgnoreCase del dominio
+    static Pattern nombreExacto(String nombre) {
+        return Pattern.compile("^" + Pattern.quote(nombre) + "$", Pattern.CASE_INSENSITIVE);
+    }
+
+    /**
+     * "Empieza por" que distingue mayúsculas, para campos que ya guardan la ClaveNombre. Los
+     * metacaracteres se escapan uno a uno (no con \Q...\E) para que Mongo lo reconozca
+     * como prefijo simple y recorra solo ese tramo del índice.
+     */
+    static Pattern prefijo(String texto) {
+        StringBuilder regex = new StringBuilder(texto.length() + 8).append('^');
+        for (int i = 0; i < texto.length(); i++) {
+            char caracter = texto.charAt(i);
+            if ("\\^$.|?*+()[]{}".indexOf(caracter) >= 0) {
+                regex.append('\\');
+            }
+            regex.append(caracter);
+        }
+        return Pattern.compile(regex.toString());
+    }
+}
@@ -0,0 +1,410 @@
+package com.franquicias.franquicias_api.infrastructure.data;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Persistencia de los almacenamientos en memoria: un diario de solo-anexar (WAL) en segmentos
+ * mapeados en memoria más snapshots periódicos del estado completo.
+ *
+ * - Cada cambio se anexa al segmento actual (wal-N.log) ANTES de aplicarse en memoria. Un registro
+ *   es [longitud][crc32][datos]; al recuperar, el primero incompleto o con crc distinto corta el
+ *   segmento (escritura a medias por una caída).
+ * - snapshot-N.dat es el estado que incluye todos los segmentos anteriores a N: al escribirlo se
+ *   abre el segmento N y, cuando está completo en disco, se borran los segmentos y snapshots viejos.
+ * - Recuperar = último snapshot + segmentos desde su número, en orden. Los registros del segmento
+ *   N que el snapshot ya incluía se vuelven a aplicar: quien lee los registros tiene que
+ *   aplicarlos de forma idempotente (p. ej. por versión).
+ *
+ * Sin forzarEscritura, una caída del proceso no pierde nada (las páginas mapeadas son del SO);
+ * un corte de luz puede perder lo último que el SO no llegó a bajar a disco.
+ */
+@Slf4j
+final class DiarioMemoria {
+
+    // Un registro del diario o del snapshot (tipo + campos, lo define cada almacenamiento)
+    interface Registro {
+        void escribir(DataOutputStream salida) throws IOException;
+    }
+
+    interface Lector {
+        void leer(DataInputStream entrada) throws IOException;
+    }
+
+    private static final String SEGMENTO = "wal-";
+    private static final String SNAPSHOT = "snapshot-";
+    private static final int CABECERA = 8;
+
+    private final Path directorio;
+    private final int tamanoSegmento;
+    private final boolean forzarEscritura;
+    private final Supplier<? extends Iterable<? extends Registro>> estado;
+
+    // Los que anexan y aplican toman la de lectura; abrir otro segmento toma la de escritura
+    private final ReentrantReadWriteLock rotacion = new ReentrantReadWriteLock();
+    private final Object snapshotEnCurso = new Object();
+
+    // Registros que el último snapshot no incluye: sin ninguno, snapshot() no escribe nada
+    private final AtomicLong pendientes = new AtomicLong();
+
+    private long numeroSegmento;
+    private MappedByteBuffer segmento;
+    private boolean cerrado;
+
+    /**
+     * @param estado Estado completo en el momento de llamarlo, como registros (se usa para los snapshots).
+     */
+    DiarioMemoria(Path directorio, int tamanoSegmento, boolean forzarEscritura,
+                  Supplier<? extends Iterable<? extends Registro>> estado) {
+        this.directorio = directorio;
+        this.tamanoSegmento = tamanoSegmento;
+        this.forzarEscritura = forzarEscritura;
+        this.estado = estado;
+    }
+
+    /**
+     * Pasa por {@code lector} el último snapshot y luego los segmentos que lo siguen, y abre un
+     * segmento nuevo para lo que venga.
+     * @return Registros leídos de los segmentos (0 = el snapshot ya estaba al día).
+     */
+    long recuperar(Lector lector) {
+        try {
+            Files.createDirectories(directorio);
+            long snapshot = ultimo(SNAPSHOT, ".dat");
+            if (snapshot > 0) {
+                try (InputStream entrada = new BufferedInputStream(Files.newInputStream(archivo(SNAPSHOT, snapshot, ".dat")))) {
+                    if (!leerRegistros(entrada, lector)) {
+                        throw new IllegalStateException("Snapshot dañado: " + archivo(SNAPSHOT, snapshot, ".dat"));
+                    }
+                }
+            }
+
+            long registros = 0;
+            long ultimoSegmento = snapshot;
+            for (long numero : numeros(SEGMENTO, ".log")) {
+                if (numero < snapshot) {
+                    continue; // Ya incluido en el snapshot (quedó de un borrado que no terminó)
+                }
+                Path archivo = archivo(SEGMENTO, numero, ".log");
+                Contador contador = new Contador(lector);
+                try (InputStream entrada = new BufferedInputStream(Files.newInputStream(archivo))) {
+                    if (!leerRegistros(entrada, contador)) {
+                        log.warn("{}: registro incompleto o dañado al final; se descarta desde ahí", archivo);
+                    }
+                }
+                registros += contador.leidos;
+                ultimoSegmento = Math.max(ultimoSegmento, numero);
+            }
+
+            rotacion.writeLock().lock();
+            try {
+                abrirSegmento(ultimoSegmento + 1, tamanoSegmento);
+            } finally {
+                rotacion.writeLock().unlock();
+            }
+            pendientes.set(registros);
+            return registros;
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo recuperar el almacenamiento en memoria desde " + directorio, e);
+        }
+    }
+
+    /**
+     * Anexa el registro y, sin que pueda colarse una rotación en medio, aplica el cambio.
+     * {@code aplicar} no debería fallar: lo que ya está en el diario se repite al recuperar.
+     */
+    <T> T registrar(Registro registro, Supplier<T> aplicar) {
+        byte[] datos = serializar(registro);
+        while (true) {
+            rotacion.readLock().lock();
+            try {
+                if (anexar(datos)) {
+                    pendientes.incrementAndGet();
+                    return aplicar.get();
+                }
+            } finally {
+                rotacion.readLock().unlock();
+            }
+            // Segmento lleno: se abre otro y un snapshot en segundo plano permite borrar los anteriores
+            if (rotarSiNoCabe(datos.length)) {
+                Schedulers.boundedElastic().schedule(this::snapshotSeguro);
+            }
+        }
+    }
+
+    /**
+     * Escribe el estado completo y borra lo que ese snapshot deja obsoleto. Se puede llamar
+     * con escrituras en curso (ver la documentación de la clase).
+     */
+    void snapshot() {
+        synchronized (snapshotEnCurso) {
+            long numero;
+            long incluidos;
+            rotacion.writeLock().lock();
+            try {
+                incluidos = pendientes.get();
+                if (cerrado || incluidos == 0) {
+                    return;
+                }
+                numero = numeroSegmento + 1;
+                abrirSegmento(numero, tamanoSegmento);
+            } finally {
+                rotacion.writeLock().unlock();
+            }
+
+            // Todo lo anexado a segmentos anteriores ya está aplicado: el estado de ahora lo incluye
+            Path temporal = archivo(SNAPSHOT, numero, ".tmp");
+            long registros = 0;
+            try {
+                try (FileChannel salida = FileChannel.open(temporal, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    DataOutputStream datos = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(salida), 1 << 16));
+                    for (Registro registro : estado.get()) {
+                        escribirMarco(datos, serializar(registro));
+                        registros++;
+                    }
+                    datos.flush();
+                    salida.force(true);
+                }
+                Files.move(temporal, archivo(SNAPSHOT, numero, ".dat"), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                throw new UncheckedIOException("No se pudo escribir el snapshot " + temporal, e);
+            }
+
+            pendientes.addAndGet(-incluidos);
+            borrarAnteriores(SEGMENTO, ".log", numero);
+            borrarAnteriores(SNAPSHOT, ".dat", numero);
+            log.info("Snapshot {} de {} escrito ({} registros)", numero, directorio, registros);
+        }
+    }
+
+    // Snapshot final (el próximo arranque no relee segmentos) y cierre del segmento
+    void cerrar() {
+        snapshotSeguro();
+        rotacion.writeLock().lock();
+        try {
+            cerrado = true;
+            boolean vacio = segmento != null && segmento.position() == 0;
+            cerrarSegmento();
+            if (vacio) {
+                // Sin registros: no se deja un segmento vacío por cada reinicio
+                Files.deleteIfExists(archivo(SEGMENTO, numeroSegmento, ".log"));
+            }
+        } catch (IOException e) {
+            log.warn("No se pudo borrar el segmento vacío {} de {}", numeroSegmento, directorio, e);
+        } finally {
+            rotacion.writeLock().unlock();
+        }
+    }
+
+    private void snapshotSeguro() {
+        try {
+            snapshot();
+        } catch (RuntimeException e) {
+            log.error("Falló el snapshot de {}; los segmentos se conservan hasta el próximo", directorio, e);
+        }
+    }
+
+    private boolean anexar(byte[] datos) {
+        synchronized (this) {
+            if (cerrado) {
+                throw new IllegalStateException("El almacenamiento en memoria ya se cerró");
+            }
+            if (segmento.remaining() < CABECERA + datos.length) {
+                return false;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(datos);
+            int inicio = segmento.position();
+            // La longitud va al final: un registro cortado a medias queda con longitud 0
+            segmento.position(inicio + 4);
+            segmento.putInt((int) crc.getValue());
+            segmento.put(datos);
+            segmento.putInt(inicio, datos.length);
+            if (forzarEscritura) {
+                segmento.force(inicio, CABECERA + datos.length);
+            }
+            return true;
+        }
+    }
+
+    private boolean rotarSiNoCabe(int longitud) {
+        rotacion.writeLock().lock();
+        try {
+            if (segmento.remaining() >= CABECERA + longitud) {
+                return false; // Otro hilo ya rotó
+            }
+            abrirSegmento(numeroSegmento + 1, Math.max(tamanoSegmento, CABECERA + longitud));
+            return true;
+        } finally {
+            rotacion.writeLock().unlock();
+        }
+    }
+
+    // Con la escritura de la rotación tomada (o antes de que haya escritores)
+    private void abrirSegmento(long numero, int tamano) {
+        cerrarSegmento();
+        try (RandomAccessFile archivo = new RandomAccessFile(archivo(SEGMENTO, numero, ".log").toFile(), "rw")) {
+            archivo.setLength(tamano); // Relleno con ceros: una longitud 0 marca el final
+            // El mapeo sigue siendo válido después de cerrar el archivo
+            segmento = archivo.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, tamano);
+            numeroSegmento = numero;
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo abrir el segmento " + numero + " en " + directorio, e);
+        }
+    }
+
+    private void cerrarSegmento() {
+        if (segmento != null) {
+            segmento.force();
+            segmento = null;
+        }
+    }
+
+    // false si el flujo terminó en un registro incompleto o dañado
+    private static boolean leerRegistros(InputStream flujo, Lector lector) throws IOException {
+        DataInputStream entrada = new DataInputStream(flujo);
+        while (true) {
+            int longitud;
+            try {
+                longitud = entrada.readInt();
+            } catch (EOFException e) {
+                return true;
+            }
+            if (longitud == 0) {
+                return true; // Relleno del segmento
+            }
+            if (longitud < 0) {
+                return false;
+            }
+            byte[] datos = new byte[longitud];
+            int crcEsperado;
+            try {
+                crcEsperado = entrada.readInt();
+                entrada.readFully(datos);
+            } catch (EOFException e) {
+                return false;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(datos);
+            if ((int) crc.getValue() != crcEsperado) {
+                return false;
+            }
+            lector.leer(new DataInputStream(new ByteArrayInputStream(datos)));
+        }
+    }
+
+    private static void escribirMarco(DataOutputStream salida, byte[] datos) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(datos);
+        salida.writeInt(datos.length);
+        salida.writeInt((int) crc.getValue());
+        salida.write(datos);
+    }
+
+    // Texto con longitud delante (-1 = null); writeUTF se queda corto para nombres largos
+    static void escribirTexto(DataOutputStream salida, String texto) throws IOException {
+        if (texto == null) {
+            salida.writeInt(-1);
+            return;
+        }
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        salida.writeInt(bytes.length);
+        salida.write(bytes);
+    }
+
+    static String leerTexto(DataInputStream entrada) throws IOException {
+        int longitud = entrada.readInt();
+        if (longitud < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[longitud];
+        entrada.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] serializar(Registro registro) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            registro.escribir(new DataOutputStream(bytes));
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path archivo(String prefijo, long numero, String extension) {
+        return directorio.resolve(prefijo + String.format("%012d", numero) + extension);
+    }
+
+    private long ultimo(String prefijo, String extension) throws IOException {
+        List<Long> existentes = numeros(prefijo, extension);
+        return existentes.isEmpty() ? 0 : existentes.get(existentes.size() - 1);
+    }
+
+    private List<Long> numeros(String prefijo, String extension) throws IOException {
+        try (Stream<Path> archivos = Files.list(directorio)) {
+            return archivos.map(archivo -> archivo.getFileName().toString())
+                    .filter(nombre -> nombre.startsWith(prefijo) && nombre.endsWith(extension))
+                    .map(nombre -> nombre.substring(prefijo.length(), nombre.length() - extension.length()))
+                    .filter(numero -> !numero.isEmpty() && numero.chars().allMatch(Character::isDigit))
+                    .map(Long::parseLong)
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private void borrarAnteriores(String prefijo, String extension, long numero) {
+        try {
+            for (long anterior : numeros(prefijo, extension)) {
+                if (anterior < numero) {
+                    Files.deleteIfExists(archivo(prefijo, anterior, extension));
+                }
+            }
+        } catch (IOException e) {
+            // Se reintenta en el próximo snapshot; al recuperar se saltan los segmentos viejos
+            log.warn("No se pudieron borrar los {} anteriores a {} en {}", prefijo, numero, directorio, e);
+        }
+    }
+
+    private static final class Contador implements Lector {
+        private final Lector lector;
+        private long leidos;
+
+        private Contador(Lector lector) {
+            this.lector = lector;
+        }
+
+        @Override
+        public void leer(DataInputStream entrada) throws IOException {
+            lector.leer(entrada);
+            leidos++;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.franquicias.franquicias_api.infrastructure.data;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+// Almacenamiento normalizado: cabecera de la franquicia (sin sucursales)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = FranquiciaFila.COLECCION)
+class FranquiciaFila {
+
+    static final String COLECCION = "franquicias_normalizadas";
+
+    @Id
+    private String id;
+
+    private String nombre;
+
+    // ClaveNombre del nombre, con índice único (como en el documento embebido)
+    private String nombreNormalizado;
+
+    // Sube con cada cambio de la franquicia o de cualquiera de sus filas (compare-and-set en save)
+    private Long version;
+
+    // Además la cabecera puede llevar guardandoHasta y escrituras (las anotaciones de las escrituras
+    // en curso): solo las usa NormalizadoFranquiciaRepositoryAdapter en sus filtros y no se mapean.
+}
@@ -0,0 +1,776 @@
+package com.franquicias.franquicias_api.infrastructure.data;
+
+import com.franquicias.franquicias_api.application.dto.ActualizacionStockDto;
+import com.franquicias.franquicias_api.application.dto.FranquiciaResumenDto;
+import com.franquicias.franquicias_api.application.dto.OrdenListado;
+import com.franquicias.franquicias_api.application.dto.ProductoEncontradoDto;
+import com.franquicias.franquicias_api.application.dto.ProductoMaxStockDto;
+import com.franquicias.franquicias_api.application.dto.ResultadoStockDto;
+import com.franquicias.franquicias_api.application.dto.StockActualizadoDto;
+import com.franquicias.franquicias_api.application.dto.VistaFranquicia;
+import com.franquicias.franquicias_api.application.port.out.IFranquiciaRepository;
+import com.franquicias.franquicias_api.domain.ClaveNombre;
+import com.franquicias.franquicias_api.domain.Franquicia;
+import com.franquicias.franquicias_api.domain.Producto;
+import com.franquicias.franquicias_api.domain.Sucursal;
+import com.franquicias.franquicias_api.domain.exception.ConflictoConcurrenciaException;
+import com.franquicias.franquicias_api.domain.exception.RecursoDuplicadoException;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Almacenamiento en memoria (franquicias.almacenamiento=memoria, perfil "memoria"): todas las
+ * franquicias en un mapa concurrente ordenado por ID, con índices secundarios por nombre
+ * (ClaveNombre -> ID) y por producto (ClaveNombre del producto -> IDs de franquicia).
+ * Persiste con un diario de escrituras y snapshots periódicos (DiarioMemoria).
+ *
+ * - Una franquicia publicada no se modifica nunca: cada escritura arma otra y la reemplaza, así
+ *   los lectores no toman cerrojos y siempre ven una versión entera. Los cambios de stock solo
+ *   copian la lista de sucursales y la de productos de la sucursal tocada (no el documento).
+ * - Los escritores de una misma franquicia se ordenan con un cerrojo por ID (repartido en
+ *   franjas); la versión se compara y se sube igual que con el @Version de Mongo.
+ * - Mismo contrato que los adaptadores de Mongo (ver FranquiciaRepositoryContratoTest), con los
+ *   nombres comparados por ClaveNombre, como el almacenamiento normalizado.
+ *
+ * Es de una sola instancia: varias instancias no comparten los datos.
+ */
+@Slf4j
+@Component
+@Qualifier("almacenamiento")
+@ConditionalOnProperty(name = "franquicias.almacenamiento", havingValue = "memoria")
+public class MemoriaFranquiciaRepositoryAdapter implements IFranquiciaRepository {
+
+    // Tipos de registro del diario
+    private static final byte COMPLETA = 'F';
+    private static final byte NOMBRE = 'N';
+    private static final byte STOCK = 'S';
+
+    private static final int FRANJAS_CERROJO = 64;
+
+    /**
+     * Mismo orden que el _id en Mongo: primero los IDs elegidos por el cliente (como texto) y
+     * después los ObjectId (su hexadecimal ordena igual que sus bytes). Lo usa findPagina.
+     */
+    static final Comparator<String> ORDEN_ID = Comparator.comparing(ObjectId::isValid)
+            .thenComparing(Comparator.naturalOrder());
+
+    private final ConcurrentSkipListMap<String, Entrada> franquicias = new ConcurrentSkipListMap<>(ORDEN_ID);
+
+    // Clave del nombre -> ID (hace de índice único)
+    private final ConcurrentHashMap<String, String> porNombre = new ConcurrentHashMap<>();
+
+    // Clave del producto -> IDs de las franquicias que lo tienen (conjuntos inmutables, se reemplazan)
+    private final ConcurrentSkipListMap<String, SortedSet<String>> porProducto = new ConcurrentSkipListMap<>();
+
+    private final Object[] cerrojos = new Object[FRANJAS_CERROJO];
+
+    // null = sin persistencia (franquicias.memoria.directorio vacío)
+    private final DiarioMemoria diario;
+
+    public MemoriaFranquiciaRepositoryAdapter(
+            @Value("${franquicias.memoria.directorio:}") String directorio,
+            @Value("${franquicias.memoria.tamano-segmento:64MB}") DataSize tamanoSegmento,
+            @Value("${franquicias.memoria.forzar-escritura:false}") boolean forzarEscritura) {
+        for (int i = 0; i < cerrojos.length; i++) {
+            cerrojos[i] = new Object();
+        }
+
+        if (directorio == null || directorio.isBlank()) {
+            this.diario = null;
+            log.warn("Almacenamiento en memoria sin directorio: los datos se pierden al reiniciar");
+            return;
+        }
+
+        this.diario = new DiarioMemoria(Path.of(directorio, "franquicias"), Math.toIntExact(tamanoSegmento.toBytes()),
+                forzarEscritura, this::estado);
+        long inicio = System.nanoTime();
+        long registros = diario.recuperar(this::reaplicar);
+        // Los índices se arman una vez al final: durante la recuperación hay estados intermedios
+        franquicias.forEach((id, entrada) -> {
+            indexarNombre(id, null, entrada);
+            indexarProductos(id, null, entrada);
+        });
+        log.info("Almacenamiento en memoria recuperado de {}: {} franquicias, {} registros del diario, {} ms",
+                directorio, franquicias.size(), registros, (System.nanoTime() - inicio) / 1_000_000);
+    }
+
+    @Scheduled(initialDelayString = "${franquicias.memoria.snapshot:5m}", fixedDelayString = "${franquicias.memoria.snapshot:5m}")
+    public void snapshotPeriodico() {
+        if (diario != null) {
+            diario.snapshot();
+        }
+    }
+
+    // Snapshot final: el siguiente arranque solo lee el snapshot
+    @PreDestroy
+    public void cerrar() {
+        if (diario != null) {
+            diario.cerrar();
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // Escrituras
+    // ----------------------------------------------------------------------
+
+    /**
+     * Compare-and-set sobre la versión, como el @Version de Spring Data: sin versión solo se
+     * guarda si el ID no existe (queda en 0); con versión, solo si coincide con la guardada.
+     * Igual que Spring Data, asigna el ID y la versión nueva a la franquicia recibida.
+     */
+    @Override
+    public Mono<Franquicia> save(Franquicia franquicia) {
+        return Mono.fromCallable(() -> {
+            if (franquicia.getId() == null) {
+                franquicia.setId(nuevoId());
+            }
+            String id = franquicia.getId();
+            synchronized (cerrojo(id)) {
+                Entrada actual = franquicias.get(id);
+                boolean coincide = franquicia.getVersion() == null
+                        ? actual == null
+                        : actual != null && franquicia.getVersion() == actual.version();
+                if (!coincide) {
+                    throw new ConflictoConcurrenciaException(id);
+                }
+                long version = actual == null ? 0 : actual.version() + 1;
+                escribirCompleta(id, actual, franquicia, version);
+                franquicia.setVersion(version);
+                return franquicia;
+            }
+        });
+    }
+
+    @Override
+    public Mono<Franquicia> insertar(Franquicia franquicia) {
+        return Mono.fromCallable(() -> {
+            if (franquicia.getId() == null) {
+                franquicia.setId(nuevoId());
+            }
+            String id = franquicia.getId();
+            synchronized (cerrojo(id)) {
+                if (franquicias.containsKey(id)) {
+                    throw new RecursoDuplicadoException("Ya existe una franquicia con el ID: " + id);
+                }
+                escribirCompleta(id, null, franquicia, 0);
+                franquicia.setVersion(0L);
+                return franquicia;
+            }
+        });
+    }
+
+    @Override
+    public Mono<Franquicia> actualizarNombre(String id, String nuevoNombre) {
+        return Mono.fromCallable(() -> {
+            synchronized (cerrojo(id)) {
+                Entrada actual = franquicias.get(id);
+                if (actual == null) {
+                    return null;
+                }
+                long version = actual.version() + 1;
+                Franquicia renombrada = new Franquicia(nuevoNombre, actual.franquicia.getSucursales());
+                renombrada.setId(id);
+                renombrada.setVersion(version);
+                Entrada nueva = actual.con(renombrada);
+
+                boolean reservado = reservarNombre(id, nuevoNombre);
+                try {
+                    registrar(salida -> {
+                        salida.writeByte(NOMBRE);
+                        DiarioMemoria.escribirTexto(salida, id);
+                        salida.writeLong(version);
+                        DiarioMemoria.escribirTexto(salida, nuevoNombre);
+                    }, () -> publicar(id, actual, nueva, false));
+                } catch (RuntimeException e) {
+                    liberarNombre(id, nuevoNombre, reservado);
+                    throw e;
+                }
+                return renombrada.copiar();
+            }
+        });
+    }
+
+    @Override
+    public Mono<StockActualizadoDto> actualizarStockProducto(String franquiciaId, String sucursalNombre, String productoNombre, int nuevoStock,
+                                                             Long versionEsperada) {
+        return Mono.fromCallable(() -> {
+            synchronized (cerrojo(franquiciaId)) {
+                Entrada actual = enVersion(franquicias.get(franquiciaId), versionEsperada);
+                int[] posicion = actual == null ? null : actual.ubicar(sucursalNombre, productoNombre);
+                if (posicion == null) {
+                    return null;
+                }
+                return stockEscrito(escribirStock(franquiciaId, actual, List.of(new CambioStock(sucursalNombre, productoNombre, nuevoStock, posicion))),
+                        posicion);
+            }
+        });
+    }
+
+    // Sin lectura-modificación-escritura del lado del llamador: la suma se hace bajo el cerrojo
+    @Override
+    public Mono<StockActualizadoDto> incrementarStockProducto(String franquiciaId, String sucursalNombre, String productoNombre, int cambio, boolean evitarNegativo,
+                                                              Long versionEsperada) {
+        return Mono.fromCallable(() -> {
+            synchronized (cerrojo(franquiciaId)) {
+                Entrada actual = enVersion(franquicias.get(franquiciaId), versionEsperada);
+                int[] posicion = actual == null ? null : actual.ubicar(sucursalNombre, productoNombre);
+                if (posicion == null) {
+                    return null;
+                }
+                int stock = actual.producto(posicion).getStock() + cambio;
+                if (evitarNegativo && cambio < 0 && stock < 0) {
+                    return null;
+                }
+                return stockEscrito(escribirStock(franquiciaId, actual, List.of(new CambioStock(sucursalNombre, productoNombre, stock, posicion))),
+                        posicion);
+            }
+        });
+    }
+
+    // Un solo registro en el diario para todo el lote; cada fila que coincide sube la versión (como cada updateOne)
+    @Override
+    public Flux<ResultadoStockDto> actualizarStockEnLote(String franquiciaId, List<ActualizacionStockDto> cambios) {
+        return Mono.fromCallable(() -> {
+            synchronized (cerrojo(franquiciaId)) {
+                Entrada actual = franquicias.get(franquiciaId);
+                List<CambioStock> aplicables = new ArrayList<>(cambios.size());
+                List<ResultadoStockDto> resultados = new ArrayList<>(cambios.size());
+                for (ActualizacionStockDto cambio : cambios) {
+                    int[] posicion = actual == null ? null : actual.ubicar(cambio.getSucursalNombre(), cambio.getProductoNombre());
+                    if (posicion != null) {
+                        aplicables.add(new CambioStock(cambio.getSucursalNombre(), cambio.getProductoNombre(), cambio.getStock(), posicion));
+                    }
+                    resultados.add(ResultadoStockDto.de(cambio, posicion != null ? ResultadoStockDto.Estado.OK : ResultadoStockDto.Estado.NO_ENCONTRADO));
+                }
+                if (!aplicables.isEmpty()) {
+                    escribirStock(franquiciaId, actual, aplicables);
+                }
+                return resultados;
+            }
+        }).flatMapMany(Flux::fromIterable);
+    }
+
+    // Con If-Match, una entrada que ya va por otra versión no coincide (igual que el filtro del embebido)
+    private static Entrada enVersion(Entrada actual, Long versionEsperada) {
+        return actual == null || versionEsperada == null || actual.version() == versionEsperada ? actual : null;
+    }
+
+    // Solo el producto escrito y la versión: sin copiar la franquicia entera
+    private static StockActualizadoDto stockEscrito(Franquicia publicada, int[] posicion) {
+        Sucursal sucursal = publicada.getSucursales().get(posicion[0]);
+        Producto producto = sucursal.getProductos().get(posicion[1]);
+        return new StockActualizadoDto(publicada.getId(), publicada.getVersion(), sucursal.getNombre(),
+                producto.getNombre(), producto.getStock(), null);
+    }
+
+    // Con el cerrojo del ID tomado
+    private void escribirCompleta(String id, Entrada actual, Franquicia franquicia, long version) {
+        Franquicia guardada = franquicia.copiar();
+        guardada.setVersion(version);
+        Entrada nueva = new Entrada(guardada);
+
+        boolean reservado = reservarNombre(id, guardada.getNombre());
+        try {
+            registrar(salida -> escribirFranquicia(salida, guardada), () -> publicar(id, actual, nueva, true));
+        } catch (RuntimeException e) {
+            liberarNombre(id, guardada.getNombre(), reservado);
+            throw e;
+        }
+    }
+
+    // Con el cerrojo del ID tomado; devuelve la franquicia publicada (no se debe modificar)
+    private Franquicia escribirStock(String id, Entrada actual, List<CambioStock> cambios) {
+        long version = actual.version() + cambios.size();
+        Entrada nueva = actual.conStock(cambios, version);
+        registrar(salida -> {
+            salida.writeByte(STOCK);
+            DiarioMemoria.escribirTexto(salida, id);
+            salida.writeLong(version);
+            salida.writeInt(cambios.size());
+            for (CambioStock cambio : cambios) {
+                DiarioMemoria.escribirTexto(salida, cambio.sucursalNombre());
+                DiarioMemoria.escribirTexto(salida, cambio.productoNombre());
+                salida.writeInt(cambio.stock());
+            }
+        }, () -> publicar(id, actual, nueva, false));
+        return nueva.franquicia;
+    }
+
+    private <T> T registrar(DiarioMemoria.Registro registro, Supplier<T> aplicar) {
+        return diario == null ? aplicar.get() : diario.registrar(registro, aplicar);
+    }
+
+    private Void publicar(String id, Entrada anterior, Entrada nueva, boolean cambiaronProductos) {
+        franquicias.put(id, nueva);
+        indexarNombre(id, anterior, nueva);
+        if (cambiaronProductos) {
+            indexarProductos(id, anterior, nueva);
+        }
+        return null;
+    }
+
+    /**
+     * Reserva la clave del nombre para este ID antes de escribir (hace de índice único).
+     * @return true si la reservó ahora (hay que liberarla si la escritura falla).
+     */
+    private boolean reservarNombre(String id, String nombre) {
+        String clave = ClaveNombre.de(nombre);
+        if (clave == null) {
+            return false;
+        }
+        String duenio = porNombre.putIfAbsent(clave, id);
+        if (duenio == null) {
+            return true;
+        }
+        if (!duenio.equals(id)) {
+            throw new RecursoDuplicadoException("Ya existe una franquicia con el nombre: " + nombre);
+        }
+        return false;
+    }
+
+    private void liberarNombre(String id, String nombre, boolean reservado) {
+        if (reservado) {
+            porNombre.remove(ClaveNombre.de(nombre), id);
+        }
+    }
+
+    private void indexarNombre(String id, Entrada anterior, Entrada nueva) {
+        String clave = nueva.franquicia.getNombreNormalizado();
+        if (clave != null) {
+            porNombre.put(clave, id);
+        }
+        String claveAnterior = anterior == null ? null : anterior.franquicia.getNombreNormalizado();
+        if (claveAnterior != null && !claveAnterior.equals(clave)) {
+            porNombre.remove(claveAnterior, id);
+        }
+    }
+
+    // Solo los productos que entran o salen; los conjuntos se reemplazan (compute puede reintentar la función)
+    private void indexarProductos(String id, Entrada anterior, Entrada nueva) {
+        Set<String> antes = anterior == null ? Set.of() : anterior.clavesProductos;
+        for (String clave : antes) {
+            if (!nueva.clavesProductos.contains(clave)) {
+                porProducto.computeIfPresent(clave, (k, ids) -> {
+                    SortedSet<String> resto = new TreeSet<>(ids);
+                    resto.remove(id);
+                    return resto.isEmpty() ? null : Collections.unmodifiableSortedSet(resto);
+                });
+            }
+        }
+        for (String clave : nueva.clavesProductos) {
+            if (!antes.contains(clave)) {
+                porProducto.compute(clave, (k, ids) -> {
+                    SortedSet<String> todos = ids == null ? new TreeSet<>(ORDEN_ID) : new TreeSet<>(ids);
+                    todos.add(id);
+                    return Collections.unmodifiableSortedSet(todos);
+                });
+            }
+        }
+    }
+
+    private Object cerrojo(String id) {
+        return cerrojos[Math.floorMod(id.hashCode(), cerrojos.length)];
+    }
+
+    private static String nuevoId() {
+        return new ObjectId().toHexString();
+    }
+
+    // ----------------------------------------------------------------------
+    // Lecturas (siempre copias: el dominio modifica lo que recibe)
+    // ----------------------------------------------------------------------
+
+    @Override
+    public Mono<Franquicia> findById(String id) {
+        return Mono.fromCallable(() -> copiar(franquicias.get(id)));
+    }
+
+    @Override
+    public Mono<Franquicia> findByNombre(String nombre) {
+        return Mono.fromCallable(() -> copiar(porNombreActual(nombre)));
+    }
+
+    @Override
+    public Mono<Boolean> existsById(String id) {
+        return Mono.fromCallable(() -> franquicias.containsKey(id));
+    }
+
+    @Override
+    public Flux<Franquicia> findAll() {
+        return Flux.defer(() -> Flux.fromIterable(franquicias.values())).map(entrada -> entrada.franquicia.copiar());
+    }
+
+    // Keyset sobre el ID con el mismo orden que el _id de Mongo (ver ORDEN_ID)
+    @Override
+    public Flux<Franquicia> findPagina(String despuesDeId, int limite) {
+        return pagina(despuesDeId, limite).map(entrada -> entrada.franquicia.copiar());
+    }
+
+    @Override
+    public Mono<FranquiciaResumenDto> findResumenById(String id, VistaFranquicia vista) {
+        return Mono.fromCallable(() -> resumen(franquicias.get(id), vista));
+    }
+
+    @Override
+    public Mono<FranquiciaResumenDto> findResumenByNombre(String nombre, VistaFranquicia vista) {
+        return Mono.fromCallable(() -> resumen(porNombreActual(nombre), vista));
+    }
+
+    @Override
+    public Flux<FranquiciaResumenDto> findResumenPagina(String despuesDeId, int limite, VistaFranquicia vista) {
+        return pagina(despuesDeId, limite).map(entrada -> FranquiciaResumenDto.de(entrada.franquicia, vista));
+    }
+
+    // Orden estable: a igual clave (o si la sucursal no tiene el campo, como stock) queda el orden guardado
+    @Override
+    public Flux<Sucursal> findSucursales(String franquiciaId, int desde, int limite, OrdenListado orden) {
+        return Mono.fromCallable(() -> {
+            Entrada entrada = franquicias.get(franquiciaId);
+            if (entrada == null) {
+                return List.<Sucursal>of();
+            }
+            Comparator<Sucursal> comparador = "nombre".equals(orden.getCampo()) ? comparador(Sucursal::getNombre, orden) : null;
+            return tramo(entrada.franquicia.getSucursales(), desde, limite, comparador);
+        }).flatMapMany(Flux::fromIterable).map(Sucursal::copiar);
+    }
+
+    @Override
+    public Flux<Producto> findProductos(String franquiciaId, String sucursalNombre, int desde, int limite, OrdenListado orden) {
+        return Mono.fromCallable(() -> {
+            Entrada entrada = franquicias.get(franquiciaId);
+            Integer posicion = entrada == null ? null : entrada.sucursales.get(ClaveNombre.de(sucursalNombre));
+            if (posicion == null) {
+                return List.<Producto>of();
+            }
+            Comparator<Producto> comparador = orden.getCampo() == null ? null
+                    : orden.esPorStock() ? comparador(Producto::getStock, orden) : comparador(Producto::getNombre, orden);
+            return tramo(entrada.franquicia.getSucursales().get(posicion).getProductos(), desde, limite, comparador);
+        }).flatMapMany(Flux::fromIterable).map(producto -> new Producto(producto.getNombre(), producto.getStock()));
+    }
+
+    /**
+     * Recorre el índice de productos desde la clave buscada (una sola clave, o todas las que
+     * empiezan por ella) y, en cada franquicia del índice, sus sucursales en orden.
+     */
+    @Override
+    public Flux<ProductoEncontradoDto> buscarProductos(String nombre, boolean prefijo, int limite) {
+        return Mono.fromCallable(() -> {
+            String clave = ClaveNombre.de(nombre);
+            NavigableMap<String, SortedSet<String>> desdeClave = porProducto.tailMap(clave, true);
+            List<ProductoEncontradoDto> filas = new ArrayList<>();
+            for (Map.Entry<String, SortedSet<String>> indice : desdeClave.entrySet()) {
+                String claveProducto = indice.getKey();
+                if (prefijo ? !claveProducto.startsWith(clave) : !claveProducto.equals(clave)) {
+                    break;
+                }
+                for (String id : indice.getValue()) {
+                    Entrada entrada = franquicias.get(id);
+                    if (entrada != null && entrada.agregarCoincidencias(claveProducto, filas, limite)) {
+                        return filas;
+                    }
+                }
+            }
+            return filas;
+        }).flatMapMany(Flux::fromIterable);
+    }
+
+    // En empate gana el último producto, igual que el $reduce de MongoFranquiciaRepositoryAdapter
+    @Override
+    public Flux<ProductoMaxStockDto> findProductoMaxStockPorSucursal(String franquiciaId) {
+        return Mono.fromCallable(() -> {
+            Entrada entrada = franquicias.get(franquiciaId);
+            if (entrada == null) {
+                return List.<ProductoMaxStockDto>of();
+            }
+            List<ProductoMaxStockDto> filas = new ArrayList<>(entrada.franquicia.getSucursales().size());
+            for (Sucursal sucursal : entrada.franquicia.getSucursales()) {
+                Producto maximo = null;
+                for (Producto producto : sucursal.getProductos()) {
+                    if (maximo == null || producto.getStock() >= maximo.getStock()) {
+                        maximo = producto;
+                    }
+                }
+                ProductoMaxStockDto fila = new ProductoMaxStockDto();
+                fila.setSucursalNombre(sucursal.getNombre());
+                fila.setVersion(entrada.franquicia.getVersion());
+                if (maximo != null) {
+                    fila.setProductoNombre(maximo.getNombre());
+                    fila.setStock(maximo.getStock());
+                }
+                filas.add(fila);
+            }
+            return filas;
+        }).flatMapMany(Flux::fromIterable);
+    }
+
+    private Entrada porNombreActual(String nombre) {
+        String clave = ClaveNombre.de(nombre);
+        String id = clave == null ? null : porNombre.get(clave);
+        Entrada entrada = id == null ? null : franquicias.get(id);
+        // Entre la reserva de un nombre y la publicación, el índice ya apunta a la franquicia nueva
+        return entrada != null && clave.equals(entrada.franquicia.getNombreNormalizado()) ? entrada : null;
+    }
+
+    private Flux<Entrada> pagina(String despuesDeId, int limite) {
+        return Flux.defer(() -> {
+            NavigableMap<String, Entrada> desde = despuesDeId == null || despuesDeId.isBlank()
+                    ? franquicias
+                    : franquicias.tailMap(despuesDeId, false);
+            Flux<Entrada> entradas = Flux.fromIterable(desde.values());
+            return limite > 0 ? entradas.take(limite) : entradas;
+        });
+    }
+
+    private static Franquicia copiar(Entrada entrada) {
+        return entrada == null ? null : entrada.franquicia.copiar();
+    }
+
+    private static FranquiciaResumenDto resumen(Entrada entrada, VistaFranquicia vista) {
+        return entrada == null ? null : FranquiciaResumenDto.de(entrada.franquicia, vista);
+    }
+
+    // Nulos primero en ascendente (como en BSON); el descendente invierte también eso
+    private static <T, C extends Comparable<? super C>> Comparator<T> comparador(Function<T, C> campo, OrdenListado orden) {
+        Comparator<T> ascendente = Comparator.comparing(campo, Comparator.nullsFirst(Comparator.naturalOrder()));
+        return orden.getDireccion() > 0 ? ascendente : ascendente.reversed();
+    }
+
+    private static <T> List<T> tramo(List<T> elementos, int desde, int limite, Comparator<T> comparador) {
+        List<T> ordenados = elementos;
+        if (comparador != null) {
+            ordenados = new ArrayList<>(elementos);
+            ordenados.sort(comparador);
+        }
+        int inicio = Math.min(desde, ordenados.size());
+        int fin = limite > 0 ? (int) Math.min((long) inicio + limite, ordenados.size()) : ordenados.size();
+        return ordenados.subList(inicio, fin);
+    }
+
+    // ----------------------------------------------------------------------
+    // Diario: registros y recuperación
+    // ----------------------------------------------------------------------
+
+    private Iterable<DiarioMemoria.Registro> estado() {
+        List<DiarioMemoria.Registro> registros = new ArrayList<>(franquicias.size());
+        for (Entrada entrada : franquicias.values()) {
+            registros.add(salida -> escribirFranquicia(salida, entrada.franquicia));
+        }
+        return registros;
+    }
+
+    private static void escribirFranquicia(DataOutputStream salida, Franquicia franquicia) throws IOException {
+        salida.writeByte(COMPLETA);
+        DiarioMemoria.escribirTexto(salida, franquicia.getId());
+        salida.writeLong(franquicia.getVersion());
+        DiarioMemoria.escribirTexto(salida, franquicia.getNombre());
+        salida.writeInt(franquicia.getSucursales().size());
+        for (Sucursal sucursal : franquicia.getSucursales()) {
+            DiarioMemoria.escribirTexto(salida, sucursal.getNombre());
+            salida.writeInt(sucursal.getProductos().size());
+            for (Producto producto : sucursal.getProductos()) {
+                DiarioMemoria.escribirTexto(salida, producto.getNombre());
+                salida.writeInt(producto.getStock());
+            }
+        }
+    }
+
+    /**
+     * Aplica un registro del snapshot o del diario solo si trae una versión posterior a la que
+     * ya hay: los registros que el snapshot ya incluía se saltan sin efecto.
+     */
+    private void reaplicar(DataInputStream entrada) throws IOException {
+        byte tipo = entrada.readByte();
+        String id = DiarioMemoria.leerTexto(entrada);
+        long version = entrada.readLong();
+        Entrada actual = franquicias.get(id);
+
+        switch (tipo) {
+            case COMPLETA -> {
+                String nombre = DiarioMemoria.leerTexto(entrada);
+                int totalSucursales = entrada.readInt();
+                List<Sucursal> sucursales = new ArrayList<>(totalSucursales);
+                for (int i = 0; i < totalSucursales; i++) {
+                    String sucursalNombre = DiarioMemoria.leerTexto(entrada);
+                    int totalProductos = entrada.readInt();
+                    List<Producto> productos = new ArrayList<>(totalProductos);
+                    for (int j = 0; j < totalProductos; j++) {
+                        productos.add(new Producto(DiarioMemoria.leerTexto(entrada), entrada.readInt()));
+                    }
+                    sucursales.add(new Sucursal(sucursalNombre, productos));
+                }
+                if (actual == null || version > actual.version()) {
+                    Franquicia franquicia = new Franquicia(nombre, sucursales);
+                    franquicia.setId(id);
+                    franquicia.setVersion(version);
+                    franquicias.put(id, new Entrada(franquicia));
+                }
+            }
+            case NOMBRE -> {
+                String nombre = DiarioMemoria.leerTexto(entrada);
+                if (actual != null && version > actual.version()) {
+                    Franquicia renombrada = new Franquicia(nombre, actual.franquicia.getSucursales());
+                    renombrada.setId(id);
+                    renombrada.setVersion(version);
+                    franquicias.put(id, actual.con(renombrada));
+                }
+            }
+            case STOCK -> {
+                int total = entrada.readInt();
+                List<CambioStock> cambios = new ArrayList<>(total);
+                for (int i = 0; i < total; i++) {
+                    String sucursalNombre = DiarioMemoria.leerTexto(entrada);
+                    String productoNombre = DiarioMemoria.leerTexto(entrada);
+                    int stock = entrada.readInt();
+                    int[] posicion = actual == null ? null : actual.ubicar(sucursalNombre, productoNombre);
+                    if (posicion != null) {
+                        cambios.add(new CambioStock(sucursalNombre, productoNombre, stock, posicion));
+                    }
+                }
+                if (actual != null && version > actual.version()) {
+                    franquicias.put(id, actual.conStock(cambios, version));
+                }
+            }
+            default -> throw new IOException("Tipo de registro desconocido en el diario: " + tipo);
+        }
+    }
+
+    private record CambioStock(String sucursalNombre, String productoNombre, int stock, int[] posicion) {
+    }
+
+    /**
+     * Franquicia publicada (no se modifica) con sus búsquedas ya resueltas: clave de sucursal ->
+     * posición y, por sucursal, clave de producto -> posición. Con nombres repetidos gana el primero,
+     * como en IndicePorNombre.
+     */
+    private static final class Entrada {
+
+        private final Franquicia franquicia;
+        private final Map<String, Integer> sucursales;
+        private final List<Map<String, Integer>> productos;
+        private final Set<String> clavesProductos;
+
+        private Entrada(Franquicia franquicia) {
+            this.franquicia = franquicia;
+            List<Sucursal> lista = franquicia.getSucursales();
+            this.sucursales = new HashMap<>(lista.size() * 2);
+            this.productos = new ArrayList<>(lista.size());
+            this.clavesProductos = new HashSet<>();
+            for (int i = 0; i < lista.size(); i++) {
+                sucursales.putIfAbsent(ClaveNombre.de(lista.get(i).getNombre()), i);
+                List<Producto> productosSucursal = lista.get(i).getProductos();
+                Map<String, Integer> posiciones = new HashMap<>(productosSucursal.size() * 2);
+                for (int j = 0; j < productosSucursal.size(); j++) {
+                    String clave = ClaveNombre.de(productosSucursal.get(j).getNombre());
+                    posiciones.putIfAbsent(clave, j);
+                    if (clave != null) {
+                        clavesProductos.add(clave);
+                    }
+                }
+                productos.add(posiciones);
+            }
+        }
+
+        // Misma estructura (mismas sucursales y productos en las mismas posiciones): se reusan las búsquedas
+        private Entrada(Franquicia franquicia, Entrada base) {
+            this.franquicia = franquicia;
+            this.sucursales = base.sucursales;
+            this.productos = base.productos;
+            this.clavesProductos = base.clavesProductos;
+        }
+
+        private Entrada con(Franquicia franquicia) {
+            return new Entrada(franquicia, this);
+        }
+
+        private long version() {
+            return franquicia.getVersion();
+        }
+
+        // {sucursal, producto} o null si alguno no existe
+        private int[] ubicar(String sucursalNombre, String productoNombre) {
+            Integer sucursal = sucursales.get(ClaveNombre.de(sucursalNombre));
+            if (sucursal == null) {
+                return null;
+            }
+            Integer producto = productos.get(sucursal).get(ClaveNombre.de(productoNombre));
+            return producto == null ? null : new int[]{sucursal, producto};
+        }
+
+        private Producto producto(int[] posicion) {
+            return franquicia.getSucursales().get(posicion[0]).getProductos().get(posicion[1]);
+        }
+
+        // Copia solo la lista de sucursales y la de productos de cada sucursal tocada
+        private Entrada conStock(List<CambioStock> cambios, long version) {
+            List<Sucursal> sucursalesNuevas = new ArrayList<>(franquicia.getSucursales());
+            Set<Integer> copiadas = new HashSet<>();
+            for (CambioStock cambio : cambios) {
+                int s = cambio.posicion()[0];
+                int p = cambio.posicion()[1];
+                Sucursal sucursal = sucursalesNuevas.get(s);
+                if (copiadas.add(s)) {
+                    sucursal = new Sucursal(sucursal.getNombre(), new ArrayList<>(sucursal.getProductos()));
+                    sucursalesNuevas.set(s, sucursal);
+                }
+                Producto producto = sucursal.getProductos().get(p);
+                sucursal.getProductos().set(p, new Producto(producto.getNombre(), cambio.stock()));
+            }
+            Franquicia nueva = new Franquicia(franquicia.getNombre(), sucursalesNuevas);
+            nueva.setId(franquicia.getId());
+            nueva.setVersion(version);
+            return new Entrada(nueva, this);
+        }
+
+        // true cuando ya se llegó al límite
+        private boolean agregarCoincidencias(String claveProducto, List<ProductoEncontradoDto> filas, int limite) {
+            List<Sucursal> lista = franquicia.getSucursales();
+            for (int i = 0; i < lista.size(); i++) {
+                Integer posicion = productos.get(i).get(claveProducto);
+                if (posicion == null) {
+                    continue;
+                }
+                Producto producto = lista.get(i).getProductos().get(posicion);
+                ProductoEncontradoDto fila = new ProductoEncontradoDto();
+                fila.setFranquiciaId(franquicia.getId());
+                fila.setFranquiciaNombre(franquicia.getNombre());
+                fila.setSucursalNombre(lista.get(i).getNombre());
+                fila.setProductoNombre(producto.getNombre());
+                fila.setStock(producto.getStock());
+                filas.add(fila);
+                if (filas.size() >= limite) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.franquicias.franquicias_api.infrastructure.data;
+
+import com.franquicias.franquicias_api.application.port.out.IReservaRepository;
+import com.franquicias.franquicias_api.domain.Reserva;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Reservas del almacenamiento en memoria (sin Mongo no hay colección de reservas). Mismo diario
+ * que las franquicias, en su propio subdirectorio: "R" = reserva creada, "X" = reserva reclamada.
+ * Reclamar es quitarla del mapa: solo el hilo que la quita decide qué pasa con el stock.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "franquicias.almacenamiento", havingValue = "memoria")
+public class MemoriaReservaRepositoryAdapter implements IReservaRepository {
+
+    private static final byte CREADA = 'R';
+    private static final byte RECLAMADA = 'X';
+
+    private final ConcurrentHashMap<String, Reserva> reservas = new ConcurrentHashMap<>();
+
+    // Índice de vencimiento: (expiraEn, id), el barrido recorre solo la cabeza
+    private final ConcurrentSkipListSet<Reserva> porVencimiento = new ConcurrentSkipListSet<>(
+            Comparator.comparing(Reserva::getExpiraEn).thenComparing(Reserva::getId));
+
+    private final DiarioMemoria diario;
+
+    public MemoriaReservaRepositoryAdapter(
+            @Value("${franquicias.memoria.directorio:}") String directorio,
+            @Value("${franquicias.memoria.tamano-segmento:64MB}") DataSize tamanoSegmento,
+            @Value("${franquicias.memoria.forzar-escritura:false}") boolean forzarEscritura) {
+        if (directorio == null || directorio.isBlank()) {
+            this.diario = null;
+            return;
+        }
+        this.diario = new DiarioMemoria(Path.of(directorio, "reservas"), Math.toIntExact(tamanoSegmento.toBytes()),
+                forzarEscritura, this::estado);
+        diario.recuperar(this::reaplicar);
+        log.info("Reservas en memoria recuperadas de {}: {} activas", directorio, reservas.size());
+    }
+
+    @Scheduled(initialDelayString = "${franquicias.memoria.snapshot:5m}", fixedDelayString = "${franquicias.memoria.snapshot:5m}")
+    public void snapshotPeriodico() {
+        if (diario != null) {
+            diario.snapshot();
+        }
+    }
+
+    @PreDestroy
+    public void cerrar() {
+        if (diario != null) {
+            diario.cerrar();
+        }
+    }
+
+    @Override
+    public Mono<Reserva> insertar(Reserva reserva) {
+        return Mono.fromCallable(() -> {
+            if (reserva.getId() == null) {
+                reserva.setId(new ObjectId().toHexString());
+            }
+            Reserva guardada = copiar(reserva);
+            return registrar(salida -> escribirReserva(salida, guardada), () -> {
+                agregar(guardada);
+                return reserva;
+            });
+        });
+    }
+
+    @Override
+    public Mono<Reserva> reclamar(String reservaId) {
+        return Mono.fromCallable(() -> quitar(reservaId, reserva -> true));
+    }
+
+    @Override
+    public Mono<Reserva> reclamarVigente(String reservaId, Instant ahora) {
+        return Mono.fromCallable(() -> quitar(reservaId, reserva -> reserva.getExpiraEn().isAfter(ahora)));
+    }
+
+    @Override
+    public Mono<Boolean> existe(String reservaId) {
+        return Mono.fromCallable(() -> reservas.containsKey(reservaId));
+    }
+
+    @Override
+    public Flux<Reserva> reclamarVencidas(Instant ahora, int limite) {
+        return Mono.fromCallable(() -> {
+            List<Reserva> reclamadas = new ArrayList<>();
+            for (Reserva candidata : porVencimiento) {
+                if (reclamadas.size() >= limite || candidata.getExpiraEn().isAfter(ahora)) {
+                    break;
+                }
+                Reserva reclamada = quitar(candidata.getId(), reserva -> !reserva.getExpiraEn().isAfter(ahora));
+                if (reclamada != null) {
+                    reclamadas.add(reclamada);
+                }
+            }
+            return reclamadas;
+        }).flatMapMany(Flux::fromIterable);
+    }
+
+    /**
+     * El registro va antes que el borrado; si dos hilos reclaman a la vez, los dos lo anotan pero
+     * solo uno la quita (reaplicar un "X" de una reserva que ya no está no hace nada).
+     * @param condicion Solo se reclama si la reserva la cumple (vencida para el barrido, vigente para confirmar).
+     */
+    private Reserva quitar(String id, Predicate<Reserva> condicion) {
+        Reserva existente = reservas.get(id);
+        // expiraEn no cambia nunca: comprobarlo antes de anotar el "X" no deja carrera
+        if (existente == null || !condicion.test(existente)) {
+            return null;
+        }
+        return registrar(salida -> {
+            salida.writeByte(RECLAMADA);
+            DiarioMemoria.escribirTexto(salida, id);
+        }, () -> {
+            Reserva reserva = reservas.remove(id);
+            if (reserva == null) {
+                return null;
+            }
+            porVencimiento.remove(reserva);
+            return copiar(reserva);
+        });
+    }
+
+    private void agregar(Reserva reserva) {
+        reservas.put(reserva.getId(), reserva);
+        porVencimiento.add(reserva);
+    }
+
+    private <T> T registrar(DiarioMemoria.Registro registro, Supplier<T> aplicar) {
+        return diario == null ? aplicar.get() : diario.registrar(registro, aplicar);
+    }
+
+    private static Reserva copiar(Reserva reserva) {
+        return new Reserva(reserva.getId(), reserva.getFranquiciaId(), reserva.getSucursalNombre(),
+                reserva.getProductoNombre(), reserva.getCantidad(), reserva.getCreadaEn(), reserva.getExpiraEn());
+    }
+
+    private Iterable<DiarioMemoria.Registro> estado() {
+        List<DiarioMemoria.Registro> registros = new ArrayList<>(reservas.size());
+        for (Reserva reserva : reservas.values()) {
+            registros.add(salida -> escribirReserva(salida, reserva));
+        }
+        return registros;
+    }
+
+    private static void escribirReserva(DataOutputStream salida, Reserva reserva) throws IOException {
+        salida.writeByte(CREADA);
+        DiarioMemoria.escribirTexto(salida, reserva.getId());
+        DiarioMemoria.escribirTexto(salida, reserva.getFranquiciaId());
+        DiarioMemoria.escribirTexto(salida, reserva.getSucursalNombre());
+        DiarioMemoria.escribirTexto(salida, reserva.getProductoNombre());
+        salida.writeInt(reserva.getCantidad());
+        salida.writeLong(reserva.getCreadaEn().toEpochMilli());
+        salida.writeLong(reserva.getExpiraEn().toEpochMilli());
+    }
+
+    // Crear y reclamar son idempotentes: repetir lo que el snapshot ya incluía no cambia nada
+    private void reaplicar(DataInputStream entrada) throws IOException {
+        byte tipo = entrada.readByte();
+        String id = DiarioMemoria.leerTexto(entrada);
+        if (tipo == RECLAMADA) {
+            Reserva reserva = reservas.remove(id);
+            if (reserva != null) {
+                porVencimiento.remove(reserva);
+            }
+            return;
+        }
+        if (tipo != CREADA) {
+            throw new IOException("Tipo de registro desconocido en el diario de reservas: " + tipo);
+        }
+        Reserva reserva = new Reserva(id, DiarioMemoria.leerTexto(entrada), DiarioMemoria.leerTexto(entrada),
+                DiarioMemoria.leerTexto(entrada), entrada.readInt(),
+                Instant.ofEpochMilli(entrada.readLong()), Instant.ofEpochMilli(entrada.readLong()));
+        if (!reservas.containsKey(id)) {
+            agregar(reserva);
+        }
+    }
+}
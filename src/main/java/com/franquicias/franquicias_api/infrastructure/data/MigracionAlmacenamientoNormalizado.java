@@ -0,0 +1,67 @@
+package com.franquicias.franquicias_api.infrastructure.data;
+
+import com.franquicias.franquicias_api.domain.Franquicia;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Herramienta de migración del almacenamiento embebido al normalizado. Se activa con
+ * franquicias.almacenamiento.migrar-desde-embebido=true (junto con franquicias.almacenamiento=normalizado):
+ * al arrancar, en segundo plano, copia cada documento de la colección "franquicias" a las
+ * colecciones normalizadas.
+ *
+ * No modifica la colección original (se puede volver al modo embebido) y se puede ejecutar
+ * varias veces: las franquicias ya copiadas se saltan. Una franquicia que no se puede copiar
+ * (p. ej. sucursales con nombres repetidos) solo se registra en el log.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "franquicias.almacenamiento.migrar-desde-embebido", havingValue = "true")
+public class MigracionAlmacenamientoNormalizado {
+
+    // Documentos por lote del cursor sobre la colección embebida
+    private static final int LOTE_CURSOR = 100;
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final ObjectProvider<NormalizadoFranquiciaRepositoryAdapter> normalizado;
+
+    public MigracionAlmacenamientoNormalizado(ReactiveMongoTemplate mongoTemplate,
+                                              ObjectProvider<NormalizadoFranquiciaRepositoryAdapter> normalizado) {
+        this.mongoTemplate = mongoTemplate;
+        this.normalizado = normalizado;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void iniciar() {
+        NormalizadoFranquiciaRepositoryAdapter destino = normalizado.getIfAvailable();
+        if (destino == null) {
+            log.error("La migración al almacenamiento normalizado requiere franquicias.almacenamiento=normalizado; no se copió nada");
+            return;
+        }
+
+        AtomicLong fallidas = new AtomicLong();
+        destino.crearIndices()
+                .thenMany(mongoTemplate.find(new Query().cursorBatchSize(LOTE_CURSOR), Franquicia.class))
+                .concatMap(franquicia -> destino.importar(franquicia)
+                        .onErrorResume(error -> {
+                            fallidas.incrementAndGet();
+                            log.error("Franquicia {} ('{}') no migrada", franquicia.getId(), franquicia.getNombre(), error);
+                            return Mono.just(false);
+                        }))
+                .filter(Boolean::booleanValue)
+                .count()
+                .subscribe(
+                        copiadas -> log.info("Migración al almacenamiento normalizado terminada: {} franquicias copiadas, {} con error",
+                                copiadas, fallidas.get()),
+                        error -> log.error("No se pudo completar la migración al almacenamiento normalizado", error));
+    }
+}
@@ -0,0 +1,90 @@
+package com.franquicias.franquicias_api.infrastructure.data;
+
+import com.franquicias.franquicias_api.domain.ClaveNombre;
+import com.franquicias.franquicias_api.domain.Franquicia;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Al arrancar, en segundo plano:
+ * 1. Crea el índice único (sparse) sobre nombreNormalizado.
+ * 2. Completa nombreNormalizado en los documentos guardados antes de existir el campo.
+ *
+ * Mientras la migración no termina, las búsquedas por nombre siguen usando la regex sin
+ * distinguir mayúsculas (ver MongoFranquiciaRepositoryAdapter.findByNombre). Los errores solo se
+ * registran en el log: la aplicación sigue funcionando con la búsqueda anterior.
+ */
+@Slf4j
+@Component
+@ConditionalOnExpression("'${franquicias.almacenamiento:embebido}' != 'memoria'")
+public class MigracionNombreNormalizado {
+
+    static final String INDICE = "nombreNormalizado_unico";
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final AtomicBoolean completada = new AtomicBoolean(false);
+
+    public MigracionNombreNormalizado(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    // true cuando todos los documentos tienen nombreNormalizado y el índice existe
+    public boolean isCompletada() {
+        return completada.get();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void iniciar() {
+        // Primero el índice (protege las escrituras nuevas), luego el relleno de los documentos viejos
+        mongoTemplate.indexOps(Franquicia.class)
+                .createIndex(new Index("nombreNormalizado", Sort.Direction.ASC).unique().sparse().named(INDICE))
+                .then(migrarDocumentos())
+                .subscribe(
+                        migrados -> {
+                            completada.set(true);
+                            log.info("nombreNormalizado listo ({} documentos migrados); búsquedas por nombre con índice", migrados);
+                        },
+                        error -> log.error("No se pudo completar la migración de nombreNormalizado; se sigue usando la búsqueda por regex", error));
+    }
+
+    // Documentos sin nombreNormalizado: se calcula en Java (mismo plegado que equalsIgnoreCase)
+    private Mono<Long> migrarDocumentos() {
+        Query pendientes = Query.query(Criteria.where("nombreNormalizado").exists(false));
+        pendientes.fields().include("nombre");
+
+        return mongoTemplate.find(pendientes, Franquicia.class)
+                .filter(franquicia -> franquicia.getNombre() != null)
+                .concatMap(franquicia -> mongoTemplate.updateFirst(
+                                // Solo si nadie lo renombró entre la lectura y esta escritura
+                                Query.query(Criteria.where("id").is(franquicia.getId())
+                                        .and("nombre").is(franquicia.getNombre())
+                                        .and("nombreNormalizado").exists(false)),
+                                Update.update("nombreNormalizado", ClaveNombre.de(franquicia.getNombre())),
+                                Franquicia.class)
+                        .onErrorResume(DuplicateKeyException.class, error -> {
+                            log.error("Franquicia {} ('{}') no migrada: su nombre choca con el de otra",
+                                    franquicia.getId(), franquicia.getNombre());
+                            return Mono.empty();
+                        }))
+                .count()
+                // Si quedó algún pendiente (p. ej. nombres repetidos) no se activa la búsqueda por índice
+                .flatMap(migrados -> mongoTemplate.exists(Query.query(Criteria.where("nombreNormalizado").exists(false)
+                                .and("nombre").exists(true)), Franquicia.class)
+                        .flatMap(quedan -> quedan
+                                ? Mono.error(new IllegalStateException("Quedan franquicias sin nombreNormalizado"))
+                                : Mono.just(migrados)));
+    }
+}
@@ -1,32 +1,194 @@
 package com.franquicias.franquicias_api.infrastructure.data;
 
+import com.franquicias.franquicias_api.application.dto.ActualizacionStockDto;
+import com.franquicias.franquicias_api.application.dto.FranquiciaResumenDto;
+import com.franquicias.franquicias_api.application.dto.OrdenListado;
+import com.franquicias.franquicias_api.application.dto.ProductoEncontradoDto;
+import com.franquicias.franquicias_api.application.dto.ProductoMaxStockDto;
+import com.franquicias.franquicias_api.application.dto.ResultadoStockDto;
+import com.franquicias.franquicias_api.application.dto.StockActualizadoDto;
+import com.franquicias.franquicias_api.application.dto.VistaFranquicia;
 import com.franquicias.franquicias_api.application.port.out.IFranquiciaRepository;
+import com.franquicias.franquicias_api.domain.ClaveNombre;
 import com.franquicias.franquicias_api.domain.Franquicia;
+import com.franquicias.franquicias_api.domain.Producto;
+import com.franquicias.franquicias_api.domain.Sucursal;
+import com.franquicias.franquicias_api.domain.exception.ConflictoConcurrenciaException;
+import com.franquicias.franquicias_api.domain.exception.RecursoDuplicadoException;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Collation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import org.springframework.stereotype.Component;
 import org.springframework.stereotype.Repository;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 // Spring Data Repository: Maneja la conexión directa a MongoDB de forma reactiva
 interface ISpringDataFranquiciaRepository extends ReactiveMongoRepository<Franquicia, String> {
     Mono<Franquicia> findByNombreIgnoreCase(String nombre);
+
+    // Igualdad exacta sobre el índice único nombreNormalizado_unico
+    Mono<Franquicia> findByNombreNormalizado(String nombreNormalizado);
 }
 
+/**
+ * Almacenamiento por defecto (franquicias.almacenamiento=embebido): cada franquicia es un único
+ * documento con sus sucursales y productos embebidos. La alternativa con colecciones separadas
+ * es NormalizadoFranquiciaRepositoryAdapter.
+ */
+@Slf4j
 @Component
 @Repository
+@Qualifier("almacenamiento")
+@ConditionalOnProperty(name = "franquicias.almacenamiento", havingValue = "embebido", matchIfMissing = true)
 public class MongoFranquiciaRepositoryAdapter implements IFranquiciaRepository {
 
     // Inyectamos el Repositorio de Spring Data
     private final ISpringDataFranquiciaRepository springRepository;
 
-    public MongoFranquiciaRepositoryAdapter(ISpringDataFranquiciaRepository springRepository) {
+    // Template reactivo para las actualizaciones dirigidas ($set sobre un solo campo)
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    // Documentos por lote del cursor en los listados (el siguiente lote se pide según la demanda)
+    private static final int LOTE_CURSOR = 100;
+
+    /**
+     * Búsqueda global de productos: índice multikey sobre sucursales.productos.nombre con una
+     * collation que no distingue mayúsculas (strength 2: los acentos sí cuentan). Solo lo usan
+     * las consultas que piden la misma collation.
+     */
+    static final String INDICE_BUSQUEDA_PRODUCTOS = "producto_nombre_busqueda";
+    private static final Collation SIN_MAYUSCULAS = Collation.of("es").strength(Collation.ComparisonLevel.secondary());
+
+    // Dice si ya se puede buscar por nombreNormalizado (índice creado y documentos migrados)
+    private final MigracionNombreNormalizado migracionNombre;
+
+    public MongoFranquiciaRepositoryAdapter(ISpringDataFranquiciaRepository springRepository, ReactiveMongoTemplate mongoTemplate,
+                                            MigracionNombreNormalizado migracionNombre) {
         this.springRepository = springRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.migracionNombre = migracionNombre;
     }
 
+    // Idempotente: createIndex no hace nada si el índice ya existe con la misma definición
+    @EventListener(ApplicationReadyEvent.class)
+    public void crearIndiceBusqueda() {
+        mongoTemplate.indexOps(Franquicia.class)
+                .createIndex(new Index("sucursales.productos.nombre", Sort.Direction.ASC)
+                        .collation(SIN_MAYUSCULAS)
+                        .named(INDICE_BUSQUEDA_PRODUCTOS))
+                .subscribe(
+                        nombre -> log.info("Índice {} listo", nombre),
+                        error -> log.error("No se pudo crear el índice de búsqueda de productos", error));
+    }
+
+    /**
+     * Guardado con compare-and-set sobre el campo version (lo hace Spring Data por el @Version):
+     * si otro escritor guardó antes, se lanza ConflictoConcurrenciaException.
+     */
     @Override
     public Mono<Franquicia> save(Franquicia franquicia) {
-        return springRepository.save(franquicia);
+        Mono<Franquicia> guardado = (franquicia.getId() != null && franquicia.getVersion() == null)
+                ? guardarSinVersionPrevia(franquicia)
+                : springRepository.save(franquicia);
+
+        return guardado.onErrorMap(OptimisticLockingFailureException.class,
+                e -> new ConflictoConcurrenciaException(franquicia.getId()));
+    }
+
+    /**
+     * Documentos creados antes del campo version (o con un ID elegido por el cliente):
+     * Spring Data los trataría como nuevos e intentaría un insert. Se reemplazan solo si
+     * siguen sin versión (o se insertan si no existen), dejando la versión en 0.
+     */
+    private Mono<Franquicia> guardarSinVersionPrevia(Franquicia franquicia) {
+        Query query = Query.query(Criteria.where("id").is(franquicia.getId()).and("version").exists(false));
+        franquicia.setVersion(0L);
+
+        return mongoTemplate.findAndReplace(query, franquicia, FindAndReplaceOptions.options().upsert().returnNew())
+                .onErrorMap(DuplicateKeyException.class, e -> esNombreDuplicado(e)
+                        ? nombreEnUso(franquicia.getNombre())
+                        // El upsert choca con el _id si otro escritor ya le puso versión al documento
+                        : new ConflictoConcurrenciaException(franquicia.getId()));
+    }
+
+    /**
+     * Insert directo: el índice único de nombreNormalizado rechaza los nombres repetidos, así que
+     * no hay consulta previa ni ventana entre "comprobar" y "guardar". Mientras el índice no
+     * está listo (migración en curso o fallida) se mantiene la comprobación previa.
+     */
+    @Override
+    public Mono<Franquicia> insertar(Franquicia franquicia) {
+        Mono<Franquicia> insert = Mono.defer(() -> mongoTemplate.insert(franquicia))
+                .onErrorMap(DuplicateKeyException.class, e -> esNombreDuplicado(e)
+                        ? nombreEnUso(franquicia.getNombre())
+                        : new RecursoDuplicadoException("Ya existe una franquicia con el ID: " + franquicia.getId()));
+
+        if (migracionNombre.isCompletada()) {
+            return insert;
+        }
+        return findByNombre(franquicia.getNombre())
+                .flatMap(existente -> Mono.<Franquicia>error(nombreEnUso(existente.getNombre())))
+                .switchIfEmpty(insert);
+    }
+
+    /**
+     * Un solo findAndModify que cambia nombre y nombreNormalizado (y sube la versión). Si otra
+     * franquicia ya tiene ese nombre, el índice único lo rechaza.
+     */
+    @Override
+    public Mono<Franquicia> actualizarNombre(String id, String nuevoNombre) {
+        Update update = new Update()
+                .set("nombre", nuevoNombre)
+                .set("nombreNormalizado", ClaveNombre.de(nuevoNombre))
+                .inc("version", 1);
+        Mono<Franquicia> renombrar = Mono.defer(() -> mongoTemplate.findAndModify(
+                        Query.query(Criteria.where("id").is(id)),
+                        update,
+                        FindAndModifyOptions.options().returnNew(true),
+                        Franquicia.class))
+                .onErrorMap(DuplicateKeyException.class, e -> nombreEnUso(nuevoNombre));
+
+        if (migracionNombre.isCompletada()) {
+            return renombrar;
+        }
+        return findByNombre(nuevoNombre)
+                .filter(existente -> !existente.getId().equals(id))
+                .flatMap(existente -> Mono.<Franquicia>error(nombreEnUso(nuevoNombre)))
+                .switchIfEmpty(renombrar);
+    }
+
+    private boolean esNombreDuplicado(DuplicateKeyException e) {
+        return e.getMessage() != null && e.getMessage().contains(MigracionNombreNormalizado.INDICE);
+    }
+
+    private RecursoDuplicadoException nombreEnUso(String nombre) {
+        return new RecursoDuplicadoException("Ya existe una franquicia con el nombre: " + nombre);
     }
 
     @Override
@@ -34,13 +196,292 @@ public class MongoFranquiciaRepositoryAdapter implements IFranquiciaRepository {
         return springRepository.findById(id);
     }
 
+    /**
+     * Con la migración terminada es una igualdad sobre el índice único; antes, la regex
+     * sin distinguir mayúsculas de siempre (recorre la colección).
+     */
     @Override
     public Mono<Franquicia> findByNombre(String nombre) {
-        return springRepository.findByNombreIgnoreCase(nombre);
+        return migracionNombre.isCompletada()
+                ? springRepository.findByNombreNormalizado(ClaveNombre.de(nombre))
+                : springRepository.findByNombreIgnoreCase(nombre);
     }
 
     @Override
     public Flux<Franquicia> findAll() {
         return springRepository.findAll();
     }
-}
\ No newline at end of file
+
+    // Keyset sobre _id (ver CriteriosMongo.despuesDeId)
+    @Override
+    public Flux<Franquicia> findPagina(String despuesDeId, int limite) {
+        Query query = Query.query(CriteriosMongo.despuesDeId(despuesDeId))
+                .with(Sort.by(Sort.Direction.ASC, "id"))
+                .cursorBatchSize(LOTE_CURSOR);
+        if (limite > 0) {
+            query.limit(limite);
+        }
+        return mongoTemplate.find(query, Franquicia.class);
+    }
+
+    @Override
+    public Mono<FranquiciaResumenDto> findResumenById(String id, VistaFranquicia vista) {
+        return proyectar(Criteria.where("id").is(id), vista, 0).next();
+    }
+
+    @Override
+    public Mono<FranquiciaResumenDto> findResumenByNombre(String nombre, VistaFranquicia vista) {
+        Criteria filtro = migracionNombre.isCompletada()
+                ? Criteria.where("nombreNormalizado").is(ClaveNombre.de(nombre))
+                : Criteria.where("nombre").regex(CriteriosMongo.nombreExacto(nombre));
+        return proyectar(filtro, vista, 1).next();
+    }
+
+    @Override
+    public Flux<FranquiciaResumenDto> findResumenPagina(String despuesDeId, int limite, VistaFranquicia vista) {
+        return proyectar(CriteriosMongo.despuesDeId(despuesDeId), vista, limite);
+    }
+
+    /**
+     * $match -> $sort por _id -> $limit -> $project solo con lo que pide la vista. Los nombres de
+     * sucursal salen como un array de strings ("$sucursales.nombre"); los productos nunca se leen.
+     */
+    private Flux<FranquiciaResumenDto> proyectar(Criteria filtro, VistaFranquicia vista, int limite) {
+        Document proyeccion = new Document("nombre", 1)
+                .append("version", 1)
+                .append("totalSucursales", new Document("$size",
+                        new Document("$ifNull", Arrays.asList("$sucursales", List.of()))));
+        if (vista == VistaFranquicia.SUCURSALES) {
+            proyeccion.append("sucursales", "$sucursales.nombre");
+        }
+
+        List<AggregationOperation> etapas = new ArrayList<>();
+        etapas.add(Aggregation.match(filtro));
+        etapas.add(Aggregation.sort(Sort.Direction.ASC, "id"));
+        if (limite > 0) {
+            etapas.add(Aggregation.limit(limite));
+        }
+        etapas.add(contexto -> new Document("$project", proyeccion));
+
+        TypedAggregation<Franquicia> aggregation = Aggregation.newAggregation(Franquicia.class, etapas)
+                .withOptions(AggregationOptions.builder().cursorBatchSize(LOTE_CURSOR).build());
+        return mongoTemplate.aggregate(aggregation, FranquiciaResumenDto.class);
+    }
+
+    /**
+     * $match por _id -> $project con el array ya ordenado ($sortArray, MongoDB 5.2+) y recortado
+     * ($slice) -> $unwind + $replaceRoot: salen solo las sucursales del tramo, una por documento.
+     */
+    @Override
+    public Flux<Sucursal> findSucursales(String franquiciaId, int desde, int limite, OrdenListado orden) {
+        Object sucursales = new Document("$ifNull", Arrays.asList("$sucursales", List.of()));
+        return tramo(Criteria.where("id").is(franquiciaId), sucursales, desde, limite, orden, Sucursal.class);
+    }
+
+    // Igual, pero sobre los productos de la sucursal que coincide por nombre (sin distinguir mayúsculas)
+    @Override
+    public Flux<Producto> findProductos(String franquiciaId, String sucursalNombre, int desde, int limite, OrdenListado orden) {
+        Criteria filtro = Criteria.where("id").is(franquiciaId)
+                .and("sucursales.nombre").regex(CriteriosMongo.nombreExacto(sucursalNombre));
+        Document sucursal = new Document("$arrayElemAt", Arrays.asList(
+                new Document("$filter", new Document("input", "$sucursales")
+                        .append("cond", new Document("$regexMatch", new Document("input", "$$this.nombre")
+                                .append("regex", CriteriosMongo.nombreExacto(sucursalNombre).pattern())
+                                .append("options", "i")))),
+                0));
+        Object productos = new Document("$ifNull", Arrays.asList(
+                new Document("$let", new Document("vars", new Document("sucursal", sucursal))
+                        .append("in", "$$sucursal.productos")),
+                List.of()));
+        return tramo(filtro, productos, desde, limite, orden, Producto.class);
+    }
+
+    private <T> Flux<T> tramo(Criteria filtro, Object array, int desde, int limite, OrdenListado orden, Class<T> tipo) {
+        Object ordenado = orden.getCampo() == null
+                ? array
+                : new Document("$sortArray", new Document("input", array)
+                        .append("sortBy", new Document(orden.getCampo(), orden.getDireccion())));
+        Document recorte = new Document("$slice", Arrays.asList(ordenado, desde, limite > 0 ? limite : Integer.MAX_VALUE));
+
+        TypedAggregation<Franquicia> aggregation = Aggregation.newAggregation(Franquicia.class,
+                        Aggregation.match(filtro),
+                        contexto -> new Document("$project", new Document("_id", 0).append("elementos", recorte)),
+                        // Etapas en crudo: "elementos" no es una propiedad de Franquicia
+                        contexto -> new Document("$unwind", "$elementos"),
+                        contexto -> new Document("$replaceRoot", new Document("newRoot", "$elementos")))
+                .withOptions(AggregationOptions.builder().cursorBatchSize(LOTE_CURSOR).build());
+        return mongoTemplate.aggregate(aggregation, tipo);
+    }
+
+    /**
+     * $match sobre el índice multikey (solo franquicias con algún producto que coincide) ->
+     * $project de los campos que se devuelven -> $unwind de sucursales y productos -> el mismo
+     * $match, ahora por producto -> $limit. Toda la agregación usa la collation del índice;
+     * el prefijo es el rango [texto, texto + U+FFFF), que bajo la collation ordena al final.
+     */
+    @Override
+    public Flux<ProductoEncontradoDto> buscarProductos(String nombre, boolean prefijo, int limite) {
+        Document coincide = new Document("sucursales.productos.nombre", prefijo
+                ? new Document("$gte", nombre).append("$lt", nombre + '\uFFFF')
+                : nombre);
+
+        TypedAggregation<Franquicia> aggregation = Aggregation.newAggregation(Franquicia.class,
+                        contexto -> new Document("$match", coincide),
+                        contexto -> new Document("$project", new Document("nombre", 1)
+                                .append("sucursales.nombre", 1)
+                                .append("sucursales.productos.nombre", 1)
+                                .append("sucursales.productos.stock", 1)),
+                        contexto -> new Document("$unwind", "$sucursales"),
+                        contexto -> new Document("$unwind", "$sucursales.productos"),
+                        contexto -> new Document("$match", coincide),
+                        Aggregation.limit(limite),
+                        contexto -> new Document("$project", new Document("_id", 0)
+                                .append("franquiciaId", new Document("$toString", "$_id"))
+                                .append("franquiciaNombre", "$nombre")
+                                .append("sucursalNombre", "$sucursales.nombre")
+                                .append("productoNombre", "$sucursales.productos.nombre")
+                                .append("stock", "$sucursales.productos.stock")))
+                .withOptions(AggregationOptions.builder().collation(SIN_MAYUSCULAS).cursorBatchSize(LOTE_CURSOR).build());
+        return mongoTemplate.aggregate(aggregation, ProductoEncontradoDto.class);
+    }
+
+    @Override
+    public Mono<Boolean> existsById(String id) {
+        return springRepository.existsById(id);
+    }
+
+    /**
+     * $match por _id -> $unwind de sucursales -> $reduce sobre los productos de cada una.
+     * Solo viajan (nombre de sucursal, producto, stock); en empate gana el último producto,
+     * igual que el reduce que se hacía antes en memoria.
+     */
+    @Override
+    public Flux<ProductoMaxStockDto> findProductoMaxStockPorSucursal(String franquiciaId) {
+        AggregationOperation maximoPorSucursal = contexto -> new Document("$project", new Document("_id", 0)
+                .append("version", 1)
+                .append("sucursalNombre", "$sucursales.nombre")
+                .append("maximo", new Document("$reduce", new Document("input", "$sucursales.productos")
+                        .append("initialValue", null)
+                        .append("in", new Document("$cond", Arrays.asList(
+                                new Document("$or", Arrays.asList(
+                                        new Document("$eq", Arrays.asList("$$value", null)),
+                                        new Document("$gte", Arrays.asList("$$this.stock", "$$value.stock")))),
+                                "$$this",
+                                "$$value"))))));
+
+        TypedAggregation<Franquicia> aggregation = Aggregation.newAggregation(Franquicia.class,
+                Aggregation.match(Criteria.where("id").is(franquiciaId)),
+                Aggregation.project("sucursales", "version"),
+                Aggregation.unwind("sucursales"),
+                maximoPorSucursal,
+                contexto -> new Document("$project", new Document("sucursalNombre", 1)
+                        .append("productoNombre", "$maximo.nombre")
+                        .append("stock", "$maximo.stock")
+                        .append("version", 1)));
+
+        return mongoTemplate.aggregate(aggregation, ProductoMaxStockDto.class);
+    }
+
+    /**
+     * Un solo findAndModify: el filtro exige que existan la sucursal y el producto, y los
+     * arrayFilters ubican el elemento exacto, así solo se reescribe sucursales.productos.stock.
+     * Las actualizaciones dirigidas también suben la versión para que un guardado
+     * completo concurrente no las pise. El documento nuevo viene en la misma respuesta, así que
+     * el resultado también lo lleva. Con If-Match la versión esperada va en el mismo filtro.
+     */
+    @Override
+    public Mono<StockActualizadoDto> actualizarStockProducto(String franquiciaId, String sucursalNombre, String productoNombre, int nuevoStock,
+                                                             Long versionEsperada) {
+        return mongoTemplate.findAndModify(
+                conVersion(queryProducto(franquiciaId, sucursalNombre, productoNombre), versionEsperada),
+                updateStock(sucursalNombre, productoNombre, nuevoStock),
+                FindAndModifyOptions.options().returnNew(true),
+                Franquicia.class)
+                .flatMap(actualizada -> Mono.justOrEmpty(StockActualizadoDto.de(actualizada, sucursalNombre, productoNombre)));
+    }
+
+    /**
+     * Un único bulkWrite desordenado con un updateOne dirigido por fila. Si todas coinciden
+     * (el caso normal) no hay más viajes; si no, una lectura proyectada solo con los nombres
+     * dice qué filas no encontraron su sucursal o producto.
+     */
+    @Override
+    public Flux<ResultadoStockDto> actualizarStockEnLote(String franquiciaId, List<ActualizacionStockDto> cambios) {
+        ReactiveBulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Franquicia.class);
+        for (ActualizacionStockDto cambio : cambios) {
+            bulk.updateOne(
+                    queryProducto(franquiciaId, cambio.getSucursalNombre(), cambio.getProductoNombre()),
+                    updateStock(cambio.getSucursalNombre(), cambio.getProductoNombre(), cambio.getStock()));
+        }
+
+        return bulk.execute()
+                .flatMapMany(resultado -> resultado.getMatchedCount() == cambios.size()
+                        ? Flux.fromIterable(cambios).map(c -> ResultadoStockDto.de(c, ResultadoStockDto.Estado.OK))
+                        : resolverResultadosLote(franquiciaId, cambios));
+    }
+
+    // Lectura de diagnóstico (solo nombres, sin stock) para marcar qué filas no existían
+    private Flux<ResultadoStockDto> resolverResultadosLote(String franquiciaId, List<ActualizacionStockDto> cambios) {
+        Query query = Query.query(Criteria.where("id").is(franquiciaId));
+        query.fields().include("nombre", "sucursales.nombre", "sucursales.productos.nombre");
+
+        return mongoTemplate.findOne(query, Franquicia.class)
+                .defaultIfEmpty(new Franquicia())
+                .flatMapMany(franquicia -> Flux.fromIterable(cambios).map(cambio -> {
+                    Sucursal sucursal = franquicia.buscarSucursalPorNombre(cambio.getSucursalNombre());
+                    boolean existe = sucursal != null && sucursal.buscarProductoPorNombre(cambio.getProductoNombre()) != null;
+                    return ResultadoStockDto.de(cambio, existe ? ResultadoStockDto.Estado.OK : ResultadoStockDto.Estado.NO_ENCONTRADO);
+                }));
+    }
+
+    /**
+     * $inc en el servidor: no hay lectura previa, así que las ventas concurrentes no pierden
+     * actualizaciones. La protección contra negativos va en el propio filtro del producto.
+     */
+    @Override
+    public Mono<StockActualizadoDto> incrementarStockProducto(String franquiciaId, String sucursalNombre, String productoNombre, int cambio, boolean evitarNegativo,
+                                                              Long versionEsperada) {
+        Criteria producto = Criteria.where("nombre").regex(CriteriosMongo.nombreExacto(productoNombre));
+        if (evitarNegativo && cambio < 0) {
+            producto = producto.and("stock").gte(-cambio);
+        }
+
+        Update update = new Update()
+                .inc("sucursales.$[s].productos.$[p].stock", cambio)
+                .inc("version", 1)
+                .filterArray(Criteria.where("s.nombre").regex(CriteriosMongo.nombreExacto(sucursalNombre)))
+                .filterArray(Criteria.where("p.nombre").regex(CriteriosMongo.nombreExacto(productoNombre)));
+
+        return mongoTemplate.findAndModify(
+                conVersion(queryProducto(franquiciaId, sucursalNombre, producto), versionEsperada),
+                update,
+                FindAndModifyOptions.options().returnNew(true),
+                Franquicia.class)
+                .flatMap(actualizada -> Mono.justOrEmpty(StockActualizadoDto.de(actualizada, sucursalNombre, productoNombre)));
+    }
+
+    // $set del stock de un solo producto, ubicado con arrayFilters
+    private Update updateStock(String sucursalNombre, String productoNombre, int nuevoStock) {
+        return new Update()
+                .set("sucursales.$[s].productos.$[p].stock", nuevoStock)
+                .inc("version", 1)
+                .filterArray(Criteria.where("s.nombre").regex(CriteriosMongo.nombreExacto(sucursalNombre)))
+                .filterArray(Criteria.where("p.nombre").regex(CriteriosMongo.nombreExacto(productoNombre)));
+    }
+
+    // Filtro: franquicia por _id que contenga la sucursal y, dentro de ella, el producto
+    private Query queryProducto(String franquiciaId, String sucursalNombre, String productoNombre) {
+        return queryProducto(franquiciaId, sucursalNombre, Criteria.where("nombre").regex(CriteriosMongo.nombreExacto(productoNombre)));
+    }
+
+    private Query queryProducto(String franquiciaId, String sucursalNombre, Criteria producto) {
+        return Query.query(Criteria.where("id").is(franquiciaId)
+                .and("sucursales").elemMatch(Criteria.where("nombre").regex(CriteriosMongo.nombreExacto(sucursalNombre))
+                        .and("productos").elemMatch(producto)));
+    }
+
+    // Sin versión esperada el filtro queda igual
+    private Query conVersion(Query query, Long versionEsperada) {
+        return versionEsperada == null ? query : query.addCriteria(Criteria.where("version").is(versionEsperada));
+    }
+}
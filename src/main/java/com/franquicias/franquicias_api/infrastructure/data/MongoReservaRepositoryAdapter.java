@@ -0,0 +1,81 @@
+package com.franquicias.franquicias_api.infrastructure.data;
+
+import com.franquicias.franquicias_api.application.port.out.IReservaRepository;
+import com.franquicias.franquicias_api.domain.Reserva;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+
+/**
+ * Reservas en su propia colección (igual con el almacenamiento embebido o el normalizado).
+ * Reclamar es un findAndRemove: el documento que lo gana es el único que decide qué pasa con el stock.
+ *
+ * No se usa un índice TTL de Mongo: borraría las reservas sin devolver su stock. Con el
+ * almacenamiento en memoria no hay Mongo: las guarda MemoriaReservaRepositoryAdapter.
+ */
+@Slf4j
+@Component
+@ConditionalOnExpression("'${franquicias.almacenamiento:embebido}' != 'memoria'")
+public class MongoReservaRepositoryAdapter implements IReservaRepository {
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    public MongoReservaRepositoryAdapter(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    // Idempotente: createIndex no hace nada si el índice ya existe con la misma definición
+    @EventListener(ApplicationReadyEvent.class)
+    public void crearIndice() {
+        mongoTemplate.indexOps(Reserva.class)
+                .createIndex(new Index("expiraEn", Sort.Direction.ASC).named("reserva_expira"))
+                .subscribe(
+                        nombre -> log.info("Índice {} listo", nombre),
+                        error -> log.error("No se pudo crear el índice de vencimiento de reservas", error));
+    }
+
+    @Override
+    public Mono<Reserva> insertar(Reserva reserva) {
+        return mongoTemplate.insert(reserva);
+    }
+
+    @Override
+    public Mono<Reserva> reclamar(String reservaId) {
+        return mongoTemplate.findAndRemove(Query.query(Criteria.where("id").is(reservaId)), Reserva.class);
+    }
+
+    @Override
+    public Mono<Reserva> reclamarVigente(String reservaId, Instant ahora) {
+        return mongoTemplate.findAndRemove(
+                Query.query(Criteria.where("id").is(reservaId).and("expiraEn").gt(ahora)), Reserva.class);
+    }
+
+    @Override
+    public Mono<Boolean> existe(String reservaId) {
+        return mongoTemplate.exists(Query.query(Criteria.where("id").is(reservaId)), Reserva.class);
+    }
+
+    // Candidatas por el índice de vencimiento; cada una se reclama con su propio findAndRemove condicionado
+    @Override
+    public Flux<Reserva> reclamarVencidas(Instant ahora, int limite) {
+        Query vencidas = Query.query(Criteria.where("expiraEn").lte(ahora))
+                .with(Sort.by(Sort.Direction.ASC, "expiraEn"))
+                .limit(limite);
+        vencidas.fields().include("id");
+
+        return mongoTemplate.find(vencidas, Reserva.class)
+                .concatMap(candidata -> mongoTemplate.findAndRemove(
+                        Query.query(Criteria.where("id").is(candidata.getId()).and("expiraEn").lte(ahora)), Reserva.class));
+    }
+}
@@ -0,0 +1,21 @@
+package com.franquicias.franquicias_api.infrastructure.data;
+
+import com.franquicias.franquicias_api.domain.Franquicia;
+import org.reactivestreams.Publisher;
+import org.springframework.data.mongodb.core.mapping.event.ReactiveBeforeConvertCallback;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Antes de convertir cada franquicia a documento (save, insert, findAndReplace) se recalcula
+ * nombreNormalizado: las franquicias leídas de la BD se llenan por campo, sin pasar por setNombre.
+ */
+@Component
+public class NombreNormalizadoCallback implements ReactiveBeforeConvertCallback<Franquicia> {
+
+    @Override
+    public Publisher<Franquicia> onBeforeConvert(Franquicia franquicia, String collection) {
+        franquicia.setNombre(franquicia.getNombre());
+        return Mono.just(franquicia);
+    }
+}
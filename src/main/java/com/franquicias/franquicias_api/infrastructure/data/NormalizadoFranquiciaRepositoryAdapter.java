@@ -0,0 +1,991 @@
+package com.franquicias.franquicias_api.infrastructure.data;
+
+import com.franquicias.franquicias_api.application.dto.ActualizacionStockDto;
+import com.franquicias.franquicias_api.application.dto.FranquiciaResumenDto;
+import com.franquicias.franquicias_api.application.dto.OrdenListado;
+import com.franquicias.franquicias_api.application.dto.ProductoEncontradoDto;
+import com.franquicias.franquicias_api.application.dto.ProductoMaxStockDto;
+import com.franquicias.franquicias_api.application.dto.ResultadoStockDto;
+import com.franquicias.franquicias_api.application.dto.StockActualizadoDto;
+import com.franquicias.franquicias_api.application.dto.VistaFranquicia;
+import com.franquicias.franquicias_api.application.port.out.IFranquiciaRepository;
+import com.franquicias.franquicias_api.domain.ClaveNombre;
+import com.franquicias.franquicias_api.domain.Franquicia;
+import com.franquicias.franquicias_api.domain.Producto;
+import com.franquicias.franquicias_api.domain.Sucursal;
+import com.franquicias.franquicias_api.domain.exception.ConflictoConcurrenciaException;
+import com.franquicias.franquicias_api.domain.exception.RecursoDuplicadoException;
+import com.mongodb.bulk.BulkWriteResult;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Almacenamiento normalizado (franquicias.almacenamiento=normalizado): cabeceras, sucursales y
+ * productos en colecciones separadas e indexadas, así una franquicia ya no es un documento que
+ * crece hacia el límite de 16 MB ni se reescribe entero en cada guardado.
+ *
+ * - Las escrituras dirigidas (stock, nombre) tocan una sola fila y suben la versión de la cabecera.
+ * - save compara la franquicia con las filas guardadas y solo escribe las que cambiaron.
+ * - Las lecturas parciales (vistas, tramos, máximo stock) consultan solo las filas que necesitan;
+ *   la franquicia completa se arma únicamente cuando se pide el agregado entero.
+ *
+ * No usa transacciones, así que la cabecera hace de cerrojo de lectores/escritor con vencimiento:
+ * - Las escrituras de stock se anotan en "escribiendo" (token -> instante) antes de tocar las filas
+ *   y se quitan al terminar, subiendo la versión. Entre ellas no se esperan: siguen siendo
+ *   $inc/$set concurrentes sobre las filas.
+ * - save solo gana el compare-and-set si la versión coincide y no hay escrituras anotadas; mientras
+ *   compara y escribe las filas deja "guardandoDesde" (y su token en "guardandoPor"), y ninguna
+ *   escritura de stock empieza hasta que termina. Así nunca reescribe con el agregado viejo un stock
+ *   que otro cambió en el medio. La versión sube recién al quitar la marca: quien leyó las filas a
+ *   medio escribir tiene la versión anterior y pierde su compare-and-set.
+ * - Una escritura de stock con If-Match toma la cabecera como save (la versión tiene que seguir
+ *   siendo la esperada mientras escribe la fila), no como las demás escrituras de stock.
+ * - Quien choca con el otro recibe ConflictoConcurrenciaException y el servicio reintenta. Si un
+ *   proceso muere a mitad de camino, su anotación deja de contar al vencer.
+ * Los instantes los pone el servidor ($currentDate) y los vencimientos se comparan con $$NOW: el
+ * reloj de cada instancia no interviene, así que un desfase entre ellas no rompe la exclusión.
+ * Un lector igual puede ver un guardado a medio aplicar.
+ */
+@Slf4j
+@Component
+@Qualifier("almacenamiento")
+@ConditionalOnProperty(name = "franquicias.almacenamiento", havingValue = "normalizado")
+public class NormalizadoFranquiciaRepositoryAdapter implements IFranquiciaRepository {
+
+    // Filas por lote del cursor en los listados; también es el tamaño de cada lote de ensamblado
+    private static final int LOTE_CURSOR = 100;
+
+    private static final String INDICE_NOMBRE = "nombreNormalizado_unico";
+
+    // Campos de la cabecera que hacen de cerrojo (no se mapean en FranquiciaFila)
+    private static final String GUARDANDO_DESDE = "guardandoDesde";
+    private static final String GUARDANDO_POR = "guardandoPor";
+    private static final String ESCRIBIENDO = "escribiendo";
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    // Cuánto cuenta una anotación (de save o de una escritura de stock) si nadie la quita
+    private final Duration vigenciaEscritura;
+
+    public NormalizadoFranquiciaRepositoryAdapter(
+            ReactiveMongoTemplate mongoTemplate,
+            @Value("${franquicias.normalizado.vigencia-escritura:10s}") Duration vigenciaEscritura) {
+        this.mongoTemplate = mongoTemplate;
+        this.vigenciaEscritura = vigenciaEscritura;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void iniciar() {
+        crearIndices().subscribe(
+                null,
+                error -> log.error("No se pudieron crear los índices del almacenamiento normalizado", error),
+                () -> log.info("Índices del almacenamiento normalizado listos"));
+    }
+
+    // Idempotente: createIndex no hace nada si el índice ya existe con la misma definición
+    public Mono<Void> crearIndices() {
+        return Mono.when(
+                mongoTemplate.indexOps(FranquiciaFila.class).createIndex(new Index("nombreNormalizado", Sort.Direction.ASC)
+                        .unique().named(INDICE_NOMBRE)),
+                mongoTemplate.indexOps(SucursalFila.class).createIndex(new Index()
+                        .on("franquiciaId", Sort.Direction.ASC).on("clave", Sort.Direction.ASC)
+                        .unique().named("sucursal_unica")),
+                mongoTemplate.indexOps(SucursalFila.class).createIndex(new Index()
+                        .on("franquiciaId", Sort.Direction.ASC).on("orden", Sort.Direction.ASC)
+                        .named("sucursal_orden")),
+                mongoTemplate.indexOps(ProductoFila.class).createIndex(new Index()
+                        .on("franquiciaId", Sort.Direction.ASC).on("sucursalClave", Sort.Direction.ASC).on("clave", Sort.Direction.ASC)
+                        .unique().named("producto_unico")),
+                mongoTemplate.indexOps(ProductoFila.class).createIndex(new Index()
+                        .on("franquiciaId", Sort.Direction.ASC).on("sucursalClave", Sort.Direction.ASC).on("orden", Sort.Direction.ASC)
+                        .named("producto_orden")),
+                // Máximo stock por sucursal: el primero de este índice es el ganador (en empate, el de mayor orden)
+                mongoTemplate.indexOps(ProductoFila.class).createIndex(new Index()
+                        .on("franquiciaId", Sort.Direction.ASC).on("sucursalClave", Sort.Direction.ASC)
+                        .on("stock", Sort.Direction.DESC).on("orden", Sort.Direction.DESC)
+                        .named("producto_stock")),
+                // Búsqueda global de productos por clave (igualdad o prefijo)
+                mongoTemplate.indexOps(ProductoFila.class).createIndex(new Index("clave", Sort.Direction.ASC)
+                        .named("producto_busqueda")));
+    }
+
+    // ----------------------------------------------------------------------
+    // Escrituras
+    // ----------------------------------------------------------------------
+
+    /**
+     * Compare-and-set sobre la versión de la cabecera (sin escrituras de stock en curso) y luego,
+     * solo si ganó, las filas que cambiaron respecto de lo guardado (ver calcularCambios). Mientras
+     * tanto la cabecera queda marcada con guardandoDesde.
+     */
+    @Override
+    public Mono<Franquicia> save(Franquicia franquicia) {
+        if (franquicia.getId() == null) {
+            return insertar(franquicia);
+        }
+        String id = franquicia.getId();
+        Long version = franquicia.getVersion();
+        Criteria mismaVersion = version == null
+                ? Criteria.where("id").is(id).and("version").exists(false)
+                : Criteria.where("id").is(id).and("version").is(version);
+
+        return Mono.defer(() -> {
+                    // La marca de este save, para quitar solo la propia
+                    String token = UUID.randomUUID().toString();
+                    Update update = new Update()
+                            .set("nombre", franquicia.getNombre())
+                            .set("nombreNormalizado", ClaveNombre.de(franquicia.getNombre()))
+                            .currentDate(GUARDANDO_DESDE)
+                            .set(GUARDANDO_POR, token)
+                            // Si ganó, las anotaciones que queden ya vencieron
+                            .unset(ESCRIBIENDO);
+                    Query query = Query.query(new Criteria().andOperator(mismaVersion, sinGuardado(), sinEscrituras()));
+                    return mongoTemplate.updateFirst(query, update, FranquiciaFila.class)
+                            .onErrorMap(DuplicateKeyException.class, e -> nombreEnUso(franquicia.getNombre()))
+                            .flatMap(resultado -> resultado.getMatchedCount() == 0
+                                    ? Mono.<Void>error(new ConflictoConcurrenciaException(id))
+                                    : sincronizarFilas(franquicia)
+                                            .onErrorResume(error -> liberarGuardado(id, token).then(Mono.error(error)))
+                                            .then(liberarGuardado(id, token))
+                                            // Su marca venció y otro save la reemplazó: este ya no cuenta como guardado
+                                            .flatMap(liberado -> liberado ? Mono.<Void>empty() : Mono.error(new ConflictoConcurrenciaException(id))));
+                })
+                .then(Mono.fromSupplier(() -> {
+                    franquicia.setVersion(version == null ? 1L : version + 1);
+                    return franquicia;
+                }));
+    }
+
+    // Ningún save en curso (el de una marca vencida ya no cuenta)
+    private Criteria sinGuardado() {
+        return Criteria.expr(() -> new Document("$not", List.of(vigente("$" + GUARDANDO_DESDE))));
+    }
+
+    // Ninguna escritura de stock anotada que siga vigente
+    private Criteria sinEscrituras() {
+        Document anotaciones = new Document("$objectToArray", new Document("$ifNull", Arrays.asList("$" + ESCRIBIENDO, new Document())));
+        return Criteria.expr(() -> new Document("$not", List.of(new Document("$anyElementTrue", List.of(new Document("$map",
+                new Document("input", anotaciones).append("as", "anotacion").append("in", vigente("$$anotacion.v"))))))));
+    }
+
+    // Una marca cuenta hasta que pasa la vigencia desde que el servidor la puso (sin marca, null: no cuenta)
+    private Document vigente(String instante) {
+        return new Document("$gt", Arrays.asList(new Document("$add", Arrays.asList(instante, vigenciaEscritura.toMillis())), "$$NOW"));
+    }
+
+    // Quita la marca y sube la versión, solo si la marca sigue siendo la propia; false si otro save ya puso la suya
+    private Mono<Boolean> liberarGuardado(String id, String token) {
+        Query propia = Query.query(Criteria.where("id").is(id).and(GUARDANDO_POR).is(token));
+        Update update = new Update().unset(GUARDANDO_DESDE).unset(GUARDANDO_POR).inc("version", 1);
+        return mongoTemplate.updateFirst(propia, update, FranquiciaFila.class).map(resultado -> resultado.getMatchedCount() > 0);
+    }
+
+    // Cabecera primero (el índice único rechaza el nombre repetido), luego sus filas
+    @Override
+    public Mono<Franquicia> insertar(Franquicia franquicia) {
+        FranquiciaFila cabecera = new FranquiciaFila(franquicia.getId(), franquicia.getNombre(),
+                ClaveNombre.de(franquicia.getNombre()), 0L);
+
+        return Mono.defer(() -> mongoTemplate.insert(cabecera))
+                .onErrorMap(DuplicateKeyException.class, e -> esNombreDuplicado(e)
+                        ? nombreEnUso(franquicia.getNombre())
+                        : new RecursoDuplicadoException("Ya existe una franquicia con el ID: " + franquicia.getId()))
+                .flatMap(guardada -> {
+                    franquicia.setId(guardada.getId());
+                    franquicia.setVersion(0L);
+                    // Si las filas fallan (p. ej. sucursales repetidas en el cuerpo) no queda una cabecera huérfana
+                    return insertarFilas(franquicia)
+                            .onErrorResume(error -> borrarFilas(guardada.getId())
+                                    .then(mongoTemplate.remove(porId(guardada.getId()), FranquiciaFila.class))
+                                    .then(Mono.error(error)))
+                            .thenReturn(franquicia);
+                });
+    }
+
+    @Override
+    public Mono<Franquicia> actualizarNombre(String id, String nuevoNombre) {
+        Update update = new Update()
+                .set("nombre", nuevoNombre)
+                .set("nombreNormalizado", ClaveNombre.de(nuevoNombre))
+                .inc("version", 1);
+        return Mono.defer(() -> mongoTemplate.findAndModify(porId(id), update,
+                        FindAndModifyOptions.options().returnNew(true), FranquiciaFila.class))
+                .onErrorMap(DuplicateKeyException.class, e -> nombreEnUso(nuevoNombre))
+                .flatMap(this::ensamblar);
+    }
+
+    /**
+     * Un solo findAndModify sobre la fila del producto (sin lectura previa), entre la anotación y la
+     * versión: la fila nueva y la versión de la cabecera alcanzan, no se arma la franquicia. Con
+     * If-Match, entre la marca de escritura con versión y su retiro (ver escribirStockConVersion).
+     */
+    @Override
+    public Mono<StockActualizadoDto> actualizarStockProducto(String franquiciaId, String sucursalNombre, String productoNombre, int nuevoStock,
+                                                             Long versionEsperada) {
+        Query query = Query.query(filtroProducto(franquiciaId, sucursalNombre, productoNombre));
+        return escribirProducto(franquiciaId, sucursalNombre, versionEsperada, query, Update.update("stock", nuevoStock));
+    }
+
+    // $inc en el servidor; la protección contra negativos va en el filtro, igual que en el embebido
+    @Override
+    public Mono<StockActualizadoDto> incrementarStockProducto(String franquiciaId, String sucursalNombre, String productoNombre, int cambio, boolean evitarNegativo,
+                                                              Long versionEsperada) {
+        Criteria filtro = filtroProducto(franquiciaId, sucursalNombre, productoNombre);
+        if (evitarNegativo && cambio < 0) {
+            filtro = filtro.and("stock").gte(-cambio);
+        }
+        return escribirProducto(franquiciaId, sucursalNombre, versionEsperada, Query.query(filtro), new Update().inc("stock", cambio));
+    }
+
+    // La fila viene como quedó; vacío si no coincidió
+    private Mono<StockActualizadoDto> escribirProducto(String franquiciaId, String sucursalNombre, Long versionEsperada, Query query, Update update) {
+        Supplier<Mono<List<ProductoFila>>> escritura = () -> mongoTemplate.findAndModify(query, update,
+                        FindAndModifyOptions.options().returnNew(true), ProductoFila.class)
+                .flux().collectList();
+        return (versionEsperada == null
+                        ? escribirStock(franquiciaId, escritura, List::size)
+                        : escribirStockConVersion(franquiciaId, versionEsperada, escritura, List::size))
+                .map(escrita -> {
+                    ProductoFila fila = escrita.resultado().get(0);
+                    return new StockActualizadoDto(franquiciaId, escrita.cabecera().getVersion(), sucursalNombre,
+                            fila.getNombre(), fila.getStock(), null);
+                });
+    }
+
+    /**
+     * Un bulkWrite desordenado sobre las filas de productos y una sola escritura de la versión (que
+     * sube una por fila que coincidió, como en el embebido). Si no coincidieron todas, una lectura de
+     * las claves dice cuáles no existían.
+     */
+    @Override
+    public Flux<ResultadoStockDto> actualizarStockEnLote(String franquiciaId, List<ActualizacionStockDto> cambios) {
+        ReactiveBulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ProductoFila.class);
+        for (ActualizacionStockDto cambio : cambios) {
+            bulk.updateOne(Query.query(filtroProducto(franquiciaId, cambio.getSucursalNombre(), cambio.getProductoNombre())),
+                    Update.update("stock", cambio.getStock()));
+        }
+
+        return escribirStock(franquiciaId, bulk::execute, BulkWriteResult::getMatchedCount)
+                .flatMapMany(escrita -> escrita.filas() == cambios.size()
+                        ? Flux.fromIterable(cambios).map(c -> ResultadoStockDto.de(c, ResultadoStockDto.Estado.OK))
+                        : resolverResultadosLote(franquiciaId, cambios))
+                // Sin cabecera, o sin ninguna fila que coincidiera
+                .switchIfEmpty(Flux.defer(() -> resolverResultadosLote(franquiciaId, cambios)));
+    }
+
+    private Flux<ResultadoStockDto> resolverResultadosLote(String franquiciaId, List<ActualizacionStockDto> cambios) {
+        Query query = Query.query(Criteria.where("franquiciaId").is(franquiciaId));
+        query.fields().include("sucursalClave", "clave");
+
+        return mongoTemplate.find(query, ProductoFila.class)
+                .map(fila -> List.of(fila.getSucursalClave(), fila.getClave()))
+                .collect(HashSet<List<String>>::new, Set::add)
+                .flatMapMany(existentes -> Flux.fromIterable(cambios).map(cambio -> ResultadoStockDto.de(cambio,
+                        existentes.contains(List.of(ClaveNombre.de(cambio.getSucursalNombre()), ClaveNombre.de(cambio.getProductoNombre())))
+                                ? ResultadoStockDto.Estado.OK
+                                : ResultadoStockDto.Estado.NO_ENCONTRADO)));
+    }
+
+    /**
+     * Escritura de stock entre la anotación en la cabecera y su retiro, que en el mismo update sube
+     * la versión si la escritura tocó alguna fila (así ningún save con la versión anterior gana
+     * después). Sin cabecera o sin filas tocadas: vacío. Con un save en curso:
+     * ConflictoConcurrenciaException, antes de tocar ninguna fila.
+     * @param filasDe Cuántas filas coincidieron, según el resultado de la escritura.
+     */
+    private <T> Mono<EscrituraStock<T>> escribirStock(String franquiciaId, Supplier<Mono<T>> escritura, ToLongFunction<T> filasDe) {
+        String anotacion = ESCRIBIENDO + "." + UUID.randomUUID();
+        return Mono.defer(() -> {
+                    Query libre = Query.query(Criteria.where("id").is(franquiciaId).andOperator(sinGuardado()));
+                    return mongoTemplate.updateFirst(libre, new Update().currentDate(anotacion), FranquiciaFila.class);
+                })
+                .flatMap(anotada -> anotada.getMatchedCount() > 0
+                        ? escritura.get()
+                                .onErrorResume(error -> retirarEscritura(franquiciaId, anotacion, 0).then(Mono.error(error)))
+                                .flatMap(resultado -> {
+                                    long filas = filasDe.applyAsLong(resultado);
+                                    return retirarEscritura(franquiciaId, anotacion, filas)
+                                            .map(cabecera -> new EscrituraStock<>(resultado, filas, cabecera));
+                                })
+                        : existsById(franquiciaId).flatMap(existe -> existe
+                                ? Mono.error(new ConflictoConcurrenciaException(franquiciaId))
+                                : Mono.empty()));
+    }
+
+    // La cabecera con la versión nueva (solo ese campo); vacío si la escritura no tocó ninguna fila
+    private Mono<FranquiciaFila> retirarEscritura(String franquiciaId, String anotacion, long filas) {
+        return retirar(porId(franquiciaId), new Update().unset(anotacion), filas);
+    }
+
+    /**
+     * Escritura de stock con If-Match: la versión tiene que seguir siendo la esperada cuando se toca
+     * la fila, así que toma la cabecera igual que save (compare-and-set de la versión sin guardados
+     * ni escrituras en curso) y la versión sube al quitar la marca. Son los mismos tres viajes que
+     * sin If-Match. Si la versión ya es otra o no hay cabecera: vacío (el servicio decide entre 412 y
+     * 404). Si solo choca con otro escritor: ConflictoConcurrenciaException.
+     */
+    private <T> Mono<EscrituraStock<T>> escribirStockConVersion(String franquiciaId, long versionEsperada, Supplier<Mono<T>> escritura,
+                                                                ToLongFunction<T> filasDe) {
+        return Mono.defer(() -> {
+            String token = UUID.randomUUID().toString();
+            Query query = Query.query(new Criteria().andOperator(
+                    Criteria.where("id").is(franquiciaId).and("version").is(versionEsperada), sinGuardado(), sinEscrituras()));
+            Update marcar = new Update().currentDate(GUARDANDO_DESDE).set(GUARDANDO_POR, token).unset(ESCRIBIENDO);
+            Query propia = Query.query(Criteria.where("id").is(franquiciaId).and(GUARDANDO_POR).is(token));
+            Update liberar = new Update().unset(GUARDANDO_DESDE).unset(GUARDANDO_POR);
+            return mongoTemplate.updateFirst(query, marcar, FranquiciaFila.class)
+                    .flatMap(marcada -> marcada.getMatchedCount() > 0
+                            ? escritura.get()
+                                    .onErrorResume(error -> retirar(propia, liberar, 0).then(Mono.error(error)))
+                                    .flatMap(resultado -> {
+                                        long filas = filasDe.applyAsLong(resultado);
+                                        return retirar(propia, liberar, filas)
+                                                .map(cabecera -> new EscrituraStock<>(resultado, filas, cabecera))
+                                                // Su marca venció y otro la reemplazó (como en save)
+                                                .switchIfEmpty(Mono.defer(() -> filas == 0
+                                                        ? Mono.empty()
+                                                        : Mono.error(new ConflictoConcurrenciaException(franquiciaId))));
+                                    })
+                            : versionDe(franquiciaId)
+                                    .filter(version -> version == versionEsperada)
+                                    .flatMap(version -> Mono.error(new ConflictoConcurrenciaException(franquiciaId))));
+        });
+    }
+
+    // Quita la marca (y sube la versión si hubo filas tocadas); devuelve la cabecera con la versión nueva
+    private Mono<FranquiciaFila> retirar(Query cabecera, Update retirar, long filas) {
+        if (filas == 0) {
+            return mongoTemplate.updateFirst(cabecera, retirar, FranquiciaFila.class).then(Mono.empty());
+        }
+        cabecera.fields().include("version");
+        return mongoTemplate.findAndModify(cabecera, retirar.inc("version", filas),
+                FindAndModifyOptions.options().returnNew(true), FranquiciaFila.class);
+    }
+
+    // Solo la versión de la cabecera; vacío si no existe o no tiene versión
+    private Mono<Long> versionDe(String franquiciaId) {
+        Query query = porId(franquiciaId);
+        query.fields().include("version");
+        return mongoTemplate.findOne(query, FranquiciaFila.class).mapNotNull(FranquiciaFila::getVersion);
+    }
+
+    /**
+     * Copia una franquicia del almacenamiento embebido (la usa MigracionAlmacenamientoNormalizado).
+     * La cabecera se inserta al final y marca la franquicia como migrada: si ya existe no se toca
+     * nada, y si una ejecución anterior se cortó a medias se borran sus filas y se vuelve a copiar.
+     * @return true si se copió, false si ya estaba migrada.
+     */
+    Mono<Boolean> importar(Franquicia embebida) {
+        String id = embebida.getId();
+        FranquiciaFila cabecera = new FranquiciaFila(id, embebida.getNombre(), ClaveNombre.de(embebida.getNombre()),
+                embebida.getVersion() == null ? 0L : embebida.getVersion());
+
+        return existsById(id).flatMap(migrada -> migrada
+                ? Mono.just(false)
+                : borrarFilas(id)
+                        .then(insertarFilas(embebida))
+                        .then(mongoTemplate.insert(cabecera))
+                        .thenReturn(true)
+                        // Sin cabecera no hay franquicia: se limpian las filas que alcanzaron a copiarse
+                        .onErrorResume(error -> existsById(id)
+                                .flatMap(existe -> existe ? Mono.<Void>empty() : borrarFilas(id))
+                                .then(Mono.error(error))));
+    }
+
+    private Mono<Void> insertarFilas(Franquicia franquicia) {
+        List<SucursalFila> sucursales = new ArrayList<>();
+        List<ProductoFila> productos = new ArrayList<>();
+        long orden = 0;
+        for (Sucursal sucursal : sucursalesDe(franquicia)) {
+            sucursales.add(filaSucursal(franquicia.getId(), sucursal, orden++));
+            agregarFilasProductos(franquicia.getId(), sucursal, 0, productos);
+        }
+        return insertarTodas(sucursales, SucursalFila.class)
+                .then(insertarTodas(productos, ProductoFila.class))
+                .onErrorMap(DuplicateKeyException.class,
+                        e -> new RecursoDuplicadoException("Hay sucursales o productos repetidos en la franquicia " + franquicia.getNombre()));
+    }
+
+    private Mono<Void> insertarTodas(List<?> filas, Class<?> tipo) {
+        return filas.isEmpty() ? Mono.empty() : mongoTemplate.insert(filas, tipo).then();
+    }
+
+    private Mono<Void> borrarFilas(String franquiciaId) {
+        Query filas = Query.query(Criteria.where("franquiciaId").is(franquiciaId));
+        return mongoTemplate.remove(filas, SucursalFila.class)
+                .then(mongoTemplate.remove(filas, ProductoFila.class))
+                .then();
+    }
+
+    // ----------------------------------------------------------------------
+    // save: diferencias entre la franquicia y las filas guardadas
+    // ----------------------------------------------------------------------
+
+    private Mono<Void> sincronizarFilas(Franquicia franquicia) {
+        List<String> id = List.of(franquicia.getId());
+        return Mono.zip(filasSucursales(id).collectList(), filasProductos(id).collectList())
+                .map(filas -> calcularCambios(franquicia, filas.getT1(), filas.getT2()))
+                .flatMap(this::aplicar);
+    }
+
+    /**
+     * Las sucursales y productos se emparejan por clave de nombre. Si de un lado y del otro queda
+     * exactamente uno sin pareja, es un cambio de nombre (lo que hacen los PUT de renombrar) y se
+     * actualiza la fila en vez de borrarla y crearla.
+     */
+    private Cambios calcularCambios(Franquicia franquicia, List<SucursalFila> filasSucursales, List<ProductoFila> filasProductos) {
+        String franquiciaId = franquicia.getId();
+        Cambios cambios = new Cambios();
+        Map<String, List<ProductoFila>> productosPorSucursal = agrupar(filasProductos, ProductoFila::getSucursalClave);
+
+        List<Sucursal> sucursales = sucursalesDe(franquicia);
+        Map<String, SucursalFila> sinPareja = porClave(filasSucursales, SucursalFila::getClave);
+        List<SucursalFila> filas = new ArrayList<>(sucursales.size());
+        for (Sucursal sucursal : sucursales) {
+            filas.add(sinPareja.remove(ClaveNombre.de(sucursal.getNombre())));
+        }
+        int renombrada = unicaSinFila(filas);
+        if (renombrada >= 0 && sinPareja.size() == 1) {
+            SucursalFila fila = sinPareja.values().iterator().next();
+            sinPareja.clear();
+            filas.set(renombrada, fila);
+            // Sus productos pasan a la clave nueva con un solo updateMany
+            cambios.productosMovidos.add(new Actualizacion(
+                    Query.query(Criteria.where("franquiciaId").is(franquiciaId).and("sucursalClave").is(fila.getClave())),
+                    Update.update("sucursalClave", ClaveNombre.de(sucursales.get(renombrada).getNombre()))));
+        }
+
+        for (SucursalFila fila : sinPareja.values()) {
+            cambios.sucursalesBorradas.add(porId(fila.getId()));
+            cambios.productosBorrados.add(Query.query(Criteria.where("franquiciaId").is(franquiciaId)
+                    .and("sucursalClave").is(fila.getClave())));
+        }
+        long[] orden = ordenes(filas, SucursalFila::getOrden, filasSucursales.stream().mapToLong(SucursalFila::getOrden).max().orElse(-1));
+        for (int i = 0; i < sucursales.size(); i++) {
+            Sucursal sucursal = sucursales.get(i);
+            SucursalFila fila = filas.get(i);
+            if (fila == null) {
+                cambios.sucursalesNuevas.add(filaSucursal(franquiciaId, sucursal, orden[i]));
+                agregarFilasProductos(franquiciaId, sucursal, 0, cambios.productosNuevos);
+                continue;
+            }
+            Update update = new Update();
+            if (!sucursal.getNombre().equals(fila.getNombre())) {
+                update.set("nombre", sucursal.getNombre()).set("clave", ClaveNombre.de(sucursal.getNombre()));
+            }
+            if (orden[i] != fila.getOrden()) {
+                update.set("orden", orden[i]);
+            }
+            if (!update.getUpdateObject().isEmpty()) {
+                cambios.sucursalesActualizadas.add(new Actualizacion(porId(fila.getId()), update));
+            }
+            compararProductos(franquiciaId, sucursal, productosPorSucursal.getOrDefault(fila.getClave(), List.of()), cambios);
+        }
+        return cambios;
+    }
+
+    // Mismo emparejamiento que las sucursales, dentro de una sucursal
+    private void compararProductos(String franquiciaId, Sucursal sucursal, List<ProductoFila> filasActuales, Cambios cambios) {
+        List<Producto> productos = productosDe(sucursal);
+        Map<String, ProductoFila> sinPareja = porClave(filasActuales, ProductoFila::getClave);
+        List<ProductoFila> filas = new ArrayList<>(productos.size());
+        for (Producto producto : productos) {
+            filas.add(sinPareja.remove(ClaveNombre.de(producto.getNombre())));
+        }
+        int renombrado = unicaSinFila(filas);
+        if (renombrado >= 0 && sinPareja.size() == 1) {
+            filas.set(renombrado, sinPareja.values().iterator().next());
+            sinPareja.clear();
+        }
+
+        for (ProductoFila fila : sinPareja.values()) {
+            cambios.productosBorrados.add(porId(fila.getId()));
+        }
+        String sucursalClave = ClaveNombre.de(sucursal.getNombre());
+        long[] orden = ordenes(filas, ProductoFila::getOrden, filasActuales.stream().mapToLong(ProductoFila::getOrden).max().orElse(-1));
+        for (int i = 0; i < productos.size(); i++) {
+            Producto producto = productos.get(i);
+            ProductoFila fila = filas.get(i);
+            if (fila == null) {
+                cambios.productosNuevos.add(filaProducto(franquiciaId, sucursalClave, producto, orden[i]));
+                continue;
+            }
+            Update update = new Update();
+            if (!producto.getNombre().equals(fila.getNombre())) {
+                update.set("nombre", producto.getNombre()).set("clave", ClaveNombre.de(producto.getNombre()));
+            }
+            if (producto.getStock() != fila.getStock()) {
+                update.set("stock", producto.getStock());
+            }
+            if (orden[i] != fila.getOrden()) {
+                update.set("orden", orden[i]);
+            }
+            if (!update.getUpdateObject().isEmpty()) {
+                cambios.productosActualizados.add(new Actualizacion(porId(fila.getId()), update));
+            }
+        }
+    }
+
+    // Posición del único elemento sin fila, o -1 si no hay ninguno o hay más de uno
+    private static int unicaSinFila(List<?> filas) {
+        int posicion = -1;
+        for (int i = 0; i < filas.size(); i++) {
+            if (filas.get(i) == null) {
+                if (posicion >= 0) {
+                    return -1;
+                }
+                posicion = i;
+            }
+        }
+        return posicion;
+    }
+
+    /**
+     * Valor de "orden" para cada posición de la lista. Lo normal (el dominio solo agrega al final):
+     * las filas que se conservan ya están en el orden de la lista y las nuevas van detrás, así que
+     * las conservadas no cambian y las nuevas siguen al máximo actual. Si no (p. ej. un lote del
+     * pipeline con renombres y altas a la vez), se renumera la lista entera para no alterar el orden.
+     */
+    private static <T> long[] ordenes(List<T> filas, ToLongFunction<T> ordenDe, long maximoActual) {
+        long[] orden = new long[filas.size()];
+        boolean soloAlFinal = true;
+        boolean hayNueva = false;
+        long anterior = -1;
+        for (T fila : filas) {
+            if (fila == null) {
+                hayNueva = true;
+            } else {
+                long actual = ordenDe.applyAsLong(fila);
+                soloAlFinal &= !hayNueva && actual > anterior;
+                anterior = actual;
+            }
+        }
+
+        long siguiente = maximoActual + 1;
+        for (int i = 0; i < filas.size(); i++) {
+            T fila = filas.get(i);
+            if (!soloAlFinal) {
+                orden[i] = i;
+            } else {
+                orden[i] = fila != null ? ordenDe.applyAsLong(fila) : siguiente++;
+            }
+        }
+        return orden;
+    }
+
+    // Dos bulkWrite ordenados (sucursales y productos): borrados, luego cambios, luego altas
+    private Mono<Void> aplicar(Cambios cambios) {
+        Mono<Void> sucursales = Mono.defer(() -> {
+            if (cambios.sucursalesBorradas.isEmpty() && cambios.sucursalesActualizadas.isEmpty() && cambios.sucursalesNuevas.isEmpty()) {
+                return Mono.empty();
+            }
+            ReactiveBulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, SucursalFila.class);
+            cambios.sucursalesBorradas.forEach(bulk::remove);
+            cambios.sucursalesActualizadas.forEach(a -> bulk.updateOne(a.query(), a.update()));
+            cambios.sucursalesNuevas.forEach(bulk::insert);
+            return bulk.execute().then();
+        });
+        Mono<Void> productos = Mono.defer(() -> {
+            if (cambios.productosBorrados.isEmpty() && cambios.productosMovidos.isEmpty()
+                    && cambios.productosActualizados.isEmpty() && cambios.productosNuevos.isEmpty()) {
+                return Mono.empty();
+            }
+            ReactiveBulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, ProductoFila.class);
+            cambios.productosBorrados.forEach(bulk::remove);
+            cambios.productosMovidos.forEach(a -> bulk.updateMulti(a.query(), a.update()));
+            cambios.productosActualizados.forEach(a -> bulk.updateOne(a.query(), a.update()));
+            cambios.productosNuevos.forEach(bulk::insert);
+            return bulk.execute().then();
+        });
+        return sucursales.then(productos);
+    }
+
+    // ----------------------------------------------------------------------
+    // Lecturas
+    // ----------------------------------------------------------------------
+
+    @Override
+    public Mono<Franquicia> findById(String id) {
+        return mongoTemplate.findById(id, FranquiciaFila.class).flatMap(this::ensamblar);
+    }
+
+    @Override
+    public Mono<Franquicia> findByNombre(String nombre) {
+        return mongoTemplate.findOne(Query.query(Criteria.where("nombreNormalizado").is(ClaveNombre.de(nombre))), FranquiciaFila.class)
+                .flatMap(this::ensamblar);
+    }
+
+    @Override
+    public Flux<Franquicia> findAll() {
+        return findPagina(null, 0);
+    }
+
+    // Keyset sobre las cabeceras; las filas de cada lote se traen con dos consultas ($in), no una por franquicia
+    @Override
+    public Flux<Franquicia> findPagina(String despuesDeId, int limite) {
+        Query query = Query.query(CriteriosMongo.despuesDeId(despuesDeId))
+                .with(Sort.by(Sort.Direction.ASC, "id"))
+                .cursorBatchSize(LOTE_CURSOR);
+        if (limite > 0) {
+            query.limit(limite);
+        }
+        return mongoTemplate.find(query, FranquiciaFila.class)
+                .buffer(LOTE_CURSOR)
+                .concatMap(this::ensamblarLote);
+    }
+
+    @Override
+    public Mono<Boolean> existsById(String id) {
+        return mongoTemplate.exists(porId(id), FranquiciaFila.class);
+    }
+
+    @Override
+    public Mono<FranquiciaResumenDto> findResumenById(String id, VistaFranquicia vista) {
+        return proyectar(Criteria.where("id").is(id), vista, 0).next();
+    }
+
+    @Override
+    public Mono<FranquiciaResumenDto> findResumenByNombre(String nombre, VistaFranquicia vista) {
+        return proyectar(Criteria.where("nombreNormalizado").is(ClaveNombre.de(nombre)), vista, 1).next();
+    }
+
+    @Override
+    public Flux<FranquiciaResumenDto> findResumenPagina(String despuesDeId, int limite, VistaFranquicia vista) {
+        return proyectar(CriteriosMongo.despuesDeId(despuesDeId), vista, limite);
+    }
+
+    /**
+     * Cabeceras + $lookup de solo los nombres de sus sucursales (los productos no se leen).
+     * Las filas guardan franquiciaId como string, por eso se compara con $toString del _id.
+     */
+    private Flux<FranquiciaResumenDto> proyectar(Criteria filtro, VistaFranquicia vista, int limite) {
+        Document sucursales = new Document("$lookup", new Document("from", SucursalFila.COLECCION)
+                .append("let", new Document("franquiciaId", new Document("$toString", "$_id")))
+                .append("pipeline", List.of(
+                        new Document("$match", new Document("$expr", new Document("$eq", Arrays.asList("$franquiciaId", "$$franquiciaId")))),
+                        new Document("$sort", new Document("orden", 1)),
+                        new Document("$project", new Document("_id", 0).append("nombre", 1))))
+                .append("as", "filas"));
+        Document proyeccion = new Document("nombre", 1)
+                .append("version", 1)
+                .append("totalSucursales", new Document("$size", "$filas"));
+        if (vista == VistaFranquicia.SUCURSALES) {
+            proyeccion.append("sucursales", "$filas.nombre");
+        }
+
+        List<AggregationOperation> etapas = new ArrayList<>();
+        etapas.add(Aggregation.match(filtro));
+        etapas.add(Aggregation.sort(Sort.Direction.ASC, "id"));
+        if (limite > 0) {
+            etapas.add(Aggregation.limit(limite));
+        }
+        etapas.add(contexto -> sucursales);
+        etapas.add(contexto -> new Document("$project", proyeccion));
+
+        TypedAggregation<FranquiciaFila> aggregation = Aggregation.newAggregation(FranquiciaFila.class, etapas)
+                .withOptions(AggregationOptions.builder().cursorBatchSize(LOTE_CURSOR).build());
+        return mongoTemplate.aggregate(aggregation, FranquiciaResumenDto.class);
+    }
+
+    // Tramo de filas de sucursales (skip/limit en la BD) y, por cada lote, los productos de esas sucursales
+    @Override
+    public Flux<Sucursal> findSucursales(String franquiciaId, int desde, int limite, OrdenListado orden) {
+        Query query = Query.query(Criteria.where("franquiciaId").is(franquiciaId))
+                .with(ordenFilas(orden))
+                .skip(desde)
+                .cursorBatchSize(LOTE_CURSOR);
+        if (limite > 0) {
+            query.limit(limite);
+        }
+        return mongoTemplate.find(query, SucursalFila.class)
+                .buffer(LOTE_CURSOR)
+                .concatMap(filas -> {
+                    Query productos = Query.query(Criteria.where("franquiciaId").is(franquiciaId)
+                                    .and("sucursalClave").in(filas.stream().map(SucursalFila::getClave).toList()))
+                            .with(Sort.by("sucursalClave", "orden"));
+                    return mongoTemplate.find(productos, ProductoFila.class)
+                            .collectList()
+                            .flatMapIterable(filasProductos -> {
+                                Map<String, List<ProductoFila>> porSucursal = agrupar(filasProductos, ProductoFila::getSucursalClave);
+                                return filas.stream().map(fila -> aSucursal(fila, porSucursal)).toList();
+                            });
+                });
+    }
+
+    // Consulta directa sobre el índice (franquiciaId, sucursalClave, ...)
+    @Override
+    public Flux<Producto> findProductos(String franquiciaId, String sucursalNombre, int desde, int limite, OrdenListado orden) {
+        Query query = Query.query(Criteria.where("franquiciaId").is(franquiciaId).and("sucursalClave").is(ClaveNombre.de(sucursalNombre)))
+                .with(ordenFilas(orden))
+                .skip(desde)
+                .cursorBatchSize(LOTE_CURSOR);
+        if (limite > 0) {
+            query.limit(limite);
+        }
+        return mongoTemplate.find(query, ProductoFila.class)
+                .map(fila -> new Producto(fila.getNombre(), fila.getStock()));
+    }
+
+    /**
+     * Sucursales en orden y, por cada una, un $lookup que toma el primer producto del índice
+     * producto_stock (mayor stock; en empate, el último agregado, como en el embebido).
+     */
+    @Override
+    public Flux<ProductoMaxStockDto> findProductoMaxStockPorSucursal(String franquiciaId) {
+        Document maximo = new Document("$lookup", new Document("from", ProductoFila.COLECCION)
+                .append("let", new Document("franquiciaId", "$franquiciaId").append("sucursalClave", "$clave"))
+                .append("pipeline", List.of(
+                        new Document("$match", new Document("$expr", new Document("$and", List.of(
+                                new Document("$eq", Arrays.asList("$franquiciaId", "$$franquiciaId")),
+                                new Document("$eq", Arrays.asList("$sucursalClave", "$$sucursalClave")))))),
+                        new Document("$sort", new Document("stock", -1).append("orden", -1)),
+                        new Document("$limit", 1)))
+                .append("as", "maximo"));
+
+        TypedAggregation<SucursalFila> aggregation = Aggregation.newAggregation(SucursalFila.class,
+                Aggregation.match(Criteria.where("franquiciaId").is(franquiciaId)),
+                Aggregation.sort(Sort.Direction.ASC, "orden"),
+                contexto -> maximo,
+                contexto -> new Document("$project", new Document("_id", 0)
+                        .append("sucursalNombre", "$nombre")
+                        .append("productoNombre", new Document("$arrayElemAt", Arrays.asList("$maximo.nombre", 0)))
+                        .append("stock", new Document("$arrayElemAt", Arrays.asList("$maximo.stock", 0)))));
+
+        // La versión se lee antes que las filas: la vista toma como desfasado todo evento que no sea posterior
+        Query cabecera = porId(franquiciaId);
+        cabecera.fields().include("version");
+        return mongoTemplate.findOne(cabecera, FranquiciaFila.class)
+                .flatMapMany(fila -> mongoTemplate.aggregate(aggregation, ProductoMaxStockDto.class)
+                        .doOnNext(dto -> dto.setVersion(fila.getVersion())));
+    }
+
+    /**
+     * Filas de productos por el índice producto_busqueda (igualdad o prefijo sobre la clave, que
+     * ya está plegada) y, por cada lote, dos consultas ($in) con los nombres de la franquicia y de
+     * la sucursal. Un $lookup hacia las cabeceras tendría que comparar $toString del _id, sin índice.
+     */
+    @Override
+    public Flux<ProductoEncontradoDto> buscarProductos(String nombre, boolean prefijo, int limite) {
+        String clave = ClaveNombre.de(nombre);
+        Query query = Query.query(prefijo ? Criteria.where("clave").regex(CriteriosMongo.prefijo(clave)) : Criteria.where("clave").is(clave))
+                .limit(limite)
+                .cursorBatchSize(LOTE_CURSOR);
+        query.fields().exclude("id", "clave", "orden");
+
+        return mongoTemplate.find(query, ProductoFila.class)
+                .buffer(LOTE_CURSOR)
+                .concatMap(filas -> {
+                    Set<String> franquiciaIds = new HashSet<>();
+                    Set<String> sucursalClaves = new HashSet<>();
+                    for (ProductoFila fila : filas) {
+                        franquiciaIds.add(fila.getFranquiciaId());
+                        sucursalClaves.add(fila.getSucursalClave());
+                    }
+                    Query cabeceras = Query.query(Criteria.where("id").in(franquiciaIds));
+                    cabeceras.fields().include("nombre");
+                    Query sucursales = Query.query(Criteria.where("franquiciaId").in(franquiciaIds).and("clave").in(sucursalClaves));
+                    sucursales.fields().include("franquiciaId", "clave", "nombre");
+
+                    return Mono.zip(mongoTemplate.find(cabeceras, FranquiciaFila.class).collectMap(FranquiciaFila::getId, FranquiciaFila::getNombre),
+                                    mongoTemplate.find(sucursales, SucursalFila.class).collectMap(
+                                            fila -> sucursalDe(fila.getFranquiciaId(), fila.getClave()), SucursalFila::getNombre))
+                            .flatMapIterable(nombres -> filas.stream()
+                                    // Una fila cuya cabecera o sucursal ya no está (guardado a medio aplicar) no se devuelve
+                                    .filter(fila -> nombres.getT1().containsKey(fila.getFranquiciaId())
+                                            && nombres.getT2().containsKey(sucursalDe(fila.getFranquiciaId(), fila.getSucursalClave())))
+                                    .map(fila -> {
+                                        ProductoEncontradoDto encontrado = new ProductoEncontradoDto();
+                                        encontrado.setFranquiciaId(fila.getFranquiciaId());
+                                        encontrado.setFranquiciaNombre(nombres.getT1().get(fila.getFranquiciaId()));
+                                        encontrado.setSucursalNombre(nombres.getT2().get(sucursalDe(fila.getFranquiciaId(), fila.getSucursalClave())));
+                                        encontrado.setProductoNombre(fila.getNombre());
+                                        encontrado.setStock(fila.getStock());
+                                        return encontrado;
+                                    })
+                                    .toList());
+                });
+    }
+
+    private Mono<Franquicia> ensamblar(FranquiciaFila cabecera) {
+        return ensamblarLote(List.of(cabecera)).next();
+    }
+
+    // Dos consultas para todo el lote (sucursales y productos de esas franquicias) y el armado en memoria
+    private Flux<Franquicia> ensamblarLote(List<FranquiciaFila> cabeceras) {
+        List<String> ids = cabeceras.stream().map(FranquiciaFila::getId).toList();
+        return Mono.zip(filasSucursales(ids).collectList(), filasProductos(ids).collectList())
+                .flatMapIterable(filas -> {
+                    Map<String, List<SucursalFila>> sucursales = agrupar(filas.getT1(), SucursalFila::getFranquiciaId);
+                    Map<String, List<ProductoFila>> productos = agrupar(filas.getT2(), ProductoFila::getFranquiciaId);
+                    List<Franquicia> franquicias = new ArrayList<>(cabeceras.size());
+                    for (FranquiciaFila cabecera : cabeceras) {
+                        franquicias.add(armar(cabecera,
+                                sucursales.getOrDefault(cabecera.getId(), List.of()),
+                                productos.getOrDefault(cabecera.getId(), List.of())));
+                    }
+                    return franquicias;
+                });
+    }
+
+    private Franquicia armar(FranquiciaFila cabecera, List<SucursalFila> filasSucursales, List<ProductoFila> filasProductos) {
+        Map<String, List<ProductoFila>> porSucursal = agrupar(filasProductos, ProductoFila::getSucursalClave);
+        List<Sucursal> sucursales = new ArrayList<>(filasSucursales.size());
+        for (SucursalFila fila : filasSucursales) {
+            sucursales.add(aSucursal(fila, porSucursal));
+        }
+        Franquicia franquicia = new Franquicia(cabecera.getNombre(), sucursales);
+        franquicia.setId(cabecera.getId());
+        franquicia.setVersion(cabecera.getVersion());
+        return franquicia;
+    }
+
+    private Sucursal aSucursal(SucursalFila fila, Map<String, List<ProductoFila>> productosPorSucursal) {
+        List<Producto> productos = new ArrayList<>();
+        for (ProductoFila producto : productosPorSucursal.getOrDefault(fila.getClave(), List.of())) {
+            productos.add(new Producto(producto.getNombre(), producto.getStock()));
+        }
+        return new Sucursal(fila.getNombre(), productos);
+    }
+
+    private Flux<SucursalFila> filasSucursales(Collection<String> franquiciaIds) {
+        return mongoTemplate.find(Query.query(Criteria.where("franquiciaId").in(franquiciaIds))
+                .with(Sort.by("franquiciaId", "orden")), SucursalFila.class);
+    }
+
+    private Flux<ProductoFila> filasProductos(Collection<String> franquiciaIds) {
+        return mongoTemplate.find(Query.query(Criteria.where("franquiciaId").in(franquiciaIds))
+                .with(Sort.by("franquiciaId", "sucursalClave", "orden")), ProductoFila.class);
+    }
+
+    // ----------------------------------------------------------------------
+    // Utilidades
+    // ----------------------------------------------------------------------
+
+    // Sin orden pedido: el de la lista (campo orden). En empates manda también el orden de la lista
+    private Sort ordenFilas(OrdenListado orden) {
+        if (orden.getCampo() == null) {
+            return Sort.by(Sort.Direction.ASC, "orden");
+        }
+        Sort.Direction direccion = orden.getDireccion() > 0 ? Sort.Direction.ASC : Sort.Direction.DESC;
+        return Sort.by(direccion, orden.getCampo()).and(Sort.by(Sort.Direction.ASC, "orden"));
+    }
+
+    private Criteria filtroProducto(String franquiciaId, String sucursalNombre, String productoNombre) {
+        return Criteria.where("franquiciaId").is(franquiciaId)
+                .and("sucursalClave").is(ClaveNombre.de(sucursalNombre))
+                .and("clave").is(ClaveNombre.de(productoNombre));
+    }
+
+    private SucursalFila filaSucursal(String franquiciaId, Sucursal sucursal, long orden) {
+        return new SucursalFila(null, franquiciaId, sucursal.getNombre(), ClaveNombre.de(sucursal.getNombre()), orden);
+    }
+
+    private ProductoFila filaProducto(String franquiciaId, String sucursalClave, Producto producto, long orden) {
+        return new ProductoFila(null, franquiciaId, sucursalClave, producto.getNombre(),
+                ClaveNombre.de(producto.getNombre()), producto.getStock(), orden);
+    }
+
+    private void agregarFilasProductos(String franquiciaId, Sucursal sucursal, long ordenInicial, List<ProductoFila> destino) {
+        String sucursalClave = ClaveNombre.de(sucursal.getNombre());
+        long orden = ordenInicial;
+        for (Producto producto : productosDe(sucursal)) {
+            destino.add(filaProducto(franquiciaId, sucursalClave, producto, orden++));
+        }
+    }
+
+    private static List<Sucursal> sucursalesDe(Franquicia franquicia) {
+        return franquicia.getSucursales() == null ? List.of() : franquicia.getSucursales();
+    }
+
+    private static List<Producto> productosDe(Sucursal sucursal) {
+        return sucursal.getProductos() == null ? List.of() : sucursal.getProductos();
+    }
+
+    private static <T> Map<String, List<T>> agrupar(List<T> filas, Function<T, String> clave) {
+        Map<String, List<T>> grupos = new HashMap<>();
+        for (T fila : filas) {
+            grupos.computeIfAbsent(clave.apply(fila), k -> new ArrayList<>()).add(fila);
+        }
+        return grupos;
+    }
+
+    private static <T> Map<String, T> porClave(List<T> filas, Function<T, String> clave) {
+        Map<String, T> mapa = new LinkedHashMap<>();
+        for (T fila : filas) {
+            mapa.put(clave.apply(fila), fila);
+        }
+        return mapa;
+    }
+
+    // Clave (franquicia, sucursal) para los mapas de nombres de la búsqueda de productos
+    private static String sucursalDe(String franquiciaId, String sucursalClave) {
+        return franquiciaId + '/' + sucursalClave;
+    }
+
+    private static Query porId(String id) {
+        return Query.query(Criteria.where("id").is(id));
+    }
+
+    private boolean esNombreDuplicado(DuplicateKeyException e) {
+        return e.getMessage() != null && e.getMessage().contains(INDICE_NOMBRE);
+    }
+
+    private RecursoDuplicadoException nombreEnUso(String nombre) {
+        return new RecursoDuplicadoException("Ya existe una franquicia con el nombre: " + nombre);
+    }
+
+    // Resultado de una escritura de stock, cuántas filas tocó y la cabecera ya con la versión nueva
+    private record EscrituraStock<T>(T resultado, long filas, FranquiciaFila cabecera) {
+    }
+
+    private record Actualizacion(Query query, Update update) {
+    }
+
+    // Escrituras de un save, agrupadas por colección y por tipo (se aplican en ese orden)
+    private static final class Cambios {
+        private final List<Query> sucursalesBorradas = new ArrayList<>();
+        private final List<Actualizacion> sucursalesActualizadas = new ArrayList<>();
+        private final List<SucursalFila> sucursalesNuevas = new ArrayList<>();
+        private final List<Query> productosBorrados = new ArrayList<>();
+        private final List<Actualizacion> productosMovidos = new ArrayList<>();
+        private final List<Actualizacion> productosActualizados = new ArrayList<>();
+        private final List<ProductoFila> productosNuevos = new ArrayList<>();
+    }
+}
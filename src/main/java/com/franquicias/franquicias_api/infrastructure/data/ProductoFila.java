@@ -0,0 +1,36 @@
+package com.franquicias.franquicias_api.infrastructure.data;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Almacenamiento normalizado: una fila por producto. Única por (franquiciaId, sucursalClave, clave).
+ * Guarda la clave de la sucursal (no su _id) para que un cambio de stock sea un solo updateOne;
+ * renombrar una sucursal cuesta un updateMany sobre sus productos.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = ProductoFila.COLECCION)
+class ProductoFila {
+
+    static final String COLECCION = "productos";
+
+    @Id
+    private String id;
+
+    private String franquiciaId;
+    private String sucursalClave;
+    private String nombre;
+
+    // ClaveNombre del nombre
+    private String clave;
+
+    private int stock;
+
+    // Posición en la lista de la sucursal (en empate de stock gana el de mayor orden)
+    private long orden;
+}
@@ -0,0 +1,29 @@
+package com.franquicias.franquicias_api.infrastructure.data;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+// Almacenamiento normalizado: una fila por sucursal. Única por (franquiciaId, clave)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = SucursalFila.COLECCION)
+class SucursalFila {
+
+    static final String COLECCION = "sucursales";
+
+    @Id
+    private String id;
+
+    private String franquiciaId;
+    private String nombre;
+
+    // ClaveNombre del nombre
+    private String clave;
+
+    // Posición en la lista de la franquicia (crece al agregar; los huecos no importan)
+    private long orden;
+}
@@ -1,7 +1,12 @@
 package com.franquicias.franquicias_api.infrastructure.excetion;
 
+import com.franquicias.franquicias_api.domain.exception.ConflictoConcurrenciaException;
 import com.franquicias.franquicias_api.domain.exception.RecursoDuplicadoException;
 import com.franquicias.franquicias_api.domain.exception.RecursoNoEncontradoException;
+import com.franquicias.franquicias_api.domain.exception.ReservaVencidaException;
+import com.franquicias.franquicias_api.domain.exception.StockInsuficienteException;
+import com.franquicias.franquicias_api.domain.exception.VersionNoCoincideException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -15,41 +20,54 @@ import java.util.Map;
 public class GlobalExceptionHandler {
 
     /**
-     * Maneja RecursoNoEncontradoException -> HTTP 404 Not Found
-     * Ocurre en findById, findByNombre.
+     * Código HTTP de cada excepción que se maneja aquí (500 si no es ninguna de ellas). Es la única
+     * tabla: la usa handleException y también MetricasPuertos para la etiqueta "estado".
      */
-    @ExceptionHandler(RecursoNoEncontradoException.class)
-    public Mono<ResponseEntity<Map<String, Object>>> handleNotFoundException(RecursoNoEncontradoException ex) {
-        return Mono.just(
-                ResponseEntity
-                        .status(HttpStatus.NOT_FOUND) // Código 404
-                        .body(this.buildErrorBody(HttpStatus.NOT_FOUND, ex.getMessage()))
-        );
-    }
-
-    /**
-     * Maneja ExceptionFranquicia -> HTTP 409 Conflict
-     * Ocurre en crearFranquicia cuando ya existe.
-     */
-    @ExceptionHandler(RecursoDuplicadoException.class)
-    public Mono<ResponseEntity<Map<String, Object>>> handleConflictException(RecursoDuplicadoException ex) {
-        return Mono.just(
-                ResponseEntity
-                        .status(HttpStatus.CONFLICT) // Código 409
-                        .body(this.buildErrorBody(HttpStatus.CONFLICT, ex.getMessage()))
-        );
+    public static HttpStatus estadoDe(Throwable error) {
+        // findById, findByNombre y cualquier sucursal, producto o reserva que no existe
+        if (error instanceof RecursoNoEncontradoException) {
+            return HttpStatus.NOT_FOUND;
+        }
+        // Nombre repetido, stock que quedaría negativo, conflicto de versión con los reintentos agotados
+        // o un índice único que el adaptador no tradujo a RecursoDuplicadoException
+        if (error instanceof RecursoDuplicadoException || error instanceof StockInsuficienteException
+                || error instanceof ConflictoConcurrenciaException || error instanceof DuplicateKeyException) {
+            return HttpStatus.CONFLICT;
+        }
+        // Confirmar una reserva que ya venció
+        if (error instanceof ReservaVencidaException) {
+            return HttpStatus.GONE;
+        }
+        // Mutación con If-Match cuando la franquicia ya va por otra versión
+        if (error instanceof VersionNoCoincideException) {
+            return HttpStatus.PRECONDITION_FAILED;
+        }
+        // Datos de entrada faltantes o incorrectos (validaciones de campos vacíos)
+        if (error instanceof IllegalArgumentException) {
+            return HttpStatus.BAD_REQUEST;
+        }
+        return HttpStatus.INTERNAL_SERVER_ERROR;
     }
 
-    /**
-     * Maneja IllegalArgumentException -> HTTP 400 Bad Request
-     * Ocurre por datos de entrada faltantes o incorrectos (validaciones de campos vacíos).
-     */
-    @ExceptionHandler(IllegalArgumentException.class)
-    public Mono<ResponseEntity<Map<String, Object>>> handleBadRequest(IllegalArgumentException ex) {
+    // Las mismas excepciones que estadoDe, cada una con su código
+    @ExceptionHandler({
+            RecursoNoEncontradoException.class,
+            RecursoDuplicadoException.class,
+            StockInsuficienteException.class,
+            ConflictoConcurrenciaException.class,
+            DuplicateKeyException.class,
+            ReservaVencidaException.class,
+            VersionNoCoincideException.class,
+            IllegalArgumentException.class
+    })
+    public Mono<ResponseEntity<Map<String, Object>>> handleException(Exception ex) {
+        HttpStatus status = estadoDe(ex);
+        // El mensaje del índice único trae detalles de la BD: no se devuelve tal cual
+        String mensaje = ex instanceof DuplicateKeyException ? "El recurso ya existe (valor único repetido)." : ex.getMessage();
         return Mono.just(
                 ResponseEntity
-                        .status(HttpStatus.BAD_REQUEST) // Código 400
-                        .body(this.buildErrorBody(HttpStatus.BAD_REQUEST, ex.getMessage()))
+                        .status(status)
+                        .body(this.buildErrorBody(status, mensaje))
         );
     }
 
@@ -62,4 +80,4 @@ public class GlobalExceptionHandler {
                 "message", message
         );
     }
-}
\ No newline at end of file
+}
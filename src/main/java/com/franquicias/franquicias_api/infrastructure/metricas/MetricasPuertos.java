@@ -0,0 +1,246 @@
+package com.franquicias.franquicias_api.infrastructure.metricas;
+
+import com.franquicias.franquicias_api.application.port.in.IFranquiciaManagement;
+import com.franquicias.franquicias_api.application.port.out.IFranquiciaRepository;
+import com.franquicias.franquicias_api.domain.Franquicia;
+import com.franquicias.franquicias_api.domain.Sucursal;
+import com.franquicias.franquicias_api.infrastructure.excetion.GlobalExceptionHandler;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Métricas de cada método de los puertos IFranquiciaManagement (casos de uso) e
+ * IFranquiciaRepository (adaptadores de almacenamiento y caché). Envuelve esos beans en un
+ * proxy, así que un método nuevo del puerto queda medido sin tocar nada más.
+ *
+ * - franquicias.casos.uso / franquicias.repositorio (Timer con histograma): desde la suscripción
+ *   hasta la última señal, por metodo, resultado (ok, vacio, error, cancelado) y estado (el código
+ *   HTTP que daría GlobalExceptionHandler: 400, 404, 409, 410, 412 o 500; none si no hubo error).
+ * - *.elementos: elementos emitidos por cada Flux.
+ * - franquicias.repositorio.documento: productos de las franquicias leídas o escritas (el tamaño
+ *   del documento sin serializarlo otra vez).
+ *
+ * El ID de franquicia no va como etiqueta (cardinalidad sin límite): las llamadas que superan
+ * franquicias.metricas.umbral-lento se registran en el log con sus argumentos.
+ */
+@Slf4j
+@Component
+public class MetricasPuertos implements BeanPostProcessor {
+
+    private static final String CASOS_USO = "franquicias.casos.uso";
+    private static final String REPOSITORIO = "franquicias.repositorio";
+
+    // Perezoso: el registro tiene que pasar por sus propios post-procesadores antes de usarse
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+    private final long umbralLentoNanos;
+
+    public MetricasPuertos(ObjectProvider<MeterRegistry> meterRegistry,
+                           @Value("${franquicias.metricas.umbral-lento:1s}") Duration umbralLento) {
+        this.meterRegistry = meterRegistry;
+        this.umbralLentoNanos = umbralLento.toNanos();
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof IFranquiciaManagement) {
+            return medir(bean, IFranquiciaManagement.class, CASOS_USO, null);
+        }
+        if (bean instanceof IFranquiciaRepository) {
+            return medir(bean, IFranquiciaRepository.class, REPOSITORIO, beanName);
+        }
+        return bean;
+    }
+
+    // Proxy de clase (CGLIB): los @EventListener y las búsquedas por la clase concreta siguen funcionando
+    private Object medir(Object bean, Class<?> puerto, String metrica, String adaptador) {
+        ProxyFactory proxy = new ProxyFactory(bean);
+        proxy.setProxyTargetClass(true);
+        proxy.addAdvice(new Interceptor(puerto, metrica, adaptador));
+        return proxy.getProxy(bean.getClass().getClassLoader());
+    }
+
+    // Código HTTP con el que GlobalExceptionHandler responde a la excepción (la misma tabla, 500 si no la maneja)
+    public static String estadoDe(Throwable error) {
+        return String.valueOf(GlobalExceptionHandler.estadoDe(error).value());
+    }
+
+    private final class Interceptor implements MethodInterceptor {
+
+        private final Class<?> puerto;
+        private final String metrica;
+        private final String adaptador;
+
+        private Interceptor(Class<?> puerto, String metrica, String adaptador) {
+            this.puerto = puerto;
+            this.metrica = metrica;
+            this.adaptador = adaptador;
+        }
+
+        @Override
+        public Object invoke(MethodInvocation invocacion) throws Throwable {
+            Method metodo = invocacion.getMethod();
+            // El proxy es de la clase: solo se miden los métodos que declara el puerto
+            if (!ClassUtils.hasMethod(puerto, metodo.getName(), metodo.getParameterTypes())) {
+                return invocacion.proceed();
+            }
+
+            Object resultado;
+            try {
+                resultado = invocacion.proceed();
+            } catch (Throwable error) {
+                // Validación que falla antes de armar el Mono / Flux
+                Llamada llamada = new Llamada(metodo, invocacion.getArguments());
+                llamada.alFallar(error);
+                llamada.terminar(SignalType.ON_ERROR);
+                throw error;
+            }
+
+            if (resultado instanceof Mono<?> mono) {
+                return Mono.defer(() -> {
+                    Llamada llamada = new Llamada(metodo, invocacion.getArguments());
+                    return mono.doOnNext(llamada::alEmitir)
+                            .doOnError(llamada::alFallar)
+                            .doFinally(llamada::terminar);
+                });
+            }
+            if (resultado instanceof Flux<?> flux) {
+                return Flux.defer(() -> {
+                    Llamada llamada = new Llamada(metodo, invocacion.getArguments());
+                    return flux.doOnNext(llamada::alEmitir)
+                            .doOnError(llamada::alFallar)
+                            .doFinally(llamada::terminar);
+                });
+            }
+            return resultado;
+        }
+
+        // Una suscripción a lo que devolvió el método
+        private final class Llamada {
+            private final Method metodo;
+            private final Object[] argumentos;
+            private final long inicio = System.nanoTime();
+            private long elementos;
+            private Throwable error;
+
+            private Llamada(Method metodo, Object[] argumentos) {
+                this.metodo = metodo;
+                this.argumentos = argumentos;
+                if (adaptador != null) {
+                    for (Object argumento : argumentos) {
+                        if (argumento instanceof Franquicia franquicia) {
+                            documento("escritura", franquicia);
+                        }
+                    }
+                }
+            }
+
+            private void alEmitir(Object valor) {
+                elementos++;
+                // Lo que devuelve un guardado es lo mismo que se escribió: solo cuenta como lectura si no vino en los argumentos
+                if (adaptador != null && valor instanceof Franquicia franquicia && !recibeFranquicia()) {
+                    documento("lectura", franquicia);
+                }
+            }
+
+            private void alFallar(Throwable error) {
+                this.error = error;
+            }
+
+            private void terminar(SignalType senal) {
+                long duracion = System.nanoTime() - inicio;
+                MeterRegistry registro = meterRegistry.getObject();
+
+                String resultado = switch (senal) {
+                    case ON_ERROR -> "error";
+                    case CANCEL -> "cancelado";
+                    default -> elementos > 0 ? "ok" : "vacio";
+                };
+                Timer.builder(metrica)
+                        .description("Duración de cada llamada, desde la suscripción hasta su última señal")
+                        .tag("metodo", metodo.getName())
+                        .tags(etiquetaAdaptador())
+                        .tag("resultado", resultado)
+                        .tag("estado", error == null ? "none" : estadoDe(error))
+                        .publishPercentileHistogram()
+                        .register(registro)
+                        .record(duracion, TimeUnit.NANOSECONDS);
+
+                if (Flux.class.isAssignableFrom(metodo.getReturnType())) {
+                    DistributionSummary.builder(metrica + ".elementos")
+                            .description("Elementos emitidos por cada Flux")
+                            .tag("metodo", metodo.getName())
+                            .tags(etiquetaAdaptador())
+                            .register(registro)
+                            .record(elementos);
+                }
+
+                if (duracion > umbralLentoNanos) {
+                    log.warn("Llamada lenta: {}.{}{} tardó {} ms ({})", puerto.getSimpleName(), metodo.getName(),
+                            argumentosSimples(), duracion / 1_000_000, resultado);
+                }
+            }
+
+            private void documento(String operacion, Franquicia franquicia) {
+                int productos = 0;
+                if (franquicia.getSucursales() != null) {
+                    for (Sucursal sucursal : franquicia.getSucursales()) {
+                        productos += sucursal.getProductos() == null ? 0 : sucursal.getProductos().size();
+                    }
+                }
+                DistributionSummary.builder(REPOSITORIO + ".documento")
+                        .description("Productos de cada franquicia leída o escrita")
+                        .baseUnit("productos")
+                        .tag("metodo", metodo.getName())
+                        .tags(etiquetaAdaptador())
+                        .tag("operacion", operacion)
+                        .register(meterRegistry.getObject())
+                        .record(productos);
+            }
+
+            private boolean recibeFranquicia() {
+                for (Object argumento : argumentos) {
+                    if (argumento instanceof Franquicia) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            // Solo textos y números: una Franquicia completa en el log no ayuda a encontrar la lenta
+            private List<Object> argumentosSimples() {
+                List<Object> simples = new ArrayList<>();
+                for (Object argumento : argumentos) {
+                    if (argumento instanceof CharSequence || argumento instanceof Number || argumento instanceof Boolean) {
+                        simples.add(argumento);
+                    } else if (argumento instanceof Franquicia franquicia) {
+                        simples.add("Franquicia[" + franquicia.getId() + "]");
+                    }
+                }
+                return simples;
+            }
+
+            private String[] etiquetaAdaptador() {
+                return adaptador == null ? new String[0] : new String[]{"adaptador", adaptador};
+            }
+        }
+    }
+}
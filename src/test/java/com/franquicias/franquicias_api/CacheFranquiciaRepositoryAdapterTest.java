@@ -0,0 +1,151 @@
+package com.franquicias.franquicias_api;
+
+import com.franquicias.franquicias_api.application.dto.StockActualizadoDto;
+import com.franquicias.franquicias_api.domain.Franquicia;
+import com.franquicias.franquicias_api.domain.Producto;
+import com.franquicias.franquicias_api.domain.Sucursal;
+import com.franquicias.franquicias_api.domain.exception.ConflictoConcurrenciaException;
+import com.franquicias.franquicias_api.infrastructure.data.CacheFranquiciaRepositoryAdapter;
+import com.franquicias.franquicias_api.infrastructure.data.MongoFranquiciaRepositoryAdapter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CacheFranquiciaRepositoryAdapterTest {
+
+    private static final String ID = "id_cache";
+
+    @Mock
+    private MongoFranquiciaRepositoryAdapter mongo;
+
+    private SimpleMeterRegistry meterRegistry;
+    private CacheFranquiciaRepositoryAdapter cache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new CacheFranquiciaRepositoryAdapter(mongo, 100, Duration.ofMinutes(1), meterRegistry);
+    }
+
+    private Franquicia franquicia(String nombre, long version) {
+        Franquicia franquicia = new Franquicia(nombre, new ArrayList<>());
+        franquicia.setId(ID);
+        franquicia.setVersion(version);
+        return franquicia;
+    }
+
+    // Escritura de stock que devolvió el documento completo (almacenamiento embebido)
+    private static StockActualizadoDto escrito(Franquicia franquicia) {
+        return new StockActualizadoDto(ID, franquicia.getVersion(), "Centro", "Burger", 0, franquicia);
+    }
+
+    @Test
+    void findById_LecturasConcurrentesCompartenUnaConsultaYRecibenCopias() {
+        // La consulta a Mongo queda pendiente hasta que la completamos a mano
+        Sinks.One<Franquicia> consulta = Sinks.one();
+        when(mongo.findById(ID)).thenReturn(consulta.asMono());
+
+        Mono<Franquicia> primera = cache.findById(ID).cache();
+        Mono<Franquicia> segunda = cache.findById(ID).cache();
+        primera.subscribe();
+        segunda.subscribe();
+        consulta.tryEmitValue(franquicia("Cacheada", 0));
+
+        Franquicia a = primera.block();
+        Franquicia b = segunda.block();
+        assertEquals(a, b);
+        assertNotSame(a, b); // Cada llamador modifica su propia copia
+
+        // Una modificación en memoria no contamina la caché
+        a.agregarSucursal(new Sucursal("Norte", new ArrayList<>()));
+        assertTrue(cache.findById(ID).block().getSucursales().isEmpty());
+
+        verify(mongo, times(1)).findById(ID);
+        assertEquals(2.0, meterRegistry.get("cache.gets").tag("cache", "franquicias.porId").tag("result", "hit").counter().count());
+    }
+
+    @Test
+    void save_RefrescaIdYNombreEInvalidaElNombreAnterior() {
+        when(mongo.findById(ID)).thenReturn(Mono.just(franquicia("Original", 0)));
+        cache.findById(ID).block();
+
+        when(mongo.save(any(Franquicia.class))).thenReturn(Mono.just(franquicia("Renombrada", 1)));
+        cache.save(franquicia("Renombrada", 0)).block();
+
+        // Por ID y por el nombre nuevo: sin volver a Mongo
+        assertEquals(1L, cache.findById(ID).block().getVersion());
+        assertEquals(ID, cache.findByNombre("RENOMBRADA").block().getId());
+        verify(mongo, times(1)).findById(ID);
+        verify(mongo, never()).findByNombre(any());
+
+        // El nombre anterior ya no apunta a la franquicia
+        when(mongo.findByNombre("Original")).thenReturn(Mono.empty());
+        StepVerifier.create(cache.findByNombre("Original")).verifyComplete();
+    }
+
+    @Test
+    void refresco_ConVersionMasViejaNoPisaLaEntrada() {
+        // Dos ventas concurrentes: la que guardó la versión 3 termina después que la de la 4
+        when(mongo.incrementarStockProducto(ID, "Centro", "Burger", -1, true, null)).thenReturn(Mono.just(escrito(franquicia("Nueva", 4))));
+        when(mongo.incrementarStockProducto(ID, "Centro", "Burger", -2, true, null)).thenReturn(Mono.just(escrito(franquicia("Vieja", 3))));
+        cache.incrementarStockProducto(ID, "Centro", "Burger", -1, true, null).block();
+        cache.incrementarStockProducto(ID, "Centro", "Burger", -2, true, null).block();
+
+        assertEquals(4L, cache.findById(ID).block().getVersion());
+        assertEquals(ID, cache.findByNombre("Nueva").block().getId());
+        verify(mongo, never()).findById(any());
+        verify(mongo, never()).findByNombre(any());
+    }
+
+    @Test
+    void refrescoSinDocumento_ParchaLaVersionSiguienteEInvalidaSiFaltaAlguna() {
+        // Almacenamiento normalizado: la escritura solo trae el producto y la versión nueva
+        Franquicia original = franquicia("Original", 2);
+        original.getSucursales().add(new Sucursal("Centro", new ArrayList<>(List.of(new Producto("Burger", 10)))));
+        when(mongo.findById(ID)).thenReturn(Mono.just(original));
+        cache.findById(ID).block();
+
+        when(mongo.incrementarStockProducto(ID, "centro", "BURGER", -1, true, null))
+                .thenReturn(Mono.just(new StockActualizadoDto(ID, 3L, "centro", "Burger", 9, null)));
+        cache.incrementarStockProducto(ID, "centro", "BURGER", -1, true, null).block();
+
+        Franquicia parchada = cache.findById(ID).block();
+        assertEquals(3L, parchada.getVersion());
+        assertEquals(9, parchada.getSucursales().get(0).getProductos().get(0).getStock());
+        verify(mongo, times(1)).findById(ID);
+
+        // Se saltó la versión 4: la copia ya no sirve y se vuelve a leer
+        when(mongo.incrementarStockProducto(ID, "Centro", "Burger", -1, true, null))
+                .thenReturn(Mono.just(new StockActualizadoDto(ID, 5L, "Centro", "Burger", 7, null)));
+        cache.incrementarStockProducto(ID, "Centro", "Burger", -1, true, null).block();
+        cache.findById(ID).block();
+        verify(mongo, times(2)).findById(ID);
+    }
+
+    @Test
+    void save_ConflictoDeVersionInvalidaParaQueElReintentoLeaDeLaBD() {
+        when(mongo.findById(ID)).thenReturn(Mono.just(franquicia("Original", 0)), Mono.just(franquicia("Original", 5)));
+        cache.findById(ID).block();
+
+        when(mongo.save(any(Franquicia.class))).thenReturn(Mono.error(new ConflictoConcurrenciaException(ID)));
+        StepVerifier.create(cache.save(franquicia("Original", 0))).verifyError(ConflictoConcurrenciaException.class);
+
+        assertEquals(5L, cache.findById(ID).block().getVersion());
+        verify(mongo, times(2)).findById(ID);
+    }
+}
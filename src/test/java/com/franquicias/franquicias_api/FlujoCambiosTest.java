@@ -0,0 +1,66 @@
+package com.franquicias.franquicias_api;
+
+import com.franquicias.franquicias_api.application.dto.PoliticaSuscripcion;
+import com.franquicias.franquicias_api.application.event.CambioFranquiciaEvent;
+import com.franquicias.franquicias_api.application.service.FlujoCambios;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FlujoCambiosTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private FlujoCambios flujo;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        flujo = new FlujoCambios(4, meterRegistry);
+    }
+
+    private CambioFranquiciaEvent stock(String franquiciaId, int stock) {
+        return CambioFranquiciaEvent.stockActualizado(franquiciaId, null, "Centro", "Cola", stock);
+    }
+
+    @Test
+    void suscribir_PorFranquicia_SoloRecibeLosSuyos() {
+        StepVerifier.create(flujo.suscribir("A", PoliticaSuscripcion.BUFFER))
+                .then(() -> {
+                    flujo.alCambiarFranquicia(stock("B", 1));
+                    flujo.alCambiarFranquicia(stock("A", 2));
+                })
+                .assertNext(evento -> assertEquals(2, evento.getStock()))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void suscribir_ClienteLento_NoFrenaAlProductorYDescartaLosMasAntiguos() {
+        List<Integer> recibidos = new ArrayList<>();
+
+        // Sin demanda: el hilo de entrega ya pidió 32 y el buffer guarda 4; los 10 restantes desplazan a los más antiguos
+        StepVerifier.create(flujo.suscribir(null, PoliticaSuscripcion.BUFFER), 0)
+                .then(() -> {
+                    for (int i = 0; i < 46; i++) {
+                        flujo.alCambiarFranquicia(stock("A", i));
+                    }
+                })
+                .then(() -> assertEquals(10.0, meterRegistry.get("franquicias.cambios.descartados").counter().count()))
+                .thenRequest(Long.MAX_VALUE)
+                .recordWith(() -> new ArrayList<>())
+                .expectNextCount(36)
+                .consumeRecordedWith(eventos -> eventos.forEach(evento -> recibidos.add(evento.getStock())))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(31, recibidos.get(31));
+        assertEquals(List.of(42, 43, 44, 45), recibidos.subList(32, 36));
+    }
+}
@@ -1,5 +1,186 @@
 package com.franquicias.franquicias_api;
 
+import com.franquicias.franquicias_api.application.dto.FranquiciaResumenDto;
+import com.franquicias.franquicias_api.application.dto.StockActualizadoDto;
+import com.franquicias.franquicias_api.application.dto.VistaFranquicia;
+import com.franquicias.franquicias_api.application.port.in.IFranquiciaManagement;
+import com.franquicias.franquicias_api.domain.Franquicia;
+import com.franquicias.franquicias_api.domain.Producto;
+import com.franquicias.franquicias_api.domain.Sucursal;
+import com.franquicias.franquicias_api.infrastructure.api.FranquiciaController;
+import com.franquicias.franquicias_api.infrastructure.excetion.GlobalExceptionHandler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
 class FranquiciaControllerTest {
 
+    private IFranquiciaManagement franquiciaManagement;
+    private WebTestClient cliente;
+
+    @BeforeEach
+    void setUp() {
+        franquiciaManagement = mock(IFranquiciaManagement.class);
+        cliente = WebTestClient.bindToController(new FranquiciaController(franquiciaManagement))
+                .controllerAdvice(new GlobalExceptionHandler())
+                .build();
+    }
+
+    private static Franquicia franquicia() {
+        Franquicia franquicia = new Franquicia("Cafeterías", new ArrayList<>(List.of(
+                new Sucursal("Centro", new ArrayList<>(List.of(new Producto("Café", 15), new Producto("Té", 3)))),
+                new Sucursal("Norte", new ArrayList<>(List.of(new Producto("Café", 7)))))));
+        franquicia.setId("f1");
+        franquicia.setVersion(4L);
+        return franquicia;
+    }
+
+    private WebTestClient.ResponseSpec actualizarStock(String prefer) {
+        when(franquiciaManagement.updateStock("f1", "centro", "CAFÉ", 15, null))
+                .thenReturn(Mono.just(new StockActualizadoDto("f1", 4L, "Centro", "Café", 15, null)));
+        when(franquiciaManagement.findById("f1")).thenReturn(Mono.just(franquicia()));
+        WebTestClient.RequestBodySpec peticion = cliente.put()
+                .uri("/franquicias/f1/sucursales/centro/productos/CAFÉ/stock")
+                .contentType(MediaType.APPLICATION_JSON);
+        if (prefer != null) {
+            peticion.header("Prefer", prefer);
+        }
+        return peticion.bodyValue(Map.of("stock", 15)).exchange();
+    }
+
+    @Test
+    void mutacion_SinPrefer_DevuelveLaFranquiciaCompleta() {
+        actualizarStock(null)
+                .expectStatus().isOk()
+                .expectHeader().doesNotExist("Preference-Applied")
+                .expectBody()
+                .jsonPath("$.id").isEqualTo("f1")
+                .jsonPath("$.sucursales.length()").isEqualTo(2);
+    }
+
+    @Test
+    void mutacion_PreferMinimal_204SinCuerpo() {
+        actualizarStock("return=minimal")
+                .expectStatus().isNoContent()
+                .expectHeader().valueEquals("Preference-Applied", "return=minimal")
+                .expectBody().isEmpty();
+    }
+
+    @Test
+    void mutacion_PreferDelta_SoloElProductoModificado() {
+        actualizarStock("respond-async, return=delta")
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("Preference-Applied", "return=delta")
+                .expectBody()
+                .jsonPath("$.nombre").isEqualTo("Café")
+                .jsonPath("$.stock").isEqualTo(15)
+                .jsonPath("$.sucursales").doesNotExist();
+    }
+
+    @Test
+    void mutacion_PreferDesconocido_SeIgnora() {
+        actualizarStock("return=todo")
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.sucursales.length()").isEqualTo(2);
+    }
+
+    @Test
+    void renombrar_PreferDelta_SucursalOCabeceraDeLaFranquicia() {
+        Franquicia renombrada = franquicia();
+        renombrada.getSucursales().get(1).setNombre("Norte 2");
+        when(franquiciaManagement.updateNombreSucursal("f1", "Norte", "Norte 2", null)).thenReturn(Mono.just(renombrada));
+        when(franquiciaManagement.updateNombreFranquicia("f1", "Cafeterías", null)).thenReturn(Mono.just(franquicia()));
+
+        cliente.put().uri("/franquicias/f1/sucursales/Norte")
+                .header("Prefer", "return=delta")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("nombre", "Norte 2"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.nombre").isEqualTo("Norte 2")
+                .jsonPath("$.productos[0].nombre").isEqualTo("Café");
+
+        cliente.put().uri("/franquicias/f1")
+                .header("Prefer", "return=delta")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("nombre", "Cafeterías"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.version").isEqualTo(4)
+                .jsonPath("$.totalSucursales").isEqualTo(2)
+                .jsonPath("$.sucursales").doesNotExist();
+    }
+
+    @Test
+    void getPorId_ETagYConIfNoneMatchVigente304SinTraerElDocumento() {
+        when(franquiciaManagement.findById("f1")).thenReturn(Mono.just(franquicia()));
+        when(franquiciaManagement.findResumenById("f1", VistaFranquicia.RESUMEN))
+                .thenReturn(Mono.just(new FranquiciaResumenDto("f1", "Cafeterías", 4L, 2, null)));
+
+        cliente.get().uri("/franquicias/f1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("ETag", "\"f1.4\"");
+        verify(franquiciaManagement).findById("f1");
+
+        cliente.get().uri("/franquicias/f1")
+                .header("If-None-Match", "\"f1.3\", W/\"f1.4\"")
+                .exchange()
+                .expectStatus().isNotModified()
+                .expectHeader().valueEquals("ETag", "\"f1.4\"")
+                .expectBody().isEmpty();
+        // Solo la lectura sin If-None-Match trajo el documento
+        verify(franquiciaManagement).findById("f1");
+
+        // La vista resumen es otra representación: otra etiqueta
+        cliente.get().uri("/franquicias/f1?vista=resumen")
+                .header("If-None-Match", "\"f1.4\"")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("ETag", "\"f1.4.resumen\"");
+    }
+
+    @Test
+    void mutacion_IfMatchPasaLaVersionYDevuelveElETagNuevo() {
+        when(franquiciaManagement.updateStock("f1", "Centro", "Café", 15, 4L))
+                .thenReturn(Mono.just(new StockActualizadoDto("f1", 5L, "Centro", "Café", 15, null)));
+
+        cliente.put().uri("/franquicias/f1/sucursales/Centro/productos/Café/stock")
+                .header("If-Match", "\"f1.4.resumen\"")
+                .header("Prefer", "return=minimal")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("stock", 15))
+                .exchange()
+                .expectStatus().isNoContent()
+                .expectHeader().valueEquals("ETag", "\"f1.5\"");
+    }
+
+    @Test
+    void mutacion_IfMatchDeOtraFranquiciaODebil_412SinLlamarAlServicio() {
+        for (String ifMatch : List.of("\"f2.4\"", "W/\"f1.4\"", "\"f1.x\"")) {
+            cliente.put().uri("/franquicias/f1/sucursales/Centro/productos/Café/stock")
+                    .header("If-Match", ifMatch)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(Map.of("stock", 15))
+                    .exchange()
+                    .expectStatus().isEqualTo(412);
+        }
+        verify(franquiciaManagement, never()).updateStock(anyString(), anyString(), anyString(), anyInt(), any());
+    }
 }
@@ -0,0 +1,121 @@
+package com.franquicias.franquicias_api;
+
+import com.franquicias.franquicias_api.domain.Franquicia;
+import com.franquicias.franquicias_api.domain.Producto;
+import com.franquicias.franquicias_api.domain.Sucursal;
+import com.franquicias.franquicias_api.domain.exception.RecursoDuplicadoException;
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Índices por nombre de Franquicia y Sucursal: mismas respuestas que la búsqueda lineal
+class FranquiciaDominioTest {
+
+    private Franquicia franquicia() {
+        Sucursal centro = new Sucursal("Centro", new ArrayList<>(List.of(new Producto("Burger", 10), new Producto("Papas", 5))));
+        Sucursal norte = new Sucursal("Norte", new ArrayList<>());
+        return new Franquicia("Global Burgers", new ArrayList<>(List.of(centro, norte)));
+    }
+
+    @Test
+    void indices_SeMantienenEnAltasBajasYRenombres() {
+        Franquicia franquicia = franquicia();
+        assertNotNull(franquicia.buscarSucursalPorNombre("CENTRO")); // Arma el índice
+
+        franquicia.actualizarNombreSucursal("centro", "Sur");
+        assertNull(franquicia.buscarSucursalPorNombre("Centro"));
+        Sucursal sur = franquicia.buscarSucursalPorNombre("sur");
+        assertEquals("Sur", sur.getNombre());
+
+        franquicia.actualizarNombreProducto("Sur", "burger", "Hamburguesa");
+        assertNull(sur.buscarProductoPorNombre("Burger"));
+        assertEquals(10, sur.buscarProductoPorNombre("HAMBURGUESA").getStock());
+
+        franquicia.eliminarProductoDeTodasLasSucursales("papas");
+        assertNull(sur.buscarProductoPorNombre("Papas"));
+
+        // Un renombre a un nombre ya usado sigue siendo 409
+        assertThrows(RecursoDuplicadoException.class, () -> franquicia.actualizarNombreSucursal("Sur", "NORTE"));
+    }
+
+    @Test
+    void indices_DetectanCambiosHechosDirectoSobreLaLista() {
+        Franquicia franquicia = franquicia();
+        assertNull(franquicia.buscarSucursalPorNombre("Este"));
+
+        // Altas y renombres que no pasan por el dominio
+        franquicia.getSucursales().add(new Sucursal("Este", new ArrayList<>()));
+        assertNotNull(franquicia.buscarSucursalPorNombre("este"));
+
+        franquicia.buscarSucursalPorNombre("Norte").setNombre("Oeste");
+        assertNull(franquicia.buscarSucursalPorNombre("Norte"));
+        assertNotNull(franquicia.buscarSucursalPorNombre("Oeste"));
+    }
+
+    @Test
+    void indices_RenombrePorFueraSeVeBuscandoSoloElNombreNuevo() {
+        Franquicia franquicia = franquicia();
+        Sucursal centro = franquicia.buscarSucursalPorNombre("Centro"); // Arma el índice
+
+        // Sin buscar antes el nombre viejo: el fallo en el índice no alcanza para decir que no existe
+        franquicia.buscarSucursalPorNombre("Norte").setNombre("Oeste");
+        assertNotNull(franquicia.buscarSucursalPorNombre("oeste"));
+
+        centro.buscarProductoPorNombre("Burger").setNombre("Hamburguesa");
+        assertEquals(10, centro.buscarProductoPorNombre("HAMBURGUESA").getStock());
+
+        // La validación de duplicados pasa por la misma búsqueda
+        franquicia.buscarSucursalPorNombre("Oeste").setNombre("Este");
+        assertThrows(RecursoDuplicadoException.class, () -> franquicia.agregarSucursal(new Sucursal("ESTE", new ArrayList<>())));
+        assertEquals(2, franquicia.getSucursales().size());
+    }
+
+    @Test
+    void indices_RenombreDeUnProductoYaQuitadoNoTocaElIndice() {
+        Franquicia franquicia = franquicia();
+        Sucursal centro = franquicia.buscarSucursalPorNombre("Centro");
+        Producto burger = centro.buscarProductoPorNombre("Burger");
+        assertTrue(centro.eliminarProducto("burger"));
+
+        // Ya no es de la sucursal: su nombre nuevo no aparece ni tapa al producto que sí está
+        burger.setNombre("Papas");
+        assertEquals(5, centro.buscarProductoPorNombre("papas").getStock());
+        burger.setNombre("Nachos");
+        assertNull(centro.buscarProductoPorNombre("Nachos"));
+    }
+
+    @Test
+    void indices_NoCambianElJsonNiLaIgualdad() {
+        Franquicia conIndice = franquicia();
+        conIndice.buscarSucursalPorNombre("Centro").buscarProductoPorNombre("Burger");
+        Franquicia sinIndice = franquicia();
+
+        assertEquals(sinIndice, conIndice);
+        assertEquals(sinIndice.hashCode(), conIndice.hashCode());
+
+        String json = JsonMapper.builder().build().writeValueAsString(conIndice);
+        assertFalse(json.contains("indice"));
+        assertEquals(JsonMapper.builder().build().writeValueAsString(sinIndice), json);
+    }
+
+    @Test
+    void nombreNormalizado_SigueAlNombreYNoSaleEnElJson() {
+        Franquicia franquicia = franquicia();
+        assertEquals("global burgers", franquicia.getNombreNormalizado());
+
+        franquicia.actualizarNombre("GLOBAL Pizzas");
+        assertEquals("global pizzas", franquicia.getNombreNormalizado());
+
+        String json = JsonMapper.builder().build().writeValueAsString(franquicia);
+        assertFalse(json.contains("nombreNormalizado"));
+
+        // El cliente no puede fijarlo: al leer el JSON se deriva del nombre
+        Franquicia leida = JsonMapper.builder().build()
+                .readValue("{\"nombre\": \"Sur\", \"nombreNormalizado\": \"otro\"}", Franquicia.class);
+        assertEquals("sur", leida.getNombreNormalizado());
+    }
+}
@@ -0,0 +1,312 @@
+package com.franquicias.franquicias_api;
+
+import com.franquicias.franquicias_api.application.dto.ActualizacionStockDto;
+import com.franquicias.franquicias_api.application.dto.FranquiciaResumenDto;
+import com.franquicias.franquicias_api.application.dto.OrdenListado;
+import com.franquicias.franquicias_api.application.dto.ProductoEncontradoDto;
+import com.franquicias.franquicias_api.application.dto.ProductoMaxStockDto;
+import com.franquicias.franquicias_api.application.dto.ResultadoStockDto;
+import com.franquicias.franquicias_api.application.dto.StockActualizadoDto;
+import com.franquicias.franquicias_api.application.dto.VistaFranquicia;
+import com.franquicias.franquicias_api.application.port.out.IFranquiciaRepository;
+import com.franquicias.franquicias_api.domain.Franquicia;
+import com.franquicias.franquicias_api.domain.Producto;
+import com.franquicias.franquicias_api.domain.Sucursal;
+import com.franquicias.franquicias_api.domain.exception.ConflictoConcurrenciaException;
+import com.franquicias.franquicias_api.domain.exception.RecursoDuplicadoException;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Contrato de IFranquiciaRepository: lo que el servicio espera de cualquier almacenamiento.
+ * Cada implementación lo hereda (MemoriaFranquiciaRepositoryAdapterTest, NormalizadoFranquiciaRepositoryAdapterTest,
+ * MongoFranquiciaRepositoryContratoTest).
+ * Los nombres llevan un sufijo aleatorio para poder correr contra una BD con otros datos.
+ */
+abstract class FranquiciaRepositoryContratoTest {
+
+    private final String sufijo = UUID.randomUUID().toString().substring(0, 8);
+
+    protected abstract IFranquiciaRepository repositorio();
+
+    protected String nombre(String base) {
+        return base + " " + sufijo;
+    }
+
+    protected static Sucursal sucursal(String nombre, Producto... productos) {
+        return new Sucursal(nombre, new ArrayList<>(List.of(productos)));
+    }
+
+    protected Franquicia insertar(String nombre, Sucursal... sucursales) {
+        return repositorio().insertar(new Franquicia(nombre, new ArrayList<>(List.of(sucursales)))).block();
+    }
+
+    @Test
+    void insertar_AsignaIdYVersionCeroYSeLeeUnaCopia() {
+        Franquicia creada = insertar(nombre("Alta"), sucursal("Centro", new Producto("Café", 5)));
+
+        assertNotNull(creada.getId());
+        assertEquals(0L, creada.getVersion());
+        assertTrue(repositorio().existsById(creada.getId()).block());
+
+        Franquicia leida = repositorio().findById(creada.getId()).block();
+        assertEquals(nombre("Alta"), leida.getNombre());
+        assertEquals(5, leida.getSucursales().get(0).getProductos().get(0).getStock());
+
+        // Modificar lo leído no cambia lo guardado
+        leida.getSucursales().get(0).getProductos().get(0).setStock(99);
+        assertEquals(5, repositorio().findById(creada.getId()).block().getSucursales().get(0).getProductos().get(0).getStock());
+    }
+
+    @Test
+    void insertar_NombreRepetidoSinDistinguirMayusculas_Duplicado() {
+        insertar(nombre("Repetida"));
+
+        StepVerifier.create(repositorio().insertar(new Franquicia(nombre("Repetida").toUpperCase(), new ArrayList<>())))
+                .expectError(RecursoDuplicadoException.class)
+                .verify();
+        assertEquals(nombre("Repetida"), repositorio().findByNombre(nombre("repetida")).block().getNombre());
+    }
+
+    @Test
+    void save_ComparaYSubeLaVersion() {
+        Franquicia franquicia = insertar(nombre("Versionada"));
+
+        Franquicia primera = repositorio().findById(franquicia.getId()).block();
+        Franquicia segunda = repositorio().findById(franquicia.getId()).block();
+
+        primera.agregarSucursal(sucursal("Norte"));
+        assertEquals(1L, repositorio().save(primera).block().getVersion());
+
+        // La segunda copia quedó vieja: el guardado no pisa el anterior
+        segunda.agregarSucursal(sucursal("Sur"));
+        StepVerifier.create(repositorio().save(segunda))
+                .expectError(ConflictoConcurrenciaException.class)
+                .verify();
+
+        Franquicia guardada = repositorio().findById(franquicia.getId()).block();
+        assertEquals(1L, guardada.getVersion());
+        assertEquals("Norte", guardada.getSucursales().get(0).getNombre());
+    }
+
+    @Test
+    void save_ConUnIncrementoEnElMedio_ConflictoYElIncrementoSeConserva() {
+        Franquicia franquicia = insertar(nombre("Intercalada"), sucursal("Centro", new Producto("Café", 5)));
+        String id = franquicia.getId();
+
+        Franquicia leida = repositorio().findById(id).block();
+        repositorio().incrementarStockProducto(id, "Centro", "Café", 3, false, null).block();
+
+        // El agregado leído todavía dice 5: guardarlo no puede devolver el stock a 5
+        leida.getSucursales().get(0).agregarProducto(new Producto("Té", 1));
+        StepVerifier.create(repositorio().save(leida))
+                .expectError(ConflictoConcurrenciaException.class)
+                .verify();
+
+        Franquicia guardada = repositorio().findById(id).block();
+        assertEquals(8, guardada.getSucursales().get(0).buscarProductoPorNombre("Café").getStock());
+        assertNull(guardada.getSucursales().get(0).buscarProductoPorNombre("Té"));
+    }
+
+    @Test
+    void save_ConcurrenteConIncrementos_NoSePierdeNingunIncremento() {
+        Franquicia franquicia = insertar(nombre("Concurrente"), sucursal("Centro", new Producto("Café", 0)));
+        String id = franquicia.getId();
+        int incrementos = 200;
+        int guardados = 20;
+        Retry reintentar = Retry.fixedDelay(1000, Duration.ofMillis(1)).filter(ConflictoConcurrenciaException.class::isInstance);
+
+        // Cada guardado agrega un producto (lee, cambia y guarda con versión), mientras llegan los $inc
+        Flux<Object> sumas = Flux.range(0, incrementos)
+                .flatMap(i -> Mono.defer(() -> repositorio().incrementarStockProducto(id, "Centro", "Café", 1, false, null))
+                        .retryWhen(reintentar)
+                        .subscribeOn(Schedulers.boundedElastic()), 16)
+                .cast(Object.class);
+        Flux<Object> altas = Flux.range(0, guardados)
+                .flatMap(i -> Mono.defer(() -> repositorio().findById(id)
+                                .flatMap(leida -> {
+                                    leida.getSucursales().get(0).agregarProducto(new Producto("Extra " + i, i));
+                                    return repositorio().save(leida);
+                                }))
+                        .retryWhen(reintentar)
+                        .subscribeOn(Schedulers.boundedElastic()), 4)
+                .cast(Object.class);
+        Flux.merge(sumas, altas).blockLast(Duration.ofMinutes(2));
+
+        Sucursal centro = repositorio().findById(id).block().getSucursales().get(0);
+        assertEquals(incrementos, centro.buscarProductoPorNombre("Café").getStock());
+        assertEquals(guardados + 1, centro.getProductos().size());
+    }
+
+    @Test
+    void actualizarNombre_SubeLaVersionYMueveElIndiceDeNombre() {
+        Franquicia franquicia = insertar(nombre("Vieja"));
+        insertar(nombre("Ocupada"));
+
+        Franquicia renombrada = repositorio().actualizarNombre(franquicia.getId(), nombre("Nueva")).block();
+        assertEquals(nombre("Nueva"), renombrada.getNombre());
+        assertEquals(1L, renombrada.getVersion());
+        assertNull(repositorio().findByNombre(nombre("Vieja")).block());
+        assertEquals(franquicia.getId(), repositorio().findByNombre(nombre("NUEVA")).block().getId());
+
+        StepVerifier.create(repositorio().actualizarNombre(franquicia.getId(), nombre("ocupada")))
+                .expectError(RecursoDuplicadoException.class)
+                .verify();
+        StepVerifier.create(repositorio().actualizarNombre("id-que-no-existe-" + sufijo, nombre("Otra")))
+                .verifyComplete();
+    }
+
+    @Test
+    void stock_ActualizarEIncrementarSinBajarDeCero() {
+        Franquicia franquicia = insertar(nombre("Stock"), sucursal("Centro", new Producto("Café", 5)));
+        String id = franquicia.getId();
+
+        StockActualizadoDto actualizado = repositorio().actualizarStockProducto(id, "centro", "CAFÉ", 8, null).block();
+        assertEquals(8, actualizado.getStock());
+        assertEquals("Café", actualizado.getProductoNombre());
+        assertEquals(1L, actualizado.getVersion());
+
+        StockActualizadoDto incrementado = repositorio().incrementarStockProducto(id, "Centro", "Café", -3, true, null).block();
+        assertEquals(5, incrementado.getStock());
+        assertEquals(2L, incrementado.getVersion());
+        // No alcanza: no coincide y no cambia nada
+        StepVerifier.create(repositorio().incrementarStockProducto(id, "Centro", "Café", -6, true, null)).verifyComplete();
+        StepVerifier.create(repositorio().actualizarStockProducto(id, "Centro", "Té", 1, null)).verifyComplete();
+        StepVerifier.create(repositorio().actualizarStockProducto(id, "Sur", "Café", 1, null)).verifyComplete();
+
+        Franquicia guardada = repositorio().findById(id).block();
+        assertEquals(5, guardada.getSucursales().get(0).getProductos().get(0).getStock());
+        assertEquals(2L, guardada.getVersion());
+    }
+
+    @Test
+    void stock_ConVersionEsperadaSoloCoincideEnEsaVersion() {
+        Franquicia franquicia = insertar(nombre("StockVersion"), sucursal("Centro", new Producto("Café", 5)));
+        String id = franquicia.getId();
+
+        // Copia vieja (If-Match de una versión que no es la actual): no coincide y no cambia nada
+        StepVerifier.create(repositorio().actualizarStockProducto(id, "Centro", "Café", 8, 1L)).verifyComplete();
+        assertEquals(8, repositorio().actualizarStockProducto(id, "Centro", "Café", 8, 0L).block().getStock());
+
+        StepVerifier.create(repositorio().incrementarStockProducto(id, "Centro", "Café", 1, false, 0L)).verifyComplete();
+        StockActualizadoDto incrementado = repositorio().incrementarStockProducto(id, "Centro", "Café", 1, false, 1L).block();
+        assertEquals(9, incrementado.getStock());
+        assertEquals(2L, incrementado.getVersion());
+
+        Franquicia guardada = repositorio().findById(id).block();
+        assertEquals(9, guardada.getSucursales().get(0).getProductos().get(0).getStock());
+        assertEquals(2L, guardada.getVersion());
+    }
+
+    @Test
+    void actualizarStockEnLote_ResultadoPorFilaEnOrden() {
+        Franquicia franquicia = insertar(nombre("Lote"),
+                sucursal("Centro", new Producto("Café", 1), new Producto("Té", 1)));
+        String id = franquicia.getId();
+
+        List<ResultadoStockDto> resultados = repositorio().actualizarStockEnLote(id, List.of(
+                new ActualizacionStockDto(id, "Centro", "Café", 10),
+                new ActualizacionStockDto(id, "Centro", "Mate", 10),
+                new ActualizacionStockDto(id, "centro", "té", 20))).collectList().block();
+
+        assertEquals(List.of(ResultadoStockDto.Estado.OK, ResultadoStockDto.Estado.NO_ENCONTRADO, ResultadoStockDto.Estado.OK),
+                resultados.stream().map(ResultadoStockDto::getEstado).toList());
+        Franquicia guardada = repositorio().findById(id).block();
+        assertEquals(List.of(10, 20), guardada.getSucursales().get(0).getProductos().stream().map(Producto::getStock).toList());
+        assertEquals(2L, guardada.getVersion()); // Una por fila que coincidió
+    }
+
+    @Test
+    void findProductoMaxStockPorSucursal_EnEmpateGanaElUltimoYSucursalVaciaSinProducto() {
+        Franquicia franquicia = insertar(nombre("Maximo"),
+                sucursal("Centro", new Producto("A", 3), new Producto("B", 7), new Producto("C", 7)),
+                sucursal("Vacía"));
+
+        List<ProductoMaxStockDto> filas = repositorio().findProductoMaxStockPorSucursal(franquicia.getId()).collectList().block();
+
+        assertEquals(2, filas.size());
+        assertEquals("C", filas.get(0).getProductoNombre());
+        assertEquals(7, filas.get(0).getStock());
+        assertEquals("Vacía", filas.get(1).getSucursalNombre());
+        assertNull(filas.get(1).getProductoNombre());
+        // Cada fila trae la versión leída, que la vista del Criterio 7 usa para ordenar los eventos
+        assertEquals(franquicia.getVersion(), filas.get(0).getVersion());
+        assertEquals(franquicia.getVersion(), filas.get(1).getVersion());
+        StepVerifier.create(repositorio().findProductoMaxStockPorSucursal("id-que-no-existe-" + sufijo)).verifyComplete();
+    }
+
+    @Test
+    void tramos_OrdenadosYRecortados() {
+        Franquicia franquicia = insertar(nombre("Tramos"),
+                sucursal("B"), sucursal("D"), sucursal("A"),
+                sucursal("C", new Producto("x", 2), new Producto("y", 9), new Producto("z", 5)));
+        String id = franquicia.getId();
+
+        assertEquals(List.of("C", "B"), repositorio().findSucursales(id, 1, 2, OrdenListado.NOMBRE_DESC)
+                .map(Sucursal::getNombre).collectList().block());
+        assertEquals(List.of("B", "D", "A", "C"), repositorio().findSucursales(id, 0, 0, OrdenListado.ORIGINAL)
+                .map(Sucursal::getNombre).collectList().block());
+        assertEquals(List.of("y", "z"), repositorio().findProductos(id, "c", 0, 2, OrdenListado.STOCK_DESC)
+                .map(Producto::getNombre).collectList().block());
+        StepVerifier.create(repositorio().findSucursales(id, 10, 5, OrdenListado.NOMBRE)).verifyComplete();
+        StepVerifier.create(repositorio().findProductos(id, "Z", 0, 5, OrdenListado.NOMBRE)).verifyComplete();
+    }
+
+    @Test
+    void findPagina_SigueDespuesDelCursor() {
+        String primera = insertar(nombre("Pagina 1")).getId();
+        String segunda = insertar(nombre("Pagina 2")).getId();
+
+        List<String> ids = repositorio().findPagina(primera, 0).map(Franquicia::getId).collectList().block();
+        assertFalse(ids.contains(primera));
+        assertTrue(ids.contains(segunda));
+        assertEquals(1, repositorio().findPagina(primera, 1).count().block());
+    }
+
+    @Test
+    void resumen_VistasParciales() {
+        Franquicia franquicia = insertar(nombre("Resumen"), sucursal("Norte", new Producto("Café", 1)), sucursal("Sur"));
+
+        FranquiciaResumenDto resumen = repositorio().findResumenById(franquicia.getId(), VistaFranquicia.RESUMEN).block();
+        assertEquals(2, resumen.getTotalSucursales());
+        assertNull(resumen.getSucursales());
+
+        FranquiciaResumenDto sucursales = repositorio().findResumenByNombre(nombre("RESUMEN"), VistaFranquicia.SUCURSALES).block();
+        assertEquals(List.of("Norte", "Sur"), sucursales.getSucursales());
+        assertEquals(0L, sucursales.getVersion());
+    }
+
+    @Test
+    void buscarProductos_SinDistinguirMayusculasConPrefijoYLimite() {
+        String producto = "Yerba" + sufijo;
+        Franquicia franquicia = insertar(nombre("Busqueda"),
+                sucursal("Norte", new Producto(producto + " Suave", 4)),
+                sucursal("Sur", new Producto(producto + " Suave", 6), new Producto(producto + " Fuerte", 2)));
+
+        List<ProductoEncontradoDto> exactas = repositorio().buscarProductos((producto + " suave").toUpperCase(), false, 10)
+                .collectList().block();
+        assertEquals(List.of("Norte", "Sur"), exactas.stream().map(ProductoEncontradoDto::getSucursalNombre).toList());
+        assertEquals(franquicia.getId(), exactas.get(0).getFranquiciaId());
+        assertEquals(nombre("Busqueda"), exactas.get(0).getFranquiciaNombre());
+
+        assertEquals(3, repositorio().buscarProductos(producto.toLowerCase(), true, 10).count().block());
+        assertEquals(2, repositorio().buscarProductos(producto, true, 2).count().block());
+
+        // El índice sigue a los cambios de productos
+        Franquicia leida = repositorio().findById(franquicia.getId()).block();
+        leida.eliminarProductoDeTodasLasSucursales(producto + " Fuerte");
+        repositorio().save(leida).block();
+        assertEquals(2, repositorio().buscarProductos(producto, true, 10).count().block());
+    }
+}
@@ -2,23 +2,66 @@
 
 package com.franquicias.franquicias_api;
 
+import com.franquicias.franquicias_api.application.dto.ActualizacionStockDto;
+import com.franquicias.franquicias_api.application.dto.FranquiciaResumenDto;
+import com.franquicias.franquicias_api.application.dto.OrdenListado;
+import com.franquicias.franquicias_api.application.dto.ProductoEncontradoDto;
+import com.franquicias.franquicias_api.application.dto.ProductoMaxStockDto;
+import com.franquicias.franquicias_api.application.dto.ResultadoStockDto;
+import com.franquicias.franquicias_api.application.dto.StockActualizadoDto;
+import com.franquicias.franquicias_api.application.dto.VistaFranquicia;
+import com.franquicias.franquicias_api.application.event.CambioFranquiciaEvent;
 import com.franquicias.franquicias_api.application.port.out.IFranquiciaRepository;
+import com.franquicias.franquicias_api.application.port.out.IReservaRepository;
+import com.franquicias.franquicias_api.application.service.FlujoCambios;
 import com.franquicias.franquicias_api.application.service.FranquiciaService;
+import com.franquicias.franquicias_api.application.service.IndiceAutocompletado;
+import com.franquicias.franquicias_api.application.service.PipelineMutaciones;
+import com.franquicias.franquicias_api.application.service.PoliticaReservas;
+import com.franquicias.franquicias_api.application.service.ReintentoConcurrencia;
+import com.franquicias.franquicias_api.application.service.ResumenMaxStock;
 import com.franquicias.franquicias_api.domain.Franquicia;
+import com.franquicias.franquicias_api.domain.Producto;
+import com.franquicias.franquicias_api.domain.Reserva;
+import com.franquicias.franquicias_api.domain.Sucursal;
+import com.franquicias.franquicias_api.domain.exception.ConflictoConcurrenciaException;
 import com.franquicias.franquicias_api.domain.exception.RecursoDuplicadoException;
 import com.franquicias.franquicias_api.domain.exception.RecursoNoEncontradoException;
+import com.franquicias.franquicias_api.domain.exception.ReservaVencidaException;
+import com.franquicias.franquicias_api.domain.exception.StockInsuficienteException;
+import com.franquicias.franquicias_api.domain.exception.VersionNoCoincideException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import org.slf4j.LoggerFactory;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 
 @ExtendWith(MockitoExtension.class)
 class FranquiciaServiceTest {
@@ -29,6 +72,33 @@ class FranquiciaServiceTest {
     @Mock
     private IFranquiciaRepository franquiciaRepository;
 
+    // Política real con esperas mínimas para que los reintentos no alarguen las pruebas
+    @Spy
+    private ReintentoConcurrencia reintentoConcurrencia = new ReintentoConcurrencia(2, Duration.ofMillis(1), new SimpleMeterRegistry());
+
+    // Deshabilitado (el mock devuelve false): las mutaciones van directo al repositorio
+    @Mock
+    private PipelineMutaciones pipelineMutaciones;
+
+    // Vista real del Criterio 7 (los eventos se le entregan a mano en las pruebas que lo necesitan)
+    @Spy
+    private ResumenMaxStock resumenMaxStock = new ResumenMaxStock(Duration.ofSeconds(60));
+
+    @Mock
+    private IndiceAutocompletado indiceAutocompletado;
+
+    @Mock
+    private FlujoCambios flujoCambios;
+
+    @Mock
+    private IReservaRepository reservaRepository;
+
+    @Spy
+    private PoliticaReservas politicaReservas = new PoliticaReservas(Duration.ofMinutes(5), Duration.ofMinutes(30), 500);
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     // --- Objetos de Dominio para Pruebas ---
     private Franquicia franquiciaExistente;
     private Franquicia franquiciaNueva;
@@ -54,9 +124,8 @@ class FranquiciaServiceTest {
 
     @Test
     void crearFranquicia_Exito() {
-        // Simular: 1. No existe el nombre. 2. Se guarda con éxito.
-        when(franquiciaRepository.findByNombre(NOMBRE_NUEVO)).thenReturn(Mono.empty());
-        when(franquiciaRepository.save(any(Franquicia.class))).thenReturn(Mono.just(franquiciaNueva));
+        // Simular: el insert directo se guarda con éxito
+        when(franquiciaRepository.insertar(any(Franquicia.class))).thenReturn(Mono.just(franquiciaNueva));
 
         StepVerifier.create(franquiciaService.crearFranquicia(franquiciaNueva))
                 .assertNext(franquicia -> {
@@ -64,15 +133,16 @@ class FranquiciaServiceTest {
                 })
                 .verifyComplete();
 
-        // Verificar que el repositorio fue llamado correctamente
-        verify(franquiciaRepository, times(1)).findByNombre(NOMBRE_NUEVO);
-        verify(franquiciaRepository, times(1)).save(franquiciaNueva);
+        // Un solo viaje a la BD: sin consulta previa por nombre
+        verify(franquiciaRepository, times(1)).insertar(franquiciaNueva);
+        verify(franquiciaRepository, never()).findByNombre(any());
     }
 
     @Test
     void crearFranquicia_FallaNombreDuplicado() {
-        // Simular: El nombre ya existe en la DB.
-        when(franquiciaRepository.findByNombre(NOMBRE_EXISTENTE)).thenReturn(Mono.just(franquiciaExistente));
+        // Simular: el índice único rechaza el nombre repetido
+        when(franquiciaRepository.insertar(any(Franquicia.class)))
+                .thenReturn(Mono.error(new RecursoDuplicadoException("Ya existe una franquicia con el nombre: " + NOMBRE_EXISTENTE)));
 
         Franquicia duplicada = new Franquicia();
         duplicada.setNombre(NOMBRE_EXISTENTE); // Intentamos guardar el nombre que ya existe
@@ -80,7 +150,22 @@ class FranquiciaServiceTest {
         StepVerifier.create(franquiciaService.crearFranquicia(duplicada))
                 .verifyError(RecursoDuplicadoException.class); // Esperamos la excepción de conflicto (409)
 
-        // Verificar que NO se llamó a save()
+        verify(eventPublisher, never()).publishEvent(any(Object.class));
+    }
+
+    @Test
+    void updateNombreFranquicia_RenombreDirigidoSinLeerNiGuardar() {
+        when(franquiciaRepository.actualizarNombre(ID_EXISTENTE, NOMBRE_NUEVO)).thenReturn(Mono.just(franquiciaExistente));
+        when(franquiciaRepository.actualizarNombre("id_inexistente", NOMBRE_NUEVO)).thenReturn(Mono.empty());
+
+        StepVerifier.create(franquiciaService.updateNombreFranquicia(ID_EXISTENTE, NOMBRE_NUEVO, null))
+                .expectNext(franquiciaExistente)
+                .verifyComplete();
+        StepVerifier.create(franquiciaService.updateNombreFranquicia("id_inexistente", NOMBRE_NUEVO, null))
+                .verifyError(RecursoNoEncontradoException.class); // 404
+
+        verify(franquiciaRepository, never()).findByNombre(any());
+        verify(franquiciaRepository, never()).findById(any());
         verify(franquiciaRepository, never()).save(any());
     }
 
@@ -152,4 +237,636 @@ class FranquiciaServiceTest {
         verify(franquiciaRepository, never()).findByNombre(any());
         verify(franquiciaRepository, never()).save(any());
     }
-}
\ No newline at end of file
+
+    // ----------------------------------------------------------------------
+    // 5. Pruebas de Stock (Criterio 6)
+    // ----------------------------------------------------------------------
+
+    @Test
+    void updateStock_ExitoSinLeerNiGuardarElDocumento() {
+        // Simular: la actualización dirigida encuentra el producto y devuelve cómo quedó
+        StockActualizadoDto escrito = escrito(80);
+        when(franquiciaRepository.actualizarStockProducto(ID_EXISTENTE, "Centro", "Burger", 80, null))
+                .thenReturn(Mono.just(escrito));
+
+        StepVerifier.create(franquiciaService.updateStock(ID_EXISTENTE, "Centro", "Burger", 80, null))
+                .expectNext(escrito)
+                .verifyComplete();
+
+        // Un solo viaje a la BD: no se carga ni se reescribe el documento completo
+        verify(franquiciaRepository, never()).findById(any());
+        verify(franquiciaRepository, never()).save(any());
+    }
+
+    @Test
+    void updateStock_FallaProductoNoEncontrado() {
+        // Simular: la sucursal existe pero el producto no, por eso la actualización no coincide
+        franquiciaExistente.setSucursales(new ArrayList<>(List.of(
+                new Sucursal("Centro", new ArrayList<>(List.of(new Producto("Burger", 10)))))));
+        when(franquiciaRepository.actualizarStockProducto(anyString(), anyString(), anyString(), anyInt(), any()))
+                .thenReturn(Mono.empty());
+        when(franquiciaRepository.findById(ID_EXISTENTE)).thenReturn(Mono.just(franquiciaExistente));
+
+        StepVerifier.create(franquiciaService.updateStock(ID_EXISTENTE, "Centro", "Inexistente", 5, null))
+                .verifyErrorMessage("Producto con identificador 'Inexistente en la sucursal Centro' no encontrado.");
+
+        verify(franquiciaRepository, never()).save(any());
+    }
+
+    @Test
+    void updateStock_FallaStockNegativo() {
+        StepVerifier.create(franquiciaService.updateStock(ID_EXISTENTE, "Centro", "Burger", -1, null))
+                .verifyError(IllegalArgumentException.class);
+
+        verifyNoInteractions(franquiciaRepository);
+    }
+
+    @Test
+    void ajustarStock_FallaStockInsuficiente() {
+        // Simular: el $inc protegido no coincide porque solo quedan 2 unidades
+        franquiciaExistente.setSucursales(new ArrayList<>(List.of(
+                new Sucursal("Centro", new ArrayList<>(List.of(new Producto("Burger", 2)))))));
+        when(franquiciaRepository.incrementarStockProducto(ID_EXISTENTE, "Centro", "Burger", -5, true, null))
+                .thenReturn(Mono.empty());
+        when(franquiciaRepository.findById(ID_EXISTENTE)).thenReturn(Mono.just(franquiciaExistente));
+
+        StepVerifier.create(franquiciaService.ajustarStock(ID_EXISTENTE, "Centro", "Burger", -5, true, null))
+                .verifyError(StockInsuficienteException.class); // 409
+
+        verify(franquiciaRepository, never()).save(any());
+    }
+
+    @Test
+    void ajustarStock_SinCoincidenciaPeroConStockSuficiente_SeReintentaYNoEsStockInsuficiente() {
+        // El $inc no coincidió por un cambio concurrente: el stock leído (10) alcanza para -5
+        franquiciaExistente.setSucursales(new ArrayList<>(List.of(
+                new Sucursal("Centro", new ArrayList<>(List.of(new Producto("Burger", 10)))))));
+        when(franquiciaRepository.incrementarStockProducto(ID_EXISTENTE, "Centro", "Burger", -5, true, null))
+                .thenReturn(Mono.empty(), Mono.just(escrito(5)));
+        when(franquiciaRepository.findById(ID_EXISTENTE)).thenReturn(Mono.just(franquiciaExistente));
+
+        StepVerifier.create(franquiciaService.ajustarStock(ID_EXISTENTE, "Centro", "Burger", -5, true, null))
+                .assertNext(escrito -> assertEquals(5, escrito.getStock()))
+                .verifyComplete();
+        verify(franquiciaRepository, times(2)).incrementarStockProducto(ID_EXISTENTE, "Centro", "Burger", -5, true, null);
+
+        // Sin piso nunca es falta de stock: si el producto existe y no coincide, al agotar los reintentos es conflicto
+        when(franquiciaRepository.incrementarStockProducto(ID_EXISTENTE, "Centro", "Burger", -50, false, null)).thenReturn(Mono.empty());
+        StepVerifier.create(franquiciaService.ajustarStock(ID_EXISTENTE, "Centro", "Burger", -50, false, null))
+                .verifyError(ConflictoConcurrenciaException.class); // 409
+        verify(franquiciaRepository, times(3)).incrementarStockProducto(ID_EXISTENTE, "Centro", "Burger", -50, false, null);
+    }
+
+    @Test
+    void updateStockEnLote_UnaEscrituraPorFranquiciaYFilasInvalidasSinTocarLaBD() {
+        ActualizacionStockDto a1 = new ActualizacionStockDto("A", "Centro", "Burger", 10);
+        ActualizacionStockDto b1 = new ActualizacionStockDto("B", "Norte", "Fries", 5);
+        ActualizacionStockDto a2 = new ActualizacionStockDto("A", "Centro", "Fries", 7);
+        ActualizacionStockDto invalida = new ActualizacionStockDto("A", "Centro", "Soda", -1);
+
+        when(franquiciaRepository.actualizarStockEnLote(eq("A"), anyList())).thenAnswer(inv -> {
+            List<ActualizacionStockDto> lote = inv.getArgument(1);
+            return Flux.fromIterable(lote).map(c -> ResultadoStockDto.de(c, ResultadoStockDto.Estado.OK));
+        });
+        when(franquiciaRepository.actualizarStockEnLote(eq("B"), anyList()))
+                .thenReturn(Flux.just(ResultadoStockDto.de(b1, ResultadoStockDto.Estado.NO_ENCONTRADO)));
+
+        StepVerifier.create(franquiciaService.updateStockEnLote(Flux.just(a1, b1, a2, invalida)).collectList())
+                .assertNext(resultados -> {
+                    assertEquals(4, resultados.size());
+                    assertEquals(3, resultados.stream().filter(r -> "A".equals(r.getFranquiciaId())).count());
+                    assertEquals(ResultadoStockDto.Estado.NO_ENCONTRADO, resultados.stream()
+                            .filter(r -> "B".equals(r.getFranquiciaId())).findFirst().orElseThrow().getEstado());
+                    assertEquals(ResultadoStockDto.Estado.INVALIDO, resultados.stream()
+                            .filter(r -> "Soda".equals(r.getProductoNombre())).findFirst().orElseThrow().getEstado());
+                })
+                .verifyComplete();
+
+        // Las filas de "A" viajan juntas en una sola escritura masiva (sin la inválida)
+        verify(franquiciaRepository, times(1)).actualizarStockEnLote("A", List.of(a1, a2));
+        verify(franquiciaRepository, times(1)).actualizarStockEnLote(eq("B"), anyList());
+    }
+
+    @Test
+    void updateStockEnLote_ResultadosEnElOrdenDeEntradaConFranquiciasIntercaladas() {
+        ActualizacionStockDto a1 = new ActualizacionStockDto("A", "Centro", "Burger", 10);
+        ActualizacionStockDto b1 = new ActualizacionStockDto("B", "Norte", "Fries", 5);
+        ActualizacionStockDto invalida = new ActualizacionStockDto("A", "Centro", "Soda", -1);
+        ActualizacionStockDto a2 = new ActualizacionStockDto("A", "Centro", "Fries", 7);
+        ActualizacionStockDto b2 = new ActualizacionStockDto("B", "Norte", "Soda", 3);
+
+        // "A" responde más tarde que "B": el orden no puede depender de qué escritura termina antes
+        when(franquiciaRepository.actualizarStockEnLote(eq("A"), anyList())).thenAnswer(inv -> {
+            List<ActualizacionStockDto> lote = inv.getArgument(1);
+            return Flux.fromIterable(lote).map(c -> ResultadoStockDto.de(c, ResultadoStockDto.Estado.OK))
+                    .delaySubscription(Duration.ofMillis(50));
+        });
+        when(franquiciaRepository.actualizarStockEnLote(eq("B"), anyList())).thenReturn(Flux.just(
+                ResultadoStockDto.de(b1, ResultadoStockDto.Estado.OK),
+                ResultadoStockDto.de(b2, ResultadoStockDto.Estado.NO_ENCONTRADO)));
+
+        StepVerifier.create(franquiciaService.updateStockEnLote(Flux.just(a1, b1, invalida, a2, b2)).collectList())
+                .assertNext(resultados -> {
+                    assertEquals(List.of("A/Burger", "B/Fries", "A/Soda", "A/Fries", "B/Soda"), resultados.stream()
+                            .map(r -> r.getFranquiciaId() + "/" + r.getProductoNombre()).toList());
+                    assertEquals(List.of(ResultadoStockDto.Estado.OK, ResultadoStockDto.Estado.OK, ResultadoStockDto.Estado.INVALIDO,
+                            ResultadoStockDto.Estado.OK, ResultadoStockDto.Estado.NO_ENCONTRADO),
+                            resultados.stream().map(ResultadoStockDto::getEstado).toList());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void updateStockEnLote_UnaFranquiciaQueFallaNoTumbaElLote() {
+        ActualizacionStockDto a1 = new ActualizacionStockDto("A", "Centro", "Burger", 10);
+        ActualizacionStockDto b1 = new ActualizacionStockDto("B", "Norte", "Fries", 5);
+        ActualizacionStockDto c1 = new ActualizacionStockDto("C", "Sur", "Soda", 3);
+        ActualizacionStockDto c2 = new ActualizacionStockDto("C", "Sur", "Té", 4);
+
+        // "A" choca siempre (se agotan los reintentos) y "C" devuelve menos filas de las que recibió
+        when(franquiciaRepository.actualizarStockEnLote(eq("A"), anyList())).thenReturn(Flux.error(new ConflictoConcurrenciaException("A")));
+        when(franquiciaRepository.actualizarStockEnLote(eq("B"), anyList())).thenReturn(Flux.just(ResultadoStockDto.de(b1, ResultadoStockDto.Estado.OK)));
+        when(franquiciaRepository.actualizarStockEnLote(eq("C"), anyList())).thenReturn(Flux.just(ResultadoStockDto.de(c1, ResultadoStockDto.Estado.OK)));
+
+        StepVerifier.create(franquiciaService.updateStockEnLote(Flux.just(a1, b1, c1, c2)).collectList())
+                .assertNext(resultados -> {
+                    assertEquals(List.of("A/Burger", "B/Fries", "C/Soda", "C/Té"), resultados.stream()
+                            .map(r -> r.getFranquiciaId() + "/" + r.getProductoNombre()).toList());
+                    assertEquals(List.of(ResultadoStockDto.Estado.ERROR, ResultadoStockDto.Estado.OK,
+                            ResultadoStockDto.Estado.OK, ResultadoStockDto.Estado.ERROR),
+                            resultados.stream().map(ResultadoStockDto::getEstado).toList());
+                })
+                .verifyComplete();
+    }
+
+    // ----------------------------------------------------------------------
+    // 6. Pruebas de Concurrencia Optimista
+    // ----------------------------------------------------------------------
+
+    @Test
+    void addSucursal_ReintentaDesdeLaLecturaTrasUnConflictoDeVersion() {
+        // Cada lectura devuelve una copia nueva, como haría la BD
+        when(franquiciaRepository.findById(ID_EXISTENTE)).thenAnswer(inv -> {
+            Franquicia copia = new Franquicia(NOMBRE_EXISTENTE, new ArrayList<>());
+            copia.setId(ID_EXISTENTE);
+            return Mono.just(copia);
+        });
+        // Simular: otro escritor se adelanta en el primer guardado
+        when(franquiciaRepository.save(any(Franquicia.class)))
+                .thenReturn(Mono.error(new ConflictoConcurrenciaException(ID_EXISTENTE)))
+                .thenAnswer(inv -> Mono.just(inv.getArgument(0)));
+
+        StepVerifier.create(franquiciaService.addSucursal(ID_EXISTENTE, new Sucursal("Norte", new ArrayList<>()), null))
+                .assertNext(franquicia -> assertEquals(1, franquicia.getSucursales().size()))
+                .verifyComplete();
+
+        verify(franquiciaRepository, times(2)).findById(ID_EXISTENTE);
+        verify(franquiciaRepository, times(2)).save(any(Franquicia.class));
+    }
+
+    @Test
+    void addSucursal_FallaConConflictoAlAgotarReintentos() {
+        when(franquiciaRepository.findById(ID_EXISTENTE)).thenAnswer(inv -> Mono.just(new Franquicia(NOMBRE_EXISTENTE, new ArrayList<>())));
+        when(franquiciaRepository.save(any(Franquicia.class)))
+                .thenReturn(Mono.error(new ConflictoConcurrenciaException(ID_EXISTENTE)));
+
+        StepVerifier.create(franquiciaService.addSucursal(ID_EXISTENTE, new Sucursal("Norte", new ArrayList<>()), null))
+                .verifyError(ConflictoConcurrenciaException.class); // 409
+
+        // 1 intento + 2 reintentos
+        verify(franquiciaRepository, times(3)).save(any(Franquicia.class));
+    }
+
+    @Test
+    void ifMatch_VersionViejaSeRechazaConLaVistaResumenSinTraerElDocumento() {
+        when(franquiciaRepository.findResumenById(ID_EXISTENTE, VistaFranquicia.RESUMEN))
+                .thenReturn(Mono.just(new FranquiciaResumenDto(ID_EXISTENTE, NOMBRE_EXISTENTE, 5L, 1, null)));
+
+        StepVerifier.create(franquiciaService.addSucursal(ID_EXISTENTE, new Sucursal("Norte", new ArrayList<>()), 4L))
+                .verifyError(VersionNoCoincideException.class); // 412
+
+        verify(franquiciaRepository, never()).findById(any());
+        verify(franquiciaRepository, never()).save(any());
+    }
+
+    @Test
+    void ifMatch_OtroEscritorEnElMedio_ElReintentoVeLaVersionNuevaY412() {
+        when(franquiciaRepository.findResumenById(ID_EXISTENTE, VistaFranquicia.RESUMEN))
+                .thenReturn(Mono.just(new FranquiciaResumenDto(ID_EXISTENTE, NOMBRE_EXISTENTE, 5L, 1, null)));
+        // Primera lectura en la versión 5; tras el conflicto, la relectura ya está en la 6
+        long[] version = {5};
+        when(franquiciaRepository.findById(ID_EXISTENTE)).thenAnswer(inv -> {
+            Franquicia copia = new Franquicia(NOMBRE_EXISTENTE, new ArrayList<>(List.of(
+                    new Sucursal("Centro", new ArrayList<>(List.of(new Producto("Burger", 10)))))));
+            copia.setId(ID_EXISTENTE);
+            copia.setVersion(version[0]++);
+            return Mono.just(copia);
+        });
+        when(franquiciaRepository.save(any(Franquicia.class))).thenReturn(Mono.error(new ConflictoConcurrenciaException(ID_EXISTENTE)));
+
+        StepVerifier.create(franquiciaService.addProducto(ID_EXISTENTE, "Centro", new Producto("Papas", 4), 5L))
+                .verifyError(VersionNoCoincideException.class);
+
+        // El 412 no se reintenta
+        verify(franquiciaRepository, times(2)).findById(ID_EXISTENTE);
+        verify(franquiciaRepository, times(1)).save(any(Franquicia.class));
+    }
+
+    @Test
+    void ifMatch_StockConLaVersionEnElFiltroDeLaEscrituraDirigida() {
+        StockActualizadoDto escrito = escrito(80);
+        when(franquiciaRepository.actualizarStockProducto(ID_EXISTENTE, "Centro", "Burger", 80, 4L)).thenReturn(Mono.just(escrito));
+
+        StepVerifier.create(franquiciaService.updateStock(ID_EXISTENTE, "Centro", "Burger", 80, 4L))
+                .expectNext(escrito)
+                .verifyComplete();
+
+        // Un solo viaje: ni la vista resumen, ni la lectura completa, ni el guardado
+        verify(franquiciaRepository, never()).findResumenById(any(), any());
+        verify(franquiciaRepository, never()).findById(any());
+        verify(franquiciaRepository, never()).save(any());
+    }
+
+    @Test
+    void ifMatch_StockSinCoincidencia_ElDiagnosticoDa412O404() {
+        franquiciaExistente.setVersion(5L);
+        franquiciaExistente.setSucursales(new ArrayList<>(List.of(
+                new Sucursal("Centro", new ArrayList<>(List.of(new Producto("Burger", 10)))))));
+        when(franquiciaRepository.incrementarStockProducto(eq(ID_EXISTENTE), eq("Centro"), anyString(), eq(-3), eq(true), anyLong()))
+                .thenReturn(Mono.empty());
+        when(franquiciaRepository.findById(ID_EXISTENTE)).thenReturn(Mono.just(franquiciaExistente));
+
+        // La franquicia ya va por la 5: 412 aunque el producto exista, sin reintentar
+        StepVerifier.create(franquiciaService.ajustarStock(ID_EXISTENTE, "Centro", "Burger", -3, true, 4L))
+                .verifyError(VersionNoCoincideException.class);
+        verify(franquiciaRepository, times(1)).incrementarStockProducto(ID_EXISTENTE, "Centro", "Burger", -3, true, 4L);
+
+        // En la versión esperada pero sin ese producto: 404
+        StepVerifier.create(franquiciaService.ajustarStock(ID_EXISTENTE, "Centro", "Papas", -3, true, 5L))
+                .verifyError(RecursoNoEncontradoException.class);
+        verify(franquiciaRepository, never()).save(any());
+    }
+
+    // ----------------------------------------------------------------------
+    // 7. Pruebas de Máximo Stock por Sucursal (Criterio 7)
+    // ----------------------------------------------------------------------
+
+    @Test
+    void obtenerProductosMaxStock_FallaFranquiciaNoEncontrada() {
+        // Simular: la agregación no devuelve filas y la franquicia no existe
+        when(franquiciaRepository.findProductoMaxStockPorSucursal("id_inexistente")).thenReturn(Flux.empty());
+        when(franquiciaRepository.existsById("id_inexistente")).thenReturn(Mono.just(false));
+
+        StepVerifier.create(franquiciaService.obtenerProductosMaxStockPorSucursal("id_inexistente"))
+                .verifyError(RecursoNoEncontradoException.class); // 404
+
+        // Nunca se trae el documento completo
+        verify(franquiciaRepository, never()).findById(any());
+    }
+
+    @Test
+    void obtenerProductosMaxStock_FallaSucursalSinProductos() {
+        ProductoMaxStockDto centro = new ProductoMaxStockDto();
+        centro.setSucursalNombre("Centro");
+        centro.setProductoNombre("Burger");
+        centro.setStock(50);
+        ProductoMaxStockDto vacia = new ProductoMaxStockDto();
+        vacia.setSucursalNombre("Norte");
+        when(franquiciaRepository.findProductoMaxStockPorSucursal(ID_EXISTENTE)).thenReturn(Flux.just(centro, vacia));
+
+        StepVerifier.create(franquiciaService.obtenerProductosMaxStockPorSucursal(ID_EXISTENTE))
+                .expectNext(centro)
+                .verifyError(RecursoNoEncontradoException.class);
+    }
+
+    @Test
+    void obtenerProductosMaxStock_ServidoDesdeLaVistaYActualizadoPorEventos() {
+        ProductoMaxStockDto centro = new ProductoMaxStockDto();
+        centro.setSucursalNombre("Centro");
+        centro.setProductoNombre("Burger");
+        centro.setStock(50);
+        centro.setVersion(4L);
+        when(franquiciaRepository.findProductoMaxStockPorSucursal(ID_EXISTENTE)).thenReturn(Flux.just(centro));
+
+        // Primera lectura: se arma la vista con la agregación
+        StepVerifier.create(franquiciaService.obtenerProductosMaxStockPorSucursal(ID_EXISTENTE))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        // Una venta de otro producto que supera al máximo actualiza la vista sin volver a la BD
+        resumenMaxStock.alCambiarFranquicia(
+                CambioFranquiciaEvent.stockActualizado(ID_EXISTENTE, franquiciaConStock(5L, 50), "centro", "Papas", 70));
+
+        StepVerifier.create(franquiciaService.obtenerProductosMaxStockPorSucursal(ID_EXISTENTE))
+                .assertNext(dto -> {
+                    assertEquals("Centro", dto.getSucursalNombre());
+                    assertEquals("Papas", dto.getProductoNombre());
+                    assertEquals(70, dto.getStock());
+                })
+                .verifyComplete();
+
+        verify(franquiciaRepository, times(1)).findProductoMaxStockPorSucursal(ID_EXISTENTE);
+    }
+
+    @Test
+    void obtenerProductosMaxStock_EventoConVersionAnteriorNoPisaLaVista() {
+        ProductoMaxStockDto centro = new ProductoMaxStockDto();
+        centro.setSucursalNombre("Centro");
+        centro.setProductoNombre("Burger");
+        centro.setStock(50);
+        centro.setVersion(4L);
+        when(franquiciaRepository.findProductoMaxStockPorSucursal(ID_EXISTENTE)).thenReturn(Flux.just(centro));
+        StepVerifier.create(franquiciaService.obtenerProductosMaxStockPorSucursal(ID_EXISTENTE))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        // Dos ventas concurrentes: la v6 (80) termina antes que la v5 (90), que llega tarde
+        resumenMaxStock.alCambiarFranquicia(CambioFranquiciaEvent.stockActualizado(ID_EXISTENTE,
+                franquiciaConStock(6L, 80), "Centro", "Burger", 80));
+        resumenMaxStock.alCambiarFranquicia(CambioFranquiciaEvent.stockActualizado(ID_EXISTENTE,
+                franquiciaConStock(5L, 90), "Centro", "Burger", 90));
+
+        // La vista se descartó: la siguiente lectura vuelve a la BD en lugar de servir el 90 viejo
+        StepVerifier.create(franquiciaService.obtenerProductosMaxStockPorSucursal(ID_EXISTENTE))
+                .assertNext(dto -> assertEquals(50, dto.getStock()))
+                .verifyComplete();
+        verify(franquiciaRepository, times(2)).findProductoMaxStockPorSucursal(ID_EXISTENTE);
+    }
+
+    @Test
+    void obtenerProductosMaxStock_EventoSinVersionDescartaLaVista() {
+        ProductoMaxStockDto centro = new ProductoMaxStockDto();
+        centro.setSucursalNombre("Centro");
+        centro.setProductoNombre("Burger");
+        centro.setStock(50);
+        centro.setVersion(4L);
+        when(franquiciaRepository.findProductoMaxStockPorSucursal(ID_EXISTENTE)).thenReturn(Flux.just(centro));
+        StepVerifier.create(franquiciaService.obtenerProductosMaxStockPorSucursal(ID_EXISTENTE))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        // La actualización masiva no trae el documento: no se sabe si va antes o después de la agregación
+        resumenMaxStock.alCambiarFranquicia(CambioFranquiciaEvent.stockActualizado(ID_EXISTENTE, null, "Centro", "Papas", 70));
+
+        StepVerifier.create(franquiciaService.obtenerProductosMaxStockPorSucursal(ID_EXISTENTE))
+                .assertNext(dto -> assertEquals("Burger", dto.getProductoNombre()))
+                .verifyComplete();
+        verify(franquiciaRepository, times(2)).findProductoMaxStockPorSucursal(ID_EXISTENTE);
+    }
+
+    @Test
+    void obtenerProductosMaxStock_EventoNoPosteriorALaAgregacionDescartaLaVista() {
+        ProductoMaxStockDto centro = new ProductoMaxStockDto();
+        centro.setSucursalNombre("Centro");
+        centro.setProductoNombre("Burger");
+        centro.setStock(50);
+        centro.setVersion(6L);
+        when(franquiciaRepository.findProductoMaxStockPorSucursal(ID_EXISTENTE)).thenReturn(Flux.just(centro));
+        StepVerifier.create(franquiciaService.obtenerProductosMaxStockPorSucursal(ID_EXISTENTE))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        // La v5 terminó antes de la lectura pero su evento llega después: la agregación ya la incluye
+        resumenMaxStock.alCambiarFranquicia(CambioFranquiciaEvent.stockActualizado(ID_EXISTENTE,
+                franquiciaConStock(5L, 90), "Centro", "Burger", 90));
+
+        StepVerifier.create(franquiciaService.obtenerProductosMaxStockPorSucursal(ID_EXISTENTE))
+                .assertNext(dto -> assertEquals(50, dto.getStock()))
+                .verifyComplete();
+        verify(franquiciaRepository, times(2)).findProductoMaxStockPorSucursal(ID_EXISTENTE);
+    }
+
+    private Franquicia franquiciaConStock(Long version, int stock) {
+        Franquicia franquicia = new Franquicia(NOMBRE_EXISTENTE, new ArrayList<>(List.of(
+                new Sucursal("Centro", new ArrayList<>(List.of(new Producto("Burger", stock)))))));
+        franquicia.setId(ID_EXISTENTE);
+        franquicia.setVersion(version);
+        return franquicia;
+    }
+
+    @Test
+    void updateStock_PublicaEventoConNombreYStockGuardados() {
+        // Se pide con otras mayúsculas; el repositorio devuelve los nombres guardados
+        when(franquiciaRepository.actualizarStockProducto(ID_EXISTENTE, "centro", "BURGER", 80, null))
+                .thenReturn(Mono.just(escrito(80)));
+
+        StepVerifier.create(franquiciaService.updateStock(ID_EXISTENTE, "centro", "BURGER", 80, null))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        verify(eventPublisher).publishEvent(argThat((Object evento) -> evento instanceof CambioFranquiciaEvent cambio
+                && cambio.getTipo() == CambioFranquiciaEvent.Tipo.STOCK_ACTUALIZADO
+                && "Burger".equals(cambio.getProductoNombre())
+                && cambio.getStock() == 80
+                && Long.valueOf(5L).equals(cambio.getVersion())));
+    }
+
+    // ----------------------------------------------------------------------
+    // 8. Pruebas de Paginación por cursor (GET /franquicias?limite=N)
+    // ----------------------------------------------------------------------
+
+    private Franquicia franquiciaConId(String id) {
+        Franquicia franquicia = new Franquicia("F-" + id, new ArrayList<>());
+        franquicia.setId(id);
+        return franquicia;
+    }
+
+    @Test
+    void findPagina_PideUnaFilaDeMasYDevuelveElCursor() {
+        // Hay una tercera fila: existe otra página y el cursor es el ID de la última devuelta
+        when(franquiciaRepository.findPagina("c0", 3))
+                .thenReturn(Flux.just(franquiciaConId("c1"), franquiciaConId("c2"), franquiciaConId("c3")));
+
+        StepVerifier.create(franquiciaService.findPagina("c0", 2))
+                .assertNext(pagina -> {
+                    assertEquals(2, pagina.getElementos().size());
+                    assertEquals("c2", pagina.getSiguienteCursor());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void findPagina_UltimaPaginaSinCursorYLimiteInvalido() {
+        when(franquiciaRepository.findPagina(null, 3)).thenReturn(Flux.just(franquiciaConId("c1")));
+
+        StepVerifier.create(franquiciaService.findPagina(null, 2))
+                .assertNext(pagina -> assertEquals(null, pagina.getSiguienteCursor()))
+                .verifyComplete();
+
+        StepVerifier.create(franquiciaService.findPagina(null, 0))
+                .verifyError(IllegalArgumentException.class); // 400
+    }
+
+    // ----------------------------------------------------------------------
+    // 9. Pruebas de Vistas parciales (?vista=resumen|sucursales)
+    // ----------------------------------------------------------------------
+
+    @Test
+    void findResumenById_NoExiste_LanzaRecursoNoEncontrado() {
+        when(franquiciaRepository.findResumenById("id_inexistente", VistaFranquicia.RESUMEN)).thenReturn(Mono.empty());
+
+        StepVerifier.create(franquiciaService.findResumenById("id_inexistente", VistaFranquicia.RESUMEN))
+                .verifyError(RecursoNoEncontradoException.class); // 404
+    }
+
+    @Test
+    void findResumenPagina_UsaElIdDeLaVistaComoCursor() {
+        when(franquiciaRepository.findResumenPagina(null, 2, VistaFranquicia.SUCURSALES)).thenReturn(Flux.just(
+                FranquiciaResumenDto.de(franquiciaConId("c1"), VistaFranquicia.SUCURSALES),
+                FranquiciaResumenDto.de(franquiciaConId("c2"), VistaFranquicia.SUCURSALES)));
+
+        StepVerifier.create(franquiciaService.findResumenPagina(null, 1, VistaFranquicia.SUCURSALES))
+                .assertNext(pagina -> {
+                    assertEquals(1, pagina.getElementos().size());
+                    assertEquals("c1", pagina.getSiguienteCursor());
+                })
+                .verifyComplete();
+    }
+
+    // ----------------------------------------------------------------------
+    // 10. Pruebas de Sucursales y Productos por tramos
+    // ----------------------------------------------------------------------
+
+    @Test
+    void findProductos_TramoVacioYSucursalInexistente_LanzaRecursoNoEncontrado() {
+        // El tramo vacío dispara la lectura de diagnóstico: la franquicia existe pero no la sucursal
+        when(franquiciaRepository.findProductos(ID_EXISTENTE, "Centro", 0, 10, OrdenListado.STOCK_DESC)).thenReturn(Flux.empty());
+        when(franquiciaRepository.findById(ID_EXISTENTE)).thenReturn(Mono.just(franquiciaExistente));
+
+        StepVerifier.create(franquiciaService.findProductos(ID_EXISTENTE, "Centro", 0, 10, OrdenListado.STOCK_DESC))
+                .verifyError(RecursoNoEncontradoException.class); // 404
+    }
+
+    @Test
+    void findSucursales_OrdenPorStockOLimiteFueraDeRango_LanzaIllegalArgument() {
+        StepVerifier.create(franquiciaService.findSucursales(ID_EXISTENTE, 0, 10, OrdenListado.de("-stock")))
+                .verifyError(IllegalArgumentException.class); // 400
+
+        StepVerifier.create(franquiciaService.findSucursales(ID_EXISTENTE, -1, null, OrdenListado.ORIGINAL))
+                .verifyError(IllegalArgumentException.class);
+
+        verify(franquiciaRepository, never()).findSucursales(anyString(), anyInt(), anyInt(), any());
+    }
+
+    // ----------------------------------------------------------------------
+    // 11. Pruebas de Búsqueda global de productos
+    // ----------------------------------------------------------------------
+
+    @Test
+    void buscarProductos_SinLimite_UsaElLimitePorDefecto() {
+        ProductoEncontradoDto encontrado = new ProductoEncontradoDto();
+        encontrado.setProductoNombre("Coca-Cola");
+        when(franquiciaRepository.buscarProductos("coca", true, 100)).thenReturn(Flux.just(encontrado));
+
+        StepVerifier.create(franquiciaService.buscarProductos(" coca ", true, null))
+                .expectNext(encontrado)
+                .verifyComplete();
+    }
+
+    @Test
+    void buscarProductos_NombreVacioOLimiteFueraDeRango_LanzaIllegalArgument() {
+        StepVerifier.create(franquiciaService.buscarProductos(" ", false, 10))
+                .verifyError(IllegalArgumentException.class); // 400
+
+        StepVerifier.create(franquiciaService.buscarProductos("coca", false, 501))
+                .verifyError(IllegalArgumentException.class);
+
+        verify(franquiciaRepository, never()).buscarProductos(anyString(), anyBoolean(), anyInt());
+    }
+
+    // ----------------------------------------------------------------------
+    // 12. Pruebas de Reservas de stock
+    // ----------------------------------------------------------------------
+
+    // Lo que devuelve una escritura de stock dirigida sobre Centro/Burger
+    private StockActualizadoDto escrito(int stock) {
+        return new StockActualizadoDto(ID_EXISTENTE, 5L, "Centro", "Burger", stock, null);
+    }
+
+    private Reserva reserva(String id, int cantidad) {
+        Instant ahora = Instant.now();
+        return new Reserva(id, ID_EXISTENTE, "Centro", "Burger", cantidad, ahora, ahora.plusSeconds(300));
+    }
+
+    @Test
+    void reservarStock_StockInsuficiente_LanzaConflictoSinRegistrarReserva() {
+        // El $inc condicionado no coincide: solo quedan 2 unidades
+        franquiciaExistente.setSucursales(new ArrayList<>(List.of(
+                new Sucursal("Centro", new ArrayList<>(List.of(new Producto("Burger", 2)))))));
+        when(franquiciaRepository.incrementarStockProducto(ID_EXISTENTE, "Centro", "Burger", -3, true, null)).thenReturn(Mono.empty());
+        when(franquiciaRepository.findById(ID_EXISTENTE)).thenReturn(Mono.just(franquiciaExistente));
+
+        StepVerifier.create(franquiciaService.reservarStock(ID_EXISTENTE, "Centro", "Burger", 3, null))
+                .verifyError(StockInsuficienteException.class); // 409
+
+        verify(reservaRepository, never()).insertar(any());
+    }
+
+    @Test
+    void reservarStock_FallaElRegistro_DevuelveElStockDescontado() {
+        franquiciaExistente.setSucursales(new ArrayList<>(List.of(
+                new Sucursal("Centro", new ArrayList<>(List.of(new Producto("Burger", 7)))))));
+        when(franquiciaRepository.incrementarStockProducto(ID_EXISTENTE, "Centro", "Burger", -3, true, null)).thenReturn(Mono.just(escrito(4)));
+        when(reservaRepository.insertar(any(Reserva.class))).thenReturn(Mono.error(new IllegalStateException("BD caída")));
+        when(franquiciaRepository.incrementarStockProducto(ID_EXISTENTE, "Centro", "Burger", 3, false, null)).thenReturn(Mono.just(escrito(7)));
+
+        StepVerifier.create(franquiciaService.reservarStock(ID_EXISTENTE, "Centro", "Burger", 3, 60))
+                .verifyError(IllegalStateException.class);
+
+        verify(franquiciaRepository, times(1)).incrementarStockProducto(ID_EXISTENTE, "Centro", "Burger", 3, false, null);
+    }
+
+    @Test
+    void liberarReserva_DevuelveElStockYConfirmarNo() {
+        when(reservaRepository.reclamar("r1")).thenReturn(Mono.just(reserva("r1", 2)));
+        when(franquiciaRepository.incrementarStockProducto(ID_EXISTENTE, "Centro", "Burger", 2, false, null)).thenReturn(Mono.just(escrito(2)));
+
+        StepVerifier.create(franquiciaService.liberarReserva("r1"))
+                .assertNext(liberada -> assertEquals(2, liberada.getCantidad()))
+                .verifyComplete();
+
+        // Ya reclamada (confirmada, liberada o barrida): 404 y el stock no se toca
+        when(reservaRepository.reclamarVigente(eq("r2"), any(Instant.class))).thenReturn(Mono.empty());
+        when(reservaRepository.existe("r2")).thenReturn(Mono.just(false));
+        StepVerifier.create(franquiciaService.confirmarReserva("r2"))
+                .verifyError(RecursoNoEncontradoException.class);
+
+        verify(franquiciaRepository, times(1)).incrementarStockProducto(anyString(), anyString(), anyString(), anyInt(), anyBoolean(), any());
+    }
+
+    @Test
+    void liberarReserva_ProductoRenombrado_ElStockQueNoSeDevuelveQuedaEnElLog() {
+        when(reservaRepository.reclamar("r4")).thenReturn(Mono.just(reserva("r4", 2)));
+        // El producto cambió de nombre después de la reserva: el $inc no encuentra a quién sumarle
+        when(franquiciaRepository.incrementarStockProducto(ID_EXISTENTE, "Centro", "Burger", 2, false, null)).thenReturn(Mono.empty());
+
+        Logger logger = (Logger) LoggerFactory.getLogger(FranquiciaService.class);
+        ListAppender<ILoggingEvent> registros = new ListAppender<>();
+        registros.start();
+        logger.addAppender(registros);
+        try {
+            StepVerifier.create(franquiciaService.liberarReserva("r4"))
+                    .expectNextCount(1)
+                    .verifyComplete();
+        } finally {
+            logger.detachAppender(registros);
+        }
+
+        assertEquals(1, registros.list.size());
+        assertEquals(Level.WARN, registros.list.get(0).getLevel());
+        assertTrue(registros.list.get(0).getFormattedMessage().contains("2 unidades de la reserva r4"));
+    }
+
+    @Test
+    void confirmarReserva_Vencida_410YNoSeReclama() {
+        // Vencida pero sin barrer: el reclamo de confirmar no coincide y la reserva sigue ahí para el barrido
+        when(reservaRepository.reclamarVigente(eq("r3"), any(Instant.class))).thenReturn(Mono.empty());
+        when(reservaRepository.existe("r3")).thenReturn(Mono.just(true));
+
+        StepVerifier.create(franquiciaService.confirmarReserva("r3"))
+                .verifyError(ReservaVencidaException.class);
+
+        verify(reservaRepository, never()).reclamar(anyString());
+        verify(franquiciaRepository, never()).incrementarStockProducto(anyString(), anyString(), anyString(), anyInt(), anyBoolean(), any());
+    }
+}
@@ -0,0 +1,102 @@
+package com.franquicias.franquicias_api;
+
+import com.franquicias.franquicias_api.application.dto.SugerenciaDto;
+import com.franquicias.franquicias_api.application.event.CambioFranquiciaEvent;
+import com.franquicias.franquicias_api.application.port.out.IFranquiciaRepository;
+import com.franquicias.franquicias_api.application.service.IndiceAutocompletado;
+import com.franquicias.franquicias_api.domain.Franquicia;
+import com.franquicias.franquicias_api.domain.Producto;
+import com.franquicias.franquicias_api.domain.Sucursal;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class IndiceAutocompletadoTest {
+
+    private static final String ID = "id_autocompletado";
+
+    @Mock
+    private IFranquiciaRepository franquiciaRepository;
+
+    private IndiceAutocompletado indice;
+    private Franquicia franquicia;
+
+    @BeforeEach
+    void setUp() {
+        indice = new IndiceAutocompletado(franquiciaRepository, Duration.ofMinutes(10), false);
+
+        List<Sucursal> sucursales = new ArrayList<>();
+        sucursales.add(new Sucursal("Centro", new ArrayList<>(List.of(new Producto("Coca-Cola", 10), new Producto("Café", 5)))));
+        sucursales.add(new Sucursal("Costa", new ArrayList<>(List.of(new Producto("coca-cola", 3)))));
+        franquicia = new Franquicia("Autocompletado", sucursales);
+        franquicia.setId(ID);
+        franquicia.setVersion(1L);
+    }
+
+    private List<String> nombres(List<SugerenciaDto> sugerencias) {
+        return sugerencias.stream().map(sugerencia -> sugerencia.getTipo() + ":" + sugerencia.getNombre()).toList();
+    }
+
+    @Test
+    void sugerir_PrimeraConsultaArmaElIndiceYLasSiguientesNoVanALaBD() {
+        when(franquiciaRepository.findById(ID)).thenReturn(Mono.just(franquicia));
+
+        // Sucursales y productos intercalados por orden alfabético; el producto repetido sale una vez
+        StepVerifier.create(indice.sugerir(ID, "CO", 10))
+                .assertNext(sugerencias -> assertEquals(
+                        List.of("PRODUCTO:Coca-Cola", "SUCURSAL:Costa"), nombres(sugerencias)))
+                .verifyComplete();
+
+        StepVerifier.create(indice.sugerir(ID, "c", 2))
+                .assertNext(sugerencias -> assertEquals(
+                        List.of("PRODUCTO:Café", "SUCURSAL:Centro"), nombres(sugerencias)))
+                .verifyComplete();
+
+        verify(franquiciaRepository, times(1)).findById(ID);
+    }
+
+    @Test
+    void alCambiarFranquicia_RenombresYBorradosSeAplicanSinReconstruir() {
+        when(franquiciaRepository.findById(ID)).thenReturn(Mono.just(franquicia));
+        indice.sugerir(ID, "", 1).block();
+
+        // Estados guardados: Café pasa a llamarse Capuchino y luego se quita Coca-Cola de Centro
+        Franquicia guardada = franquicia.copiar();
+        guardada.actualizarNombreProducto("Centro", "Café", "Capuchino");
+        guardada.setVersion(2L);
+        indice.alCambiarFranquicia(CambioFranquiciaEvent.nombreProducto(guardada, "Centro", "Café", "Capuchino"));
+
+        guardada = guardada.copiar();
+        guardada.eliminarProductoDeSucursal("Centro", "Coca-Cola");
+        guardada.setVersion(3L);
+        indice.alCambiarFranquicia(CambioFranquiciaEvent.productoEliminado(guardada, "Centro", "Coca-Cola"));
+
+        // Coca-Cola sigue en Costa (con su grafía); Café ya no existe
+        StepVerifier.create(indice.sugerir(ID, "c", 10))
+                .assertNext(sugerencias -> assertEquals(
+                        List.of("PRODUCTO:Capuchino", "SUCURSAL:Centro", "PRODUCTO:coca-cola", "SUCURSAL:Costa"), nombres(sugerencias)))
+                .verifyComplete();
+
+        verify(franquiciaRepository, times(1)).findById(ID);
+    }
+
+    @Test
+    void sugerir_FranquiciaInexistente_DevuelveVacio() {
+        when(franquiciaRepository.findById("no_existe")).thenReturn(Mono.empty());
+
+        StepVerifier.create(indice.sugerir("no_existe", "a", 10))
+                .verifyComplete();
+    }
+}
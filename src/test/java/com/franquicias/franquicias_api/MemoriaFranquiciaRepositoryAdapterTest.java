@@ -0,0 +1,134 @@
+package com.franquicias.franquicias_api;
+
+import com.franquicias.franquicias_api.application.port.out.IFranquiciaRepository;
+import com.franquicias.franquicias_api.domain.Franquicia;
+import com.franquicias.franquicias_api.domain.Producto;
+import com.franquicias.franquicias_api.domain.Reserva;
+import com.franquicias.franquicias_api.infrastructure.data.MemoriaFranquiciaRepositoryAdapter;
+import com.franquicias.franquicias_api.infrastructure.data.MemoriaReservaRepositoryAdapter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// El contrato, más lo propio del almacenamiento en memoria: recuperar tras un reinicio
+class MemoriaFranquiciaRepositoryAdapterTest extends FranquiciaRepositoryContratoTest {
+
+    @TempDir
+    Path directorio;
+
+    private MemoriaFranquiciaRepositoryAdapter repositorio;
+
+    @BeforeEach
+    void setUp() {
+        repositorio = abrir(DataSize.ofMegabytes(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        repositorio.cerrar();
+    }
+
+    @Override
+    protected IFranquiciaRepository repositorio() {
+        return repositorio;
+    }
+
+    private MemoriaFranquiciaRepositoryAdapter abrir(DataSize tamanoSegmento) {
+        return new MemoriaFranquiciaRepositoryAdapter(directorio.toString(), tamanoSegmento, false);
+    }
+
+    @Test
+    void reinicio_SinSnapshotReaplicaElDiario() {
+        Franquicia franquicia = insertar(nombre("Diario"), sucursal("Centro", new Producto("Café", 5)));
+        String id = franquicia.getId();
+        repositorio.incrementarStockProducto(id, "Centro", "Café", 3, true, null).block();
+        repositorio.actualizarNombre(id, nombre("Renombrada")).block();
+
+        // Sin cerrar: como una caída del proceso, el siguiente arranque solo tiene el diario
+        MemoriaFranquiciaRepositoryAdapter reiniciado = abrir(DataSize.ofMegabytes(1));
+        try {
+            Franquicia recuperada = reiniciado.findByNombre(nombre("RENOMBRADA")).block();
+            assertEquals(id, recuperada.getId());
+            assertEquals(2L, recuperada.getVersion());
+            assertEquals(8, recuperada.getSucursales().get(0).getProductos().get(0).getStock());
+            assertNull(reiniciado.findByNombre(nombre("Diario")).block());
+            assertEquals(1, reiniciado.buscarProductos("café", false, 10).count().block());
+        } finally {
+            reiniciado.cerrar();
+        }
+    }
+
+    @Test
+    void reinicio_SnapshotMasDiarioPosterior() {
+        String id = insertar(nombre("Snapshot"), sucursal("Centro", new Producto("Café", 1))).getId();
+        repositorio.snapshotPeriodico();
+        repositorio.actualizarStockProducto(id, "Centro", "Café", 40, null).block();
+
+        MemoriaFranquiciaRepositoryAdapter reiniciado = abrir(DataSize.ofMegabytes(1));
+        try {
+            Franquicia recuperada = reiniciado.findById(id).block();
+            assertEquals(40, recuperada.getSucursales().get(0).getProductos().get(0).getStock());
+            assertEquals(1L, recuperada.getVersion());
+        } finally {
+            reiniciado.cerrar();
+        }
+    }
+
+    @Test
+    void segmentosLlenos_RotanYElSnapshotBorraLosViejos() throws IOException {
+        repositorio.cerrar();
+        repositorio = abrir(DataSize.ofKilobytes(4));
+
+        String id = insertar(nombre("Rotacion"), sucursal("Centro", new Producto("Café", 0))).getId();
+        for (int i = 1; i <= 500; i++) {
+            repositorio.actualizarStockProducto(id, "Centro", "Café", i, null).block();
+        }
+        repositorio.cerrar();
+
+        try (Stream<Path> archivos = Files.list(directorio.resolve("franquicias"))) {
+            List<String> nombres = archivos.map(archivo -> archivo.getFileName().toString()).toList();
+            assertEquals(1, nombres.stream().filter(nombre -> nombre.startsWith("snapshot-")).count());
+            assertTrue(nombres.stream().filter(nombre -> nombre.startsWith("wal-")).count() <= 2, nombres.toString());
+        }
+
+        repositorio = abrir(DataSize.ofKilobytes(4));
+        Franquicia recuperada = repositorio.findById(id).block();
+        assertEquals(500, recuperada.getSucursales().get(0).getProductos().get(0).getStock());
+        assertEquals(500L, recuperada.getVersion());
+    }
+
+    @Test
+    void reservas_SeRecuperanYLasVencidasSeReclamanUnaVez() {
+        Instant ahora = Instant.parse("2026-01-01T00:00:00Z");
+        MemoriaReservaRepositoryAdapter reservas = new MemoriaReservaRepositoryAdapter(directorio.toString(), DataSize.ofMegabytes(1), false);
+        Reserva vencida = reservas.insertar(new Reserva(null, "f", "Centro", "Café", 2, ahora, ahora.minusSeconds(1))).block();
+        Reserva vigente = reservas.insertar(new Reserva(null, "f", "Centro", "Café", 3, ahora, ahora.plusSeconds(60))).block();
+        Reserva confirmada = reservas.insertar(new Reserva(null, "f", "Centro", "Café", 1, ahora, ahora.plusSeconds(60))).block();
+        assertNotNull(reservas.reclamar(confirmada.getId()).block());
+
+        MemoriaReservaRepositoryAdapter reiniciado = new MemoriaReservaRepositoryAdapter(directorio.toString(), DataSize.ofMegabytes(1), false);
+        try {
+            assertNull(reiniciado.reclamar(confirmada.getId()).block());
+            // Confirmar no se lleva una vencida: sigue guardada para el barrido
+            assertNull(reiniciado.reclamarVigente(vencida.getId(), ahora).block());
+            assertTrue(reiniciado.existe(vencida.getId()).block());
+            assertEquals(List.of(vencida.getId()), reiniciado.reclamarVencidas(ahora, 10).map(Reserva::getId).collectList().block());
+            assertEquals(0, reiniciado.reclamarVencidas(ahora, 10).count().block());
+            assertEquals(3, reiniciado.reclamarVigente(vigente.getId(), ahora).block().getCantidad());
+        } finally {
+            reiniciado.cerrar();
+            reservas.cerrar();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.franquicias.franquicias_api;
+
+import com.franquicias.franquicias_api.application.dto.OrdenListado;
+import com.franquicias.franquicias_api.application.port.in.IFranquiciaManagement;
+import com.franquicias.franquicias_api.application.port.out.IFranquiciaRepository;
+import com.franquicias.franquicias_api.domain.Franquicia;
+import com.franquicias.franquicias_api.domain.Producto;
+import com.franquicias.franquicias_api.domain.Sucursal;
+import com.franquicias.franquicias_api.domain.exception.RecursoNoEncontradoException;
+import com.franquicias.franquicias_api.domain.exception.ReservaVencidaException;
+import com.franquicias.franquicias_api.domain.exception.StockInsuficienteException;
+import com.franquicias.franquicias_api.domain.exception.VersionNoCoincideException;
+import com.franquicias.franquicias_api.infrastructure.excetion.GlobalExceptionHandler;
+import com.franquicias.franquicias_api.infrastructure.metricas.MetricasPuertos;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+class MetricasPuertosTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private MetricasPuertos metricas;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        StaticListableBeanFactory beans = new StaticListableBeanFactory(Map.of("meterRegistry", meterRegistry));
+        metricas = new MetricasPuertos(beans.getBeanProvider(MeterRegistry.class), Duration.ofSeconds(1));
+    }
+
+    @Test
+    void casosDeUso_ErroresSeSeparanPorEstado() {
+        IFranquiciaManagement servicio = mock(IFranquiciaManagement.class);
+        when(servicio.findById("no_existe")).thenReturn(Mono.error(new RecursoNoEncontradoException("Franquicia", "no_existe")));
+        when(servicio.ajustarStock("id", "Centro", "Cola", -5, true, null)).thenReturn(Mono.error(new StockInsuficienteException("Cola", "Centro", 1, -5)));
+        IFranquiciaManagement medido = (IFranquiciaManagement) metricas.postProcessAfterInitialization(servicio, "franquiciaService");
+
+        StepVerifier.create(medido.findById("no_existe")).expectError(RecursoNoEncontradoException.class).verify();
+        StepVerifier.create(medido.ajustarStock("id", "Centro", "Cola", -5, true, null)).expectError(StockInsuficienteException.class).verify();
+
+        assertEquals(1, meterRegistry.get("franquicias.casos.uso")
+                .tags("metodo", "findById", "resultado", "error", "estado", "404").timer().count());
+        assertEquals(1, meterRegistry.get("franquicias.casos.uso")
+                .tags("metodo", "ajustarStock", "resultado", "error", "estado", "409").timer().count());
+    }
+
+    @Test
+    void estadoDe_EsElMismoCodigoQueRespondeElManejadorDeErrores() {
+        for (RuntimeException error : List.of(new RecursoNoEncontradoException("Reserva", "r"), new ReservaVencidaException("r"),
+                new VersionNoCoincideException("id"), new IllegalArgumentException("x"), new IllegalStateException("x"))) {
+            assertEquals(String.valueOf(GlobalExceptionHandler.estadoDe(error).value()), MetricasPuertos.estadoDe(error));
+        }
+        assertEquals("410", MetricasPuertos.estadoDe(new ReservaVencidaException("r")));
+        assertEquals("500", MetricasPuertos.estadoDe(new IllegalStateException("x")));
+    }
+
+    @Test
+    void repositorio_CuentaElementosDelFluxYTamanoDelDocumentoLeido() {
+        List<Sucursal> sucursales = new ArrayList<>();
+        sucursales.add(new Sucursal("Centro", new ArrayList<>(List.of(new Producto("Cola", 1), new Producto("Café", 2)))));
+        sucursales.add(new Sucursal("Costa", new ArrayList<>(List.of(new Producto("Té", 3)))));
+        Franquicia franquicia = new Franquicia("Metricas", sucursales);
+        franquicia.setId("id");
+
+        IFranquiciaRepository repositorio = mock(IFranquiciaRepository.class);
+        when(repositorio.findById("id")).thenReturn(Mono.just(franquicia));
+        when(repositorio.findById("otro")).thenReturn(Mono.empty());
+        when(repositorio.findSucursales("id", 0, 0, OrdenListado.ORIGINAL)).thenReturn(Flux.fromIterable(sucursales));
+        IFranquiciaRepository medido = (IFranquiciaRepository) metricas.postProcessAfterInitialization(repositorio, "mongo");
+
+        StepVerifier.create(medido.findById("id")).expectNextCount(1).verifyComplete();
+        StepVerifier.create(medido.findById("otro")).verifyComplete();
+        StepVerifier.create(medido.findSucursales("id", 0, 0, OrdenListado.ORIGINAL)).expectNextCount(2).verifyComplete();
+
+        assertEquals(1, meterRegistry.get("franquicias.repositorio")
+                .tags("metodo", "findById", "adaptador", "mongo", "resultado", "ok", "estado", "none").timer().count());
+        assertEquals(1, meterRegistry.get("franquicias.repositorio")
+                .tags("metodo", "findById", "resultado", "vacio").timer().count());
+        assertEquals(3.0, meterRegistry.get("franquicias.repositorio.documento")
+                .tags("metodo", "findById", "operacion", "lectura").summary().totalAmount());
+        assertEquals(2.0, meterRegistry.get("franquicias.repositorio.elementos")
+                .tags("metodo", "findSucursales").summary().totalAmount());
+    }
+}
@@ -0,0 +1,27 @@
+package com.franquicias.franquicias_api;
+
+import com.franquicias.franquicias_api.application.port.out.IFranquiciaRepository;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * El contrato contra el adaptador de Mongo activo (embebido por defecto). Necesita un MongoDB de
+ * verdad, así que solo corre con MONGO_CONTRATO_URI definida, p. ej.:
+ * MONGO_CONTRATO_URI=mongodb://localhost:27017/franquicias_contrato mvn test -Dtest=MongoFranquiciaRepositoryContratoTest
+ * Contra el almacenamiento normalizado, lo mismo con -Dfranquicias.almacenamiento=normalizado.
+ */
+@SpringBootTest(properties = "spring.mongodb.uri=${MONGO_CONTRATO_URI}")
+@EnabledIfEnvironmentVariable(named = "MONGO_CONTRATO_URI", matches = ".+")
+class MongoFranquiciaRepositoryContratoTest extends FranquiciaRepositoryContratoTest {
+
+    @Autowired
+    @Qualifier("almacenamiento")
+    private IFranquiciaRepository repositorio;
+
+    @Override
+    protected IFranquiciaRepository repositorio() {
+        return repositorio;
+    }
+}
@@ -0,0 +1,181 @@
+package com.franquicias.franquicias_api;
+
+import com.franquicias.franquicias_api.application.dto.StockActualizadoDto;
+import com.franquicias.franquicias_api.application.port.out.IFranquiciaRepository;
+import com.franquicias.franquicias_api.domain.Franquicia;
+import com.franquicias.franquicias_api.domain.Producto;
+import com.franquicias.franquicias_api.domain.exception.ConflictoConcurrenciaException;
+import com.franquicias.franquicias_api.infrastructure.data.NormalizadoFranquiciaRepositoryAdapter;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * El contrato, más el cerrojo de la cabecera, contra un MongoDB en proceso (mongo-java-server):
+ * corre en cada mvn test sin necesitar un mongod. Las marcas "ajenas" se escriben a mano en la
+ * cabecera, como las dejaría otra instancia a mitad de camino.
+ */
+class NormalizadoFranquiciaRepositoryAdapterTest extends FranquiciaRepositoryContratoTest {
+
+    private static final String CABECERAS = "franquicias_normalizadas";
+
+    // Una marca puesta hace tanto que ya venció con cualquier vigencia razonable
+    private static final Date VENCIDA = new Date(0);
+
+    private MongoServer servidor;
+    private MongoClient cliente;
+    private ReactiveMongoTemplate mongoTemplate;
+    private NormalizadoFranquiciaRepositoryAdapter repositorio;
+
+    @BeforeEach
+    void setUp() {
+        servidor = new MongoServer(new MemoryBackend());
+        cliente = MongoClients.create(servidor.bindAndGetConnectionString());
+        mongoTemplate = new ReactiveMongoTemplate(cliente, "franquicias_normalizado");
+        repositorio = new NormalizadoFranquiciaRepositoryAdapter(mongoTemplate, Duration.ofSeconds(10));
+        repositorio.crearIndices().block();
+    }
+
+    @AfterEach
+    void tearDown() {
+        cliente.close();
+        servidor.shutdownNow();
+    }
+
+    @Override
+    protected IFranquiciaRepository repositorio() {
+        return repositorio;
+    }
+
+    @Test
+    void escrituraDeStock_ConUnGuardadoEnCursoChocaSinTocarLaFila() {
+        Franquicia franquicia = insertar(nombre("Guardando"), sucursal("Centro", new Producto("Café", 5)));
+        marcarCabecera(franquicia.getId(), new Update().currentDate("guardandoDesde").set("guardandoPor", "otra-instancia"));
+
+        StepVerifier.create(repositorio.incrementarStockProducto(franquicia.getId(), "Centro", "Café", 1, false, null))
+                .expectError(ConflictoConcurrenciaException.class)
+                .verify();
+
+        Franquicia guardada = repositorio.findById(franquicia.getId()).block();
+        assertEquals(5, guardada.getSucursales().get(0).getProductos().get(0).getStock());
+        assertEquals(0L, guardada.getVersion());
+    }
+
+    @Test
+    void escrituraDeStock_UnGuardadoVencidoNoCuentaYSuAnotacionSeRetira() {
+        Franquicia franquicia = insertar(nombre("Vencido"), sucursal("Centro", new Producto("Café", 5)));
+        // Un save que murió hace rato: su marca ya no frena a nadie
+        marcarCabecera(franquicia.getId(), new Update().set("guardandoDesde", VENCIDA).set("guardandoPor", "instancia-caida"));
+
+        StockActualizadoDto actualizada = repositorio.incrementarStockProducto(franquicia.getId(), "Centro", "Café", 3, false, null).block();
+
+        assertEquals(8, actualizada.getStock());
+        assertEquals(1L, actualizada.getVersion());
+        // La anotación propia se quitó al terminar
+        assertEquals(new Document(), cabecera(franquicia.getId()).get("escribiendo", Document.class));
+    }
+
+    @Test
+    void escrituraDeStockConVersion_ChocaConOtraEscrituraAnotadaYAlTerminarLiberaLaCabecera() {
+        Franquicia franquicia = insertar(nombre("ConVersion"), sucursal("Centro", new Producto("Café", 5)));
+        marcarCabecera(franquicia.getId(), new Update().currentDate("escribiendo.otra-instancia"));
+
+        // Con If-Match toma la cabecera como save: otra escritura en curso no la deja empezar
+        StepVerifier.create(repositorio.actualizarStockProducto(franquicia.getId(), "Centro", "Café", 8, 0L))
+                .expectError(ConflictoConcurrenciaException.class)
+                .verify();
+
+        marcarCabecera(franquicia.getId(), new Update().unset("escribiendo"));
+        StockActualizadoDto escrito = repositorio.actualizarStockProducto(franquicia.getId(), "Centro", "Café", 8, 0L).block();
+
+        assertEquals(8, escrito.getStock());
+        assertEquals(1L, escrito.getVersion());
+        Document cabecera = cabecera(franquicia.getId());
+        assertNull(cabecera.get("guardandoDesde"));
+        assertNull(cabecera.get("guardandoPor"));
+        // Y con la versión ya vieja no coincide (el servicio responde 412)
+        StepVerifier.create(repositorio.incrementarStockProducto(franquicia.getId(), "Centro", "Café", 1, false, 0L)).verifyComplete();
+    }
+
+    @Test
+    void save_ConUnaEscrituraDeStockAnotadaChocaYLaVencidaNoCuenta() {
+        Franquicia franquicia = insertar(nombre("Anotada"), sucursal("Centro", new Producto("Café", 5)));
+        marcarCabecera(franquicia.getId(), new Update().currentDate("escribiendo.otra-instancia"));
+
+        Franquicia leida = repositorio.findById(franquicia.getId()).block();
+        leida.getSucursales().get(0).agregarProducto(new Producto("Té", 1));
+        StepVerifier.create(repositorio.save(leida))
+                .expectError(ConflictoConcurrenciaException.class)
+                .verify();
+
+        // La misma anotación, pero de un proceso que murió hace rato
+        marcarCabecera(franquicia.getId(), new Update().set("escribiendo.otra-instancia", VENCIDA));
+        Franquicia guardada = repositorio.save(leida).block();
+
+        assertEquals(1L, guardada.getVersion());
+        assertEquals(2, repositorio.findById(franquicia.getId()).block().getSucursales().get(0).getProductos().size());
+        // Ganó el compare-and-set, así que las anotaciones que quedaban (vencidas) se descartaron
+        assertNull(cabecera(franquicia.getId()).get("escribiendo"));
+    }
+
+    @Test
+    void save_LiberaSuMarcaYSubeLaVersionAlTerminar() {
+        Franquicia franquicia = insertar(nombre("Libera"), sucursal("Centro", new Producto("Café", 5)));
+        // Otro save que murió: su marca vencida no impide este, que la reemplaza por la propia
+        marcarCabecera(franquicia.getId(), new Update().set("guardandoDesde", VENCIDA).set("guardandoPor", "instancia-caida"));
+
+        Franquicia leida = repositorio.findById(franquicia.getId()).block();
+        leida.getSucursales().get(0).buscarProductoPorNombre("Café").setStock(9);
+        repositorio.save(leida).block();
+
+        Document guardada = cabecera(franquicia.getId());
+        assertNull(guardada.get("guardandoDesde"));
+        assertNull(guardada.get("guardandoPor"));
+        assertEquals(1L, guardada.get("version", Number.class).longValue());
+        // Y ya no frena a las escrituras de stock
+        assertEquals(10, repositorio.incrementarStockProducto(franquicia.getId(), "Centro", "Café", 1, false, null).block().getStock());
+    }
+
+    @Test
+    void save_ConLaVersionAnteriorAUnaEscrituraDeStockPierde() {
+        Franquicia franquicia = insertar(nombre("Anterior"), sucursal("Centro", new Producto("Café", 5)));
+        Franquicia leida = repositorio.findById(franquicia.getId()).block();
+
+        // Entre la lectura y el save, una venta sube la versión al retirar su anotación
+        repositorio.incrementarStockProducto(franquicia.getId(), "Centro", "Café", -1, true, null).block();
+        leida.getSucursales().get(0).agregarProducto(new Producto("Té", 1));
+
+        StepVerifier.create(repositorio.save(leida))
+                .expectError(ConflictoConcurrenciaException.class)
+                .verify();
+        assertEquals(4, repositorio.findById(franquicia.getId()).block().getSucursales().get(0).getProductos().get(0).getStock());
+    }
+
+    private void marcarCabecera(String id, Update update) {
+        mongoTemplate.updateFirst(porId(id), update, CABECERAS).block();
+    }
+
+    private Document cabecera(String id) {
+        return mongoTemplate.findOne(porId(id), Document.class, CABECERAS).block();
+    }
+
+    private static Query porId(String id) {
+        return Query.query(Criteria.where("_id").is(new ObjectId(id)));
+    }
+}
@@ -0,0 +1,86 @@
+package com.franquicias.franquicias_api;
+
+import com.franquicias.franquicias_api.application.port.out.IFranquiciaRepository;
+import com.franquicias.franquicias_api.application.service.PipelineMutaciones;
+import com.franquicias.franquicias_api.application.service.ReintentoConcurrencia;
+import com.franquicias.franquicias_api.domain.Franquicia;
+import com.franquicias.franquicias_api.domain.Sucursal;
+import com.franquicias.franquicias_api.domain.exception.RecursoDuplicadoException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PipelineMutacionesTest {
+
+    private static final String ID = "id_pipeline";
+
+    @Mock
+    private IFranquiciaRepository franquiciaRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private PipelineMutaciones pipeline;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        ReintentoConcurrencia reintento = new ReintentoConcurrencia(2, Duration.ofMillis(1), meterRegistry);
+        pipeline = new PipelineMutaciones(franquiciaRepository, reintento, true, Duration.ofMillis(50), 10, meterRegistry);
+
+        when(franquiciaRepository.findById(ID)).thenAnswer(inv -> {
+            Franquicia franquicia = new Franquicia("Pipeline", new ArrayList<>());
+            franquicia.setId(ID);
+            return Mono.just(franquicia);
+        });
+    }
+
+    @Test
+    void encolar_MutacionesDeLaMismaVentanaCompartenLecturaYGuardado() {
+        when(franquiciaRepository.save(any(Franquicia.class))).thenAnswer(inv -> Mono.just(inv.getArgument(0)));
+
+        Mono<Franquicia> norte = pipeline.encolar(ID, f -> f.agregarSucursal(new Sucursal("Norte", new ArrayList<>())));
+        Mono<Franquicia> sur = pipeline.encolar(ID, f -> f.agregarSucursal(new Sucursal("Sur", new ArrayList<>())));
+
+        StepVerifier.create(Mono.zip(norte, sur))
+                .assertNext(ambas -> {
+                    // Los dos llamadores reciben el mismo documento guardado con ambos cambios
+                    assertEquals(2, ambas.getT1().getSucursales().size());
+                    assertEquals(ambas.getT1(), ambas.getT2());
+                })
+                .verifyComplete();
+
+        verify(franquiciaRepository, times(1)).findById(ID);
+        verify(franquiciaRepository, times(1)).save(any(Franquicia.class));
+        assertEquals(2.0, meterRegistry.get("franquicias.pipeline.lote.tamano").summary().totalAmount());
+    }
+
+    @Test
+    void encolar_UnErrorDeDominioSoloFallaASuLlamador() {
+        when(franquiciaRepository.save(any(Franquicia.class))).thenAnswer(inv -> Mono.just(inv.getArgument(0)));
+
+        Mono<Franquicia> valida = pipeline.encolar(ID, f -> f.agregarSucursal(new Sucursal("Norte", new ArrayList<>())));
+        Mono<Franquicia> duplicada = pipeline.encolar(ID, f -> f.agregarSucursal(new Sucursal("norte", new ArrayList<>())));
+
+        StepVerifier.create(Mono.zip(valida, duplicada.onErrorResume(RecursoDuplicadoException.class, e -> Mono.just(new Franquicia()))))
+                .assertNext(ambas -> {
+                    assertEquals(1, ambas.getT1().getSucursales().size());
+                    assertNull(ambas.getT2().getId()); // Recibió su 409
+                })
+                .verifyComplete();
+
+        verify(franquiciaRepository, times(1)).save(any(Franquicia.class));
+    }
+}
@@ -0,0 +1,512 @@
+package com.franquicias.franquicias_api;
+
+import com.franquicias.franquicias_api.domain.Franquicia;
+import com.franquicias.franquicias_api.domain.Producto;
+import com.franquicias.franquicias_api.domain.Sucursal;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Prueba de carga HTTP de los endpoints de FranquiciaController, con la app levantada en un puerto
+ * aleatorio y el almacenamiento en memoria (perfil memoria, sin MongoDB). Solo corre con el perfil
+ * Maven carga:
+ *
+ *   mvn -B -Pcarga test -Dcarga.concurrencia=64 -Dcarga.duracion=60s -Dcarga.sucursales=100
+ *
+ * - Datos: carga.franquicias x carga.sucursales x carga.productos, creados por la API antes de medir.
+ * - Carga cerrada: carga.concurrencia clientes que lanzan la siguiente petición al recibir la
+ *   respuesta completa, durante carga.calentamiento (no se mide) y luego carga.duracion.
+ * - Mezcla: pesos por operación en carga.mezcla (ver MEZCLA_POR_DEFECTO); peso 0 = no se lanza.
+ * - Reporte JSON en carga.reporte (target/carga/reporte-carga.json): por operación, peticiones por
+ *   segundo, estados HTTP, bytes medios de respuesta y percentiles de latencia (HdrHistogram, en ms)
+ *   con el histograma comprimido en base64 para recalcular o combinar.
+ *
+ * Por defecto el almacenamiento va sin diario; -Dcarga.directorio=target/carga/datos mide también
+ * el WAL (el directorio debe estar vacío). Los SSE de /cambios no entran: son conexiones largas.
+ */
+@Slf4j
+@Tag("carga")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "franquicias.memoria.directorio=${carga.directorio:}")
+@ActiveProfiles("memoria")
+class PruebaCargaTest {
+
+    private static final String MEZCLA_POR_DEFECTO = "porId=15,porIdResumen=5,porNombre=5,listar=3,sucursales=5,"
+            + "productos=5,buscar=3,autocompletar=5,maxStock=8,stock=8,ajustarStock=6,lote=2,reservar=3,"
+            + "confirmar=1,liberar=2,agregarProducto=2,eliminarProducto=1,eliminarProductoTodas=1,agregarSucursal=1,"
+            + "crear=1,renombrarFranquicia=1,renombrarSucursal=1,renombrarProducto=1,reconstruirMaxStock=1,"
+            + "reconstruirMaxStockGlobal=0";
+
+    // Estado 0 = la petición no obtuvo respuesta (conexión, timeout)
+    private static final int SIN_RESPUESTA = 0;
+
+    @LocalServerPort
+    private int puerto;
+
+    private final int concurrencia = Integer.getInteger("carga.concurrencia", 32);
+    private final Duration duracion = DurationStyle.detectAndParse(System.getProperty("carga.duracion", "30s"));
+    private final Duration calentamiento = DurationStyle.detectAndParse(System.getProperty("carga.calentamiento", "10s"));
+    private final int totalFranquicias = Integer.getInteger("carga.franquicias", 10);
+    private final int totalSucursales = Integer.getInteger("carga.sucursales", 20);
+    private final int totalProductos = Integer.getInteger("carga.productos", 50);
+    private final long semilla = Long.getLong("carga.semilla", 42L);
+    private final Path reporte = Path.of(System.getProperty("carga.reporte", "target/carga/reporte-carga.json"));
+    private final Map<String, Integer> mezcla = mezcla(System.getProperty("carga.mezcla", MEZCLA_POR_DEFECTO));
+
+    private WebClient cliente;
+    private final List<EstadoFranquicia> franquicias = new ArrayList<>();
+
+    // Lo que crean unas operaciones y consumen otras (así el tamaño de los datos no deriva)
+    private final ConcurrentLinkedQueue<String[]> productosExtra = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<String> reservas = new ConcurrentLinkedQueue<>();
+    private final AtomicLong secuencia = new AtomicLong();
+
+    @Test
+    void cargaMixtaPorEndpoint() throws IOException {
+        ConnectionProvider conexiones = ConnectionProvider.builder("carga")
+                .maxConnections(concurrencia)
+                .pendingAcquireMaxCount(-1)
+                .build();
+        cliente = WebClient.builder()
+                .baseUrl("http://localhost:" + puerto)
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(conexiones)))
+                .build();
+        try {
+            crearDatos();
+            correr(calentamiento);
+            long inicio = System.nanoTime();
+            Map<String, Medicion> mediciones = correr(duracion);
+            double segundos = (System.nanoTime() - inicio) / 1e9;
+
+            escribirReporte(mediciones, segundos);
+            resumirEnLog(mediciones, segundos);
+
+            // Los 4xx son parte de la mezcla (carreras entre renombrados y lecturas); 5xx o sin respuesta no
+            mediciones.forEach((operacion, medicion) -> medicion.estados.forEach((estado, cantidad) ->
+                    assertFalse(estado == SIN_RESPUESTA || estado >= 500,
+                            operacion + ": " + cantidad.sum() + " respuestas con estado " + estado)));
+        } finally {
+            conexiones.disposeLater().block();
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // Datos
+    // ----------------------------------------------------------------------
+
+    /**
+     * Cada franquicia: "Sucursal 0..S-1" con "Producto 0..P-1", más una sucursal y un producto
+     * que solo tocan los renombrados (así no le quitan el nombre a las demás operaciones).
+     * Ninguna sucursal queda vacía: productos-max-stock corta la respuesta con un error si hay una.
+     */
+    private void crearDatos() {
+        Flux.range(0, totalFranquicias)
+                .flatMapSequential(i -> {
+                    List<Sucursal> sucursales = new ArrayList<>(totalSucursales + 1);
+                    for (int j = 0; j < totalSucursales; j++) {
+                        List<Producto> productos = new ArrayList<>(totalProductos + 1);
+                        for (int k = 0; k < totalProductos; k++) {
+                            productos.add(new Producto("Producto " + k, 1_000));
+                        }
+                        sucursales.add(new Sucursal("Sucursal " + j, productos));
+                    }
+                    sucursales.get(0).getProductos().add(new Producto("Producto R", 1_000));
+                    sucursales.add(new Sucursal("Sucursal R", new ArrayList<>(List.of(new Producto("Producto R", 1_000)))));
+                    String nombre = "Carga " + i;
+                    return cliente.post().uri("/franquicias")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .bodyValue(new Franquicia(nombre, sucursales))
+                            .retrieve()
+                            .bodyToMono(Map.class)
+                            .map(creada -> new EstadoFranquicia((String) creada.get("id"), nombre));
+                }, 4)
+                .doOnNext(franquicias::add)
+                .blockLast();
+        assertEquals(totalFranquicias, franquicias.size());
+    }
+
+    // ----------------------------------------------------------------------
+    // Ejecución
+    // ----------------------------------------------------------------------
+
+    private Map<String, Medicion> correr(Duration tiempo) {
+        Map<String, Medicion> mediciones = new ConcurrentHashMap<>();
+        if (tiempo.isZero()) {
+            return mediciones;
+        }
+        Sorteo sorteo = new Sorteo(mezcla);
+        long fin = System.nanoTime() + tiempo.toNanos();
+
+        Flux.range(0, concurrencia)
+                .flatMap(cliente -> {
+                    SplittableRandom azar = new SplittableRandom(semilla + cliente);
+                    return Mono.defer(() -> medir(sorteo.siguiente(azar), azar, mediciones))
+                            .repeat(() -> System.nanoTime() < fin);
+                }, concurrencia)
+                .blockLast();
+        return mediciones;
+    }
+
+    private Mono<Void> medir(String operacion, SplittableRandom azar, Map<String, Medicion> mediciones) {
+        long inicio = System.nanoTime();
+        return ejecutar(operacion, azar)
+                .doOnNext(respuesta -> mediciones.computeIfAbsent(respuesta.operacion(), Medicion::new)
+                        .registrar(respuesta, (System.nanoTime() - inicio) / 1_000))
+                .then();
+    }
+
+    /**
+     * Lanza la operación sorteada. Las que consumen algo que otra creó (eliminar un producto extra,
+     * confirmar o liberar una reserva) hacen la operación que lo crea si todavía no hay nada.
+     */
+    private Mono<Respuesta> ejecutar(String operacion, SplittableRandom azar) {
+        EstadoFranquicia franquicia = franquicias.get(azar.nextInt(franquicias.size()));
+        String id = franquicia.id;
+        String sucursal = "Sucursal " + azar.nextInt(totalSucursales);
+        String producto = "Producto " + azar.nextInt(totalProductos);
+
+        return switch (operacion) {
+            case "porId" -> peticion(operacion, HttpMethod.GET, "/franquicias/{id}", null, id);
+            case "porIdResumen" -> peticion(operacion, HttpMethod.GET, "/franquicias/{id}?vista=resumen", null, id);
+            case "porNombre" -> peticion(operacion, HttpMethod.GET, "/franquicias/nombre/{nombre}", null, franquicia.nombre);
+            case "listar" -> peticion(operacion, HttpMethod.GET, "/franquicias?limite=20&vista=resumen", null);
+            case "sucursales" -> peticion(operacion, HttpMethod.GET, "/franquicias/{id}/sucursales?limite=20&orden=nombre", null, id);
+            case "productos" -> peticion(operacion, HttpMethod.GET,
+                    "/franquicias/{id}/sucursales/{sucursal}/productos?limite=20&orden=-stock", null, id, sucursal);
+            case "buscar" -> peticion(operacion, HttpMethod.GET, "/franquicias/productos/buscar?nombre={nombre}&limite=50", null, producto);
+            case "autocompletar" -> peticion(operacion, HttpMethod.GET, "/franquicias/{id}/autocomplete?q=prod&limite=10", null, id);
+            case "maxStock" -> peticion(operacion, HttpMethod.GET, "/franquicias/{id}/productos-max-stock", null, id);
+            case "stock" -> peticion(operacion, HttpMethod.PUT, "/franquicias/{id}/sucursales/{sucursal}/productos/{producto}/stock",
+                    Map.of("stock", azar.nextInt(2_000)), id, sucursal, producto);
+            case "ajustarStock" -> peticion(operacion, HttpMethod.PATCH,
+                    "/franquicias/{id}/sucursales/{sucursal}/productos/{producto}/stock?evitarNegativo=true",
+                    Map.of("cambio", azar.nextBoolean() ? 1 : -1), id, sucursal, producto);
+            case "lote" -> peticion(operacion, HttpMethod.POST, "/franquicias/stock/lote", lote(azar), (Object[]) null);
+            case "reservar" -> reservar(id, sucursal, producto);
+            case "confirmar", "liberar" -> {
+                String reserva = reservas.poll();
+                if (reserva == null) {
+                    yield reservar(id, sucursal, producto);
+                }
+                yield operacion.equals("confirmar")
+                        ? peticion(operacion, HttpMethod.POST, "/franquicias/reservas/{reserva}/confirmar", null, reserva)
+                        : peticion(operacion, HttpMethod.DELETE, "/franquicias/reservas/{reserva}", null, reserva);
+            }
+            case "agregarProducto" -> agregarProducto(id, sucursal);
+            case "eliminarProducto", "eliminarProductoTodas" -> {
+                String[] extra = productosExtra.poll();
+                if (extra == null) {
+                    yield agregarProducto(id, sucursal);
+                }
+                yield operacion.equals("eliminarProducto")
+                        ? peticion(operacion, HttpMethod.DELETE, "/franquicias/{id}/sucursales/{sucursal}/productos/{producto}", null,
+                                extra[0], extra[1], extra[2])
+                        : peticion(operacion, HttpMethod.DELETE, "/franquicias/{id}/productos/{producto}", null, extra[0], extra[2]);
+            }
+            case "agregarSucursal" -> peticion(operacion, HttpMethod.POST, "/franquicias/{id}/sucursales",
+                    Map.of("nombre", "Sucursal extra " + secuencia.incrementAndGet(),
+                            "productos", List.of(Map.of("nombre", "Producto 0", "stock", 10))), id);
+            case "crear" -> peticion(operacion, HttpMethod.POST, "/franquicias",
+                    Map.of("nombre", "Carga extra " + secuencia.incrementAndGet()), (Object[]) null);
+            case "renombrarFranquicia", "renombrarSucursal", "renombrarProducto" -> renombrar(operacion, franquicia, azar);
+            case "reconstruirMaxStock" -> peticion(operacion, HttpMethod.POST, "/franquicias/{id}/productos-max-stock/reconstruir", null, id);
+            case "reconstruirMaxStockGlobal" -> peticion(operacion, HttpMethod.POST, "/franquicias/productos-max-stock/reconstruir", null);
+            default -> throw new IllegalArgumentException("Operación desconocida en carga.mezcla: " + operacion);
+        };
+    }
+
+    private Mono<Respuesta> reservar(String id, String sucursal, String producto) {
+        return cliente.post()
+                .uri("/franquicias/{id}/sucursales/{sucursal}/productos/{producto}/reservas", id, sucursal, producto)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("cantidad", 1))
+                .exchangeToMono(respuesta -> respuesta.bodyToMono(Map.class)
+                        .doOnNext(reserva -> {
+                            if (respuesta.statusCode().is2xxSuccessful()) {
+                                reservas.add((String) reserva.get("id"));
+                            }
+                        })
+                        // Aproximado: el cuerpo ya se decodificó; se toma el Content-Length si vino
+                        .then(Mono.fromSupplier(() -> new Respuesta("reservar", respuesta.statusCode().value(),
+                                respuesta.headers().contentLength().orElse(0)))))
+                .onErrorResume(error -> Mono.just(new Respuesta("reservar", SIN_RESPUESTA, 0)));
+    }
+
+    private Mono<Respuesta> agregarProducto(String id, String sucursal) {
+        String nombre = "Producto extra " + secuencia.incrementAndGet();
+        return peticion("agregarProducto", HttpMethod.POST, "/franquicias/{id}/sucursales/{sucursal}/productos",
+                Map.of("nombre", nombre, "stock", 10), id, sucursal)
+                .doOnNext(respuesta -> {
+                    if (respuesta.estado() / 100 == 2) {
+                        productosExtra.add(new String[]{id, sucursal, nombre});
+                    }
+                });
+    }
+
+    /**
+     * Alterna el nombre entre "X" y "X (b)". Un solo renombrado a la vez por franquicia y tipo;
+     * si está ocupado, se mide una lectura por ID en su lugar.
+     */
+    private Mono<Respuesta> renombrar(String operacion, EstadoFranquicia franquicia, SplittableRandom azar) {
+        int tipo = operacion.equals("renombrarFranquicia") ? 0 : operacion.equals("renombrarSucursal") ? 1 : 2;
+        if (!franquicia.renombrando[tipo].compareAndSet(false, true)) {
+            return peticion("porId", HttpMethod.GET, "/franquicias/{id}", null, franquicia.id);
+        }
+        String actual = switch (tipo) {
+            case 0 -> franquicia.nombre;
+            case 1 -> franquicia.sucursalRenombrable;
+            default -> franquicia.productoRenombrable;
+        };
+        String nuevo = actual.endsWith(" (b)") ? actual.substring(0, actual.length() - 4) : actual + " (b)";
+        Mono<Respuesta> peticion = switch (tipo) {
+            case 0 -> peticion(operacion, HttpMethod.PUT, "/franquicias/{id}", Map.of("nombre", nuevo), franquicia.id);
+            case 1 -> peticion(operacion, HttpMethod.PUT, "/franquicias/{id}/sucursales/{sucursal}",
+                    Map.of("nombre", nuevo), franquicia.id, actual);
+            default -> peticion(operacion, HttpMethod.PUT, "/franquicias/{id}/sucursales/{sucursal}/productos/{producto}",
+                    Map.of("nombre", nuevo), franquicia.id, "Sucursal 0", actual);
+        };
+        return peticion
+                .doOnNext(respuesta -> {
+                    if (respuesta.estado() / 100 == 2) {
+                        switch (tipo) {
+                            case 0 -> franquicia.nombre = nuevo;
+                            case 1 -> franquicia.sucursalRenombrable = nuevo;
+                            default -> franquicia.productoRenombrable = nuevo;
+                        }
+                    }
+                })
+                .doFinally(senal -> franquicia.renombrando[tipo].set(false));
+    }
+
+    private List<Map<String, Object>> lote(SplittableRandom azar) {
+        List<Map<String, Object>> filas = new ArrayList<>(10);
+        for (int i = 0; i < 10; i++) {
+            filas.add(Map.of(
+                    "franquiciaId", franquicias.get(azar.nextInt(franquicias.size())).id,
+                    "sucursalNombre", "Sucursal " + azar.nextInt(totalSucursales),
+                    "productoNombre", "Producto " + azar.nextInt(totalProductos),
+                    "stock", azar.nextInt(2_000)));
+        }
+        return filas;
+    }
+
+    // El cuerpo se lee entero (cuenta en la latencia) y solo se suman sus bytes
+    private Mono<Respuesta> peticion(String operacion, HttpMethod metodo, String uri, Object cuerpo, Object... variables) {
+        WebClient.RequestBodySpec spec = cliente.method(metodo).uri(uri, variables == null ? new Object[0] : variables);
+        WebClient.RequestHeadersSpec<?> lista = cuerpo == null ? spec : spec.contentType(MediaType.APPLICATION_JSON).bodyValue(cuerpo);
+        return lista
+                .exchangeToMono(respuesta -> respuesta.bodyToFlux(DataBuffer.class)
+                        .map(buffer -> {
+                            int bytes = buffer.readableByteCount();
+                            DataBufferUtils.release(buffer);
+                            return (long) bytes;
+                        })
+                        .reduce(0L, Long::sum)
+                        .map(bytes -> new Respuesta(operacion, respuesta.statusCode().value(), bytes)))
+                .onErrorResume(error -> Mono.just(new Respuesta(operacion, SIN_RESPUESTA, 0)));
+    }
+
+    // ----------------------------------------------------------------------
+    // Reporte
+    // ----------------------------------------------------------------------
+
+    /**
+     * JSON con claves ordenadas (se puede comparar con diff entre builds). Latencias en ms;
+     * "histograma" es el HdrHistogram comprimido (µs) en base64, para recalcular otros percentiles
+     * o sumar varias corridas (Histogram.decodeFromCompressedByteBuffer).
+     */
+    private void escribirReporte(Map<String, Medicion> mediciones, double segundos) throws IOException {
+        Map<String, Object> configuracion = new LinkedHashMap<>();
+        configuracion.put("concurrencia", concurrencia);
+        configuracion.put("duracionSegundos", duracion.toSeconds());
+        configuracion.put("calentamientoSegundos", calentamiento.toSeconds());
+        configuracion.put("franquicias", totalFranquicias);
+        configuracion.put("sucursales", totalSucursales);
+        configuracion.put("productos", totalProductos);
+        configuracion.put("semilla", semilla);
+        configuracion.put("mezcla", new TreeMap<>(mezcla));
+        configuracion.put("diario", !System.getProperty("carga.directorio", "").isBlank());
+        configuracion.put("java", System.getProperty("java.version"));
+        configuracion.put("procesadores", Runtime.getRuntime().availableProcessors());
+
+        Medicion total = new Medicion("total");
+        Map<String, Object> operaciones = new TreeMap<>();
+        mediciones.forEach((operacion, medicion) -> {
+            operaciones.put(operacion, medicion.resumen(segundos));
+            total.sumar(medicion);
+        });
+
+        Map<String, Object> raiz = new LinkedHashMap<>();
+        raiz.put("configuracion", configuracion);
+        raiz.put("total", total.resumen(segundos));
+        raiz.put("operaciones", operaciones);
+
+        Files.createDirectories(reporte.toAbsolutePath().getParent());
+        JsonMapper.builder().build().writerWithDefaultPrettyPrinter().writeValue(reporte.toFile(), raiz);
+    }
+
+    private void resumirEnLog(Map<String, Medicion> mediciones, double segundos) {
+        StringBuilder tabla = new StringBuilder(String.format("%n%-26s %10s %10s %9s %9s %9s %9s %10s%n",
+                "operacion", "peticiones", "pet/s", "p50 ms", "p90 ms", "p99 ms", "max ms", "bytes/resp"));
+        new TreeMap<>(mediciones).forEach((operacion, medicion) -> {
+            Histogram latencias = medicion.latencias;
+            tabla.append(String.format("%-26s %10d %10.1f %9.2f %9.2f %9.2f %9.2f %10d%n", operacion,
+                    latencias.getTotalCount(), latencias.getTotalCount() / segundos,
+                    ms(latencias.getValueAtPercentile(50)), ms(latencias.getValueAtPercentile(90)),
+                    ms(latencias.getValueAtPercentile(99)), ms(latencias.getMaxValue()),
+                    latencias.getTotalCount() == 0 ? 0 : medicion.bytes.sum() / latencias.getTotalCount()));
+        });
+        tabla.append("Reporte: ").append(reporte.toAbsolutePath());
+        log.info("Resumen de la prueba de carga:{}", tabla);
+    }
+
+    private static double ms(long microsegundos) {
+        return Math.round(microsegundos / 10.0) / 100.0;
+    }
+
+    // "a=3,b=1" -> {a: 3, b: 1}
+    private static Map<String, Integer> mezcla(String texto) {
+        Map<String, Integer> pesos = new LinkedHashMap<>();
+        for (String par : texto.split(",")) {
+            String[] partes = par.trim().split("=");
+            pesos.put(partes[0].trim(), Integer.parseInt(partes[1].trim()));
+        }
+        return pesos;
+    }
+
+    // ----------------------------------------------------------------------
+    // Tipos auxiliares
+    // ----------------------------------------------------------------------
+
+    private record Respuesta(String operacion, int estado, long bytes) {
+    }
+
+    private static final class EstadoFranquicia {
+        private final String id;
+        private volatile String nombre;
+        private volatile String sucursalRenombrable = "Sucursal R";
+        private volatile String productoRenombrable = "Producto R";
+        private final AtomicBoolean[] renombrando = {new AtomicBoolean(), new AtomicBoolean(), new AtomicBoolean()};
+
+        private EstadoFranquicia(String id, String nombre) {
+            this.id = id;
+            this.nombre = nombre;
+        }
+    }
+
+    // Sorteo ponderado de la siguiente operación
+    private static final class Sorteo {
+        private final String[] operaciones;
+        private final int[] acumulado;
+
+        private Sorteo(Map<String, Integer> pesos) {
+            List<Map.Entry<String, Integer>> activas = pesos.entrySet().stream().filter(peso -> peso.getValue() > 0).toList();
+            operaciones = new String[activas.size()];
+            acumulado = new int[activas.size()];
+            int suma = 0;
+            for (int i = 0; i < activas.size(); i++) {
+                operaciones[i] = activas.get(i).getKey();
+                suma += activas.get(i).getValue();
+                acumulado[i] = suma;
+            }
+            if (suma == 0) {
+                throw new IllegalArgumentException("carga.mezcla no tiene ninguna operación con peso > 0");
+            }
+        }
+
+        private String siguiente(SplittableRandom azar) {
+            int posicion = Arrays.binarySearch(acumulado, azar.nextInt(acumulado[acumulado.length - 1]) + 1);
+            return operaciones[posicion >= 0 ? posicion : -posicion - 1];
+        }
+    }
+
+    // Latencias en µs (el histograma crece solo), estados HTTP y bytes de respuesta de una operación
+    private static final class Medicion {
+        private final Histogram latencias = new ConcurrentHistogram(3);
+        private final Map<Integer, LongAdder> estados = new ConcurrentHashMap<>();
+        private final LongAdder bytes = new LongAdder();
+
+        // La operación va como clave del mapa; el parámetro es para usarlo con computeIfAbsent
+        private Medicion(String operacion) {
+        }
+
+        private void registrar(Respuesta respuesta, long microsegundos) {
+            latencias.recordValue(Math.max(1, microsegundos));
+            estados.computeIfAbsent(respuesta.estado(), estado -> new LongAdder()).increment();
+            bytes.add(respuesta.bytes());
+        }
+
+        private void sumar(Medicion otra) {
+            latencias.add(otra.latencias);
+            otra.estados.forEach((estado, cantidad) -> estados.computeIfAbsent(estado, e -> new LongAdder()).add(cantidad.sum()));
+            bytes.add(otra.bytes.sum());
+        }
+
+        private Map<String, Object> resumen(double segundos) {
+            long peticiones = latencias.getTotalCount();
+            Map<String, Object> latenciaMs = new LinkedHashMap<>();
+            latenciaMs.put("p50", ms(latencias.getValueAtPercentile(50)));
+            latenciaMs.put("p90", ms(latencias.getValueAtPercentile(90)));
+            latenciaMs.put("p99", ms(latencias.getValueAtPercentile(99)));
+            latenciaMs.put("p999", ms(latencias.getValueAtPercentile(99.9)));
+            latenciaMs.put("max", ms(latencias.getMaxValue()));
+            latenciaMs.put("media", Math.round(latencias.getMean() / 10.0) / 100.0);
+
+            Map<String, Object> resumen = new LinkedHashMap<>();
+            resumen.put("peticiones", peticiones);
+            resumen.put("porSegundo", Math.round(peticiones / segundos * 10) / 10.0);
+            resumen.put("estados", new TreeMap<>(estados.entrySet().stream()
+                    .collect(Collectors.toMap(estado -> String.valueOf(estado.getKey()), estado -> estado.getValue().sum()))));
+            resumen.put("bytesPorRespuesta", peticiones == 0 ? 0 : bytes.sum() / peticiones);
+            resumen.put("latenciaMs", latenciaMs);
+            resumen.put("histograma", codificar(latencias));
+            return resumen;
+        }
+
+        private static String codificar(Histogram histograma) {
+            ByteBuffer buffer = ByteBuffer.allocate(histograma.getNeededByteBufferCapacity());
+            int longitud = histograma.encodeIntoCompressedByteBuffer(buffer);
+            return Base64.getEncoder().encodeToString(Arrays.copyOf(buffer.array(), longitud));
+        }
+    }
+}